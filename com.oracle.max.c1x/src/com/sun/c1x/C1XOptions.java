@@ -36,6 +36,7 @@ public final class C1XOptions {
     public static boolean OptInline                          = ____;
     public static boolean OptInlineExcept                    = ____;
     public static boolean OptInlineSynchronized              = ____;
+    public static boolean OptInlineProfiledReceivers         = ____;
 
     public static int     MaximumInstructionCount            = 37000;
     public static float   MaximumInlineRatio                 = 0.90f;
@@ -45,6 +46,9 @@ public final class C1XOptions {
     public static int     MaximumRecursiveInlineLevel        = 1;
     public static int     MaximumDesiredSize                 = 8000;
     public static int     MaximumShortLoopSize               = 5;
+    public static int     MinimumReceiverProfileCount        = 100;
+    public static float   MinimumReceiverTypeProbability     = 0.90f;
+    public static int     MaximumReceiverTypeGuardTypes      = 2;
 
     // intrinsification settings
     public static boolean OptIntrinsify                      = ____;
@@ -220,6 +224,7 @@ public final class C1XOptions {
         OptIntrinsify                   = lll;
         OptInlineExcept                 = lll;
         OptInlineSynchronized           = lll;
+        OptInlineProfiledReceivers      = lll;
         UseStackMapTableLiveness        = lll;
         UseAssumptions                  = lll;
         OptIterativeNCE                 = lll;
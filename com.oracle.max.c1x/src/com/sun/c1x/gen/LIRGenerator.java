@@ -433,7 +433,7 @@ public abstract class LIRGenerator extends ValueVisitor {
         if (currentBlock.next() instanceof OsrEntry) {
             // need to free up storage used for OSR entry point
             CiValue osrBuffer = currentBlock.next().operand();
-            callRuntime(CiRuntimeCall.OSRMigrationEnd, null, osrBuffer);
+            callRuntime(CiRuntimeCall.OSRMigrationEnd, stateFor(x, x.stateAfter()), osrBuffer);
             emitXir(xir.genSafepointPoll(site(x)), x, stateFor(x, x.stateAfter()), null, false);
         } else if (x.isSafepointPoll()) {
             emitXir(xir.genSafepointPoll(site(x)), x, stateFor(x, x.stateAfter()), null, false);
@@ -2146,6 +2146,20 @@ public abstract class LIRGenerator extends ValueVisitor {
     @Override
     public void visitTypeEqualityCheck(TypeEqualityCheck typeEqualityCheck) {
         Value x = typeEqualityCheck.left();
+        if (typeEqualityCheck.types != null) {
+            // the exact type test is a comparison against the hubs of the profiled receiver types
+            RiResolvedType[] types = typeEqualityCheck.types;
+            XirArgument[] hubs = new XirArgument[types.length];
+            for (int i = 0; i < types.length; i++) {
+                hubs[i] = XirArgument.forObject(types[i].getEncoding(RiType.Representation.ObjectHub).asObject());
+            }
+            XirSnippet snippet = xir.genReceiverTypeGuard(site(typeEqualityCheck), toXirArgument(x), hubs);
+            if (snippet == null) {
+                throw new CiBailout("no receiver type guard for " + types.length + " types");
+            }
+            emitXir(snippet, typeEqualityCheck, stateFor(typeEqualityCheck), null, false);
+            return;
+        }
         Value y = typeEqualityCheck.right();
 
         CiValue leftValue = emitXir(xir.genGetClass(site(typeEqualityCheck), toXirArgument(x)), typeEqualityCheck, stateFor(typeEqualityCheck), null, false);
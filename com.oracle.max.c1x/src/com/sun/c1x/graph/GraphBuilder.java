@@ -120,7 +120,13 @@ public final class GraphBuilder {
         // 2. compute the block map and get the entrypoint(s)
         BlockMap blockMap = compilation.getBlockMap(scope.method, compilation.osrBCI);
         BlockBegin stdEntry = blockMap.get(0);
-        BlockBegin osrEntry = compilation.osrBCI < 0 ? null : blockMap.get(compilation.osrBCI);
+        BlockBegin osrEntry = null;
+        if (compilation.isOsrCompilation()) {
+            // the OSR entry block is filled in when parsing reaches the OSR bytecode index
+            osrEntry = new BlockBegin(compilation.osrBCI, ir.nextBlockNumber());
+            osrEntry.setOsrEntry(true);
+            ir.osrEntryBlock = osrEntry;
+        }
         pushRootScope(scope, blockMap, startBlock);
         MutableFrameState initialState = stateAtEntry(rootMethod);
         startBlock.mergeOrClone(initialState);
@@ -204,9 +210,8 @@ public final class GraphBuilder {
 
         if (compilation.osrBCI >= 0) {
             BlockBegin osrBlock = blockMap.get(compilation.osrBCI);
-            assert osrBlock.wasVisited();
-            if (!osrBlock.stateBefore().stackEmpty()) {
-                throw new CiBailout("cannot OSR with non-empty stack");
+            if (!osrBlock.wasVisited() || osrEntry.end() == null) {
+                throw new CiBailout("OSR entry at bci " + compilation.osrBCI + " is unreachable");
             }
         }
     }
@@ -921,9 +926,12 @@ public final class GraphBuilder {
         if (target == null) {
             return;
         }
+        RiResolvedType[] profiledTypes = profiledReceiverTypes(target);
+        // the state with the arguments still on the stack is needed to deoptimize at a profiled receiver type guard
+        FrameState stateBefore = profiledTypes != null ? curState.immutableCopy(bci()) : null;
         Value[] args = curState.popArguments(target.signature().argumentSlots(true));
         if (!tryRemoveCall(target, args, false)) {
-            genInvokeIndirect(INVOKEINTERFACE, target, args, cpi, constantPool);
+            genInvokeIndirect(INVOKEINTERFACE, target, args, profiledTypes, stateBefore, cpi, constantPool);
         }
     }
 
@@ -932,9 +940,12 @@ public final class GraphBuilder {
         if (target == null) {
             return;
         }
+        RiResolvedType[] profiledTypes = profiledReceiverTypes(target);
+        // the state with the arguments still on the stack is needed to deoptimize at a profiled receiver type guard
+        FrameState stateBefore = profiledTypes != null ? curState.immutableCopy(bci()) : null;
         Value[] args = curState.popArguments(target.signature().argumentSlots(true));
         if (!tryRemoveCall(target, args, false)) {
-            genInvokeIndirect(INVOKEVIRTUAL, target, args, cpi, constantPool);
+            genInvokeIndirect(INVOKEVIRTUAL, target, args, profiledTypes, stateBefore, cpi, constantPool);
         }
     }
 
@@ -997,7 +1008,7 @@ public final class GraphBuilder {
         return false;
     }
 
-    private void genInvokeIndirect(int opcode, RiMethod target, Value[] args, int cpi, RiConstantPool constantPool) {
+    private void genInvokeIndirect(int opcode, RiMethod target, Value[] args, RiResolvedType[] profiledTypes, FrameState stateBefore, int cpi, RiConstantPool constantPool) {
         Value receiver = args[0];
 
         assert target.holder().kind(false) == CiKind.Object;
@@ -1056,12 +1067,107 @@ public final class GraphBuilder {
                 assert result : "Inlining must succeed";
                 return;
             }
+            // 4. check if the receiver type profile of the call site is dominated by one or two types
+            if (profiledTypes != null) {
+                inlineProfiledReceiver(resolvedTarget, args, profiledTypes, stateBefore);
+                return;
+            }
         }
 
         // devirtualization failed, produce an actual invokevirtual
         appendInvoke(opcode, target, args, false, cpi, constantPool);
     }
 
+    /**
+     * Gets the receiver types that dominate the type profile of the current call site if a call to {@code target}
+     * can be speculatively inlined for them. This is either a single type or two types that select the same
+     * implementation of {@code target} and together reach {@link C1XOptions#MinimumReceiverTypeProbability}.
+     * No more than {@link C1XOptions#MaximumReceiverTypeGuardTypes} types are returned.
+     *
+     * @return {@code null} if the call site is not a candidate for {@linkplain #inlineProfiledReceiver guarded inlining}
+     */
+    private RiResolvedType[] profiledReceiverTypes(RiMethod target) {
+        if (!C1XOptions.OptInlineProfiledReceivers || C1XOptions.MaximumReceiverTypeGuardTypes < 1 || !(target instanceof RiResolvedMethod)) {
+            return null;
+        }
+        RiTypeProfile profile = scope().method.typeProfile(bci());
+        if (profile == null || profile.types == null || profile.count < C1XOptions.MinimumReceiverProfileCount) {
+            return null;
+        }
+        int first = -1;
+        int second = -1;
+        for (int i = 0; i < profile.types.length; i++) {
+            if (first < 0 || profile.probabilities[i] > profile.probabilities[first]) {
+                second = first;
+                first = i;
+            } else if (second < 0 || profile.probabilities[i] > profile.probabilities[second]) {
+                second = i;
+            }
+        }
+        if (first < 0) {
+            return null;
+        }
+        RiResolvedMethod resolvedTarget = (RiResolvedMethod) target;
+        RiResolvedMethod impl = profiledImplementation(resolvedTarget, profile.types[first]);
+        if (impl == null || !checkInliningConditions(impl)) {
+            // a guarded direct call is no faster than the dispatch it replaces
+            return null;
+        }
+        float probability = profile.probabilities[first];
+        if (probability >= C1XOptions.MinimumReceiverTypeProbability) {
+            return new RiResolvedType[] {profile.types[first]};
+        }
+        if (second >= 0 && C1XOptions.MaximumReceiverTypeGuardTypes >= 2 && probability + profile.probabilities[second] >= C1XOptions.MinimumReceiverTypeProbability &&
+            profiledImplementation(resolvedTarget, profile.types[second]) == impl) {
+            return new RiResolvedType[] {profile.types[first], profile.types[second]};
+        }
+        return null;
+    }
+
+    /**
+     * Gets the implementation of {@code target} selected by a receiver type recorded in a type profile.
+     *
+     * @return {@code null} if {@code type} cannot be the exact type of a receiver of {@code target}
+     */
+    private static RiResolvedMethod profiledImplementation(RiResolvedMethod target, RiResolvedType type) {
+        if (type.isInterface() || isAbstract(type.accessFlags()) || !type.isSubtypeOf(target.holder())) {
+            return null;
+        }
+        RiResolvedMethod impl = type.resolveMethodImpl(target);
+        if (impl == null || isAbstract(impl.accessFlags())) {
+            return null;
+        }
+        return impl;
+    }
+
+    /**
+     * Speculatively inlines the implementation of a virtual or interface call selected by the receiver types that
+     * dominate the type profile of the call site. The inlined code is guarded by a {@link TypeEqualityCheck} that
+     * deoptimizes and re-executes the call if the receiver has any other type.
+     * <p>
+     * Two profiled types are only supported if they select the same implementation. Two different implementations
+     * would need a type switch with two inlined bodies merged by phis in the middle of the current block, which the
+     * block map driven parser cannot create.
+     *
+     * @param profiledTypes the types obtained from {@link #profiledReceiverTypes}
+     * @param stateBefore the state before the call, with its arguments still on the stack
+     */
+    private void inlineProfiledReceiver(RiResolvedMethod target, Value[] args, RiResolvedType[] profiledTypes, FrameState stateBefore) {
+        RiResolvedMethod impl = profiledImplementation(target, profiledTypes[0]);
+        if (C1XOptions.PrintAssumptions) {
+            TTY.println("Guarded inlining of " + impl + " for profiled receiver types " + Arrays.toString(profiledTypes));
+        }
+        Value receiver = args[0];
+        if (!receiver.isNonNull()) {
+            receiver = append(new NullCheck(receiver, null));
+            args[0] = receiver;
+        }
+        append(new TypeEqualityCheck(receiver, profiledTypes, stateBefore));
+        C1XMetrics.InlineProfiledReceiverMethods++;
+        // the inlining conditions were checked when the profiled types were selected
+        doInline(impl, args, false);
+    }
+
     private CiKind returnKind(RiMethod target) {
         return target.signature().returnKind(false);
     }
@@ -1764,31 +1870,38 @@ public final class GraphBuilder {
             C1XMetrics.InlineForcedMethods++;
         }
         if (forcedInline || checkInliningConditions(target)) {
-            if (C1XOptions.TraceBytecodeParserLevel > 0) {
-                log.adjustIndentation(1);
-                log.println("\\");
-                log.adjustIndentation(1);
-                if (C1XOptions.TraceBytecodeParserLevel < TRACELEVEL_STATE) {
-                    log.println("|   [inlining " + target + "]");
-                    log.println("|");
-                }
-            }
-            if (!inlineWithBoundAccessor(target, args, forcedInline)) {
-                inline(target, args, forcedInline);
+            doInline(target, args, forcedInline);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Inlines a method whose {@linkplain #checkInliningConditions inlining conditions} have already been checked.
+     */
+    private void doInline(RiResolvedMethod target, Value[] args, boolean forcedInline) {
+        if (C1XOptions.TraceBytecodeParserLevel > 0) {
+            log.adjustIndentation(1);
+            log.println("\\");
+            log.adjustIndentation(1);
+            if (C1XOptions.TraceBytecodeParserLevel < TRACELEVEL_STATE) {
+                log.println("|   [inlining " + target + "]");
+                log.println("|");
             }
+        }
+        if (!inlineWithBoundAccessor(target, args, forcedInline)) {
+            inline(target, args, forcedInline);
+        }
 
-            if (C1XOptions.TraceBytecodeParserLevel > 0) {
-                if (C1XOptions.TraceBytecodeParserLevel < TRACELEVEL_STATE) {
-                    log.println("|");
-                    log.println("|   [return to " + curState.scope().method + "]");
-                }
-                log.adjustIndentation(-1);
-                log.println("/");
-                log.adjustIndentation(-1);
+        if (C1XOptions.TraceBytecodeParserLevel > 0) {
+            if (C1XOptions.TraceBytecodeParserLevel < TRACELEVEL_STATE) {
+                log.println("|");
+                log.println("|   [return to " + curState.scope().method + "]");
             }
-            return true;
+            log.adjustIndentation(-1);
+            log.println("/");
+            log.adjustIndentation(-1);
         }
-        return false;
     }
 
     private boolean checkInliningConditions(RiMethod method) {
@@ -2051,8 +2164,10 @@ public final class GraphBuilder {
         while ((b = scopeData.removeFromWorkList()) != null) {
             if (!b.wasVisited()) {
                 if (b.isOsrEntry()) {
-                    // OSR not yet supported
-                    Util.shouldNotReachHere();
+                    // we're about to parse the OSR target, so set up the edge from the
+                    // OSR entry block first so that the phis of the target are complete
+                    setupOsrEntryBlock(b);
+                    b.setOsrEntry(false);
                 }
                 b.setWasVisited(true);
                 // now parse the block
@@ -2067,6 +2182,63 @@ public final class GraphBuilder {
         }
     }
 
+    /**
+     * Fills in the {@linkplain IR#osrEntryBlock OSR entry block}. The block loads the live locals from
+     * the OSR buffer and then jumps to the block at the OSR bytecode index. The OSR buffer holds one 8 byte
+     * slot per local variable, in local variable index order. The value of a live local is stored at the start
+     * of its slot with the width of its kind, so that a category 2 value fits entirely in the slot of its first
+     * local variable index. The kinds of the loaded locals are recorded in {@link IR#osrLocalKinds} which tells
+     * the runtime how to fill the buffer from the interpreter (or baseline) frame being replaced.
+     *
+     * @param target the block at the OSR bytecode index
+     */
+    private void setupOsrEntryBlock(BlockBegin target) {
+        FrameState targetState = target.stateBefore();
+        if (!targetState.stackEmpty()) {
+            throw new CiBailout("cannot OSR with non-empty stack");
+        }
+        if (targetState.locksSize() != 0) {
+            throw new CiBailout("cannot OSR with locks held");
+        }
+
+        BlockBegin osrEntry = ir.osrEntryBlock;
+        osrEntry.mergeOrClone(targetState);
+        osrEntry.setWasVisited(true);
+
+        killMemoryMap();
+        curBlock = osrEntry;
+        curState = osrEntry.stateBefore().copy();
+        lastInstr = osrEntry;
+        osrEntry.setNext(null, -1);
+
+        int bci = compilation.osrBCI;
+        Value buffer = appendWithoutOptimization(new OsrEntry(compilation.target.wordKind), bci);
+        int slotSize = Long.SIZE / Byte.SIZE;
+        CiKind[] osrLocalKinds = new CiKind[curState.localsSize()];
+        for (int i = 0; i < curState.localsSize(); i++) {
+            Value local = curState.localAt(i);
+            if (local != null && !local.isIllegal()) {
+                CiKind kind = local.kind.stackKind();
+                if (kind.isJsr()) {
+                    throw new CiBailout("cannot OSR with a live JSR return address");
+                }
+                Value offset = appendWithoutOptimization(Constant.forInt(i * slotSize), bci);
+                Value value = appendWithoutOptimization(new LoadPointer(compilation.runtime.asRiType(kind), buffer, null, offset, null, false), bci);
+                curState.storeLocal(i, value);
+                osrLocalKinds[i] = kind;
+            } else {
+                osrLocalKinds[i] = CiKind.Illegal;
+            }
+        }
+        ir.osrLocalKinds = osrLocalKinds;
+
+        Goto end = new Goto(target, null, false);
+        lastInstr = lastInstr.setNext(end, bci);
+        end.setStateAfter(curState.immutableCopy(bci));
+        osrEntry.setEnd(end);
+        target.mergeOrClone(end.stateAfter());
+    }
+
     private void popScope() {
         int maxLocks = scope().maxLocks();
         scopeData = scopeData.parent;
@@ -31,6 +31,7 @@ import com.sun.c1x.ir.*;
 import com.sun.c1x.observer.*;
 import com.sun.c1x.opt.*;
 import com.sun.c1x.value.*;
+import com.sun.cri.ci.*;
 
 /**
  * This class implements the overall container for the HIR (high-level IR) graph
@@ -53,6 +54,12 @@ public class IR {
      */
     public BlockBegin osrEntryBlock;
 
+    /**
+     * The kinds of the locals loaded from the OSR buffer by the {@linkplain #osrEntryBlock OSR entry block},
+     * indexed by local variable index. {@link CiKind#Illegal} denotes a local that is not live at the OSR entry.
+     */
+    public CiKind[] osrLocalKinds;
+
     /**
      * The top IRScope.
      */
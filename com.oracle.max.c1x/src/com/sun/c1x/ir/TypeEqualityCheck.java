@@ -27,24 +27,46 @@ import static com.sun.c1x.util.Util.*;
 import com.oracle.max.criutils.*;
 import com.sun.c1x.value.*;
 import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
 
 /**
  * Checks the types of the two input values and deoptimizes if the condition does not hold.
- *
+ * Alternatively, checks that the exact type of a single non-null input value is one of a given set of types.
  */
 public final class TypeEqualityCheck extends Guard {
 
     Value left;
     Value right;
 
+    /**
+     * The types that the exact type of {@link #left} is compared with if this check has no {@link #right} input.
+     */
+    public final RiResolvedType[] types;
+
     public TypeEqualityCheck(Value left, Value right, FrameState stateBefore, Condition condition) {
         super(condition, stateBefore);
         this.left = left;
         this.right = right;
+        this.types = null;
         assert left.kind == CiKind.Object;
         assert right.kind == CiKind.Object;
     }
 
+    /**
+     * Creates a check that deoptimizes unless the exact type of a given object is one of {@code types}.
+     *
+     * @param object the object whose type is checked; it must be known to be non-null
+     * @param types the expected exact types of {@code object}
+     * @param stateBefore the state from which execution continues after deoptimization
+     */
+    public TypeEqualityCheck(Value object, RiResolvedType[] types, FrameState stateBefore) {
+        super(Condition.EQ, stateBefore);
+        this.left = object;
+        this.right = null;
+        this.types = types;
+        assert object.kind == CiKind.Object && object.isNonNull();
+    }
+
     public Value left() {
         return left;
     }
@@ -56,7 +78,9 @@ public final class TypeEqualityCheck extends Guard {
     @Override
     public void inputValuesDo(ValueClosure closure) {
         left = closure.apply(left);
-        right = closure.apply(right);
+        if (right != null) {
+            right = closure.apply(right);
+        }
     }
 
     @Override
@@ -66,6 +90,13 @@ public final class TypeEqualityCheck extends Guard {
 
     @Override
     public void print(LogStream out) {
-        out.print("typeEqualityCheck ").print(valueString(left)).print(" ").print(valueString(right));
+        out.print("typeEqualityCheck ").print(valueString(left)).print(" ");
+        if (right != null) {
+            out.print(valueString(right));
+        } else {
+            for (int i = 0; i < types.length; i++) {
+                out.print(i == 0 ? "" : "|").print(CiUtil.toJavaName(types[i]));
+            }
+        }
     }
 }
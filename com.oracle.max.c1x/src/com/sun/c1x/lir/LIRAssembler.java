@@ -304,6 +304,7 @@ public abstract class LIRAssembler {
             case Label:
                 throw Util.shouldNotReachHere();
             case OsrEntry:
+                tasm.targetMethod.setOsrLocalKinds(compilation.hir().osrLocalKinds);
                 emitOsrEntry();
                 break;
             case Here:
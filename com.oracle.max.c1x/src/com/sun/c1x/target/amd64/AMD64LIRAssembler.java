@@ -74,9 +74,55 @@ public final class AMD64LIRAssembler extends LIRAssembler {
         return compilation.frameMap().toStackAddress((CiStackSlot) value);
     }
 
+    /**
+     * Emits the entry of an OSR compilation. The OSR entry is called like a normal method entry (i.e. the
+     * return address is on top of the stack) with the OSR buffer pointer in the {@linkplain AMD64LIRGenerator#osrBufferPointer()
+     * integer return register}. It sets up the same frame as the standard entry.
+     * <p>
+     * Using the frame size of the standard entry is correct because the replaced activation is not overwritten
+     * in place: the runtime pushes the return address to the OSR exit of the replaced method just below the stack
+     * pointer of the replaced frame, so that the OSR activation is laid out exactly like a callee of the replaced
+     * frame. No incoming arguments are passed on the stack and the locals are read from the OSR buffer, so no part
+     * of the replaced frame is part of this frame and there is no size delta between the two frames to account for.
+     */
     @Override
     protected void emitOsrEntry() {
-        throw Util.unimplemented();
+        tasm.targetMethod.setOsrEntryOffset(masm.codeBuffer.position());
+        emitPushFrame();
+        emitStackOverflowCheck();
+    }
+
+    private void emitStackOverflowCheck() {
+        int frameSize = initialFrameSizeInBytes();
+        int lastFramePage = frameSize / target.pageSize;
+        // emit multiple stack bangs for methods with frames larger than a page
+        for (int i = 0; i <= lastFramePage; i++) {
+            int offset = (i + C1XOptions.StackShadowPages) * target.pageSize;
+            // Deduct 'frameSize' to handle frames larger than the shadow
+            bangStackWithOffset(offset - frameSize);
+        }
+    }
+
+    private void emitPushFrame() {
+        int frameSize = initialFrameSizeInBytes();
+        masm.decrementq(AMD64.rsp, frameSize); // does not emit code for frameSize == 0
+        if (C1XOptions.ZapStackOnMethodEntry) {
+            final int intSize = 4;
+            for (int i = 0; i < frameSize / intSize; ++i) {
+                masm.movl(new CiAddress(CiKind.Int, AMD64.rsp.asValue(), i * intSize), 0xC1C1C1C1);
+            }
+        }
+        CiCalleeSaveLayout csl = compilation.registerConfig.getCalleeSaveLayout();
+        if (csl != null && csl.size != 0) {
+            int frameToCSA = frameMap.offsetToCalleeSaveAreaStart();
+            assert frameToCSA >= 0;
+            masm.save(csl, frameToCSA);
+        }
+
+        if (C1XOptions.DebugMethods) {
+            masm.movl(compilation.registerConfig.getScratchRegister(), methodID);
+            debugMethodWriter.appendDebugMethod(compilation.method.holder() + "." + compilation.method.name() + ";" + compilation.method.signature(), methodID);
+        }
     }
 
     @Override
@@ -2000,36 +2046,11 @@ public final class AMD64LIRAssembler extends LIRAssembler {
                     break;
                 }
                 case StackOverflowCheck: {
-                    int frameSize = initialFrameSizeInBytes();
-                    int lastFramePage = frameSize / target.pageSize;
-                    // emit multiple stack bangs for methods with frames larger than a page
-                    for (int i = 0; i <= lastFramePage; i++) {
-                        int offset = (i + C1XOptions.StackShadowPages) * target.pageSize;
-                        // Deduct 'frameSize' to handle frames larger than the shadow
-                        bangStackWithOffset(offset - frameSize);
-                    }
+                    emitStackOverflowCheck();
                     break;
                 }
                 case PushFrame: {
-                    int frameSize = initialFrameSizeInBytes();
-                    masm.decrementq(AMD64.rsp, frameSize); // does not emit code for frameSize == 0
-                    if (C1XOptions.ZapStackOnMethodEntry) {
-                        final int intSize = 4;
-                        for (int i = 0; i < frameSize / intSize; ++i) {
-                            masm.movl(new CiAddress(CiKind.Int, AMD64.rsp.asValue(), i * intSize), 0xC1C1C1C1);
-                        }
-                    }
-                    CiCalleeSaveLayout csl = compilation.registerConfig.getCalleeSaveLayout();
-                    if (csl != null && csl.size != 0) {
-                        int frameToCSA = frameMap.offsetToCalleeSaveAreaStart();
-                        assert frameToCSA >= 0;
-                        masm.save(csl, frameToCSA);
-                    }
-
-                    if (C1XOptions.DebugMethods) {
-                        masm.movl(compilation.registerConfig.getScratchRegister(), methodID);
-                        debugMethodWriter.appendDebugMethod(compilation.method.holder() + "." + compilation.method.name() + ";" + compilation.method.signature(), methodID);
-                    }
+                    emitPushFrame();
                     break;
                 }
                 case PopFrame: {
@@ -678,9 +678,13 @@ public class AMD64LIRGenerator extends LIRGenerator {
         }
     }
 
+    /**
+     * The OSR buffer pointer is passed in the integer return register, which is free at the OSR entry
+     * as it is not used to pass arguments.
+     */
     @Override
     protected CiValue osrBufferPointer() {
-        return Util.nonFatalUnimplemented(null);
+        return compilation.registerConfig.getReturnRegister(CiKind.Long).asValue(compilation.target.wordKind);
     }
 
     @Override
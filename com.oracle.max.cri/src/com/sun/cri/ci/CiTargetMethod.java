@@ -345,6 +345,8 @@ public class CiTargetMethod implements Serializable {
     private int frameSize = -1;
     private int customStackAreaOffset = -1;
     private int registerRestoreEpilogueOffset = -1;
+    private int osrEntryOffset = -1;
+    private CiKind[] osrLocalKinds;
     private int deoptReturnAddressOffset;
 
     /**
@@ -480,6 +482,26 @@ public class CiTargetMethod implements Serializable {
         this.registerRestoreEpilogueOffset = registerRestoreEpilogueOffset;
     }
 
+    /**
+     * Records the offset of the on-stack replacement entry point of a method compiled for OSR.
+     *
+     * @param osrEntryOffset the offset in the machine code of the OSR entry point
+     */
+    public void setOsrEntryOffset(int osrEntryOffset) {
+        assert this.osrEntryOffset == -1;
+        this.osrEntryOffset = osrEntryOffset;
+    }
+
+    /**
+     * Records the kinds of the locals read from the OSR buffer by the on-stack replacement entry point.
+     *
+     * @param osrLocalKinds the kinds indexed by local variable index, {@link CiKind#Illegal} denoting a local
+     *            that is not read from the buffer
+     */
+    public void setOsrLocalKinds(CiKind[] osrLocalKinds) {
+        this.osrLocalKinds = osrLocalKinds;
+    }
+
     /**
      * The frame size of the method in bytes.
      *
@@ -498,6 +520,20 @@ public class CiTargetMethod implements Serializable {
         return registerRestoreEpilogueOffset;
     }
 
+    /**
+     * @return the code offset of the on-stack replacement entry point, or -1 if this method was not compiled for OSR
+     */
+    public int osrEntryOffset() {
+        return osrEntryOffset;
+    }
+
+    /**
+     * @return the kinds of the locals read from the OSR buffer, or {@code null} if this method was not compiled for OSR
+     */
+    public CiKind[] osrLocalKinds() {
+        return osrLocalKinds;
+    }
+
     /**
      * Offset in bytes for the custom stack area (relative to sp).
      * @return the offset in bytes
@@ -111,6 +111,21 @@ public interface RiXirGenerator {
      */
     XirSnippet genTypeCheck(XirSite site, XirArgument object, XirArgument hub, RiType type);
 
+    /**
+     * Generates code that guards a call bound to the implementation selected by one or more profiled
+     * receiver types. In pseudo code:
+     * <pre>
+     *     if (object.getHub() != hubs[0] && ... && object.getHub() != hubs[n - 1]) {
+     *         receiverTypeGuardFailed(); // deoptimizes and re-executes the guarded invoke
+     *     }
+     * </pre>
+     * Unlike {@link #genTypeCheck}, a failure is reported to the runtime so that the speculation is not repeated.
+     * This snippet should only be used when the object is guaranteed not to be null.
+     *
+     * @return {@code null} if the runtime does not support guards for {@code hubs.length} types
+     */
+    XirSnippet genReceiverTypeGuard(XirSite site, XirArgument object, XirArgument... hubs);
+
     /**
      * Gets the list of XIR templates, using the given XIR assembler to create them if
      * they haven't yet been created.
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2009, 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.bench.gc;
+
+/**
+ * Measures how the order in which a copying collector copies objects affects the mutator's traversal of linked structures.
+ *
+ * The benchmark builds a number of linked lists by appending one node to each list in turn, so that consecutive nodes
+ * of a list are scattered across the heap, and each node refers to a small payload allocated right after it.
+ * A breadth-first (Cheney) copy places the nodes of a list far apart from each other and from their payloads, whereas a
+ * hierarchical copy order copies a node, its payload and its successor close to each other, which shows up as fewer
+ * cache and TLB misses, hence faster traversals, after the collection.
+ *
+ * The benchmark times traversals of all the lists before the first collection and after each collection, and reports the
+ * average traversal time per node. To compare the copy orders of Maxine's semispace heap scheme, run it in two separate VMs,
+ * one with {@code -XX:-HierarchicalCopying} and one with {@code -XX:+HierarchicalCopying}.
+ *
+ * Arguments: {@code l <number of lists>}, {@code n <nodes per list>}, {@code r <traversals per measurement>},
+ * {@code c <number of collections>}.
+ */
+public class LinkedTraversal {
+
+    static final class Payload {
+        final int value;
+        Payload(int value) {
+            this.value = value;
+        }
+    }
+
+    static final class Node {
+        Node next;
+        final Payload payload;
+        Node(int value) {
+            payload = new Payload(value);
+        }
+    }
+
+    private static int numLists = 64;
+    private static int nodesPerList = 16 * 1024;
+    private static int traversals = 10;
+    private static int collections = 5;
+
+    public static void main(String[] args) {
+        // Checkstyle: stop modified control variable check
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if (arg.equals("l")) {
+                numLists = Integer.parseInt(args[++i]);
+            } else if (arg.equals("n")) {
+                nodesPerList = Integer.parseInt(args[++i]);
+            } else if (arg.equals("r")) {
+                traversals = Integer.parseInt(args[++i]);
+            } else if (arg.equals("c")) {
+                collections = Integer.parseInt(args[++i]);
+            }
+        }
+        // Checkstyle: resume modified control variable check
+        final Node[] heads = new Node[numLists];
+        final Node[] tails = new Node[numLists];
+        for (int n = 0; n < nodesPerList; n++) {
+            for (int l = 0; l < numLists; l++) {
+                final Node node = new Node(n);
+                if (tails[l] == null) {
+                    heads[l] = node;
+                } else {
+                    tails[l].next = node;
+                }
+                tails[l] = node;
+            }
+        }
+
+        final long beforeGC = measure(heads);
+        long afterGC = 0;
+        for (int c = 0; c < collections; c++) {
+            System.gc();
+            afterGC += measure(heads);
+        }
+        afterGC /= collections;
+        System.out.println("Traversal time per node before GC: " + beforeGC + " ps");
+        System.out.println("Traversal time per node after GC:  " + afterGC + " ps");
+    }
+
+    /**
+     * Time traversals of all the lists, one list at a time.
+     * @return the average time of the traversal of a node, in picoseconds
+     */
+    private static long measure(Node[] heads) {
+        final long expected = (long) numLists * nodesPerList * (nodesPerList - 1) / 2;
+        // Warm up.
+        long sum = traverse(heads);
+        final long start = System.nanoTime();
+        for (int r = 0; r < traversals; r++) {
+            sum += traverse(heads);
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (sum != expected * (traversals + 1)) {
+            throw new Error("Lists corrupted by the collection");
+        }
+        return elapsed * 1000 / ((long) traversals * numLists * nodesPerList);
+    }
+
+    private static long traverse(Node[] heads) {
+        long sum = 0;
+        for (Node head : heads) {
+            for (Node node = head; node != null; node = node.next) {
+                sum += node.payload.value;
+            }
+        }
+        return sum;
+    }
+}
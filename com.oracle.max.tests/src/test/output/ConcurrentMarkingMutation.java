@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * Tests that objects moved between references by mutator threads are not lost while the heap is being marked
+ * concurrently. Mutator threads keep moving a fixed set of payloads between two tables, sometimes wrapping them in
+ * newly allocated boxes, while the main thread allocates enough garbage to start several marking cycles.
+ * Each payload must still be reachable, exactly once and with its contents intact, when the mutators stop.
+ */
+public class ConcurrentMarkingMutation {
+
+    static final int PAYLOADS = 20000;
+    static final int MUTATORS = 2;
+
+    static final class Payload {
+        final int id;
+        final int[] data = new int[8];
+
+        Payload(int id) {
+            this.id = id;
+            for (int i = 0; i < data.length; i++) {
+                data[i] = id * 31 + i;
+            }
+        }
+
+        boolean isIntact() {
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] != id * 31 + i) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static final class Box {
+        final Payload payload;
+
+        Box(Payload payload) {
+            this.payload = payload;
+        }
+    }
+
+    static final Object[][] tables = new Object[2][PAYLOADS];
+    static volatile boolean stop;
+
+    static final class Mutator extends Thread {
+        final int first;
+
+        Mutator(int first) {
+            this.first = first;
+        }
+
+        @Override
+        public void run() {
+            int moves = 0;
+            while (!stop) {
+                for (int i = first; i < PAYLOADS; i += MUTATORS) {
+                    int from = tables[0][i] != null ? 0 : 1;
+                    Object o = tables[from][i];
+                    tables[1 - from][i] = (o instanceof Box) ? ((Box) o).payload : ((moves & 1) == 0 ? new Box((Payload) o) : o);
+                    tables[from][i] = null;
+                    moves++;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int i = 0; i < PAYLOADS; i++) {
+            tables[0][i] = new Payload(i);
+        }
+        Mutator[] mutators = new Mutator[MUTATORS];
+        for (int i = 0; i < MUTATORS; i++) {
+            mutators[i] = new Mutator(i);
+            mutators[i].start();
+        }
+        for (int i = 0; i < 200; i++) {
+            createGarbage();
+        }
+        stop = true;
+        for (Mutator mutator : mutators) {
+            mutator.join();
+        }
+
+        int missing = 0;
+        int corrupted = 0;
+        for (int i = 0; i < PAYLOADS; i++) {
+            Object o = tables[0][i] != null ? tables[0][i] : tables[1][i];
+            if (tables[0][i] != null && tables[1][i] != null || o == null) {
+                missing++;
+                continue;
+            }
+            Payload p = (o instanceof Box) ? ((Box) o).payload : (Payload) o;
+            if (p.id != i || !p.isIntact()) {
+                corrupted++;
+            }
+        }
+        System.out.println("missing payloads: " + missing);
+        System.out.println("corrupted payloads: " + corrupted);
+        System.out.println(ConcurrentMarkingMutation.class.getSimpleName() + " done.");
+    }
+
+    private static void createGarbage() {
+        Object[] objects = new Object[1000];
+        for (int i = 0; i < 20000; i++) {
+            objects[i % objects.length] = new int[i % 64];
+        }
+    }
+}
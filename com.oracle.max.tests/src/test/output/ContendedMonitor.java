@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * Tests mutual exclusion and wait/notify hand-offs on heavily contended monitors. Short critical sections are
+ * usually acquired by spinning, while the occasional long one makes the threads behind it give up spinning and
+ * block. A ping-pong between two threads checks that notified threads re-acquire the monitor in turn.
+ */
+public class ContendedMonitor {
+
+    static final int THREADS = 6;
+    static final int ITERATIONS = 20000;
+    static final int EXCHANGES = 2000;
+
+    static final Object lock = new Object();
+    static long counter;
+
+    static final Object table = new Object();
+    static int turn;
+    static int exchanges;
+
+    static final class Incrementer extends Thread {
+        @Override
+        public void run() {
+            for (int i = 0; i < ITERATIONS; i++) {
+                synchronized (lock) {
+                    counter++;
+                    if (i % 5000 == 0) {
+                        try {
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    static final class Player extends Thread {
+        final int side;
+
+        Player(int side) {
+            this.side = side;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < EXCHANGES; i++) {
+                synchronized (table) {
+                    while (turn != side) {
+                        try {
+                            table.wait();
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                    exchanges++;
+                    turn = 1 - side;
+                    table.notifyAll();
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Thread[] threads = new Thread[THREADS + 2];
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new Incrementer();
+        }
+        threads[THREADS] = new Player(0);
+        threads[THREADS + 1] = new Player(1);
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.println("counter: " + counter);
+        System.out.println("exchanges: " + exchanges);
+        System.out.println(ContendedMonitor.class.getSimpleName() + " done.");
+    }
+}
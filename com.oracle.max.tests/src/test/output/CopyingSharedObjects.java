@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * Tests that a copying collection copies every object once, whichever referrer it is reached from first. The
+ * heap holds many small objects referring to a few shared ones, arrays larger than a promotion LAB, a long chain
+ * and cycles, and several threads hold references to the shared objects on their stacks while collections run.
+ */
+public class CopyingSharedObjects {
+
+    static final int SHARED = 16;
+    static final int REFERRERS = 50000;
+
+    static final class Shared {
+        final int id;
+        final long[] large;
+
+        Shared(int id) {
+            this.id = id;
+            this.large = new long[(id + 1) * 1024];
+            for (int i = 0; i < large.length; i++) {
+                large[i] = id * 1000003L + i;
+            }
+        }
+
+        boolean isIntact() {
+            for (int i = 0; i < large.length; i++) {
+                if (large[i] != id * 1000003L + i) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static final class Referrer {
+        final Shared shared;
+        Referrer next;
+
+        Referrer(Shared shared) {
+            this.shared = shared;
+        }
+    }
+
+    static Shared[] shared;
+    static volatile boolean stop;
+    static final int[] threadErrors = new int[4];
+
+    static final class Holder extends Thread {
+        final int id;
+
+        Holder(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            Shared mine = shared[id];
+            int[] hashes = new int[64];
+            while (!stop) {
+                Object[] garbage = new Object[hashes.length];
+                for (int i = 0; i < garbage.length; i++) {
+                    garbage[i] = new Referrer(mine);
+                    hashes[i] = System.identityHashCode(garbage[i]);
+                }
+                for (int i = 0; i < garbage.length; i++) {
+                    if (((Referrer) garbage[i]).shared != mine || System.identityHashCode(garbage[i]) != hashes[i]) {
+                        threadErrors[id]++;
+                    }
+                }
+            }
+            if (mine != shared[id] || !mine.isIntact()) {
+                threadErrors[id]++;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        shared = new Shared[SHARED];
+        for (int i = 0; i < SHARED; i++) {
+            shared[i] = new Shared(i);
+        }
+        Referrer[] referrers = new Referrer[REFERRERS];
+        for (int i = 0; i < REFERRERS; i++) {
+            referrers[i] = new Referrer(shared[i % SHARED]);
+            if (i > 0) {
+                referrers[i - 1].next = referrers[i];
+            }
+        }
+        // Close the chain into a cycle.
+        referrers[REFERRERS - 1].next = referrers[0];
+
+        Holder[] holders = new Holder[threadErrors.length];
+        for (int i = 0; i < holders.length; i++) {
+            holders[i] = new Holder(i);
+            holders[i].start();
+        }
+        for (int round = 0; round < 5; round++) {
+            System.gc();
+            int errors = 0;
+            Referrer r = referrers[0];
+            for (int i = 0; i < REFERRERS; i++) {
+                if (r != referrers[i] || r.shared != shared[i % SHARED]) {
+                    errors++;
+                }
+                r = r.next;
+            }
+            for (Shared s : shared) {
+                if (!s.isIntact()) {
+                    errors++;
+                }
+            }
+            System.out.println("round " + round + ": " + errors + " errors");
+        }
+        stop = true;
+        int errors = 0;
+        for (int i = 0; i < holders.length; i++) {
+            holders[i].join();
+            errors += threadErrors[i];
+        }
+        System.out.println("thread errors: " + errors);
+        System.out.println(CopyingSharedObjects.class.getSimpleName() + " done.");
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Tests that arrays accessed by native code in JNI critical sections are neither moved nor reclaimed, and that
+ * collections still make progress, while other threads allocate. The checksum and compression natives of
+ * {@code java.util.zip} access young arrays through {@code GetPrimitiveArrayCritical}.
+ */
+public class CriticalArrays {
+
+    static final int WORKERS = 3;
+    static final int ROUNDS = 50;
+    static volatile boolean stop;
+    static final long[] checksums = new long[WORKERS];
+    static final int[] mismatches = new int[WORKERS];
+
+    static final class Worker extends Thread {
+        final int id;
+
+        Worker(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            for (int round = 0; round < ROUNDS; round++) {
+                byte[] data = new byte[64 * 1024];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = (byte) (i * 7 + id + round % 3);
+                }
+                CRC32 crc = new CRC32();
+                crc.update(data, 0, data.length);
+                Adler32 adler = new Adler32();
+                adler.update(data, 0, data.length);
+                checksums[id] += crc.getValue() ^ adler.getValue();
+
+                Deflater deflater = new Deflater();
+                deflater.setInput(data);
+                deflater.finish();
+                byte[] compressed = new byte[data.length * 2];
+                int length = deflater.deflate(compressed);
+                deflater.end();
+
+                Inflater inflater = new Inflater();
+                inflater.setInput(compressed, 0, length);
+                byte[] inflated = new byte[data.length];
+                try {
+                    if (inflater.inflate(inflated) != data.length || !Arrays.equals(data, inflated)) {
+                        mismatches[id]++;
+                    }
+                } catch (DataFormatException e) {
+                    mismatches[id]++;
+                }
+                inflater.end();
+            }
+        }
+    }
+
+    static final class Allocator extends Thread {
+        @Override
+        public void run() {
+            Object[] objects = new Object[500];
+            int i = 0;
+            while (!stop) {
+                objects[i++ % objects.length] = new Object[i % 32];
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Allocator allocator = new Allocator();
+        allocator.start();
+        Worker[] workers = new Worker[WORKERS];
+        for (int i = 0; i < WORKERS; i++) {
+            workers[i] = new Worker(i);
+            workers[i].start();
+        }
+        for (int i = 0; i < WORKERS; i++) {
+            workers[i].join();
+            System.out.println("worker " + i + ": checksum " + checksums[i] + ", " + mismatches[i] + " mismatches");
+        }
+        stop = true;
+        allocator.join();
+        System.out.println(CriticalArrays.class.getSimpleName() + " done.");
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * Tests that objects moved out of sparsely occupied regions are found at their new location through every kind of
+ * reference to them. Each round fills the heap with objects and drops seven out of eight, leaving fragmented
+ * regions for the collection to evacuate. The surviving objects are referenced from a static array, from other
+ * survivors and from a local variable, and must keep their contents and identity hash codes.
+ */
+public class FragmentedHeapCompaction {
+
+    static final int OBJECTS = 80000;
+
+    static final class Cell {
+        final int id;
+        final int[] payload;
+        Cell partner;
+
+        Cell(int id) {
+            this.id = id;
+            this.payload = new int[id % 24];
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] = id + i;
+            }
+        }
+
+        boolean isIntact() {
+            for (int i = 0; i < payload.length; i++) {
+                if (payload[i] != id + i) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static Cell[] survivors;
+
+    public static void main(String[] args) {
+        for (int round = 0; round < 5; round++) {
+            Cell[] cells = new Cell[OBJECTS];
+            for (int i = 0; i < OBJECTS; i++) {
+                cells[i] = new Cell(i);
+            }
+            survivors = new Cell[OBJECTS / 8];
+            int[] hashes = new int[survivors.length];
+            for (int i = 0; i < survivors.length; i++) {
+                survivors[i] = cells[i * 8];
+                hashes[i] = System.identityHashCode(survivors[i]);
+            }
+            for (int i = 0; i < survivors.length; i++) {
+                survivors[i].partner = survivors[(i + 1) % survivors.length];
+            }
+            Cell local = survivors[survivors.length / 2];
+            cells = null;
+            System.gc();
+            System.gc();
+            int errors = 0;
+            for (int i = 0; i < survivors.length; i++) {
+                Cell cell = survivors[i];
+                if (cell.id != i * 8 || !cell.isIntact() || cell.partner != survivors[(i + 1) % survivors.length] ||
+                                System.identityHashCode(cell) != hashes[i]) {
+                    errors++;
+                }
+            }
+            if (local != survivors[survivors.length / 2]) {
+                errors++;
+            }
+            System.out.println("round " + round + ": " + errors + " errors");
+        }
+        System.out.println(FragmentedHeapCompaction.class.getSimpleName() + " done.");
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * Tests arrays large enough to be allocated directly in the old generation. A rolling window keeps a few large
+ * arrays alive while many more become garbage right after allocation, which relies on large arrays being
+ * reclaimed without waiting for a full collection. Large reference arrays hold young objects, which must survive
+ * the minor collections triggered by the small objects allocated in between.
+ */
+public class HumongousArrays {
+
+    static final int WINDOW = 4;
+    static final int LARGE = 1 << 20;
+
+    public static void main(String[] args) {
+        int[][] ints = new int[WINDOW][];
+        Object[][] refs = new Object[WINDOW][];
+        int errors = 0;
+        for (int step = 0; step < 200; step++) {
+            int slot = step % WINDOW;
+            if (ints[slot] != null) {
+                errors += check(ints[slot], refs[slot], step - WINDOW);
+            }
+            int[] array = new int[LARGE];
+            for (int i = 0; i < LARGE; i += 1024) {
+                array[i] = step + i;
+            }
+            ints[slot] = array;
+            Object[] holder = new Object[LARGE / 4];
+            for (int i = 0; i < holder.length; i += 1024) {
+                holder[i] = Integer.valueOf(step * 1000 + i / 1024);
+            }
+            refs[slot] = holder;
+            createGarbage();
+            if (step % 50 == 49) {
+                System.out.println("step " + step + ": " + errors + " errors");
+            }
+        }
+        System.out.println(HumongousArrays.class.getSimpleName() + " done.");
+    }
+
+    private static int check(int[] array, Object[] holder, int step) {
+        int errors = 0;
+        for (int i = 0; i < LARGE; i += 1024) {
+            if (array[i] != step + i) {
+                errors++;
+            }
+        }
+        for (int i = 0; i < holder.length; i += 1024) {
+            if (!Integer.valueOf(step * 1000 + i / 1024).equals(holder[i])) {
+                errors++;
+            }
+        }
+        return errors;
+    }
+
+    private static void createGarbage() {
+        Object[] objects = new Object[500];
+        for (int i = 0; i < 5000; i++) {
+            objects[i % objects.length] = new Object[i % 16];
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * Tests that monitors are bound, unbound and handed between threads correctly when many short-lived threads
+ * contend for and wait on many objects. Threads run in waves, so the monitors cached by threads that have
+ * terminated are given back, and collections between waves deflate idle monitors.
+ */
+public class MonitorTurnover {
+
+    static final int LOCKS = 1000;
+    static final int THREADS = 8;
+    static final int WAVES = 4;
+    static final int ITERATIONS = 2000;
+
+    static final class Lock {
+        int count;
+    }
+
+    static final Lock[] locks = new Lock[LOCKS];
+
+    static final class Locker extends Thread {
+        final int id;
+
+        Locker(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < ITERATIONS; i++) {
+                Lock lock = locks[(i * 31 + id) % LOCKS];
+                synchronized (lock) {
+                    lock.count++;
+                    if (i % 100 == 0) {
+                        try {
+                            lock.wait(1);
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Lock();
+        }
+        for (int wave = 0; wave < WAVES; wave++) {
+            Locker[] lockers = new Locker[THREADS];
+            for (int i = 0; i < THREADS; i++) {
+                lockers[i] = new Locker(i);
+                lockers[i].start();
+            }
+            for (Locker locker : lockers) {
+                locker.join();
+            }
+            System.gc();
+            long total = 0;
+            for (Lock lock : locks) {
+                synchronized (lock) {
+                    total += lock.count;
+                }
+            }
+            System.out.println("wave " + wave + ": " + total + " increments");
+        }
+        System.out.println(MonitorTurnover.class.getSimpleName() + " done.");
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * Tests that young objects are evacuated exactly once and keep their identity when they are referenced from old
+ * objects, from several young objects at once and from themselves. Each round creates such objects and then
+ * allocates enough garbage to trigger minor collections before checking them.
+ */
+public class NurseryEvacuation {
+
+    static final int NODES = 4096;
+    static final int SHARED = 64;
+
+    static final class Node {
+        final int id;
+        Node self;
+        Node shared;
+
+        Node(int id) {
+            this.id = id;
+            this.self = this;
+        }
+    }
+
+    public static void main(String[] args) {
+        Node[] old = new Node[NODES];
+        int[] hashes = new int[NODES];
+        // Promote the holder to the old generation.
+        System.gc();
+        for (int round = 0; round < 20; round++) {
+            Node[] shared = new Node[SHARED];
+            for (int i = 0; i < SHARED; i++) {
+                shared[i] = new Node(-i - 1);
+            }
+            for (int i = 0; i < NODES; i++) {
+                Node node = new Node(i);
+                node.shared = shared[i % SHARED];
+                old[i] = node;
+                hashes[i] = System.identityHashCode(node);
+            }
+            createGarbage();
+            int errors = 0;
+            for (int i = 0; i < NODES; i++) {
+                Node node = old[i];
+                if (node.id != i || node.self != node || node.shared != shared[i % SHARED] || node.shared.self != node.shared ||
+                                System.identityHashCode(node) != hashes[i]) {
+                    errors++;
+                }
+            }
+            System.out.println("round " + round + ": " + errors + " errors");
+        }
+        System.out.println(NurseryEvacuation.class.getSimpleName() + " done.");
+    }
+
+    private static void createGarbage() {
+        Object[] objects = new Object[1000];
+        for (int i = 0; i < 50000; i++) {
+            objects[i % objects.length] = new Object[i % 16];
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * Tests that threads exhausting the nursery at the same time all get their allocation served once the nursery
+ * has been collected. Several threads allocate small linked lists as fast as they can, so that most minor
+ * collections are requested by one thread while others are retrying their allocation, and check the lists
+ * they keep alive across these collections.
+ */
+public class NurseryExhaustion {
+
+    static final int THREADS = 8;
+    static final int LENGTH = 1000;
+
+    static final class Link {
+        final int value;
+        final Link next;
+
+        Link(int value, Link next) {
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    static final int[] errors = new int[THREADS];
+
+    static final class Allocator extends Thread {
+        final int id;
+
+        Allocator(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            for (int round = 0; round < 200; round++) {
+                Link list = null;
+                for (int i = 0; i < LENGTH; i++) {
+                    list = new Link(i, list);
+                }
+                createGarbage();
+                int expected = LENGTH - 1;
+                for (Link link = list; link != null; link = link.next) {
+                    if (link.value != expected--) {
+                        errors[id]++;
+                        break;
+                    }
+                }
+                if (expected != -1) {
+                    errors[id]++;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Allocator[] allocators = new Allocator[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            allocators[i] = new Allocator(i);
+            allocators[i].start();
+        }
+        int total = 0;
+        for (int i = 0; i < THREADS; i++) {
+            allocators[i].join();
+            total += errors[i];
+        }
+        System.out.println("errors: " + total);
+        System.out.println(NurseryExhaustion.class.getSimpleName() + " done.");
+    }
+
+    private static void createGarbage() {
+        Object[] objects = new Object[500];
+        for (int i = 0; i < 20000; i++) {
+            objects[i % objects.length] = new Object[i % 16];
+        }
+    }
+}
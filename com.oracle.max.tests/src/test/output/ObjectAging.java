@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * Tests objects that live for a few minor collections, long enough to be aged in survivor space and, for some of
+ * them, to be promoted. Every step replaces the oldest batch of a rolling window with a new batch and allocates
+ * garbage. Each batch links to the previous one, so survivor objects refer to both younger and older objects.
+ * A batch is checked, and unlinked from the next one, when it leaves the window.
+ */
+public class ObjectAging {
+
+    static final int WINDOW = 8;
+    static final int BATCH = 2000;
+
+    static final class Item {
+        final int batch;
+        final int index;
+        final long[] data;
+        Item previous;
+
+        Item(int batch, int index) {
+            this.batch = batch;
+            this.index = index;
+            this.data = new long[index % 8];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (long) batch << 32 | index;
+            }
+        }
+
+        boolean isIntact(int b, int i) {
+            if (batch != b || index != i) {
+                return false;
+            }
+            for (long d : data) {
+                if (d != ((long) batch << 32 | index)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public static void main(String[] args) {
+        Item[][] window = new Item[WINDOW][];
+        int errors = 0;
+        for (int step = 0; step < 200; step++) {
+            int slot = step % WINDOW;
+            if (window[slot] != null) {
+                errors += check(window[slot], step - WINDOW, window[(slot + 1) % WINDOW]);
+            }
+            Item[] previousBatch = window[(step + WINDOW - 1) % WINDOW];
+            Item[] batch = new Item[BATCH];
+            for (int i = 0; i < BATCH; i++) {
+                batch[i] = new Item(step, i);
+                if (previousBatch != null) {
+                    batch[i].previous = previousBatch[i];
+                }
+            }
+            window[slot] = batch;
+            createGarbage();
+            if (step % 50 == 49) {
+                System.out.println("step " + step + ": " + errors + " errors");
+            }
+        }
+        System.out.println(ObjectAging.class.getSimpleName() + " done.");
+    }
+
+    private static int check(Item[] batch, int step, Item[] next) {
+        int errors = 0;
+        for (int i = 0; i < BATCH; i++) {
+            Item item = batch[i];
+            if (!item.isIntact(step, i) || next[i].previous != item) {
+                errors++;
+            }
+            next[i].previous = null;
+        }
+        return errors;
+    }
+
+    private static void createGarbage() {
+        Object[] objects = new Object[500];
+        for (int i = 0; i < 20000; i++) {
+            objects[i % objects.length] = new byte[i % 128];
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * Tests that young objects referenced only from old objects survive minor collections while the cards dirtied by
+ * the stores are being refined concurrently. Several threads keep storing new objects into their slice of an old
+ * array and allocating garbage, and check that the last object stored in each slot is still intact.
+ */
+public class OldToYoungStores {
+
+    static final int THREADS = 4;
+    static final int SLOTS_PER_THREAD = 2000;
+
+    static final class Value {
+        final int iteration;
+        final int slot;
+        final int[] data;
+
+        Value(int iteration, int slot) {
+            this.iteration = iteration;
+            this.slot = slot;
+            this.data = new int[] {iteration, slot, iteration ^ slot};
+        }
+
+        boolean isIntact(int iteration, int slot) {
+            return this.iteration == iteration && this.slot == slot && data[0] == iteration && data[1] == slot && data[2] == (iteration ^ slot);
+        }
+    }
+
+    static Value[] old;
+    static final int[] errors = new int[THREADS];
+
+    static final class Storer extends Thread {
+        final int id;
+
+        Storer(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            int first = id * SLOTS_PER_THREAD;
+            for (int iteration = 1; iteration <= 100; iteration++) {
+                for (int i = first; i < first + SLOTS_PER_THREAD; i++) {
+                    if (old[i] != null && !old[i].isIntact(iteration - 1, i)) {
+                        errors[id]++;
+                    }
+                    old[i] = new Value(iteration, i);
+                }
+                createGarbage();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        old = new Value[THREADS * SLOTS_PER_THREAD];
+        // Promote the array to the old generation.
+        System.gc();
+        Storer[] storers = new Storer[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            storers[i] = new Storer(i);
+            storers[i].start();
+        }
+        int total = 0;
+        for (int i = 0; i < THREADS; i++) {
+            storers[i].join();
+            total += errors[i];
+        }
+        System.out.println("errors: " + total);
+        System.out.println(OldToYoungStores.class.getSimpleName() + " done.");
+    }
+
+    private static void createGarbage() {
+        Object[] objects = new Object[500];
+        for (int i = 0; i < 10000; i++) {
+            objects[i % objects.length] = new Object[i % 16];
+        }
+    }
+}
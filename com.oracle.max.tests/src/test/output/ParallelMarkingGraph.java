@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * Tests that an object graph survives repeated full collections when it combines a wide tree, a long chain and
+ * nodes shared by many parents. With parallel marking, the tree is spread over the marking stacks of several GC
+ * workers, the chain can only be traced by one worker at a time and overflows small marking stacks, and the
+ * shared nodes are reached by several workers at once.
+ */
+public class ParallelMarkingGraph {
+
+    static final int FANOUT = 16;
+    static final int DEPTH = 4;
+    static final int SHARED = 64;
+    static final int CHAIN = 200000;
+
+    static final class Node {
+        final int id;
+        Node next;
+        Node[] children;
+
+        Node(int id) {
+            this.id = id;
+        }
+    }
+
+    static int nextId;
+    static Node[] shared;
+
+    public static void main(String[] args) {
+        shared = new Node[SHARED];
+        for (int i = 0; i < SHARED; i++) {
+            shared[i] = new Node(-i - 1);
+        }
+        Node root = buildTree(DEPTH);
+        Node last = root;
+        for (int i = 0; i < CHAIN; i++) {
+            last.next = new Node(nextId++);
+            last = last.next;
+        }
+        long expected = checksum(root);
+        for (int round = 0; round < 5; round++) {
+            createGarbage();
+            System.gc();
+            long actual = checksum(root);
+            System.out.println("round " + round + ": " + (actual == expected ? "ok" : "checksum " + actual + " != " + expected));
+        }
+        System.out.println(ParallelMarkingGraph.class.getSimpleName() + " done.");
+    }
+
+    private static Node buildTree(int depth) {
+        Node node = new Node(nextId++);
+        if (depth == 0) {
+            node.children = new Node[] {shared[node.id % SHARED]};
+        } else {
+            node.children = new Node[FANOUT];
+            for (int i = 0; i < FANOUT; i++) {
+                node.children[i] = buildTree(depth - 1);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Sums the ids of all the nodes reachable from {@code root}. A leaf that no longer refers to its shared node
+     * spoils the sum.
+     */
+    private static long checksum(Node root) {
+        long sum = treeChecksum(root);
+        for (Node n = root.next; n != null; n = n.next) {
+            sum += n.id;
+        }
+        return sum;
+    }
+
+    private static long treeChecksum(Node node) {
+        long sum = node.id;
+        if (node.children.length == 1 && node.children[0].id < 0) {
+            if (node.children[0] != shared[node.id % SHARED]) {
+                return Long.MIN_VALUE;
+            }
+            return sum + node.children[0].id;
+        }
+        for (Node child : node.children) {
+            sum += treeChecksum(child);
+        }
+        return sum;
+    }
+
+    private static void createGarbage() {
+        Object[] objects = new Object[10000];
+        for (int i = 0; i < 100000; i++) {
+            objects[i % objects.length] = new Node[i % 32];
+        }
+    }
+}
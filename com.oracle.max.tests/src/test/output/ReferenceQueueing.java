@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+import java.lang.ref.*;
+
+/**
+ * Tests that a collection clears and enqueues exactly the weak references whose referents became unreachable,
+ * whichever GC worker discovered them, and leaves the references to strongly reachable objects alone.
+ * Soft references to strongly reachable objects must never be cleared, whatever the soft reference policy.
+ */
+public class ReferenceQueueing {
+
+    static final int REFERENCES = 10000;
+
+    static final class IndexedReference extends WeakReference<Object> {
+        final int index;
+
+        IndexedReference(Object referent, ReferenceQueue<Object> queue, int index) {
+            super(referent, queue);
+            this.index = index;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+        Object[] strong = new Object[REFERENCES];
+        IndexedReference[] weak = new IndexedReference[REFERENCES];
+        SoftReference[] soft = new SoftReference[REFERENCES];
+        for (int i = 0; i < REFERENCES; i++) {
+            Object referent = new int[i % 16];
+            strong[i] = referent;
+            weak[i] = new IndexedReference(referent, queue, i);
+        }
+        for (int i = 0; i < REFERENCES; i += 2) {
+            strong[i] = null;
+            soft[i + 1] = new SoftReference<Object>(strong[i + 1]);
+        }
+        System.gc();
+
+        int cleared = 0;
+        int kept = 0;
+        for (int i = 0; i < REFERENCES; i++) {
+            if (weak[i].get() == null) {
+                cleared++;
+            } else if (strong[i] == weak[i].get() && strong[i] == soft[i].get()) {
+                kept++;
+            }
+        }
+        int enqueued = 0;
+        int wrong = 0;
+        int timeouts = 0;
+        while (enqueued + wrong < cleared && timeouts < 10) {
+            IndexedReference ref = (IndexedReference) queue.remove(1000);
+            if (ref == null) {
+                timeouts++;
+            } else if (ref.get() == null && weak[ref.index] == ref && strong[ref.index] == null) {
+                enqueued++;
+            } else {
+                wrong++;
+            }
+        }
+        System.out.println("cleared: " + cleared);
+        System.out.println("enqueued: " + enqueued);
+        System.out.println("wrongly enqueued: " + wrong);
+        System.out.println("kept: " + kept);
+        System.out.println(ReferenceQueueing.class.getSimpleName() + " done.");
+    }
+}
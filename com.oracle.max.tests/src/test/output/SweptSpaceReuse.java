@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.output;
+
+/**
+ * Tests that the space freed by a collection is handed out again correctly when it is swept after the pause,
+ * either on demand by allocation or by a background sweeper. Every round frees every other array of a large set,
+ * then immediately refills the heap with new arrays of various sizes. New arrays must be zeroed and the arrays
+ * that survived must be left untouched.
+ */
+public class SweptSpaceReuse {
+
+    static final int ARRAYS = 50000;
+
+    public static void main(String[] args) {
+        int[][] arrays = new int[ARRAYS][];
+        for (int i = 0; i < ARRAYS; i++) {
+            arrays[i] = filled(i);
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = round & 1; i < ARRAYS; i += 2) {
+                arrays[i] = null;
+            }
+            System.gc();
+            int dirty = 0;
+            for (int i = round & 1; i < ARRAYS; i += 2) {
+                int[] array = new int[size(i + round)];
+                for (int value : array) {
+                    if (value != 0) {
+                        dirty++;
+                        break;
+                    }
+                }
+                fill(array, i);
+                arrays[i] = array;
+            }
+            int corrupted = 0;
+            for (int i = 0; i < ARRAYS; i++) {
+                if (!isFilled(arrays[i], i)) {
+                    corrupted++;
+                }
+            }
+            System.out.println("round " + round + ": " + dirty + " dirty new arrays, " + corrupted + " corrupted arrays");
+        }
+        System.out.println(SweptSpaceReuse.class.getSimpleName() + " done.");
+    }
+
+    private static int size(int i) {
+        return (i * 7) % 97 + ((i % 500) == 0 ? 4096 : 0);
+    }
+
+    private static int[] filled(int i) {
+        int[] array = new int[size(i)];
+        fill(array, i);
+        return array;
+    }
+
+    private static void fill(int[] array, int i) {
+        for (int j = 0; j < array.length; j++) {
+            array[j] = i ^ j;
+        }
+    }
+
+    private static boolean isFilled(int[] array, int i) {
+        for (int j = 0; j < array.length; j++) {
+            if (array[j] != (i ^ j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -174,6 +174,7 @@ public class MaxRuntimeCalls {
 
     @MAX_RUNTIME_ENTRYPOINT(runtimeCall = CiRuntimeCall.OSRMigrationEnd)
     public static void runtimeOSRMigrationEnd() {
+        OnStackReplacement.migrationEnd();
         verifyRefMaps();
     }
 
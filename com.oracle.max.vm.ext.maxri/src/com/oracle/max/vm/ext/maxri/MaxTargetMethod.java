@@ -434,7 +434,7 @@ public class MaxTargetMethod extends TargetMethod implements Cloneable {
         TargetMethod calleeTM = callee.targetMethod();
         if (calleeTM != null) {
             Stub.Type st = calleeTM.stubType();
-            if (st == StaticTrampoline || st == VirtualTrampoline || st == InterfaceTrampoline) {
+            if (st == StaticTrampoline || st == VirtualTrampoline || st == InterfaceTrampoline || st == InlineCacheMissStub) {
                 prepareTrampolineRefMap(current, callee, preparer);
             } else if (calleeTM.is(TrapStub) && Trap.Number.isStackOverflow(csa)) {
                 // a method can never catch stack overflow for itself so there
@@ -514,7 +514,8 @@ public class MaxTargetMethod extends TargetMethod implements Cloneable {
         CiRegister[] cpuRegs = registerConfig.getCallingConventionRegisters(Type.JavaCall, RegisterFlag.CPU);
 
         // figure out what method the caller is trying to call
-        if (trampoline.is(StaticTrampoline)) {
+        if (trampoline.is(StaticTrampoline) || trampoline.is(InlineCacheMissStub)) {
+            // the direct callee of an inline cache call site is the interface method
             int dcIndex = 0;
             Safepoints safepoints = targetMethod.safepoints();
             int safepointPos = targetMethod.posFor(current.vmIP());
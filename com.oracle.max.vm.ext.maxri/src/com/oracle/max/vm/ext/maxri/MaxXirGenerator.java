@@ -50,11 +50,13 @@ import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.classfile.constant.*;
 import com.sun.max.vm.classfile.constant.UnresolvedType.*;
 import com.sun.max.vm.compiler.*;
+import com.sun.max.vm.compiler.deopt.*;
 import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.heap.*;
 import com.sun.max.vm.heap.debug.*;
 import com.sun.max.vm.layout.*;
 import com.sun.max.vm.object.*;
+import com.sun.max.vm.profile.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.runtime.amd64.*;
 import com.sun.max.vm.runtime.arm.*;
@@ -116,6 +118,7 @@ public class MaxXirGenerator implements RiXirGenerator {
     private final HashMap<String, RiMethod> runtimeMethods = new HashMap<String, RiMethod>();
 
     private XirTemplate epilogueTemplate;
+    private XirTemplate profiledEpilogueTemplate;
     private XirPair[] putFieldTemplates;
     private XirPair[] getFieldTemplates;
     private XirPair[] putStaticFieldTemplates;
@@ -123,6 +126,7 @@ public class MaxXirGenerator implements RiXirGenerator {
 
     private XirPair invokeVirtualTemplates;
     private XirPair invokeInterfaceTemplates;
+    private XirTemplate invokeInterfaceCachedTemplate;
     private InvokeSpecialTemplates invokeSpecialTemplates;
     private XirPair invokeStaticTemplates;
     private XirPair[] newArrayTemplates;
@@ -139,6 +143,7 @@ public class MaxXirGenerator implements RiXirGenerator {
     private XirPair[] multiNewArrayTemplate;
 
     private XirTemplate safepointTemplate;
+    private XirTemplate profiledSafepointTemplate;
     private XirTemplate arraylengthTemplate;
     private XirTemplate monitorEnterTemplate;
     private XirTemplate monitorExitTemplate;
@@ -155,6 +160,11 @@ public class MaxXirGenerator implements RiXirGenerator {
 
     private XirTemplate typeAssertTemplate;
 
+    /**
+     * Profiled receiver type guards, indexed by the number of hubs they compare against minus one.
+     */
+    private XirTemplate[] receiverTypeGuardTemplates;
+
     private XirTemplate exceptionObjectTemplate;
 
     public final List<XirTemplate> stubs = new ArrayList<XirTemplate>();
@@ -189,6 +199,11 @@ public class MaxXirGenerator implements RiXirGenerator {
         return FieldActor.findInstance(ClassActor.fromJava(Hub.class), "tupleSize").offset();
     }
 
+    @FOLD
+    int offsetOfOptEntryBackedgeCount() {
+        return FieldActor.findInstance(ClassActor.fromJava(MethodProfile.class), "optEntryBackedgeCount").offset();
+    }
+
     @FOLD
     int minObjectAlignmentMask() {
         return vmConfig().heapScheme().objectAlignment() - 1;
@@ -219,6 +234,7 @@ public class MaxXirGenerator implements RiXirGenerator {
         this.asm = asm;
 
         epilogueTemplate = buildEpilogue();
+        profiledEpilogueTemplate = buildProfiledEpilogue();
 
         putFieldTemplates = new XirPair[kinds.length];
         getFieldTemplates = new XirPair[kinds.length];
@@ -267,6 +283,7 @@ public class MaxXirGenerator implements RiXirGenerator {
 
         invokeVirtualTemplates = buildInvokeVirtual();
         invokeInterfaceTemplates = buildInvokeInterface();
+        invokeInterfaceCachedTemplate = buildInvokeInterfaceCached();
         invokeSpecialTemplates = buildInvokeSpecial();
         invokeStaticTemplates = buildInvokeStatic();
 
@@ -282,6 +299,7 @@ public class MaxXirGenerator implements RiXirGenerator {
         }
 
         safepointTemplate = buildSafepoint();
+        profiledSafepointTemplate = buildProfiledSafepoint();
         arraylengthTemplate = buildArrayLength();
         monitorEnterTemplate = buildMonitorEnter();
         monitorExitTemplate = buildMonitorExit();
@@ -300,10 +318,12 @@ public class MaxXirGenerator implements RiXirGenerator {
         materializedInstanceofForNonLeafTemplate = buildMaterializeInstanceOf(false, false);
 
         typeAssertTemplate = buildTypeAssert();
+        receiverTypeGuardTemplates = new XirTemplate[] {buildReceiverTypeGuard(1), buildReceiverTypeGuard(2)};
 
         exceptionObjectTemplate = buildExceptionObject();
 
         MaxTargetMethod.initializeMaxXirGeneratorRuntimeCallsMonitorEnterMethodActor(getRuntimeCallsMonitorEnterMethodActor());
+        Deoptimization.initializeReceiverTypeGuardFailedMethodActor(getRuntimeCallsReceiverTypeGuardFailedMethodActor());
 
         return stubs;
     }
@@ -317,6 +337,15 @@ public class MaxXirGenerator implements RiXirGenerator {
         return ClassActor.fromJava(MaxXirGenerator.RuntimeCalls.class).findLocalStaticMethodActor(runtimeCallsMonitorEnterMethodName);
     }
 
+    /**
+     * Returns method actor for {@link RuntimeCalls#receiverTypeGuardFailed} method of {@link RuntimeCalls) class.
+     */
+    @HOSTED_ONLY
+    private static StaticMethodActor getRuntimeCallsReceiverTypeGuardFailedMethodActor() {
+        Utf8Constant runtimeCallsReceiverTypeGuardFailedMethodName = SymbolTable.makeSymbol("receiverTypeGuardFailed");
+        return ClassActor.fromJava(MaxXirGenerator.RuntimeCalls.class).findLocalStaticMethodActor(runtimeCallsReceiverTypeGuardFailedMethodName);
+    }
+
     @Override
     public XirSnippet genPrologue(XirSite site, RiResolvedMethod method) {
         ClassMethodActor callee = (ClassMethodActor) method;
@@ -353,20 +382,76 @@ public class MaxXirGenerator implements RiXirGenerator {
         return asm.finishTemplate("epilogue");
     }
 
+    @HOSTED_ONLY
+    private XirTemplate buildProfiledEpilogue() {
+        asm.restart(CiKind.Void);
+        XirParameter profile = asm.createInputParameter("profile", CiKind.Object);
+        XirLabel overflow = decrementOptEntryBackedgeCount(profile);
+        XirLabel counted = asm.createInlineLabel("counted");
+        asm.bindInline(counted);
+        asm.popFrame();
+        // the stub preserves all registers, including the one holding the return value
+        optCounterOverflow(profile, overflow, counted);
+        return asm.finishTemplate("profiledEpilogue");
+    }
+
     @Override
     public XirSnippet genEpilogue(XirSite site, RiResolvedMethod method) {
         ClassMethodActor callee = (ClassMethodActor) method;
         if (callee.isTemplate()) {
             return null;
         }
+        MethodProfile profile = tierProfile();
+        if (profile != null) {
+            return new XirSnippet(profiledEpilogueTemplate, XirArgument.forObject(profile));
+        }
         return new XirSnippet(epilogueTemplate);
     }
 
     @Override
     public XirSnippet genSafepointPoll(XirSite site) {
+        MethodProfile profile = tierProfile();
+        if (profile != null) {
+            return new XirSnippet(profiledSafepointTemplate, XirArgument.forObject(profile));
+        }
         return new XirSnippet(safepointTemplate);
     }
 
+    /**
+     * Gets the profile whose {@link MethodProfile#optEntryBackedgeCount} is decremented by the code being
+     * compiled on the current thread. Counting is done on method exit rather than entry so that the
+     * counter update never precedes the frame setup in the prologue.
+     *
+     * @return {@code null} if the current compilation is not for a profiled tier
+     */
+    private static MethodProfile tierProfile() {
+        Compilation compilation = Compilation.current();
+        return compilation == null ? null : compilation.tierProfile;
+    }
+
+    /**
+     * Decrements {@link MethodProfile#optEntryBackedgeCount} and branches to the returned out-of-line label once
+     * the counter has run down. The template must {@linkplain #optCounterOverflow bind} the label after its inline code.
+     */
+    @HOSTED_ONLY
+    private XirLabel decrementOptEntryBackedgeCount(XirOperand profile) {
+        XirOperand count = asm.createTemp("count", CiKind.Int);
+        XirOperand offset = asm.i(offsetOfOptEntryBackedgeCount());
+        XirLabel overflow = asm.createOutOfLineLabel("overflow");
+        asm.pload(CiKind.Int, count, profile, offset, false);
+        asm.sub(count, count, asm.i(1));
+        asm.pstore(CiKind.Int, profile, offset, count, false);
+        asm.jlteq(overflow, count, asm.i(0));
+        return overflow;
+    }
+
+    @HOSTED_ONLY
+    private void optCounterOverflow(XirOperand profile, XirLabel overflow, XirLabel counted) {
+        asm.bindOutOfLine(overflow);
+        callRuntimeThroughStub(asm, "optCounterOverflow", null, profile);
+        asm.jmp(counted);
+    }
+
     @Override
     public XirSnippet genResolveClass(XirSite site, RiType type, Representation representation) {
         return new XirSnippet(resolveClassTemplates[representation.ordinal()], guardFor(type));
@@ -377,6 +462,10 @@ public class MaxXirGenerator implements RiXirGenerator {
         XirPair pair = invokeInterfaceTemplates;
         if (method instanceof RiResolvedMethod) {
             InterfaceMethodActor methodActor = (InterfaceMethodActor) method;
+            if (!MaxineVM.isHosted() && InlineCache.isEnabledFor(methodActor)) {
+                // the call site is linked to its inline cache at runtime, see TargetMethod.linkDirectCalls()
+                return new XirSnippet(invokeInterfaceCachedTemplate, WordUtil.argument(Word.zero()), receiver);
+            }
             XirArgument interfaceID = XirArgument.forInt(methodActor.holder().id);
             XirArgument methodIndex = XirArgument.forInt(methodActor.iIndexInInterface());
             return new XirSnippet(pair.resolved, receiver, interfaceID, methodIndex);
@@ -623,6 +712,15 @@ public class MaxXirGenerator implements RiXirGenerator {
         return new XirSnippet(typeAssertTemplate, object, hub);
     }
 
+    @Override
+    public XirSnippet genReceiverTypeGuard(XirSite site, XirArgument object, XirArgument... hubs) {
+        assert site.isNonNull(object);
+        if (hubs.length == 0 || hubs.length > receiverTypeGuardTemplates.length) {
+            return null;
+        }
+        return new XirSnippet(receiverTypeGuardTemplates[hubs.length - 1], Utils.prepend(hubs, object));
+    }
+
     @Override
     public XirSnippet genArrayLoad(XirSite site, XirArgument array, XirArgument index, CiKind elementKind, RiType elementType) {
         XirTemplate template;
@@ -732,6 +830,20 @@ public class MaxXirGenerator implements RiXirGenerator {
         return finishTemplate(asm, "safepoint");
     }
 
+    @HOSTED_ONLY
+    private XirTemplate buildProfiledSafepoint() {
+        asm.restart(CiKind.Void);
+        XirParameter profile = asm.createInputParameter("profile", CiKind.Object);
+        XirOperand latch = asm.createRegisterTemp("latch", WordUtil.archKind(), LATCH_REGISTER);
+        XirLabel overflow = decrementOptEntryBackedgeCount(profile);
+        XirLabel counted = asm.createInlineLabel("counted");
+        asm.bindInline(counted);
+        asm.safepoint(0);
+        asm.pload(WordUtil.archKind(), latch, latch, false);
+        optCounterOverflow(profile, overflow, counted);
+        return finishTemplate(asm, "profiledSafepoint");
+    }
+
     @HOSTED_ONLY
     private XirTemplate buildArrayLength() {
         XirOperand result = asm.restart(CiKind.Int);
@@ -916,6 +1028,19 @@ public class MaxXirGenerator implements RiXirGenerator {
         return new XirPair(resolved, unresolved);
     }
 
+    /**
+     * Builds the template for a resolved {@code invokeinterface} that is a direct call to the call site's
+     * {@linkplain InlineCache inline cache}.
+     */
+    @HOSTED_ONLY
+    private XirTemplate buildInvokeInterfaceCached() {
+        asm.restart();
+        XirParameter addr = asm.createConstantInputParameter("addr", WordUtil.archKind()); // address to call
+        XirParameter receiver = asm.createInputParameter("receiver", CiKind.Object); // receiver object
+        asm.nullCheck(receiver);
+        return finishTemplate(asm, addr, "invokeinterface-cached");
+    }
+
     @HOSTED_ONLY
     private XirPair buildInvokeVirtual() {
         XirTemplate resolved;
@@ -1680,6 +1805,38 @@ public class MaxXirGenerator implements RiXirGenerator {
         return asm.finishTemplate(object, "typeCheck");
     }
 
+    /**
+     * Builds a guard that compares the hub of an object against {@code numberOfHubs} constant hubs. If none
+     * match, the guard calls {@link RuntimeCalls#receiverTypeGuardFailed()}, which marks the method for
+     * deoptimization so that the guarded invoke is re-executed when the call returns.
+     */
+    @HOSTED_ONLY
+    private XirTemplate buildReceiverTypeGuard(int numberOfHubs) {
+        asm.restart(CiKind.Void);
+        XirParameter object = asm.createInputParameter("object", CiKind.Object);
+        XirParameter[] hubs = new XirParameter[numberOfHubs];
+        for (int i = 0; i < numberOfHubs; i++) {
+            hubs[i] = asm.createConstantInputParameter("hub" + i, CiKind.Object);
+        }
+        XirOperand objHub = asm.createTemp("objHub", CiKind.Object);
+        XirLabel match = asm.createInlineLabel("match");
+        XirLabel failed = asm.createOutOfLineLabel("failed");
+
+        asm.pload(CiKind.Object, objHub, object, asm.i(hubOffset()), false);
+        for (int i = 0; i < numberOfHubs - 1; i++) {
+            asm.jeq(match, objHub, hubs[i]);
+        }
+        asm.jneq(failed, objHub, hubs[numberOfHubs - 1]);
+        asm.bindInline(match);
+
+        // -- out of line -------------------------------------------------------
+        asm.bindOutOfLine(failed);
+        callRuntimeThroughStub(asm, "receiverTypeGuardFailed", null);
+        asm.shouldNotReachHere();
+
+        return finishTemplate(asm, "receiverTypeGuard<" + numberOfHubs + ">");
+    }
+
     @HOSTED_ONLY
     private XirPair buildInstanceofForNonLeaf(boolean nonnull) {
         XirTemplate resolved;
@@ -1963,6 +2120,14 @@ public class MaxXirGenerator implements RiXirGenerator {
             return Snippets.resolveInterfaceMethod(guard).holder().id;
         }
 
+        public static void optCounterOverflow(MethodProfile profile) {
+            CompilationBroker.optCounterOverflow(profile);
+        }
+
+        public static void receiverTypeGuardFailed() {
+            Deoptimization.receiverTypeGuardFailed();
+        }
+
         public static Object allocatePrimitiveArray(DynamicHub hub, int length) {
             if (length < 0) {
                 throw new NegativeArraySizeException(String.valueOf(length));
@@ -246,6 +246,17 @@ public abstract class T1XCompilation {
      */
     int syncMethodHandlerPos = -1;
 
+    /**
+     * Specifies if a {@link T1XTemplateTag#PROFILE_BACKWARD_BRANCH} template was emitted for the method.
+     */
+    boolean hasProfiledBackwardBranch;
+
+    /**
+     * The code position of the code returned to by an on-stack replacement variant of the method
+     * or {@code -1} if the method cannot be replaced on stack.
+     */
+    int osrExitPos = -1;
+
     /**
      * Constant pool of the method being compiled.
      */
@@ -384,6 +395,8 @@ public abstract class T1XCompilation {
         syncRefMapEndPos = -1;
         synchronizedReceiver = -1;
         syncMethodHandlerPos = -1;
+        hasProfiledBackwardBranch = false;
+        osrExitPos = -1;
         cp = null;
         buf.reset();
         objectLiterals.clear();
@@ -493,6 +506,37 @@ public abstract class T1XCompilation {
         if (epiloguePos != buf.position()) {
             bciToPos[endBCI] = epiloguePos;
         }
+
+        if (hasProfiledBackwardBranch && !method.isSynchronized()) {
+            do_osrExit(endBCI);
+        }
+    }
+
+    /**
+     * Emits the code returned to by an on-stack replacement variant of the method that has taken over
+     * an activation of this method. The safepoint recorded for the code has an empty reference map
+     * as none of the values in the frame are live once the activation has been replaced.
+     */
+    protected void do_osrExit(int endBCI) {
+        int pos = emitOsrExit();
+        if (pos >= 0) {
+            osrExitPos = pos;
+            safepointsBuilder.addSafepoint(-1, Safepoints.make(pos), null);
+            if (bciToPos[endBCI] == 0) {
+                // ensures that no exception handler covers the exit
+                bciToPos[endBCI] = pos;
+            }
+        }
+    }
+
+    /**
+     * Emits the platform specific part of {@link #do_osrExit}, i.e. the code that returns the value
+     * in the return register to the caller of the replaced activation.
+     *
+     * @return the position of the emitted code or {@code -1} if on-stack replacement is not supported on this platform
+     */
+    protected int emitOsrExit() {
+        return -1;
     }
 
     /**
@@ -803,14 +847,14 @@ public abstract class T1XCompilation {
     protected abstract void emitEpilogue();
 
     protected int localSlotOffset(int localIndex, Kind kind) {
-        return frame.localVariableOffset(localIndex) + JVMSFrameLayout.offsetInStackSlot(kind);
+        return frame.localSlotOffset(localIndex, kind);
     }
 
     /**
      * JVMTI access to local variables.
      */
     public static int localSlotOffset(JVMSFrameLayout frame, int localIndex, Kind kind) {
-        return frame.localVariableOffset(localIndex) + JVMSFrameLayout.offsetInStackSlot(kind);
+        return frame.localSlotOffset(localIndex, kind);
     }
 
     protected abstract void loadInt(CiRegister dst, int index);
@@ -2042,12 +2086,14 @@ public abstract class T1XCompilation {
         emitEpilogue();
     }
 
-    protected void do_profileBackwardBranch() {
+    protected void do_profileBackwardBranch(int targetBCI) {
         if (methodProfileBuilder != null) {
             // Profiling of backward branches.
             start(PROFILE_BACKWARD_BRANCH);
             assignObject(0, "mpo", methodProfileBuilder.methodProfileObject());
+            assignInt(1, "bci", targetBCI);
             finish();
+            hasProfiledBackwardBranch = true;
         }
     }
 
@@ -2126,7 +2172,7 @@ public abstract class T1XCompilation {
             finish();
 
             if (bci >= targetBCI) {
-                do_profileBackwardBranch();
+                do_profileBackwardBranch(targetBCI);
             }
         }
     }
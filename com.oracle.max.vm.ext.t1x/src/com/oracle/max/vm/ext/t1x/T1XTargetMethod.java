@@ -177,6 +177,12 @@ public class T1XTargetMethod extends TargetMethod {
      */
     public final int protectionLiteralIndex;
 
+    /**
+     * The position of the code returned to by an on-stack replacement variant of this method
+     * or {@code -1} if this method cannot be replaced on stack.
+     */
+    private final int osrExitPos;
+
     /**
      * Number of {@linkplain CodeEviction code eviction cycles} this method survived.
      */
@@ -186,6 +192,7 @@ public class T1XTargetMethod extends TargetMethod {
         super(comp.method, CallEntryPoint.BASELINE_ENTRY_POINT);
         codeAttribute = comp.codeAttribute;
         bciToPos = comp.bciToPos;
+        osrExitPos = comp.osrExitPos;
         frame = comp.frame;
         frameRefMapOffset = frame.frameReferenceMapOffset();
         setFrameSize(frame.frameSize());
@@ -522,8 +529,17 @@ public class T1XTargetMethod extends TargetMethod {
         return value;
     }
 
+    @Override
+    public int osrExitPos() {
+        return osrExitPos;
+    }
+
     @Override
     public int forEachCodePos(CodePosClosure cpc, CodePointer ip) {
+        if (osrExitPos >= 0 && posFor(ip) == osrExitPos) {
+            // the activation has been replaced on stack and is described by the frame of the replacement
+            return 0;
+        }
         int bci = bciFor(ip);
         if (bci >= 0) {
             cpc.doCodePos(classMethodActor, bci);
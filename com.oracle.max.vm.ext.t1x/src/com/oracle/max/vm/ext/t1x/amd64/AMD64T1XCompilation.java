@@ -372,6 +372,14 @@ public class AMD64T1XCompilation extends T1XCompilation {
         }
     }
 
+    @Override
+    protected int emitOsrExit() {
+        int pos = buf.position();
+        // the value returned by the on-stack replacement variant is already in the return register
+        emitEpilogue();
+        return pos;
+    }
+
     @Override
     protected void do_preVolatileFieldAccess(T1XTemplateTag tag, FieldActor fieldActor) {
         if (fieldActor.isVolatile()) {
@@ -622,7 +630,7 @@ public class AMD64T1XCompilation extends T1XCompilation {
             // Compute relative offset
             final int target = bciToPos[targetBCI];
             if (cc == null) {
-                do_profileBackwardBranch();
+                do_profileBackwardBranch(targetBCI);
                 do_safepointAtBackwardBranch(bci);
                 asm.jmp(target, false);
             } else {
@@ -636,7 +644,7 @@ public class AMD64T1XCompilation extends T1XCompilation {
                 assert buf.position() - jumpNotTakenPos == 2;
 
                 // Start of "taken" code
-                do_profileBackwardBranch();
+                do_profileBackwardBranch(targetBCI);
                 do_safepointAtBackwardBranch(bci);
                 asm.jmp(target, false);
 
@@ -38,6 +38,11 @@
 #include <sys/sysctl.h>
 #endif
 
+#if os_LINUX
+#include <stdio.h>
+#include <sys/syscall.h>
+#endif
+
 /* There is a problem binding these identifiers in RedHat's include files, so we fake them: */
 #if os_LINUX
 #   ifndef MAP_ANONYMOUS
@@ -310,3 +315,69 @@ Address virtualMemory_pageAlign(Address address) {
     long alignment = virtualMemory_getPageSize() - 1;
     return ((long)(address + alignment) & ~alignment);
 }
+
+/* NUMA support. Only implemented on Linux, where we go through the raw system calls to avoid depending on libnuma.
+ * Everywhere else, the machine is seen as a single node. */
+
+#define MAX_NUMA_NODES      64
+#define NUMA_MPOL_PREFERRED 1
+#define NUMA_MPOL_MF_MOVE   (1 << 1)
+
+static int numaNodeCount = 0;
+
+int virtualMemory_numaNodeCount(void) {
+    if (numaNodeCount == 0) {
+        numaNodeCount = 1;
+#if os_LINUX
+        char path[64];
+        int node;
+        for (node = 1; node < MAX_NUMA_NODES; node++) {
+            snprintf(path, sizeof(path), "/sys/devices/system/node/node%d", node);
+            if (access(path, F_OK) == 0) {
+                numaNodeCount = node + 1;
+            }
+        }
+#endif
+    }
+    return numaNodeCount;
+}
+
+int virtualMemory_numaCurrentNode(void) {
+#if os_LINUX && defined(SYS_getcpu)
+    unsigned int cpu = 0;
+    unsigned int node = 0;
+    if (syscall(SYS_getcpu, &cpu, &node, NULL) == 0 && node < MAX_NUMA_NODES) {
+        return (int) node;
+    }
+#endif
+    return 0;
+}
+
+/*
+ * Sets the preferred node of the pages in the specified range.
+ * If discard is true, the content of the range is thrown away first, so that the pages are re-allocated on the
+ * preferred node when next touched.
+ */
+jboolean virtualMemory_numaBind(Address address, Size size, int node, jboolean discard) {
+#if os_LINUX && defined(SYS_mbind)
+    c_ASSERT(virtualMemory_pageAlign(address) == address);
+    if (node < 0 || node >= MAX_NUMA_NODES) {
+        return JNI_FALSE;
+    }
+    if (discard == JNI_TRUE && madvise((void *) address, (size_t) size, MADV_DONTNEED) != 0) {
+        return JNI_FALSE;
+    }
+    unsigned long nodeMask = 1UL << node;
+    /* The kernel ignores the last bit of maxnode. */
+    long result = syscall(SYS_mbind, (void *) address, (unsigned long) size, NUMA_MPOL_PREFERRED, &nodeMask, (unsigned long) MAX_NUMA_NODES + 1,
+                    discard == JNI_TRUE ? 0 : NUMA_MPOL_MF_MOVE);
+#if log_MMAP
+    if (result != 0) {
+        log_println("virtualMemory_numaBind(address=%p, size=%p, node=%d) failed: %s", address, size, node, strerror(errno));
+    }
+#endif
+    return result == 0 ? JNI_TRUE : JNI_FALSE;
+#else
+    return JNI_FALSE;
+#endif
+}
@@ -51,4 +51,8 @@ extern Address virtualMemory_pageAlign(Address address);
 
 extern void virtualMemory_protectPages(Address address, int count);
 extern void virtualMemory_unprotectPages(Address address, int count);
+
+extern int virtualMemory_numaNodeCount(void);
+extern int virtualMemory_numaCurrentNode(void);
+extern jboolean virtualMemory_numaBind(Address address, Size size, int node, jboolean discard);
 #endif /*__virtualMemory_h__*/
@@ -95,6 +95,9 @@ public class MaxineTester {
     private static final Option<List<String>> jtImageConfigsOption = options.newStringListOption("jtt-image-configs",
                     MaxineTesterConfiguration.defaultJavaTesterConfigs(),
                     "The list of JTT boot image configurations to be run.");
+    private static final Option<List<String>> vmOutputImageConfigsOption = options.newStringListOption("vm-output-image-configs",
+                    MaxineTesterConfiguration.defaultVMOutputImageConfigs(),
+                    "The list of boot image configurations with which to run the VM output tests.");
     private static final Option<String> listTestsOption = options.newStringOption("ls", null,
                     "List the tests in the categories whose name contain the given value. The categories are: " +
                     "c1x, junit, output, javatester, dacapo2006, dacapobach, specjvm98, specjvm2008");
@@ -1284,7 +1287,7 @@ public class MaxineTester {
 //        String testName;
 
         public OutputImageHarness(List<Class> tests) {
-            super("VM output", MaxineTesterConfiguration.defaultVMOutputImageConfigs(), testOption(tests.get(0).getName()));
+            super("VM output", vmOutputImageConfigsOption.getValue(), testOption(tests.get(0).getName()));
             this.testList = tests;
             iter = testList.iterator();
             testClass = tests.get(0);
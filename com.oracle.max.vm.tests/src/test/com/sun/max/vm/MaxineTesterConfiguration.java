@@ -311,6 +311,17 @@ public class MaxineTesterConfiguration {
         imageConfig("jtt-msec1xc1x", opt_c1x, "-run=test.com.sun.max.vm.jtrun.all", "-heap=gcx.mse", "-native-tests");
 
         imageConfig("vm-output", "-run=test.com.sun.max.vm.output");
+        imageConfig("vm-output-tiered", "-run=test.com.sun.max.vm.output", "-tier3=C1XGraal");
+        imageConfig("vm-output-tiered-eager", "-run=test.com.sun.max.vm.output", "-tier3=C1XGraal", "--XX:Tier3Threshold=1000");
+        imageConfig("vm-output-tiered-off", "-run=test.com.sun.max.vm.output", "-tier3=C1XGraal", "--XX:-TieredCompilation");
+        imageConfig("vm-output-noosr", "-run=test.com.sun.max.vm.output", "--XX:-OSR");
+        imageConfig("vm-output-osr-retry", "-run=test.com.sun.max.vm.output", "--XX:OSRRetryInterval=10");
+        imageConfig("vm-output-noic", "-run=test.com.sun.max.vm.output", "--XX:InlineCacheSize=0");
+        imageConfig("vm-output-ic1", "-run=test.com.sun.max.vm.output", "--XX:InlineCacheSize=1");
+        imageConfig("vm-output-noprofinline", "-run=test.com.sun.max.vm.output", "--C1X:-OptInlineProfiledReceivers");
+        imageConfig("vm-output-nobgcomp", "-run=test.com.sun.max.vm.output", "--XX:-BackgroundCompilation");
+        imageConfig("vm-output-bgcomp1", "-run=test.com.sun.max.vm.output", "--XX:CompilerThreads=1");
+        imageConfig("vm-output-resizetlab", "-run=test.com.sun.max.vm.output", "--XX:+ResizeTLAB");
 
         maxvmConfig("std", "-Xms2g", "-Xmx2g");
         maxvmConfig("eviction1000", "-Xms2g", "-Xmx2g", "-XX:CodeCacheContentionFrequency=1000");
@@ -331,6 +342,16 @@ public class MaxineTesterConfiguration {
         // Configuration to test methodhandles implementation
         maxvmConfig("jsr292", "-XX:RCT=0");
 
+        // Monitor configurations
+        maxvmConfig("monitorcache1", "-XX:MonitorCacheSize=1");
+        maxvmConfig("monitorcache64", "-XX:MonitorCacheSize=64");
+        maxvmConfig("nospin", "-XX:-UseAdaptiveSpinning");
+        maxvmConfig("spin50", "-XX:MonitorSpinLimit=50");
+
+        // Reference processing configurations
+        maxvmConfig("serialrefproc", "-XX:-ParallelRefProcEnabled");
+        maxvmConfig("softlru0", "-XX:SoftRefLRUPolicyMSPerMB=0");
+
         imageConfig("baseline-c1x0", "--C1X:OptLevel=0");
         imageConfig("baseline-c1x1", "--C1X:OptLevel=1");
         imageConfig("baseline-c1x2", "--C1X:OptLevel=2");
@@ -358,6 +379,24 @@ public class MaxineTesterConfiguration {
         imageConfig("mse", opt_c1x, "-run=java", "-heap=gcx.mse");
         imageConfig("gmse", opt_c1x, "-run=java", "-heap=gcx.gen.mse");
         imageConfig("gmsed", opt_c1x, "-run=java", "-heap=gcx.gen.mse", "-build=DEBUG");
+        // Parallel GC configurations
+        imageConfig("ms-pmark", opt_c1x, "-run=java", "-heap=gcx.ms", "--XX:ParallelGCThreads=4");
+        imageConfig("ms-pmark-overflow", opt_c1x, "-run=java", "-heap=gcx.ms", "--XX:ParallelGCThreads=4", "--XX:ParallelMarkingStackSize=64");
+        imageConfig("mse-cmark", opt_c1x, "-run=java", "-heap=gcx.mse", "--XX:+ConcurrentMarking", "--XX:ConcurrentMarkingInitiatingOccupancy=10");
+        imageConfig("mse-cmark-pmark", opt_c1x, "-run=java", "-heap=gcx.mse", "--XX:+ConcurrentMarking", "--XX:ConcurrentMarkingInitiatingOccupancy=10", "--XX:ParallelGCThreads=4");
+        imageConfig("mse-lazysweep", opt_c1x, "-run=java", "-heap=gcx.mse", "--XX:+LazySweep");
+        imageConfig("mse-csweep", opt_c1x, "-run=java", "-heap=gcx.mse", "--XX:+ConcurrentSweep");
+        imageConfig("gmse-pevac", opt_c1x, "-run=java", "-heap=gcx.gen.mse", "--XX:ParallelGCThreads=4");
+        imageConfig("gmse-pevac-overflow", opt_c1x, "-run=java", "-heap=gcx.gen.mse", "--XX:ParallelGCThreads=4", "--XX:ParallelEvacuationStackSize=64");
+        imageConfig("gmse-aging", opt_c1x, "-run=java", "-heap=gcx.gen.mse", "--XX:MaxTenuringThreshold=4");
+        imageConfig("gmse-aging1", opt_c1x, "-run=java", "-heap=gcx.gen.mse", "--XX:MaxTenuringThreshold=1");
+        imageConfig("mse-compact", opt_c1x, "-run=java", "-heap=gcx.mse", "--XX:+RegionCompaction", "--XX:CompactionFragmentationPercent=10", "--XX:CompactionLiveThresholdPercent=50");
+        imageConfig("gmse-refine", opt_c1x, "-run=java", "-heap=gcx.gen.mse", "--XX:+ConcurrentRefinement", "--XX:RefinementPeriod=1");
+        imageConfig("ss-pcopy", opt_c1x, "-run=java", "-heap=sequential.semiSpace", "--XX:ParallelGCThreads=4");
+        imageConfig("ss-pcopy-overflow", opt_c1x, "-run=java", "-heap=sequential.semiSpace", "--XX:ParallelGCThreads=4", "--XX:ParallelCopyingStackSize=64", "--XX:PLABSize=4k");
+        imageConfig("gmse-noeagerhumongous", opt_c1x, "-run=java", "-heap=gcx.gen.mse", "--XX:-EagerReclaimHumongousObjects");
+        imageConfig("gmse-nopinning", opt_c1x, "-run=java", "-heap=gcx.gen.mse", "--XX:-RegionPinning");
+        imageConfig("gmse-numa", opt_c1x, "-run=java", "-heap=gcx.gen.mse", "--XX:+UseNUMA");
 
         // VMA configurations
         final String vmaT1X = "com.oracle.max.vm.ext.t1x.vma.VMAT1X";
@@ -490,10 +529,8 @@ public class MaxineTesterConfiguration {
         return "jtt-c1xc1x,jtt-t1xc1x,jtt-c1xt1x,jtt-t1xt1x,jtt-c1xgraal";
     }
 
-    public static List<String> defaultVMOutputImageConfigs() {
-        List<String> result = new ArrayList<String>();
-        result.add("vm-output");
-        return result;
+    public static String defaultVMOutputImageConfigs() {
+        return "vm-output";
     }
 
     public static boolean isSupported(String config) {
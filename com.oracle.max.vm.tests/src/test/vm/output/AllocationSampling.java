@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.vm.output;
+
+import static com.sun.max.vm.VMConfiguration.*;
+import static test.vm.output.VMOutputTests.*;
+
+import com.sun.max.vm.profilers.sampling.*;
+
+/**
+ * Tests the ring buffer and the sample weights of the {@link TLABAllocationSampler}. With a ring buffer too small for
+ * the samples taken between two drains, the oldest samples are counted as lost and only the last ones are drained.
+ * With a ring buffer large enough, no sample is lost and the weights of the samples add up to about the number of
+ * bytes allocated. The test is skipped if the VM was started with the sampling profiler.
+ */
+public class AllocationSampling {
+
+    static final int INTERVAL = 16 * 1024;
+    static final int DEPTH = 8;
+    static final int SMALL_BUFFER = 4;
+    static final int LARGE_BUFFER = 64 * 1024;
+    static final int ARRAYS = 64 * 1024;
+    static final int ARRAY_LENGTH = 1024;
+
+    static byte[] sink;
+
+    public static void main(String[] args) {
+        final boolean check = isMaxine && vmConfig().heapScheme().usesTLAB() && !TLABAllocationSampler.isSampling;
+        final TLABAllocationSampler sampler = check ? TLABAllocationSampler.sampler() : null;
+
+        if (check) {
+            sampler.start(INTERVAL, DEPTH, SMALL_BUFFER);
+        }
+        long allocated = allocate();
+        if (check) {
+            sampler.stop();
+            sampler.drain();
+            if (sampler.totalSamples() != SMALL_BUFFER || sampler.lostSamples() == 0) {
+                System.out.println("small buffer: " + sampler.totalSamples() + " samples drained, " + sampler.lostSamples() + " lost");
+            }
+            sampler.reset();
+            sampler.start(INTERVAL, DEPTH, LARGE_BUFFER);
+        }
+        allocated += allocate();
+        if (check) {
+            sampler.stop();
+            sampler.drain();
+            final long bytes = sampler.totalBytes();
+            final long expected = allocated / 2;
+            if (sampler.totalSamples() == 0 || sampler.lostSamples() != 0 || bytes < expected / 2 || bytes > expected * 2) {
+                System.out.println("large buffer: " + sampler.totalSamples() + " samples drained, " + sampler.lostSamples() + " lost, " +
+                                bytes + " bytes sampled, about " + expected + " expected");
+            }
+            sampler.reset();
+        }
+        System.out.println("allocated: " + allocated);
+        System.out.println("done.");
+    }
+
+    private static long allocate() {
+        long allocated = 0;
+        for (int i = 0; i < ARRAYS; i++) {
+            sink = new byte[ARRAY_LENGTH];
+            allocated += sink.length;
+        }
+        return allocated;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.vm.output;
+
+import static test.vm.output.VMOutputTests.*;
+
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.*;
+import com.sun.max.vm.compiler.target.*;
+
+/**
+ * Tests that a hot method is recompiled by a background compiler thread while the thread that made it hot keeps
+ * running its baseline code, and that the recompiled code is installed in the method's vtable entry.
+ */
+public class BackgroundCompilation {
+
+    static class Counter {
+        int next(int i) {
+            return i & 0xff;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Counter counter = new Counter();
+        long sum = 0;
+        for (int i = 0; i < 100000; i++) {
+            sum += counter.next(i);
+        }
+        System.out.println("sum: " + sum);
+        if (isMaxine) {
+            VirtualMethodActor cma = (VirtualMethodActor) methodActor(Counter.class, "next", int.class);
+            // The recompilation is queued by the counter overflow and completes asynchronously.
+            boolean installed = false;
+            for (int i = 0; i < 1000 && !installed; i++) {
+                counter.next(i);
+                Thread.sleep(10);
+                installed = isInstalled(cma);
+            }
+            if (!installed) {
+                System.out.println("recompilation of " + cma + " was not installed");
+            }
+        }
+        System.out.println("done.");
+    }
+
+    private static boolean isInstalled(VirtualMethodActor cma) {
+        TargetMethod tm = cma.currentTargetMethod();
+        if (tm == null || tm.isBaseline()) {
+            return false;
+        }
+        Hub hub = cma.holder().dynamicHub();
+        return hub.getWord(Hub.vTableStartIndex() + cma.vTableIndex()).equals(tm.getEntryPoint(CallEntryPoint.VTABLE_ENTRY_POINT).toAddress());
+    }
+}
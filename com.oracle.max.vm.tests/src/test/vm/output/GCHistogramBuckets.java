@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.vm.output;
+
+import static test.vm.output.VMOutputTests.*;
+
+import com.sun.max.vm.heap.*;
+
+/**
+ * Tests the bucketing of {@link GCHistogram}: values below {@code 2^subBucketBits} are counted exactly, larger values in
+ * buckets whose width is bounded relative to their values, and values beyond the precise range in the last bucket.
+ */
+public class GCHistogramBuckets {
+
+    static final int SUB_BUCKET_BITS = 7;
+    static final int MAX_VALUE_BITS = 40;
+
+    public static void main(String[] args) {
+        if (isMaxine) {
+            checkExactValues();
+            checkRelativeError();
+            checkPercentiles();
+            checkOverflow();
+        }
+        System.out.println("done.");
+    }
+
+    private static void checkExactValues() {
+        for (long value = 0; value < 1 << SUB_BUCKET_BITS; value++) {
+            final GCHistogram histogram = new GCHistogram(SUB_BUCKET_BITS, MAX_VALUE_BITS);
+            histogram.record(value);
+            histogram.record(1L << 30);
+            if (histogram.percentile(50) != value) {
+                System.out.println("value " + value + " counted as " + histogram.percentile(50));
+            }
+        }
+    }
+
+    private static void checkRelativeError() {
+        for (long value = 1 << SUB_BUCKET_BITS; value < 1L << (MAX_VALUE_BITS - 1); value = value * 3 / 2 + 1) {
+            final GCHistogram histogram = new GCHistogram(SUB_BUCKET_BITS, MAX_VALUE_BITS);
+            histogram.record(value);
+            histogram.record(1L << (MAX_VALUE_BITS - 1));
+            final long counted = histogram.percentile(50);
+            // Values of a bucket differ by less than 1 / 2^(subBucketBits - 1) of their magnitude.
+            if (counted < value || counted - value > value >> (SUB_BUCKET_BITS - 1)) {
+                System.out.println("value " + value + " counted as " + counted);
+            }
+        }
+    }
+
+    private static void checkPercentiles() {
+        final GCHistogram histogram = new GCHistogram(SUB_BUCKET_BITS, MAX_VALUE_BITS);
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+        if (histogram.count() != 10000 || histogram.min() != 1 || histogram.max() != 10000 || histogram.mean() != 5000) {
+            System.out.println("count " + histogram.count() + ", min " + histogram.min() + ", max " + histogram.max() + ", mean " + histogram.mean());
+        }
+        checkPercentile(histogram, 50, 5000);
+        checkPercentile(histogram, 99, 9900);
+        checkPercentile(histogram, 100, 10000);
+        histogram.reset();
+        if (histogram.count() != 0 || histogram.percentile(99) != 0) {
+            System.out.println("histogram not reset");
+        }
+    }
+
+    private static void checkPercentile(GCHistogram histogram, double percentile, long expected) {
+        final long value = histogram.percentile(percentile);
+        if (value < expected || value - expected > expected >> (SUB_BUCKET_BITS - 1)) {
+            System.out.println("percentile " + percentile + " is " + value + ", expected " + expected);
+        }
+    }
+
+    private static void checkOverflow() {
+        final GCHistogram histogram = new GCHistogram(SUB_BUCKET_BITS, MAX_VALUE_BITS);
+        final long value = 1L << (MAX_VALUE_BITS + 5);
+        histogram.record(1);
+        histogram.record(value);
+        if (histogram.max() != value || histogram.percentile(100) != value) {
+            System.out.println("value " + value + " counted as " + histogram.percentile(100) + ", max " + histogram.max());
+        }
+    }
+}
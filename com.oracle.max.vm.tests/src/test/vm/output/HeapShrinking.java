@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.vm.output;
+
+import static test.vm.output.VMOutputTests.*;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.heap.gcx.*;
+
+/**
+ * Tests the shrinking decisions of {@link HeapResizingPolicy} on a space that only records the resize requests.
+ * A policy sizes the shrink from the time-decayed occupancy: a low occupancy right after a high one doesn't shrink the space,
+ * whereas a low occupancy alone shrinks it to the policy's maximum free space ratio, and never below the reserved free space.
+ */
+public class HeapShrinking {
+
+    static final long MB = 1024 * 1024;
+
+    static final class RecordingSpace implements ResizableSpace {
+        long totalSpace;
+        long shrinkage;
+
+        RecordingSpace(long totalSpace) {
+            this.totalSpace = totalSpace;
+        }
+
+        public Size increaseSize(Size delta) {
+            return Size.zero();
+        }
+
+        public Size decreaseSize(Size delta) {
+            shrinkage += delta.toLong();
+            totalSpace -= delta.toLong();
+            return delta;
+        }
+
+        public Size totalSpace() {
+            return Size.fromLong(totalSpace);
+        }
+
+        public Size capacity() {
+            return Size.fromLong(totalSpace);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (isMaxine) {
+            check();
+        }
+        System.out.println("done.");
+    }
+
+    private static void check() {
+        HeapResizingPolicy policy = new HeapResizingPolicy();
+        RecordingSpace space = new RecordingSpace(100 * MB);
+        policy.resizeAfterCollection(Size.fromLong(10 * MB), space);
+        policy.resizeAfterCollection(Size.fromLong(95 * MB), space);
+        if (space.shrinkage != 0) {
+            System.out.println("shrunk by " + space.shrinkage + " bytes right after a high occupancy");
+        }
+
+        policy = new HeapResizingPolicy();
+        space = new RecordingSpace(100 * MB);
+        policy.resizeAfterCollection(Size.fromLong(95 * MB), space);
+        // 5 MB used must leave 70% of free space, i.e., the space shrinks to 5 * 100 / 30 MB.
+        long expected = 100 * MB - 5 * MB * 100 / 30;
+        if (space.shrinkage != expected) {
+            System.out.println("shrunk by " + space.shrinkage + " bytes, expected " + expected);
+        }
+
+        policy = new HeapResizingPolicy();
+        space = new RecordingSpace(100 * MB);
+        policy.shrinkAfterCollection(Size.fromLong(95 * MB), space, Size.fromLong(80 * MB));
+        if (space.shrinkage != 15 * MB) {
+            System.out.println("shrunk by " + space.shrinkage + " bytes, expected to keep 80 MB free");
+        }
+    }
+}
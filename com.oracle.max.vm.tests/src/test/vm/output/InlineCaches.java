@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.vm.output;
+
+import static test.vm.output.VMOutputTests.*;
+
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.target.*;
+
+/**
+ * Tests an {@code invokeinterface} call site in optimized code as its {@linkplain InlineCache inline cache} goes
+ * from monomorphic to polymorphic to megamorphic, checking that every state dispatches to the right
+ * implementation.
+ */
+public class InlineCaches {
+
+    static final int ROUNDS = 200;
+    static final int CALLS_PER_ROUND = 10000;
+
+    interface Shape {
+        int sides();
+    }
+
+    static class Triangle implements Shape {
+        public int sides() {
+            return 3;
+        }
+    }
+
+    static class Square implements Shape {
+        public int sides() {
+            return 4;
+        }
+    }
+
+    static class Pentagon implements Shape {
+        public int sides() {
+            return 5;
+        }
+    }
+
+    static class Hexagon implements Shape {
+        public int sides() {
+            return 6;
+        }
+    }
+
+    static class Heptagon implements Shape {
+        public int sides() {
+            return 7;
+        }
+    }
+
+    static class Octagon implements Shape {
+        public int sides() {
+            return 8;
+        }
+    }
+
+    static int sides(Shape shape, int n) {
+        return shape.sides() * n;
+    }
+
+    public static void main(String[] args) {
+        Shape[] shapes = {new Triangle(), new Square(), new Pentagon(), new Hexagon(), new Heptagon(), new Octagon()};
+
+        // the call is warmed up with three receiver types so that it is not inlined for a profiled receiver type
+        TargetMethod opt = null;
+        long sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < CALLS_PER_ROUND; i++) {
+                sum += sides(shapes[i % 3], 1);
+            }
+            if (isMaxine) {
+                opt = optimized(sidesMethodActor());
+                if (opt != null) {
+                    break;
+                }
+            }
+        }
+        System.out.println("warmed up: " + (sum % 12 == 0));
+
+        // calls made by the optimized code during the warm up may already have been cached
+        System.out.println("sides(triangle) = " + sides(shapes[0], 2));
+        System.out.println("sides(triangle, square, pentagon) = " + (sides(shapes[0], 1) + sides(shapes[1], 1) + sides(shapes[2], 1)));
+        check(opt, 3);
+        System.out.println("sides(hexagon) = " + sides(shapes[3], 1));
+        check(opt, 4);
+        System.out.println("sides(heptagon) = " + sides(shapes[4], 1));
+        check(opt, 5);
+        sum = 0;
+        for (int i = 0; i < shapes.length * 10; i++) {
+            sum += sides(shapes[i % shapes.length], 1);
+        }
+        System.out.println("sides(all shapes) = " + sum);
+        check(opt, shapes.length);
+        System.out.println("done.");
+    }
+
+    private static ClassMethodActor sidesMethodActor() {
+        return methodActor(InlineCaches.class, "sides", Shape.class, int.class);
+    }
+
+    /**
+     * Checks the number of receiver classes covered by the inline cache of the call site in {@code opt}, which must
+     * have no inline cache if they are disabled. The check is skipped once the code has been replaced.
+     *
+     * @param classes the number of receiver classes the call site has seen
+     */
+    private static void check(TargetMethod opt, int classes) {
+        if (opt == null || opt != optimized(sidesMethodActor())) {
+            return;
+        }
+        int expected = classes > InlineCache.InlineCacheSize ? -1 : classes;
+        Safepoints safepoints = opt.safepoints();
+        int dcIndex = 0;
+        for (int i = safepoints.nextDirectCall(0); i >= 0; i = safepoints.nextDirectCall(i + 1)) {
+            if (InlineCache.isCallSite(opt.directCallees()[dcIndex])) {
+                if (InlineCache.InlineCacheSize == 0) {
+                    System.out.println(opt + " has an inline cache call site with inline caches disabled");
+                    return;
+                }
+                InlineCache cache = InlineCache.calledFrom(opt, safepoints.causePosAt(i));
+                int actual = cache == null ? 0 : cache.size();
+                if (actual != expected) {
+                    System.out.println("inline cache of " + opt + " has size " + actual + ", expected " + expected);
+                }
+                return;
+            }
+            dcIndex++;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.vm.output;
+
+import static test.vm.output.VMOutputTests.*;
+
+import com.sun.max.vm.monitor.modal.sync.*;
+import com.sun.max.vm.object.*;
+
+/**
+ * Tests that {@link ContentionCounters} records the inflation of a contended monitor, the contended acquisition and the
+ * time the contending thread was blocked. The main thread holds the monitor until the contending thread is blocked on it.
+ */
+public class MonitorContention {
+
+    static final class Lock {
+    }
+
+    static final Lock lock = new Lock();
+
+    static final class Contender extends Thread {
+        volatile boolean entered;
+
+        @Override
+        public void run() {
+            synchronized (lock) {
+                entered = true;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final Contender contender = new Contender();
+        synchronized (lock) {
+            contender.start();
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (contender.getState() != Thread.State.BLOCKED && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+        contender.join();
+        System.out.println("entered: " + contender.entered);
+        if (isMaxine) {
+            final ContentionCounters counters = ObjectAccess.readHub(lock).contentionCounters();
+            if (counters == null) {
+                System.out.println("no contention counters for " + Lock.class.getName());
+            } else if (counters.inflations() < 1 || counters.contendedEnters() < 1 || counters.blockedNanos() <= 0) {
+                System.out.println("inflations: " + counters.inflations() + ", contended enters: " + counters.contendedEnters() +
+                                ", blocked ns: " + counters.blockedNanos());
+            }
+        }
+        System.out.println("done.");
+    }
+}
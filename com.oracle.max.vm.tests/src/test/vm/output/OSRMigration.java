@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.vm.output;
+
+import static com.sun.max.vm.MaxineVM.*;
+import static test.vm.output.VMOutputTests.*;
+
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.profile.*;
+
+/**
+ * Tests that an activation of a baseline method spinning in a loop with live {@code long}, {@code double}
+ * and reference locals is replaced by an OSR variant, unless OSR is disabled, and that the values of the locals
+ * survive the migration.
+ */
+public class OSRMigration {
+
+    static final int ITERATIONS = 2000000;
+
+    static String loop(String[] names, int n) {
+        long l = 0x100000000L;
+        double d = 0.5d;
+        String s = names[0];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            l += i;
+            d = d * 1.000001d + 0.25d;
+            s = names[i % names.length];
+            count += s.length();
+        }
+        return "l=" + l + " d=" + d + " s=" + s + " count=" + count;
+    }
+
+    public static void main(String[] args) {
+        String[] names = {"zero", "one", "two", "three", "four", "five", "six"};
+        System.out.println(loop(names, ITERATIONS));
+        if (isMaxine) {
+            ClassMethodActor cma = methodActor(OSRMigration.class, "loop", String[].class, int.class);
+            TargetMethod baseline = baseline(cma);
+            MethodProfile mpo = baseline == null ? null : baseline.profile();
+            if (mpo == null) {
+                System.out.println(cma + " was not profiled by baseline code");
+            } else if (vm().compilationBroker.isOSREnabled() != isReplaced(mpo, cma.codeAttribute().code().length)) {
+                System.out.println(cma + (vm().compilationBroker.isOSREnabled() ? " was not replaced on stack" : " was replaced on stack with OSR disabled"));
+            }
+        }
+        System.out.println("done.");
+    }
+
+    private static boolean isReplaced(MethodProfile mpo, int codeLength) {
+        for (int bci = 0; bci < codeLength; bci++) {
+            if (mpo.isOSRAttempted(bci) && mpo.osrMethod(bci) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.vm.output;
+
+import static test.vm.output.VMOutputTests.*;
+
+import com.sun.c1x.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.profile.*;
+
+/**
+ * Tests that a virtual call inlined for the receiver types in its profile deoptimizes when it sees another
+ * receiver type, that the call is re-executed with the right implementation and that the failed guard is
+ * recorded in the profile of the method containing the call.
+ */
+public class ProfiledReceiverGuard {
+
+    static final int ROUNDS = 200;
+    static final int CALLS_PER_ROUND = 10000;
+
+    abstract static class Shape {
+        abstract int sides();
+    }
+
+    static class Triangle extends Shape {
+        @Override
+        int sides() {
+            return 3;
+        }
+    }
+
+    static class Quadrilateral extends Shape {
+        @Override
+        int sides() {
+            return 4;
+        }
+    }
+
+    static class Square extends Quadrilateral {
+    }
+
+    static class Rhombus extends Quadrilateral {
+    }
+
+    static int monomorphic(Shape shape, int n) {
+        return shape.sides() * n;
+    }
+
+    static int bimorphic(Shape shape, int n) {
+        return shape.sides() * n;
+    }
+
+    public static void main(String[] args) {
+        // all shapes are loaded up front so that the calls cannot be bound by class hierarchy analysis
+        Shape[] shapes = {new Triangle(), new Square(), new Rhombus()};
+
+        TargetMethod monomorphicOpt = null;
+        TargetMethod bimorphicOpt = null;
+        long sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < CALLS_PER_ROUND; i++) {
+                sum += monomorphic(shapes[1], 1);
+                sum += bimorphic(shapes[1 + (i & 1)], 1);
+            }
+            if (isMaxine) {
+                monomorphicOpt = optimized(guardedMethodActor("monomorphic"));
+                bimorphicOpt = optimized(guardedMethodActor("bimorphic"));
+                if (monomorphicOpt != null && bimorphicOpt != null) {
+                    break;
+                }
+            }
+        }
+        System.out.println("warmed up: " + (sum % (8 * CALLS_PER_ROUND) == 0));
+
+        // the guards fail, so both calls are re-executed in the deoptimized frames
+        System.out.println("monomorphic(triangle) = " + monomorphic(shapes[0], 2));
+        System.out.println("bimorphic(triangle) = " + bimorphic(shapes[0], 3));
+        System.out.println("monomorphic(rhombus) = " + monomorphic(shapes[2], 2));
+
+        if (isMaxine) {
+            check("monomorphic", monomorphicOpt);
+            check("bimorphic", bimorphicOpt);
+        }
+        System.out.println("done.");
+    }
+
+    private static ClassMethodActor guardedMethodActor(String name) {
+        return methodActor(ProfiledReceiverGuard.class, name, Shape.class, int.class);
+    }
+
+    /**
+     * Checks that {@code opt} was deoptimized by a failed receiver type guard, or that it has no guard to fail if
+     * profiled receiver types are not inlined.
+     */
+    private static void check(String name, TargetMethod opt) {
+        ClassMethodActor cma = guardedMethodActor(name);
+        MethodProfile mpo = cma.baselineProfile();
+        if (opt == null) {
+            System.out.println(cma + " was not optimized");
+        } else if (!C1XOptions.OptInlineProfiledReceivers) {
+            if (opt.invalidated() != null) {
+                System.out.println(opt + " was deoptimized without inlined receiver types");
+            }
+        } else if (opt.invalidated() == null) {
+            System.out.println(opt + " was not deoptimized");
+        } else if (mpo == null || !hasUncommonTrap(mpo, cma.codeAttribute().code().length)) {
+            System.out.println(cma + " has no uncommon trap in its profile");
+        }
+    }
+
+    private static boolean hasUncommonTrap(MethodProfile mpo, int codeLength) {
+        for (int bci = 0; bci < codeLength; bci++) {
+            if (mpo.hasUncommonTrap(bci)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.vm.output;
+
+import static com.sun.max.vm.VMConfiguration.*;
+import static test.vm.output.VMOutputTests.*;
+
+import com.sun.max.vm.heap.*;
+
+/**
+ * Tests that the adaptive TLAB refill policies of an image built with {@code -XX:+ResizeTLAB} account for the TLAB space
+ * handed out to a thread, and add their per-epoch statistics to the totals kept by {@link TLABLog}.
+ */
+public class TLABResizing {
+
+    static final int ARRAYS = 1000000;
+    static final int ARRAY_LENGTH = 48;
+
+    static byte[] sink;
+
+    public static void main(String[] args) {
+        boolean check = isMaxine && HeapSchemeWithTLAB.ResizeTLAB && vmConfig().heapScheme().usesTLAB();
+        long epochs = 0;
+        long tlabBytes = 0;
+        long wastedBytes = 0;
+        long slowAllocatedBytes = 0;
+        if (check) {
+            System.gc();
+            epochs = TLABLog.resizingEpochs();
+            tlabBytes = TLABLog.resizingTLABBytes();
+            wastedBytes = TLABLog.resizingWastedBytes();
+            slowAllocatedBytes = TLABLog.resizingSlowAllocatedBytes();
+        }
+        long allocated = 0;
+        for (int i = 0; i < ARRAYS; i++) {
+            sink = new byte[ARRAY_LENGTH];
+            allocated += sink.length;
+        }
+        // the collection retires the TLABs, which ends the current epoch of every thread
+        System.gc();
+        System.out.println("allocated: " + allocated);
+        if (check) {
+            epochs = TLABLog.resizingEpochs() - epochs;
+            tlabBytes = TLABLog.resizingTLABBytes() - tlabBytes;
+            wastedBytes = TLABLog.resizingWastedBytes() - wastedBytes;
+            slowAllocatedBytes = TLABLog.resizingSlowAllocatedBytes() - slowAllocatedBytes;
+            if (epochs == 0) {
+                System.out.println("no TLAB resizing epoch was recorded");
+            } else if (wastedBytes > tlabBytes) {
+                System.out.println("wasted " + wastedBytes + " bytes out of " + tlabBytes + " bytes of TLABs");
+            } else if (tlabBytes - wastedBytes + slowAllocatedBytes < allocated) {
+                System.out.println("recorded " + (tlabBytes - wastedBytes + slowAllocatedBytes) + " allocated bytes, expected at least " + allocated);
+            }
+        }
+        System.out.println("done.");
+    }
+}
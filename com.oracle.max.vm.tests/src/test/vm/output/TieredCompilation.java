@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.vm.output;
+
+import static com.sun.max.vm.MaxineVM.*;
+import static test.vm.output.VMOutputTests.*;
+
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.target.*;
+
+/**
+ * Tests that a method that stays hot in optimized code is recompiled by the tier 3 compiler, if the image has one
+ * (e.g., built with {@code -tier3=C1XGraal}) and tiered compilation is enabled, and that the tier 3 code replaces
+ * the optimized code.
+ */
+public class TieredCompilation {
+
+    static int hot(int i) {
+        return (i * 31) & 0xff;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long sum = 0;
+        for (int i = 0; i < 100000; i++) {
+            sum += hot(i);
+        }
+        System.out.println("sum: " + sum);
+        if (isMaxine && vm().compilationBroker.isTiered()) {
+            ClassMethodActor cma = methodActor(TieredCompilation.class, "hot", int.class);
+            Runnable work = new Runnable() {
+                public void run() {
+                    for (int i = 0; i < 100000; i++) {
+                        hot(i);
+                    }
+                }
+            };
+            TargetMethod tier2 = waitForOptimized(cma, null, work);
+            if (tier2 == null) {
+                System.out.println(cma + " was not recompiled by the optimizing compiler");
+            } else if (waitForOptimized(cma, tier2, work) == null) {
+                System.out.println(cma + " was not recompiled by the tier 3 compiler");
+            }
+        }
+        System.out.println("done.");
+    }
+}
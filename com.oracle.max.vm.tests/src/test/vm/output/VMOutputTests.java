@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package test.vm.output;
+
+import com.sun.max.lang.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.RuntimeCompiler.Nature;
+import com.sun.max.vm.compiler.target.*;
+
+/**
+ * Helpers shared by the VM output tests that check how Maxine compiles their methods.
+ * The tests print the same output on the reference VM, where these checks are skipped.
+ */
+final class VMOutputTests {
+
+    private VMOutputTests() {
+    }
+
+    /**
+     * Indicates whether the test runs on Maxine, as opposed to the reference VM.
+     */
+    static final boolean isMaxine = System.getProperty("java.vm.name").startsWith("Maxine");
+
+    static ClassMethodActor methodActor(Class<?> holder, String name, Class<?>... parameterTypes) {
+        return ClassMethodActor.fromJava(Classes.getDeclaredMethod(holder, name, parameterTypes));
+    }
+
+    /**
+     * Returns the current optimized code of a method, or {@code null} if it has none.
+     */
+    static TargetMethod optimized(ClassMethodActor cma) {
+        return Compilations.currentTargetMethod(cma.compiledState, Nature.OPT);
+    }
+
+    /**
+     * Returns the current baseline code of a method, or {@code null} if it has none.
+     */
+    static TargetMethod baseline(ClassMethodActor cma) {
+        return Compilations.currentTargetMethod(cma.compiledState, Nature.BASELINE);
+    }
+
+    /**
+     * Keeps running {@code work} until the optimized code of a method is not {@code replaced}.
+     * Recompilations may complete asynchronously, so the current thread sleeps between runs.
+     *
+     * @return the new optimized code or {@code null} if none is installed after 10 seconds
+     */
+    static TargetMethod waitForOptimized(ClassMethodActor cma, TargetMethod replaced, Runnable work) throws InterruptedException {
+        for (int n = 0; n < 1000; n++) {
+            work.run();
+            TargetMethod tm = optimized(cma);
+            if (tm != null && tm != replaced) {
+                return tm;
+            }
+            Thread.sleep(10);
+        }
+        return null;
+    }
+}
@@ -238,6 +238,51 @@ public final class VirtualMemory {
     @C_FUNCTION
     private static native Size virtualMemory_getPhysicalMemorySize();
 
+    /* NUMA methods */
+
+    /**
+     * Returns the number of NUMA nodes of the underlying platform, or 1 if the platform doesn't support NUMA.
+     */
+    public static int numaNodeCount() {
+        return virtualMemory_numaNodeCount();
+    }
+
+    /**
+     * Returns the NUMA node of the CPU the current thread is running on.
+     * The result is only a hint as the thread may migrate to another node at any time.
+     */
+    @INLINE
+    public static int numaCurrentNode() {
+        return virtualMemory_numaCurrentNode();
+    }
+
+    /**
+     * Sets the preferred NUMA node of a range of virtual memory. Pages of the range that are already backed by physical memory
+     * are migrated to the node, unless {@code discard} is true, in which case their content is thrown away and they are
+     * re-allocated on the node when next touched.
+     *
+     * @param address page aligned start of the range
+     * @param size size of the range
+     * @param node the NUMA node the range should be placed on
+     * @param discard whether the current content of the range can be thrown away
+     * @return true if the range was bound to the node, false otherwise
+     */
+    public static boolean numaBind(Address address, Size size, int node, boolean discard) {
+        if (TraceAnonOperations) {
+            traceRange("numaBind", address, size);
+        }
+        return virtualMemory_numaBind(address, size, node, discard);
+    }
+
+    @C_FUNCTION
+    private static native int virtualMemory_numaNodeCount();
+
+    @C_FUNCTION
+    private static native int virtualMemory_numaCurrentNode();
+
+    @C_FUNCTION
+    private static native boolean virtualMemory_numaBind(Address address, Size size, int node, boolean discard);
+
     /* Page protection methods */
 
     /**
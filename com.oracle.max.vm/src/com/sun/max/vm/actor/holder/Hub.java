@@ -37,6 +37,7 @@ import com.sun.max.vm.heap.*;
 import com.sun.max.vm.layout.*;
 import com.sun.max.vm.layout.Layout.Category;
 import com.sun.max.vm.monitor.modal.modehandlers.lightweight.biased.*;
+import com.sun.max.vm.monitor.modal.sync.*;
 import com.sun.max.vm.object.*;
 import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
@@ -202,6 +203,29 @@ public abstract class Hub extends Hybrid {
         this.biasedLockRevocationHeuristics = biasedLockRevocationHeuristics;
     }
 
+    @CONSTANT_WHEN_NOT_ZERO
+    private ContentionCounters contentionCounters;
+
+    @FOLD
+    private static int contentionCountersOffset() {
+        return ClassActor.fromJava(Hub.class).findLocalInstanceFieldActor("contentionCounters").offset();
+    }
+
+    @INLINE
+    public final ContentionCounters contentionCounters() {
+        return contentionCounters;
+    }
+
+    /**
+     * Sets the monitor contention counters of this hub unless they have already been set.
+     *
+     * @return the counters of this hub after the call
+     */
+    public final ContentionCounters installContentionCounters(ContentionCounters counters) {
+        final Reference witness = Reference.fromJava(this).compareAndSwapReference(contentionCountersOffset(), null, Reference.fromJava(counters));
+        return witness.isZero() ? counters : (ContentionCounters) witness.toJava();
+    }
+
     private int getITableLength(int[] superClassActorIds, Iterable<InterfaceActor> allInterfaceActors) {
         int result = 1 + superClassActorIds.length;
         if (classActor.isReferenceClassActor()) {
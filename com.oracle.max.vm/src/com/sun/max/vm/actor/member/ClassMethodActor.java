@@ -41,6 +41,7 @@ import com.sun.max.vm.compiler.RuntimeCompiler.*;
 import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.jni.*;
 import com.sun.max.vm.object.ObjectAccess;
+import com.sun.max.vm.profile.*;
 import com.sun.max.vm.runtime.FatalError;
 import com.sun.max.vm.type.*;
 import com.sun.max.vm.verifier.*;
@@ -405,6 +406,29 @@ public abstract class ClassMethodActor extends MethodActor {
         return Compilations.currentTargetMethod(compiledState, null);
     }
 
+    /**
+     * Gets the profile collected by the current baseline version of this method.
+     *
+     * @return {@code null} if there is no baseline version or it is not instrumented
+     */
+    public final MethodProfile baselineProfile() {
+        TargetMethod tm = Compilations.currentTargetMethod(compiledState, Nature.BASELINE);
+        return tm == null ? null : tm.profile();
+    }
+
+    /**
+     * Gets the receiver type profile at {@code bci}, unless optimized code speculating on it has already
+     * deoptimized there.
+     */
+    @Override
+    public RiTypeProfile typeProfile(int bci) {
+        MethodProfile mpo = baselineProfile();
+        if (mpo == null || mpo.hasUncommonTrap(bci)) {
+            return null;
+        }
+        return mpo.getReceiverTypeProfile(bci);
+    }
+
     /**
      * Records if this object returned {@code true} for a call to {@link #canBePermanentlyLinked()} during
      * boot image building.
@@ -41,6 +41,7 @@ import com.sun.max.vm.actor.*;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.code.*;
+import com.sun.max.vm.compiler.deps.*;
 import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.compiler.target.amd64.*;
 import com.sun.max.vm.compiler.target.arm.*;
@@ -67,9 +68,31 @@ public class CompilationBroker {
     private static int RCT = 5000;
 
     /**
-     * A queue of pending compilations.
+     * A queue of pending background recompilations, hottest first.
      */
-    protected final LinkedList<Compilation> pending = new LinkedList<Compilation>();
+    protected final TreeSet<QueuedCompilation> pending = new TreeSet<QueuedCompilation>(QueuedCompilation.HOTTEST_FIRST);
+
+    /**
+     * The {@linkplain #pending queued} recompilations, indexed by the profile of the method they recompile.
+     * A method has at most one queued recompilation as it is recorded in its {@linkplain ClassMethodActor#compiledState compiled state}.
+     */
+    private final HashMap<MethodProfile, QueuedCompilation> queuedByProfile = new HashMap<MethodProfile, QueuedCompilation>();
+
+    /**
+     * Number of background recompilations ever queued, used to order equally hot requests.
+     */
+    private long queuedCompilations;
+
+    /**
+     * The background compiler threads or {@code null} if they have not been started.
+     */
+    private CompilationThread[] compilationThreads;
+
+    /**
+     * Specifies if recompilations by the {@link #optimizingCompiler} are profiled and promoted to the
+     * {@link #tier3Compiler} once they stay hot. Only set once the compiler threads are running.
+     */
+    private boolean tiered;
 
     /**
      * The baseline compiler.
@@ -81,6 +104,12 @@ public class CompilationBroker {
      */
     public final RuntimeCompiler optimizingCompiler;
 
+    /**
+     * The compiler for methods that stay hot in code produced by the {@link #optimizingCompiler} or
+     * {@code null} if compilation is not tiered.
+     */
+    public final RuntimeCompiler tier3Compiler;
+
     /**
      * Other compilers registered with {@link #addCompiler}.
      */
@@ -91,10 +120,28 @@ public class CompilationBroker {
     private static boolean FailOverCompilation = true;
     private static boolean VMExtOpt;
     static int PrintCodeCacheMetrics;
+    private static boolean BackgroundCompilation = true;
+    private static int CompilerThreads = 2;
+    private static boolean TieredCompilation = true;
+    private static int Tier3Threshold = 50000;
+    private static boolean OSR = true;
+    private static int OSRRetryInterval = 1000;
 
     private static boolean offline = false;
     private static boolean simulateAdapter = false;
 
+    /**
+     * Number of invocations and loop iterations before a profile counter that overflowed while the current thread could not
+     * recompile (e.g., because allocation is disabled) overflows again.
+     */
+    private static final int RECOMPILATION_UNAVAILABLE_COUNT = 1000;
+
+    /**
+     * Number of invocations and loop iterations before a profile counter that overflowed while the recompilation of its
+     * method is pending overflows again.
+     */
+    private static final int RECOMPILATION_PENDING_COUNT = 10000;
+
     static {
         addFieldOption("-X", "opt", CompilationBroker.class, "Select optimizing compiler whenever possible.");
         addFieldOption("-XX:", "RCT", CompilationBroker.class, "Set the recompilation threshold for methods. Use 0 to disable recompilation. (default: " + RCT + ").");
@@ -103,6 +150,14 @@ public class CompilationBroker {
         addFieldOption("-XX:", "PrintCodeCacheMetrics", CompilationBroker.class, "Print code cache metrics (0 = disabled, 1 = summary, 2 = verbose).");
         addFieldOption("-XX:", "VMExtOpt", CompilationBroker.class, "Compile VM extensions with optimizing compiler (default: false");
         addFieldOption("-XX:", "AddCompiler", CompilationBroker.class, "Add a compiler, Name:Class");
+        addFieldOption("-XX:", "BackgroundCompilation", CompilationBroker.class, "Recompile hot methods on background compiler threads instead of the thread that triggered the recompilation.");
+        addFieldOption("-XX:", "CompilerThreads", CompilationBroker.class, "Number of background compiler threads (default: " + CompilerThreads + ").");
+        addFieldOption("-XX:", "TieredCompilation", CompilationBroker.class, "Recompile methods that stay hot in optimized code with the tier 3 compiler, if one is configured.");
+        addFieldOption("-XX:", "Tier3Threshold", CompilationBroker.class, "Set the number of invocations and loop iterations in optimized code after which a method " +
+            "is recompiled with the tier 3 compiler (default: " + Tier3Threshold + ").");
+        addFieldOption("-XX:", "OSR", CompilationBroker.class, "Replace baseline activations that spin in a hot loop with optimized code entered at the loop header.");
+        addFieldOption("-XX:", "OSRRetryInterval", CompilationBroker.class, "Set the number of loop iterations after which a baseline activation that could not be " +
+            "replaced on a backward branch counter overflow overflows the counter again (default: " + OSRRetryInterval + ").");
     }
 
     @RESET
@@ -161,8 +216,6 @@ public class CompilationBroker {
      */
     private RuntimeCompiler defaultCompiler;
 
-    private static final boolean BACKGROUND_COMPILATION = false;
-
     public boolean needsAdapters() {
         return baselineCompiler != null;
     }
@@ -171,6 +224,20 @@ public class CompilationBroker {
         return baselineCompiler != null;
     }
 
+    /**
+     * Determines if methods that stay hot in optimized code are recompiled by the {@link #tier3Compiler}.
+     */
+    public boolean isTiered() {
+        return tiered;
+    }
+
+    /**
+     * Determines if baseline activations spinning in a hot loop are replaced on stack by optimized code.
+     */
+    public boolean isOSREnabled() {
+        return OSR;
+    }
+
     public boolean isOffline() {
         return offline;
     }
@@ -191,6 +258,7 @@ public class CompilationBroker {
 
     private static final String OPTIMIZING_COMPILER_PROPERTY = CompilationBroker.class.getSimpleName() + "." + optimizingCompilerOption.getName();
     private static final String BASELINE_COMPILER_PROPERTY = CompilationBroker.class.getSimpleName() + "." + baselineCompilerOption.getName();
+    private static final String TIER3_COMPILER_PROPERTY = CompilationBroker.class.getSimpleName() + "." + tier3CompilerOption.getName();
 
     /**
      * Gets the class name of the optimizing compiler that will be configured when an instance of this scheme is instantiated.
@@ -208,6 +276,14 @@ public class CompilationBroker {
         return configValue(BASELINE_COMPILER_PROPERTY, baselineCompilerOption, aliases);
     }
 
+    /**
+     * Gets the class name of the tier 3 compiler that will be configured when an instance of this scheme is instantiated.
+     */
+    @HOSTED_ONLY
+    public static String tier3Name() {
+        return configValue(TIER3_COMPILER_PROPERTY, tier3CompilerOption, aliases);
+    }
+
     /**
      * The name of the system property specifying a subclass of {@link CompilationBroker} that is
      * to be instantiated instead of {@link CompilationBroker} itself.
@@ -257,6 +333,13 @@ public class CompilationBroker {
             baselineCompiler = null;
             defaultCompiler = optimizingCompiler;
         }
+        String tier3Name = tier3Name();
+        if (tier3Name != null && baselineCompiler != null) {
+            tier3Compiler = instantiateCompiler(tier3Name);
+            assert tier3Compiler.nature() == Nature.OPT : tier3Compiler + " is not an optimizing compiler";
+        } else {
+            tier3Compiler = null;
+        }
     }
 
     public static RuntimeCompiler instantiateCompiler(String name) {
@@ -297,6 +380,9 @@ public class CompilationBroker {
         if (baselineCompiler != null) {
             props.put(BASELINE_COMPILER_PROPERTY, baselineCompiler.getClass().getName());
         }
+        if (tier3Compiler != null) {
+            props.put(TIER3_COMPILER_PROPERTY, tier3Compiler.getClass().getName());
+        }
         return props;
     }
 
@@ -311,6 +397,9 @@ public class CompilationBroker {
         if (baselineCompiler != null) {
             baselineCompiler.initialize(phase);
         }
+        if (tier3Compiler != null) {
+            tier3Compiler.initialize(phase);
+        }
 
         if (phase == MaxineVM.Phase.HOSTED_COMPILING || phase == MaxineVM.Phase.STARTING) {
             if (AddCompiler != null) {
@@ -326,12 +415,7 @@ public class CompilationBroker {
         }
 
         if (isHosted()) {
-            if (BACKGROUND_COMPILATION) {
-                // launch a compiler thread if background compilation is supported (currently no)
-                final CompilationThread compilationThread = new CompilationThread();
-                compilationThread.setDaemon(true);
-                compilationThread.start();
-            }
+            // the boot image is compiled synchronously
         } else if (phase == MaxineVM.Phase.STARTING) {
             if (opt) {
                 defaultCompiler = optimizingCompiler;
@@ -340,14 +424,17 @@ public class CompilationBroker {
             if (RCT != 0 && baselineCompiler != null) {
                 MethodInstrumentation.enable(RCT);
             }
-
-            if (BACKGROUND_COMPILATION) {
-                // launch a compiler thread if background compilation is supported (currently no)
-                final CompilationThread compilationThread = new CompilationThread();
-                compilationThread.setDaemon(true);
-                compilationThread.start();
-            }
         } else if (phase == Phase.RUNNING) {
+            if (BackgroundCompilation && CompilerThreads > 0 && RCT != 0 && baselineCompiler != null) {
+                // recompilations requested before this point are performed synchronously
+                CompilationThread[] threads = new CompilationThread[CompilerThreads];
+                for (int i = 0; i < threads.length; i++) {
+                    threads[i] = new CompilationThread(i);
+                    threads[i].start();
+                }
+                compilationThreads = threads;
+                tiered = TieredCompilation && tier3Compiler != null;
+            }
             if (PrintCodeCacheMetrics != 0) {
                 Runtime.getRuntime().addShutdownHook(new Thread("CodeCacheMetricsPrinter") {
                     @Override
@@ -392,6 +479,9 @@ public class CompilationBroker {
         }
         baselineCompiler.deoptimize(cma);
         optimizingCompiler.deoptimize(cma);
+        if (tier3Compiler != null) {
+            tier3Compiler.deoptimize(cma);
+        }
     }
 
     /**
@@ -441,16 +531,22 @@ public class CompilationBroker {
                 assert !(cma.isNative() && cma.isVmEntryPoint()) : "cannot compile JNI functions that are native";
                 Object compiledState = cma.compiledState;
                 compilation = compiledState instanceof Compilation ? (Compilation) compiledState : null;
+                if (compilation != null && compilation.isBackground && !isDeopt) {
+                    // Don't stall behind a background recompilation while the code it replaces is still usable
+                    TargetMethod tm = compilation.prevCompilations.currentTargetMethod(nature);
+                    if (tm != null && tm.invalidated() == null) {
+                        return tm;
+                    }
+                }
                 if (compilation != null && (nature == null || nature == compilation.nature)) {
                     // Only wait for a pending compilation if it is compatible with the current request.
                     // That is, the current request does not specify a special nature (nature == null)
                     // or it specifies the same nature as the pending compilation (nature == compilation.nature)
-                    if (retryRun) {
-                        assert compilation.compilingThread == Thread.currentThread();
+                    if (retryRun && compilation.compilingThread == Thread.currentThread()) {
                         assert nature == null : "cannot retry if specific compilation nature is specified";
                         compilation.compiler = selectRetryCompiler(cma, nature, compilation.compiler);
                     } else {
-                        // the method is currently being compiled, just wait for the result
+                        // the method is currently being compiled, possibly by a compiler thread, just wait for the result
                         doCompile = false;
                     }
                 } else {
@@ -471,7 +567,11 @@ public class CompilationBroker {
                     return tm;
                 } else {
                     // return result from other thread (which will have send the VMTI event)
-                    return compilation.get();
+                    TargetMethod tm = compilation.get();
+                    if (tm != null || !compilation.isBackground) {
+                        return tm;
+                    }
+                    // the background compilation failed or was superseded so look at the compiled state again
                 }
             } catch (Throwable t) {
                 if (VMOptions.verboseOption.verboseCompilation) {
@@ -546,6 +646,9 @@ public class CompilationBroker {
                     } else if (baselineCompiler != null && baselineCompiler.matches(compilerName)) {
                         compiler = baselineCompiler;
                         reason = "CompileCommand";
+                    } else if (tier3Compiler != null && tier3Compiler.matches(compilerName)) {
+                        compiler = tier3Compiler;
+                        reason = "CompileCommand";
                     } else if (altCompilers != null) {
                         compiler = altCompilers.get(compilerName);
                         if (compiler != null) {
@@ -619,6 +722,28 @@ public class CompilationBroker {
         cma.compiledState = Compilations.EMPTY;
     }
 
+    /**
+     * Handles an instrumentation counter overflow at a backward branch in a profiled method. In addition to
+     * the handling done by {@link #instrumentationCounterOverflow}, the activation that took the branch is
+     * {@linkplain OnStackReplacement replaced} with optimized code if possible, in which case this method does
+     * not return. This method must be called on the thread that overflowed the counter.
+     *
+     * @param mpo profiling object (including the method itself)
+     * @param bci the bytecode index of the target of the backward branch
+     */
+    @NEVER_INLINE
+    public static void backwardBranchCounterOverflow(MethodProfile mpo, int bci) {
+        instrumentationCounterOverflow(mpo, null);
+        if (OSR && !mpo.compilationDisabled && !Heap.isAllocationDisabledForCurrentThread() && !Compilation.isCompilationRunningInCurrentThread()) {
+            OnStackReplacement.replace(mpo, bci);
+        }
+        if (mpo.entryBackedgeCount <= 0) {
+            // Still running the baseline code: don't overflow at every subsequent backward branch.
+            // Entries to the method will be patched to the recompiled code on the next overflow.
+            mpo.entryBackedgeCount = OSRRetryInterval;
+        }
+    }
+
     /**
      * Handles an instrumentation counter overflow upon entry to a profiled method.
      * This method must be called on the thread that overflowed the counter.
@@ -634,13 +759,13 @@ public class CompilationBroker {
         if (Heap.isAllocationDisabledForCurrentThread()) {
             logCounterOverflow(mpo, "Stopped recompilation because allocation is currently disabled");
             // We don't want to see another counter overflow in the near future
-            mpo.entryBackedgeCount = 1000;
+            mpo.entryBackedgeCount = RECOMPILATION_UNAVAILABLE_COUNT;
             return;
         }
         if (Compilation.isCompilationRunningInCurrentThread()) {
             logCounterOverflow(mpo, "Stopped recompilation because compilation is running in current thread");
             // We don't want to see another counter overflow in the near future
-            mpo.entryBackedgeCount = 1000;
+            mpo.entryBackedgeCount = RECOMPILATION_UNAVAILABLE_COUNT;
             return;
         }
 
@@ -649,19 +774,30 @@ public class CompilationBroker {
         TargetMethod newMethod = Compilations.currentTargetMethod(cma.compiledState, null);
 
         if (oldMethod == newMethod || newMethod == null) {
-            if (!(cma.compiledState instanceof Compilation)) {
+            CompilationBroker broker = vm().compilationBroker;
+            Object compiledState = cma.compiledState;
+            if (!(compiledState instanceof Compilation)) {
                 // There is no newer compiled version available yet that we could just patch to, so recompile
                 logCounterOverflow(mpo, "");
-                try {
-                    newMethod = vm().compilationBroker.compile(cma, Nature.OPT);
-                } catch (InternalError e) {
-                    if (VMOptions.verboseOption.verboseCompilation) {
-                        e.printStackTrace(Log.out);
+                if (broker.compilationThreads != null) {
+                    // The compiler threads install the result and reset the counter so that the
+                    // patching below is done on the next entry to the baseline method.
+                    broker.queueRecompilation(mpo, false);
+                } else {
+                    try {
+                        newMethod = broker.compile(cma, Nature.OPT);
+                    } catch (InternalError e) {
+                        if (VMOptions.verboseOption.verboseCompilation) {
+                            e.printStackTrace(Log.out);
+                        }
+                        // Optimization failed - stay with the baseline method. By not resetting the counter,
+                        // the next counter overflow (due to integer wrapping) will be a while away.
+                        return;
                     }
-                    // Optimization failed - stay with the baseline method. By not resetting the counter,
-                    // the next counter overflow (due to integer wrapping) will be a while away.
-                    return;
                 }
+            } else if (((Compilation) compiledState).isBackground) {
+                logCounterOverflow(mpo, "while queued for recompilation");
+                broker.raiseRecompilationPriority(mpo);
             }
         }
 
@@ -669,7 +805,7 @@ public class CompilationBroker {
         if (oldMethod == newMethod || newMethod == null) {
             // No compiled method available yet, maybe compilation is pending.
             // We don't want to see another counter overflow in the near future.
-            mpo.entryBackedgeCount = 10000;
+            mpo.entryBackedgeCount = RECOMPILATION_PENDING_COUNT;
         } else {
             assert newMethod != null : oldMethod;
             logPatching(cma, oldMethod, newMethod);
@@ -678,24 +814,7 @@ public class CompilationBroker {
             if (receiver != null) {
                 Address from = oldMethod.getEntryPoint(VTABLE_ENTRY_POINT).toAddress();
                 Address to = newMethod.getEntryPoint(VTABLE_ENTRY_POINT).toAddress();
-
-                // Simply overwrite all vtable slots containing 'oldMethod' with 'newMethod'.
-                // These updates can be made atomically without need for a lock.
-                Hub hub = ObjectAccess.readHub(receiver);
-                for (int i = 0; i < hub.vTableLength(); i++) {
-                    int index = Hub.vTableStartIndex() + i;
-                    if (hub.getWord(index).equals(from)) {
-                        logDispatchTablePatch(cma, from, to, hub, index, "vtable");
-                        hub.setWord(index, to);
-                    }
-                }
-                for (int i = 0; i < hub.iTableLength; i++) {
-                    int index = hub.iTableStartIndex + i;
-                    if (hub.getWord(index).equals(from)) {
-                        logDispatchTablePatch(cma, from, to, hub, index, "itable");
-                        hub.setWord(index, to);
-                    }
-                }
+                patchDispatchTables(cma, ObjectAccess.readHub(receiver), from, to);
             }
             // Look for a static call to 'oldMethod' and patch it.
             // This occurs even if 'cma' is non-static
@@ -708,6 +827,170 @@ public class CompilationBroker {
         }
     }
 
+    /**
+     * Handles the overflow of the {@linkplain MethodProfile#optEntryBackedgeCount counter} of tier 2 code, upon exit
+     * from the code or at one of its backward branches. This is the tier 2 counterpart of {@link #instrumentationCounterOverflow}:
+     * the first overflow queues a recompilation by the {@link #tier3Compiler}. Once the tier 3 code is installed in the
+     * dispatch tables, the counter is reset so that each further overflow patches the direct call site the tier 2 code
+     * was called from. This method must be called on the thread that overflowed the counter.
+     *
+     * @param mpo the profile of the method, whose {@link MethodProfile#optMethod} is the tier 2 code
+     */
+    public static void optCounterOverflow(MethodProfile mpo) {
+        final TargetMethod oldMethod = mpo.optMethod;
+        if (oldMethod == null || mpo.compilationDisabled) {
+            mpo.optEntryBackedgeCount = Integer.MAX_VALUE;
+            return;
+        }
+        if (Heap.isAllocationDisabledForCurrentThread() || Compilation.isCompilationRunningInCurrentThread()) {
+            // We don't want to see another counter overflow in the near future
+            mpo.optEntryBackedgeCount = RECOMPILATION_UNAVAILABLE_COUNT;
+            return;
+        }
+        final ClassMethodActor cma = oldMethod.classMethodActor;
+        final TargetMethod newMethod = Compilations.currentTargetMethod(cma.compiledState, Nature.OPT);
+        if (newMethod == null || newMethod == oldMethod) {
+            if (oldMethod.invalidated() == null && !(cma.compiledState instanceof Compilation)) {
+                logCounterOverflow(mpo, "tier 2");
+                vm().compilationBroker.queueRecompilation(mpo, true);
+            }
+            // The compiler thread resets the counter once the tier 3 code is installed.
+            mpo.optEntryBackedgeCount = Integer.MAX_VALUE;
+            return;
+        }
+        logPatching(cma, oldMethod, newMethod);
+        // Keep calling out for the remaining direct calls to the tier 2 code.
+        mpo.optEntryBackedgeCount = 0;
+        DirectCallPatcher patcher = new DirectCallPatcher(oldMethod, newMethod);
+        new VmStackFrameWalker(VmThread.current().tla()).inspect(Pointer.fromLong(here()),
+                                                                 VMRegister.getCpuStackPointer(),
+                                                                 VMRegister.getCpuFramePointer(),
+                                                                 patcher);
+    }
+
+    /**
+     * Simply overwrites all vtable and itable slots of {@code hub} containing {@code from} with {@code to}.
+     * These updates can be made atomically without need for a lock.
+     */
+    private static void patchDispatchTables(ClassMethodActor cma, Hub hub, Address from, Address to) {
+        for (int i = 0; i < hub.vTableLength(); i++) {
+            int index = Hub.vTableStartIndex() + i;
+            if (hub.getWord(index).equals(from)) {
+                logDispatchTablePatch(cma, from, to, hub, index, "vtable");
+                hub.setWord(index, to);
+            }
+        }
+        for (int i = 0; i < hub.iTableLength; i++) {
+            int index = hub.iTableStartIndex + i;
+            if (hub.getWord(index).equals(from)) {
+                logDispatchTablePatch(cma, from, to, hub, index, "itable");
+                hub.setWord(index, to);
+            }
+        }
+    }
+
+    /**
+     * Queues a background recompilation of the method profiled by {@code mpo}. Nothing is queued if a compilation
+     * of the method is already under way.
+     *
+     * @param tier3 if {@code true}, the optimized code of the method is recompiled with the {@link #tier3Compiler},
+     *            otherwise the baseline code is recompiled with the optimizing compiler
+     */
+    private void queueRecompilation(MethodProfile mpo, boolean tier3) {
+        ClassMethodActor cma = mpo.method.classMethodActor;
+        Compilation compilation;
+        TargetMethod replaced;
+        synchronized (cma) {
+            Object compiledState = cma.compiledState;
+            if (!(compiledState instanceof Compilations)) {
+                return;
+            }
+            Compilations compilations = (Compilations) compiledState;
+            RuntimeCompiler compiler;
+            if (tier3) {
+                replaced = compilations.optimized;
+                if (replaced == null || replaced.invalidated() != null) {
+                    // the optimized code was deoptimized: the method starts over from its baseline code
+                    return;
+                }
+                compiler = tier3Compiler;
+            } else {
+                replaced = mpo.method;
+                compiler = selectCompiler(cma, Nature.OPT, false);
+            }
+            compilation = new Compilation(compiler, cma, compilations, Nature.OPT);
+            if (tiered && !tier3) {
+                compilation.tierProfile = mpo;
+            }
+            cma.compiledState = compilation;
+        }
+        synchronized (pending) {
+            QueuedCompilation queued = new QueuedCompilation(compilation, mpo, replaced, queuedCompilations++);
+            pending.add(queued);
+            queuedByProfile.put(mpo, queued);
+            pending.notify();
+        }
+    }
+
+    /**
+     * Records another counter overflow for a method whose background recompilation is still queued, moving it
+     * ahead of methods that have overflowed their counters less often while waiting.
+     */
+    private void raiseRecompilationPriority(MethodProfile mpo) {
+        synchronized (pending) {
+            QueuedCompilation queued = queuedByProfile.get(mpo);
+            if (queued != null) {
+                // the hotness orders the queue, so it can only change while the request is out of the queue
+                pending.remove(queued);
+                queued.hotness++;
+                pending.add(queued);
+            }
+        }
+    }
+
+    /**
+     * Installs the result of a background recompilation by redirecting the vtable and itable entries of the
+     * replaced target method to the new target method in the method's holder and all its subclasses. Static call
+     * sites are patched lazily: resetting the counter of the replaced baseline or tier 2 code means that the next thread
+     * running it takes the patching path of {@link #instrumentationCounterOverflow} or {@link #optCounterOverflow}.
+     */
+    private void installRecompilation(QueuedCompilation queued, TargetMethod newMethod) {
+        final MethodProfile mpo = queued.profile;
+        final TargetMethod oldMethod = queued.replaced;
+        final ClassMethodActor cma = oldMethod.classMethodActor;
+        logPatching(cma, oldMethod, newMethod);
+        if (cma instanceof VirtualMethodActor && ((VirtualMethodActor) cma).vTableIndex() >= 0) {
+            final Address from = oldMethod.getEntryPoint(VTABLE_ENTRY_POINT).toAddress();
+            final Address to = newMethod.getEntryPoint(VTABLE_ENTRY_POINT).toAddress();
+            ClassActor.Closure c = new ClassActor.Closure() {
+                @Override
+                public boolean doClass(ClassActor classActor) {
+                    patchDispatchTables(cma, classActor.dynamicHub(), from, to);
+                    return true;
+                }
+            };
+            // the class hierarchy must be stable while it is traversed
+            DependenciesManager.classHierarchyLock.writeLock().lock();
+            try {
+                if (newMethod.invalidated() == null) {
+                    c.doClass(cma.holder());
+                    cma.holder().allSubclassesDo(c);
+                }
+            } finally {
+                DependenciesManager.classHierarchyLock.writeLock().unlock();
+            }
+        }
+        if (queued.compilation.tierProfile != null) {
+            mpo.optMethod = newMethod;
+            mpo.optEntryBackedgeCount = Tier3Threshold;
+        } else if (!oldMethod.isBaseline()) {
+            // the replaced tier 2 code calls out on its next exit or loop iteration to patch its callers
+            mpo.optEntryBackedgeCount = 0;
+            return;
+        }
+        mpo.entryBackedgeCount = 0;
+    }
+
     public static void logCounterOverflow(MethodProfile mpo, String msg) {
         if (VMOptions.verboseOption.verboseCompilation) {
             boolean lockDisabledSafepoints = Log.lock();
@@ -781,14 +1064,58 @@ public class CompilationBroker {
         }
     }
 
+    /**
+     * A background recompilation waiting in the {@linkplain #pending queue}.
+     */
+    protected static final class QueuedCompilation {
+
+        /**
+         * Orders the queue by descending {@link #hotness}, with requests of equal hotness in the order they were made.
+         */
+        static final Comparator<QueuedCompilation> HOTTEST_FIRST = new Comparator<QueuedCompilation>() {
+            public int compare(QueuedCompilation a, QueuedCompilation b) {
+                if (a.hotness != b.hotness) {
+                    return a.hotness > b.hotness ? -1 : 1;
+                }
+                return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+            }
+        };
+
+        final Compilation compilation;
+
+        /**
+         * The profile of the baseline method whose counter overflow requested the recompilation.
+         */
+        final MethodProfile profile;
+
+        /**
+         * The target method whose dispatch table entries are redirected to the result of the recompilation.
+         */
+        final TargetMethod replaced;
+
+        final long sequence;
+
+        /**
+         * The number of times the counter of the baseline method has overflowed since the request was queued.
+         */
+        int hotness;
+
+        QueuedCompilation(Compilation compilation, MethodProfile profile, TargetMethod replaced, long sequence) {
+            this.compilation = compilation;
+            this.profile = profile;
+            this.replaced = replaced;
+            this.sequence = sequence;
+        }
+    }
+
     /**
      * This class implements a daemon thread that performs compilations in the background. Depending on the compiler
      * configuration, multiple compilation threads may be working in parallel.
      */
     protected class CompilationThread extends Thread {
 
-        protected CompilationThread() {
-            super("compile");
+        protected CompilationThread(int id) {
+            super("compile-" + id);
             setDaemon(true);
         }
 
@@ -822,19 +1149,46 @@ public class CompilationBroker {
          */
         void compileOne() throws InterruptedException {
             compilation = null;
-            synchronized (pending) {
-                while (compilation == null) {
-                    compilation = pending.poll();
-                    if (compilation == null) {
+            QueuedCompilation queued = null;
+            while (queued == null) {
+                synchronized (pending) {
+                    queued = pending.pollFirst();
+                    if (queued != null) {
+                        queuedByProfile.remove(queued.profile);
+                    } else {
                         pending.wait();
                     }
                 }
             }
+            compilation = queued.compilation;
             compilation.compilingThread = Thread.currentThread();
             if (GCOnRecompilation) {
                 System.gc();
             }
-            compilation.compile();
+            TargetMethod tm = null;
+            try {
+                tm = compilation.compile();
+            } catch (Throwable t) {
+                if (VMOptions.verboseOption.verboseCompilation) {
+                    boolean lockDisabledSafepoints = Log.lock();
+                    Log.printCurrentThread(false);
+                    Log.print(": Background compilation of " + compilation.classMethodActor + " by " + compilation.compiler + " failed");
+                    t.printStackTrace(Log.out);
+                    Log.unlock(lockDisabledSafepoints);
+                }
+            }
+            if (tm == null || compilation.failed) {
+                if (queued.replaced.isBaseline()) {
+                    // Stay with the baseline method. The next counter overflow will be a while away.
+                    queued.profile.entryBackedgeCount = Integer.MAX_VALUE;
+                } else {
+                    // Stay with the tier 2 method.
+                    queued.profile.optEntryBackedgeCount = Integer.MAX_VALUE;
+                }
+            } else {
+                VMTI.handler().methodCompiled(compilation.classMethodActor);
+                installRecompilation(queued, tm);
+            }
             compilation = null;
         }
     }
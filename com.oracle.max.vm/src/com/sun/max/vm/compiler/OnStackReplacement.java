@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.compiler;
+
+import static com.sun.max.platform.Platform.*;
+import static com.sun.max.vm.MaxineVM.*;
+import static com.sun.max.vm.intrinsics.Infopoints.*;
+import static com.sun.max.vm.thread.VmThread.*;
+import static com.sun.max.vm.thread.VmThreadLocal.*;
+
+import com.sun.cri.ci.*;
+import com.sun.max.annotate.*;
+import com.sun.max.lang.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.RuntimeCompiler.OSR;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.profile.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.stack.*;
+import com.sun.max.vm.thread.*;
+import com.sun.max.vm.thread.VmThreadLocal.Nature;
+import com.sun.max.vm.type.*;
+
+/**
+ * Replaces the activation of a {@linkplain TargetMethod#isBaseline() baseline} method that is spinning in a loop
+ * with an activation of an optimized variant of the method that is entered at the loop header.
+ * <p>
+ * The replacement happens when the backward branch counter of the baseline method overflows. The variant is
+ * compiled by an {@linkplain OSR OSR capable} compiler and the values of the locals in the baseline frame
+ * are copied into an <i>OSR buffer</i> that holds one {@code long} per local variable slot. The variant records
+ * the {@linkplain TargetMethod#osrLocalKinds() kinds} of the locals it reads from the buffer and each live local
+ * is copied with the width of its kind from its {@linkplain JVMSFrameLayout#localSlotOffset(int, Kind) slot} in
+ * the baseline frame to the start of its slot in the buffer. The baseline frame is then
+ * reused as the caller frame of the optimized activation: the return address of the optimized activation is
+ * the {@linkplain TargetMethod#osrExitPos() OSR exit} of the baseline method which simply returns the result
+ * to the caller of the replaced activation. The optimized code reads the locals from the buffer and then calls
+ * {@link CiRuntimeCall#OSRMigrationEnd} which calls {@link #migrationEnd()}. Safepoints are disabled in between as
+ * the buffer is not a GC root.
+ * <p>
+ * Only activations with an empty operand stack and no held locks can be replaced. This is currently only
+ * supported on AMD64.
+ */
+public final class OnStackReplacement {
+
+    /**
+     * The maximum number of frames to search for the activation to be replaced.
+     */
+    static final int FRAME_SEARCH_LIMIT = 5;
+
+    /**
+     * Non-zero if safepoints were disabled by {@link #replace} and must be re-enabled by {@link #migrationEnd()}.
+     */
+    private static final VmThreadLocal OSR_DISABLED_SAFEPOINTS =
+        new VmThreadLocal("OSR_DISABLED_SAFEPOINTS", false, "non-zero if safepoints were disabled for an on-stack replacement", Nature.Single);
+
+    private OnStackReplacement() {
+    }
+
+    /**
+     * Replaces the activation of {@code mpo.method} that called this method (indirectly) from the backward branch
+     * to {@code bci}. This method does not return if the replacement succeeds.
+     *
+     * @param mpo the profile of the baseline method
+     * @param bci the bytecode index of the loop header at which the optimized variant is entered
+     */
+    @NEVER_INLINE
+    static void replace(MethodProfile mpo, int bci) {
+        if (platform().isa != ISA.AMD64) {
+            return;
+        }
+        final TargetMethod baseline = mpo.method;
+        if (!baseline.isBaseline() || baseline.osrExitPos() < 0) {
+            return;
+        }
+        final TargetMethod osrMethod = osrMethod(mpo, bci);
+        if (osrMethod == null) {
+            return;
+        }
+
+        final ActivationFinder finder = new ActivationFinder(baseline);
+        new VmStackFrameWalker(VmThread.current().tla()).inspect(Pointer.fromLong(here()),
+                                                                 VMRegister.getCpuStackPointer(),
+                                                                 VMRegister.getCpuFramePointer(),
+                                                                 finder);
+        if (finder.sp.isZero()) {
+            return;
+        }
+
+        final CiKind[] kinds = osrMethod.osrLocalKinds();
+        final long[] buffer = new long[kinds.length];
+        final Pointer fp = finder.fp;
+        final Pointer sp = finder.sp.minus(Word.size());
+        final JVMSFrameLayout layout = (JVMSFrameLayout) baseline.frameLayout();
+        logReplacement(baseline, osrMethod, bci);
+
+        // No safepoints from here until the optimized code has read the buffer
+        if (!SafepointPoll.disable()) {
+            OSR_DISABLED_SAFEPOINTS.store(ETLA.load(currentTLA()), Address.fromInt(1));
+        }
+        final Pointer bufferPointer = Reference.fromJava(buffer).toOrigin().plus(Layout.longArrayLayout().getElementOffsetFromOrigin(0));
+        for (int i = 0; i < kinds.length; i++) {
+            copyLocal(kinds[i], fp, layout, i, bufferPointer);
+        }
+
+        // The optimized activation returns to the OSR exit of the baseline method
+        sp.writeWord(0, baseline.codeAt(baseline.osrExitPos()).toAddress());
+        Stubs.unwindLong(osrMethod.codeAt(osrMethod.osrEntryPos()).toAddress(), sp, fp, bufferPointer.toLong());
+        throw FatalError.unexpected("should not reach here");
+    }
+
+    /**
+     * Copies the value of a local variable from a baseline frame to its slot in the OSR buffer.
+     *
+     * @param kind the kind of the local as read by the OSR variant
+     * @param fp the frame pointer of the baseline frame
+     * @param layout the layout of the baseline frame
+     * @param index the local variable index
+     * @param buffer the address of the first slot in the OSR buffer
+     */
+    private static void copyLocal(CiKind kind, Pointer fp, JVMSFrameLayout layout, int index, Pointer buffer) {
+        final int offset = index * Longs.SIZE;
+        switch (kind) {
+            case Int:
+                buffer.writeInt(offset, fp.readInt(layout.localSlotOffset(index, Kind.INT)));
+                break;
+            case Float:
+                buffer.writeFloat(offset, fp.readFloat(layout.localSlotOffset(index, Kind.FLOAT)));
+                break;
+            case Long:
+                buffer.writeLong(offset, fp.readLong(layout.localSlotOffset(index, Kind.LONG)));
+                break;
+            case Double:
+                buffer.writeDouble(offset, fp.readDouble(layout.localSlotOffset(index, Kind.DOUBLE)));
+                break;
+            case Object:
+                buffer.writeWord(offset, fp.readWord(layout.localSlotOffset(index, Kind.REFERENCE)));
+                break;
+            case Illegal:
+                break;
+            default:
+                throw FatalError.unexpected("unexpected kind of OSR local: " + kind);
+        }
+    }
+
+    /**
+     * Called by the OSR variant once it has read the OSR buffer. Re-enables safepoints if they were
+     * disabled by {@link #replace}.
+     */
+    public static void migrationEnd() {
+        final Pointer etla = ETLA.load(currentTLA());
+        if (!OSR_DISABLED_SAFEPOINTS.load(etla).isZero()) {
+            OSR_DISABLED_SAFEPOINTS.store(etla, Address.zero());
+            SafepointPoll.enable();
+        }
+    }
+
+    /**
+     * Gets the variant of the method profiled by {@code mpo} that is entered at {@code bci}, compiling it first
+     * if necessary. A failed compilation is recorded in {@code mpo} so that it is not retried.
+     *
+     * @return {@code null} if there is no variant of the method for {@code bci}
+     */
+    private static TargetMethod osrMethod(MethodProfile mpo, int bci) {
+        if (mpo.isOSRAttempted(bci)) {
+            return mpo.osrMethod(bci);
+        }
+        final RuntimeCompiler compiler = vm().compilationBroker.optimizingCompiler;
+        TargetMethod osrMethod = null;
+        if (compiler instanceof OSR) {
+            final ClassMethodActor cma = mpo.method.classMethodActor;
+            try {
+                osrMethod = ((OSR) compiler).compileForOSR(cma, bci);
+            } catch (Throwable t) {
+                if (VMOptions.verboseOption.verboseCompilation) {
+                    Log.println("OSR compilation of " + cma + " at bci " + bci + " failed: " + t);
+                }
+            }
+            if (osrMethod != null && osrMethod.osrEntryPos() < 0) {
+                osrMethod = null;
+            }
+        }
+        mpo.recordOSRMethod(bci, osrMethod);
+        return mpo.osrMethod(bci);
+    }
+
+    private static void logReplacement(TargetMethod baseline, TargetMethod osrMethod, int bci) {
+        if (VMOptions.verboseOption.verboseCompilation) {
+            boolean lockDisabledSafepoints = Log.lock();
+            Log.printCurrentThread(false);
+            Log.print(": Replacing activation of ");
+            Log.printMethod(baseline, false);
+            Log.print(" with ");
+            Log.printMethod(osrMethod, false);
+            Log.print(" at bci ");
+            Log.println(bci);
+            Log.unlock(lockDisabledSafepoints);
+        }
+    }
+
+    /**
+     * Finds the innermost activation of a given baseline method on the stack.
+     */
+    static class ActivationFinder extends RawStackFrameVisitor {
+
+        private final TargetMethod baseline;
+        private int frameCount;
+        Pointer sp = Pointer.zero();
+        Pointer fp = Pointer.zero();
+
+        ActivationFinder(TargetMethod baseline) {
+            this.baseline = baseline;
+        }
+
+        @Override
+        public boolean visitFrame(StackFrameCursor current, StackFrameCursor callee) {
+            if (current.targetMethod() == baseline) {
+                sp = current.sp();
+                fp = current.fp();
+                return false;
+            }
+            return ++frameCount <= FRAME_SEARCH_LIMIT;
+        }
+    }
+}
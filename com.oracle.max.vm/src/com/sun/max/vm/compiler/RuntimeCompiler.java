@@ -61,6 +61,12 @@ public interface RuntimeCompiler {
      */
     @HOSTED_ONLY
     Option<String> baselineCompilerOption = compilers.newStringOption("baseline", "T1X", "Specifies the baseline compiler class.");
+    /**
+     * The option whose value (if non-null) specifies the class name of the compiler used for the hottest
+     * methods when the optimizing compiler is the middle tier of a tiered configuration.
+     */
+    @HOSTED_ONLY
+    Option<String> tier3CompilerOption = compilers.newStringOption("tier3", null, "Specifies the class name of the compiler for methods that stay hot in optimized code.");
 
     /**
      * Performs any specific initialization when entering a given VM phase.
@@ -128,6 +134,22 @@ public interface RuntimeCompiler {
      */
     String name(ClassMethodActor classMethodActor);
 
+    /**
+     * Implemented by a compiler that can produce {@linkplain OnStackReplacement on-stack replacement} variants of methods.
+     */
+    interface OSR {
+        /**
+         * Compiles a variant of a method that is entered at a loop header with the values of the locals read
+         * from an OSR buffer instead of at the method's entry point. The variant is never installed as the
+         * compiled code of {@code classMethodActor}.
+         *
+         * @param classMethodActor the method to compile
+         * @param bci the bytecode index of the loop header at which the variant is entered
+         * @return the compiled variant or {@code null} if the method cannot be compiled for on-stack replacement at {@code bci}
+         */
+        TargetMethod compileForOSR(ClassMethodActor classMethodActor, int bci);
+    }
+
     abstract class DefaultNameAdapter implements RuntimeCompiler {
         public String name(ClassMethodActor classMethodActor) {
             return getClass().getSimpleName();
@@ -50,7 +50,10 @@ import static com.sun.max.platform.Platform.platform;
 import static com.sun.max.vm.MaxineVM.vm;
 import static com.sun.max.vm.compiler.CallEntryPoint.VTABLE_ENTRY_POINT;
 import static com.sun.max.vm.compiler.target.Stub.Type.*;
+import static com.sun.max.vm.intrinsics.Infopoints.here;
 import static com.sun.max.vm.intrinsics.MaxineIntrinsicIDs.UNSAFE_CAST;
+import static com.sun.max.vm.runtime.VMRegister.getCpuFramePointer;
+import static com.sun.max.vm.runtime.VMRegister.getCpuStackPointer;
 import static com.sun.max.vm.stack.VMFrameLayout.STACK_SLOT_SIZE;
 
 /**
@@ -117,6 +120,13 @@ public class Deoptimization extends VmOperation {
      */
     private static StaticMethodActor MaxMiscLoweringsDeoptimizeMethodActor;
 
+    /**
+     * Method actor of the runtime call made by a failed profiled receiver type guard.
+     *
+     * @see #receiverTypeGuardFailed()
+     */
+    private static StaticMethodActor ReceiverTypeGuardFailedMethodActor;
+
     /**
      * The set of target methods to be deoptimized.
      */
@@ -155,6 +165,11 @@ public class Deoptimization extends VmOperation {
         MaxMiscLoweringsDeoptimizeMethodActor = methodActor;
     }
 
+    @HOSTED_ONLY
+    public static void initializeReceiverTypeGuardFailedMethodActor(StaticMethodActor methodActor) {
+        ReceiverTypeGuardFailedMethodActor = methodActor;
+    }
+
     /**
      * Mark methods for deoptimization.
      */
@@ -802,8 +817,8 @@ public class Deoptimization extends VmOperation {
                 }
                 if (Safepoints.isDirectCall(safepoints.safepointAt(safepointIndex))) {
                     final int callPos = safepoints.causePosAt(safepointIndex);
-                    ClassMethodActor callee = tm.callPosToCallee(callPos);
-                    if (callee == MaxMiscLoweringsDeoptimizeMethodActor) {
+                    Object callee = tm.callPosToDirectCallee(callPos);
+                    if (callee == MaxMiscLoweringsDeoptimizeMethodActor || isReceiverTypeGuardStub(callee)) {
                         reexecute = true;
                     }
                 }
@@ -927,6 +942,72 @@ public class Deoptimization extends VmOperation {
         deoptimize(CodePointer.from(ip), sp, fp, csa, vm().registerConfigs.uncommonTrapStub.getCalleeSaveLayout(), null);
     }
 
+    /**
+     * Determines if a given direct callee is the compiler stub through which a failed profiled receiver type guard
+     * calls the runtime. The debug info at such a call describes the state before the
+     * guarded invoke, which must therefore be re-executed.
+     */
+    private static boolean isReceiverTypeGuardStub(Object callee) {
+        if (callee instanceof TargetMethod && ((TargetMethod) callee).is(CompilerStub)) {
+            for (Object stubCallee : ((TargetMethod) callee).directCallees()) {
+                if (stubCallee == ReceiverTypeGuardFailedMethodActor) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stack visitor that finds the optimized method that called a compiler stub.
+     */
+    static final class CompilerStubCaller extends RawStackFrameVisitor {
+        TargetMethod tm;
+        CodePointer ip;
+
+        @Override
+        public boolean visitFrame(StackFrameCursor current, StackFrameCursor callee) {
+            if (!current.isTopFrame()) {
+                TargetMethod calleeTM = callee.targetMethod();
+                if (calleeTM != null && calleeTM.is(CompilerStub)) {
+                    tm = current.targetMethod();
+                    ip = current.vmIP();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Handles the failure of a profiled receiver type guard. The failure is recorded in the profile of the method
+     * containing the guarded invoke so that the speculation is not repeated when it is recompiled. The method
+     * containing the guard is then marked for deoptimization, which happens when the compiler stub that called
+     * this method returns to it. The guarded invoke is re-executed in the deoptimized frame.
+     */
+    @NEVER_INLINE
+    public static void receiverTypeGuardFailed() {
+        CompilerStubCaller caller = new CompilerStubCaller();
+        new VmStackFrameWalker(VmThread.current().tla()).inspect(Pointer.fromLong(here()), getCpuStackPointer(), getCpuFramePointer(), caller);
+        TargetMethod tm = caller.tm;
+        FatalError.check(tm != null, "could not find the method containing the failed receiver type guard");
+        int safepointIndex = tm.findSafepointIndex(caller.ip);
+        FatalError.check(safepointIndex >= 0, "no safepoint at the failed receiver type guard");
+        CiFrame frame = tm.debugInfoAt(safepointIndex, null).frame();
+        MethodProfile mpo = ((ClassMethodActor) frame.method).baselineProfile();
+        if (mpo != null) {
+            mpo.recordUncommonTrap(frame.bci);
+        }
+        // methods in the boot code region are not compiled with profiled receiver type guards
+        FatalError.check(!tm.isInBootCodeRegion(), "receiver type guard in boot code region");
+        if (tm.invalidated() == null) {
+            ArrayList<TargetMethod> tms = new ArrayList<TargetMethod>(1);
+            tms.add(tm);
+            new Deoptimization(tms).go();
+        }
+        // on return it will all happen!
+    }
+
     @NEVER_INLINE // makes inspecting easier
     static void logPatchITable(ClassActor classActor, int iIndex) {
         if (deoptLogger.enabled()) {
@@ -31,6 +31,7 @@ import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.compiler.*;
 import com.sun.max.vm.compiler.RuntimeCompiler.Nature;
 import com.sun.max.vm.heap.*;
+import com.sun.max.vm.profile.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.stack.*;
 import com.sun.max.vm.tele.*;
@@ -110,12 +111,31 @@ public class Compilation {
     public TargetMethod result;
     public final boolean isDeopt;
 
+    /**
+     * Denotes a compilation performed by a {@linkplain CompilationBroker background compiler thread}
+     * on behalf of a thread that does not wait for the result.
+     */
+    public final boolean isBackground;
+
+    /**
+     * If non-null, the code produced by this compilation decrements {@link MethodProfile#optEntryBackedgeCount}
+     * of this profile on method exit and at loop back edges.
+     */
+    public MethodProfile tierProfile;
+
     /**
      * State of this compilation. If {@code true}, then this compilation has finished and the target
-     * method is available.
+     * method is available unless {@link #failed} is also {@code true}.
      */
     public boolean done;
 
+    /**
+     * Set when a {@linkplain #isBackground background} compilation has finished without its result
+     * being installed, either because the compiler failed or because the compilation was superseded
+     * by a compilation of a different nature.
+     */
+    public boolean failed;
+
     public final RuntimeCompiler.Nature nature;
 
     public Compilation(RuntimeCompiler compiler,
@@ -131,6 +151,7 @@ public class Compilation {
         this.compilingThread = compilingThread;
         this.nature = nature;
         this.isDeopt = isDeopt;
+        this.isBackground = false;
 
         for (Compilation scope = parent; scope != null; scope = scope.parent) {
             if (scope.classMethodActor.equals(classMethodActor) && scope.compiler == compiler) {
@@ -140,6 +161,25 @@ public class Compilation {
         COMPILATION.set(this);
     }
 
+    /**
+     * Creates a compilation that will be performed by a background compiler thread. Unlike the other
+     * constructor, this does not make the new compilation current for the calling thread as it is
+     * {@linkplain #compile() performed} on another thread.
+     */
+    public Compilation(RuntimeCompiler compiler,
+                       ClassMethodActor classMethodActor,
+                       Compilations prevCompilations,
+                       RuntimeCompiler.Nature nature) {
+        assert prevCompilations != null;
+        this.parent = null;
+        this.compiler = compiler;
+        this.classMethodActor = classMethodActor;
+        this.prevCompilations = prevCompilations;
+        this.nature = nature;
+        this.isDeopt = false;
+        this.isBackground = true;
+    }
+
     /**
      * Checks if any compilations are currently running in this thread. Useful to avoid recursive calls
      * of the optimizing compiler.
@@ -148,6 +188,15 @@ public class Compilation {
         return COMPILATION.get() != null;
     }
 
+    /**
+     * Gets the innermost compilation running in the current thread.
+     *
+     * @return {@code null} if no compilation is running in the current thread
+     */
+    public static Compilation current() {
+        return COMPILATION.get();
+    }
+
     /**
      * Cancel this compilation. Ignored.
      */
@@ -174,7 +223,8 @@ public class Compilation {
     /**
      * Gets the result of this compilation, blocking if necessary.
      *
-     * @return the target method that resulted from this compilation
+     * @return the target method that resulted from this compilation or {@code null} if this is a
+     *         {@linkplain #failed failed} background compilation
      */
     public TargetMethod get() {
         synchronized (classMethodActor) {
@@ -197,6 +247,9 @@ public class Compilation {
             if (interrupted) {
                 Thread.currentThread().interrupt();
             }
+            if (failed) {
+                return null;
+            }
             assert result != null;
             return result;
         }
@@ -280,6 +333,9 @@ public class Compilation {
         String methodString = "";
 
         try {
+            if (isBackground) {
+                COMPILATION.set(this);
+            }
             InspectableCompilationInfo.notifyCompilationEvent(classMethodActor, null);
 
             logBeforeCompilation();
@@ -313,20 +369,39 @@ public class Compilation {
                 if (result != null) {
                     assert nature != Nature.BASELINE || result.isBaseline() : "a request for a baseline target method failed to produce one";
                     // compilation succeeded and produced a target method
-                    TargetMethod baseline = prevCompilations.baseline;
-                    TargetMethod optimized = prevCompilations.optimized;
-                    if (result.isBaseline()) {
-                        baseline = result;
+                    Compilations base = prevCompilations;
+                    Object compiledState = classMethodActor.compiledState;
+                    if (isBackground && compiledState != this) {
+                        // A compilation of a specific nature replaced this one while it was queued or running.
+                        // Merge with its result if it has finished, otherwise give way to it.
+                        base = compiledState instanceof Compilations ? (Compilations) compiledState : null;
+                    }
+                    if (base != null) {
+                        TargetMethod baseline = base.baseline;
+                        TargetMethod optimized = base.optimized;
+                        if (result.isBaseline()) {
+                            baseline = result;
+                        } else {
+                            optimized = result;
+                        }
+                        classMethodActor.compiledState = new Compilations(baseline, optimized);
                     } else {
-                        optimized = result;
+                        failed = true;
                     }
-                    classMethodActor.compiledState = new Compilations(baseline, optimized);
 
                     // compilation finished: this must come after the assignment to classMethodActor.compState
                     done = true;
 
                     // notify any waiters on this compilation
                     classMethodActor.notifyAll();
+                } else if (isBackground) {
+                    // nobody retries a failed background compilation so revert to the previous compilations
+                    if (classMethodActor.compiledState == this) {
+                        classMethodActor.compiledState = prevCompilations;
+                    }
+                    failed = true;
+                    done = true;
+                    classMethodActor.notifyAll();
                 }
             }
 
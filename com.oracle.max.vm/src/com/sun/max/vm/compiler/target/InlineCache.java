@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.compiler.target;
+
+import static com.oracle.max.asm.target.amd64.AMD64.*;
+import static com.sun.cri.ci.CiCallingConvention.Type.*;
+import static com.sun.max.platform.Platform.*;
+import static com.sun.max.vm.MaxineVM.*;
+import static com.sun.max.vm.compiler.CallEntryPoint.*;
+
+import java.util.*;
+
+import com.oracle.max.asm.*;
+import com.oracle.max.asm.target.amd64.*;
+import com.oracle.max.asm.target.amd64.AMD64Assembler.ConditionFlag;
+import com.sun.cri.ci.*;
+import com.sun.cri.ci.CiAddress.Scale;
+import com.sun.cri.ci.CiRegister.RegisterFlag;
+import com.sun.max.annotate.*;
+import com.sun.max.lang.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.code.*;
+import com.sun.max.vm.compiler.*;
+import com.sun.max.vm.compiler.target.amd64.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.object.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * A polymorphic inline cache for an {@code invokeinterface} call site in optimized code.
+ * <p>
+ * Such a call site is a {@linkplain TargetMethod#directCallees() direct call} whose callee is the abstract
+ * interface method. It is {@linkplain TargetMethod#linkDirectCalls() linked} to the
+ * {@linkplain Stubs#inlineCacheMissStub() inline cache miss stub}, which calls {@link #miss(Object, Pointer)}.
+ * The miss handler selects the implementation for the receiver and {@linkplain
+ * AMD64TargetMethodUtil#mtSafePatchCallDisplacement atomically} patches the call site to call a new inline cache that
+ * also covers the receiver's class. The inline cache it replaces is {@linkplain Code#discardTargetMethod discarded}. Each entry of an inline cache compares the
+ * receiver's class ID with a constant and, on a match, jumps through the receiver hub's itable slot for the
+ * interface method. An inline cache whose entries all fail jumps to the miss stub. Once a call site has seen more
+ * than {@link #InlineCacheSize} receiver classes, it is patched to call the megamorphic inline cache of the interface
+ * method, which does the same mtable lookup as the itable dispatch it replaces.
+ * <p>
+ * Entries compare class IDs rather than hubs because hubs are heap objects that can move, whereas stubs cannot
+ * hold object references. Entries jump through the hub slot rather than directly to the selected code because
+ * recompilation, deoptimization and code eviction keep the dispatch tables up to date but do not know about
+ * inline caches.
+ * <p>
+ * Only {@code invokeinterface} call sites in optimized code use inline caches. An {@code invokevirtual} is already
+ * dispatched with a single load from the vtable, which a class ID compare would not make cheaper. Baseline (T1X)
+ * code calls through templates and trampolines whose call sites are shared, so they have no per-site state to cache.
+ */
+public final class InlineCache {
+
+    /**
+     * The maximum number of receiver classes cached at a call site. A value of 0 disables inline caching.
+     */
+    public static int InlineCacheSize = 4;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "InlineCacheSize", InlineCache.class,
+            "Number of receiver types cached at an invokeinterface call site before it is treated as megamorphic. " +
+            "Use 0 to disable inline caches (default: " + InlineCacheSize + ").");
+    }
+
+    /**
+     * The stub holding the code of this inline cache.
+     */
+    public final Stub stub;
+
+    /**
+     * The interface method called through this inline cache.
+     */
+    public final InterfaceMethodActor method;
+
+    /**
+     * The {@linkplain ClassActor#id IDs} of the receiver classes handled by this inline cache or {@code null} if it
+     * is megamorphic.
+     */
+    private final int[] classIDs;
+
+    /**
+     * The index of the itable slot for {@link #method} in the hub of each class in {@link #classIDs}.
+     */
+    private final int[] hubIndices;
+
+    private static final int[] NO_CLASS_IDS = {};
+
+    /**
+     * The inline caches of the call sites that have turned megamorphic, indexed by interface method.
+     */
+    private static final Map<InterfaceMethodActor, InlineCache> megamorphicCaches = new HashMap<InterfaceMethodActor, InlineCache>();
+
+    /**
+     * The inline caches indexed by their stubs. Only the inline caches currently called by some call site are
+     * present. This map also serves as the lock under which call sites are extended and patched.
+     */
+    private static final Map<Stub, InlineCache> caches = new IdentityHashMap<Stub, InlineCache>();
+
+    private InlineCache(InterfaceMethodActor method, int[] classIDs, int[] hubIndices) {
+        this.method = method;
+        this.classIDs = classIDs;
+        this.hubIndices = hubIndices;
+        final String stubName = "icache<" + method.format("%H.%n") + (classIDs == null ? ">-megamorphic" : ">-" + classIDs.length);
+        vm().stubs.traceBeforeStubCreation(stubName);
+        this.stub = new Stub(Stub.Type.InlineCacheStub, stubName, 0, genCode(), -1, 0, null, -1);
+        vm().stubs.traceAfterStubCreation(stubName);
+    }
+
+    /**
+     * Determines if call sites for a given interface method are compiled as inline cache call sites.
+     */
+    public static boolean isEnabledFor(InterfaceMethodActor method) {
+        return InlineCacheSize > 0 && platform().isa == ISA.AMD64 && method.isAbstract();
+    }
+
+    /**
+     * Determines if a given {@linkplain TargetMethod#directCallees() direct callee} denotes an inline cache call site.
+     */
+    public static boolean isCallSite(Object directCallee) {
+        return directCallee instanceof InterfaceMethodActor && ((InterfaceMethodActor) directCallee).isAbstract();
+    }
+
+    /**
+     * Gets the inline cache currently called by an inline cache call site.
+     *
+     * @param callPos the position of the call site in {@code caller}
+     * @return {@code null} if the call site still calls the inline cache miss stub
+     */
+    public static InlineCache calledFrom(TargetMethod caller, int callPos) {
+        return of(AMD64TargetMethodUtil.readCall32Target(caller, callPos).toTargetMethod());
+    }
+
+    private static InlineCache of(TargetMethod stub) {
+        synchronized (caches) {
+            return caches.get(stub);
+        }
+    }
+
+    /**
+     * Gets the number of receiver classes covered by this inline cache.
+     *
+     * @return {@code -1} if this inline cache is megamorphic
+     */
+    public int size() {
+        return classIDs == null ? -1 : classIDs.length;
+    }
+
+    /**
+     * Handles a call from an inline cache call site whose inline cache does not cover the class of the receiver.
+     *
+     * @param receiver the receiver of the interface call
+     * @param pcInCaller the return address of the call site
+     * @return the entry point of the implementation of the called interface method selected by {@code receiver}
+     */
+    private static Address miss(Object receiver, Pointer pcInCaller) {
+        // pcInCaller must be dealt with before any safepoint
+        final CodePointer callSite = CodePointer.from(pcInCaller).minus(AMD64TargetMethodUtil.RIP_CALL_INSTRUCTION_SIZE);
+        final TargetMethod caller = callSite.toTargetMethod();
+        final int callPos = callSite.minus(caller.codeStart()).toInt();
+        final InterfaceMethodActor method = (InterfaceMethodActor) caller.callSiteToCallee(callSite);
+
+        if (!SafepointPoll.isDisabled() && !Heap.isAllocationDisabledForCurrentThread() && !VmThread.current().isVmOperationThread()) {
+            synchronized (caches) {
+                // re-read under the lock so that a call site patched by another thread is extended from its new target
+                final TargetMethod current = AMD64TargetMethodUtil.readCall32Target(caller, callPos).toTargetMethod();
+                final InlineCache cache = extend(method, current, receiver);
+                if (cache != null) {
+                    caches.put(cache.stub, cache);
+                    AMD64TargetMethodUtil.mtSafePatchCallDisplacement(caller, callSite, caller.callEntryPoint.in(cache.stub));
+                    final InlineCache replaced = caches.get(current);
+                    if (replaced != null && replaced.classIDs != null) {
+                        // other threads may still be executing the replaced stub, so it is freed only once that is safe
+                        caches.remove(current);
+                        Code.discardTargetMethod(replaced.stub);
+                    }
+                }
+            }
+        }
+
+        final Hub hub = ObjectAccess.readHub(receiver);
+        return hub.getWord(hub.getITableIndex(method.holder().id) + method.iIndexInInterface()).asAddress();
+    }
+
+    /**
+     * Creates the inline cache that replaces the one currently called by a call site for a receiver that it
+     * does not cover.
+     *
+     * Must be called while holding the lock on {@link #caches}.
+     *
+     * @param current the stub currently called by the call site
+     * @return {@code null} if {@code current} already covers {@code receiver}, which means another thread patched
+     *         the call site first
+     */
+    private static InlineCache extend(InterfaceMethodActor method, TargetMethod current, Object receiver) {
+        int[] classIDs = NO_CLASS_IDS;
+        int[] hubIndices = NO_CLASS_IDS;
+        final InlineCache cache = of(current);
+        if (cache != null) {
+            if (cache.classIDs == null) {
+                return null;
+            }
+            classIDs = cache.classIDs;
+            hubIndices = cache.hubIndices;
+        }
+        final Hub hub = ObjectAccess.readHub(receiver);
+        final int classID = hub.classActor.id;
+        for (int id : classIDs) {
+            if (id == classID) {
+                return null;
+            }
+        }
+        if (classIDs.length >= InlineCacheSize) {
+            synchronized (megamorphicCaches) {
+                InlineCache megamorphic = megamorphicCaches.get(method);
+                if (megamorphic == null) {
+                    megamorphic = new InlineCache(method, null, null);
+                    megamorphicCaches.put(method, megamorphic);
+                }
+                return megamorphic;
+            }
+        }
+        final int n = classIDs.length;
+        classIDs = Arrays.copyOf(classIDs, n + 1);
+        hubIndices = Arrays.copyOf(hubIndices, n + 1);
+        classIDs[n] = classID;
+        hubIndices[n] = hub.getITableIndex(method.holder().id) + method.iIndexInInterface();
+        return new InlineCache(method, classIDs, hubIndices);
+    }
+
+    @FOLD
+    private static int hubOffset() {
+        return Layout.generalLayout().getOffsetFromOrigin(Layout.HeaderField.HUB).toInt();
+    }
+
+    @FOLD
+    private static int offsetOfFirstHubElement() {
+        return Layout.byteArrayLayout().getElementOffsetFromOrigin(0).toInt();
+    }
+
+    @FOLD
+    private static int offsetOfClassActor() {
+        return FieldActor.findInstance(ClassActor.fromJava(Hub.class), "classActor").offset();
+    }
+
+    @FOLD
+    private static int offsetOfClassID() {
+        return FieldActor.findInstance(ClassActor.fromJava(ClassActor.class), "id").offset();
+    }
+
+    @FOLD
+    private static int offsetOfMTableStartIndex() {
+        return FieldActor.findInstance(ClassActor.fromJava(Hub.class), "mTableStartIndex").offset();
+    }
+
+    @FOLD
+    private static int offsetOfMTableLength() {
+        return FieldActor.findInstance(ClassActor.fromJava(Hub.class), "mTableLength").offset();
+    }
+
+    /**
+     * Generates the code of this inline cache. The code is entered with the receiver in the first parameter
+     * register and may only use the scratch register and {@code rax}, which never carry parameters.
+     */
+    private byte[] genCode() {
+        if (platform().isa == ISA.AMD64) {
+            CiRegisterConfig registerConfig = vm().registerConfigs.standard;
+            AMD64MacroAssembler asm = new AMD64MacroAssembler(target(), registerConfig);
+            CiRegister receiver = registerConfig.getCallingConventionRegisters(JavaCall, RegisterFlag.CPU)[0];
+            CiRegister hub = registerConfig.getScratchRegister();
+            CiKind wordKind = WordUtil.archKind();
+
+            for (int i = 0; i < OPTIMIZED_ENTRY_POINT.offset(); ++i) {
+                asm.nop();
+            }
+
+            asm.movq(hub, new CiAddress(wordKind, receiver.asValue(), hubOffset()));
+            if (classIDs == null) {
+                // hub.getITableIndex(interfaceID): rdx and rcx carry parameters and are preserved around the division
+                asm.push(rdx);
+                asm.push(rcx);
+                asm.movl(rax, method.holder().id);
+                asm.cdql();
+                asm.movl(rcx, new CiAddress(CiKind.Int, hub.asValue(), offsetOfMTableLength()));
+                asm.idivl(rcx);
+                asm.movl(rax, new CiAddress(CiKind.Int, hub.asValue(), offsetOfMTableStartIndex()));
+                asm.addl(rdx, rax);
+                asm.movl(rax, new CiAddress(CiKind.Int, hub.asValue(), rdx.asValue(), Scale.Times4, offsetOfFirstHubElement()));
+                asm.pop(rcx);
+                asm.pop(rdx);
+                int disp = offsetOfFirstHubElement() + method.iIndexInInterface() * Word.size();
+                asm.jmp(new CiAddress(wordKind, hub.asValue(), rax.asValue(), Scale.fromInt(Word.size()), disp));
+            } else {
+                asm.movq(rax, new CiAddress(wordKind, hub.asValue(), offsetOfClassActor()));
+                asm.movl(rax, new CiAddress(CiKind.Int, rax.asValue(), offsetOfClassID()));
+                for (int i = 0; i < classIDs.length; i++) {
+                    Label next = new Label();
+                    asm.cmpl(rax, classIDs[i]);
+                    asm.jcc(ConditionFlag.notEqual, next);
+                    asm.jmp(new CiAddress(wordKind, hub.asValue(), offsetOfFirstHubElement() + hubIndices[i] * Word.size()));
+                    asm.bind(next);
+                }
+                asm.movq(hub, OPTIMIZED_ENTRY_POINT.in(vm().stubs.inlineCacheMissStub()).toLong());
+                asm.jmp(hub);
+            }
+            return asm.codeBuffer.close(true);
+        }
+        throw FatalError.unimplemented();
+    }
+}
@@ -115,7 +115,18 @@ public final class Stub extends TargetMethod {
         /**
          * A stub to execute method handle intrinsic invokeBasic methods.
          */
-        InvokeBasic
+        InvokeBasic,
+
+        /**
+         * Stub called by an {@link InlineCache} call site when the receiver's class is not covered by the call site's
+         * inline cache.
+         */
+        InlineCacheMissStub,
+
+        /**
+         * The code of an {@link InlineCache}.
+         */
+        InlineCacheStub
     }
 
     @HOSTED_ONLY
@@ -203,6 +214,7 @@ public final class Stub extends TargetMethod {
             case VirtualTrampoline:
             case StaticTrampoline:
             case InterfaceTrampoline:
+            case InlineCacheMissStub:
                 return rc.trampoline.csl;
             case DeoptStubFromSafepoint:
             case TrapStub:
@@ -121,6 +121,11 @@ public class Stubs {
      */
     private Stub staticTrampoline;
 
+    /**
+     * The stub called by an {@linkplain InlineCache inline cache} call site whose inline cache misses.
+     */
+    private Stub inlineCacheMissStub;
+
     /**
      * The stub called by the native level trap handler.
      *
@@ -189,9 +194,11 @@ public class Stubs {
     private CriticalMethod resolveVirtualCall;
     private CriticalMethod resolveInterfaceCall;
     private CriticalMethod resolveInvokeBasicCall;
+    private CriticalMethod inlineCacheMiss;
     private CiValue[] resolveVirtualCallArgs;
     private CiValue[] resolveInterfaceCallArgs;
     private CiValue[] resolveInvokeBasicCallArgs;
+    private CiValue[] inlineCacheMissArgs;
     private RuntimeInitialization[] runtimeInits = {};
 
     public Stubs(RegisterConfigs registerConfigs) {
@@ -205,6 +212,13 @@ public class Stubs {
         return staticTrampoline;
     }
 
+    /**
+     * Gets the stub called by an {@linkplain InlineCache inline cache} call site whose inline cache misses.
+     */
+    public Stub inlineCacheMissStub() {
+        return inlineCacheMissStub;
+    }
+
     /**
      * Returns the stub to resolve the target to a MethodHandle.invokeBasic intrinsic.
      * @return
@@ -261,6 +275,11 @@ public class Stubs {
                 staticTrampoline = genStaticTrampoline();
                 trapStub = genTrapStub();
                 invokeBasicStub = genResolveInvokeBasicTarget();
+                if (platform().isa == ISA.AMD64) {
+                    inlineCacheMiss = new CriticalMethod(InlineCache.class, "miss", null);
+                    inlineCacheMissArgs = registerConfigs.trampoline.getCallingConvention(JavaCall, CiUtil.signatureToKinds(inlineCacheMiss.classMethodActor), target(), false).locations;
+                    inlineCacheMissStub = genInlineCacheMissStub();
+                }
 
                 CriticalMethod unroll = new CriticalMethod(Stubs.class, "unroll", null);
                 CiValue[] unrollArgs = registerConfigs.standard.getCallingConvention(JavaCall, CiUtil.signatureToKinds(unroll.classMethodActor), target(), false).locations;
@@ -478,6 +497,58 @@ public class Stubs {
         throw FatalError.unimplemented();
     }
 
+    /**
+     * Generates the stub called by an {@linkplain InlineCache inline cache} call site whose inline cache does not
+     * cover the class of the receiver. Like a dynamic trampoline, the stub saves and restores all the parameter
+     * registers around the call to the miss handler and then continues in the selected method as if it had been
+     * called by the call site.
+     */
+    @HOSTED_ONLY
+    private Stub genInlineCacheMissStub() {
+        CiRegisterConfig registerConfig = registerConfigs.trampoline;
+        AMD64MacroAssembler asm = new AMD64MacroAssembler(target(), registerConfig);
+        CiCalleeSaveLayout csl = registerConfig.getCalleeSaveLayout();
+        int frameSize = target().alignFrameSize(csl.size);
+        final int frameToCSA = csl.frameOffsetToCSA;
+
+        for (int i = 0; i < prologueSize; ++i) {
+            asm.nop();
+        }
+
+        // now allocate the frame for this method
+        asm.subq(AMD64.rsp, frameSize);
+
+        // save all the callee save registers
+        asm.save(csl, frameToCSA);
+
+        // the receiver is already in the first arg register
+
+        // load the return address into the second arg register
+        asm.movq(inlineCacheMissArgs[1].asRegister(), new CiAddress(WordUtil.archKind(), AMD64.rsp.asValue(), frameSize));
+
+        asm.alignForPatchableDirectCall();
+        int callPos = asm.codeBuffer.position();
+        ClassMethodActor callee = inlineCacheMiss.classMethodActor;
+        asm.call();
+        int callSize = asm.codeBuffer.position() - callPos;
+
+        // Put the entry point of the selected method on the stack just below the
+        // return address of the stub itself and 'ret' to it, as done by the
+        // dynamic trampolines.
+        CiRegister returnReg = registerConfig.getReturnRegister(WordUtil.archKind());
+        asm.movq(new CiAddress(WordUtil.archKind(), AMD64.rsp.asValue(), frameSize - 8), returnReg);
+
+        // Restore all parameter registers before returning
+        int registerRestoreEpilogueOffset = asm.codeBuffer.position();
+        asm.restore(csl, frameToCSA);
+
+        asm.addq(AMD64.rsp, frameSize - 8);
+        asm.ret(0);
+
+        byte[] code = asm.codeBuffer.close(true);
+        return new Stub(InlineCacheMissStub, "icache-miss", frameSize, code, callPos, callSize, callee, registerRestoreEpilogueOffset);
+    }
+
     private Stub genDynamicTrampoline(int index, boolean isInterface, String stubName) {
         delayedInit();
         if (platform().isa == ISA.AMD64) {
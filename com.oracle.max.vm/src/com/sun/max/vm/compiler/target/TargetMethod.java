@@ -168,6 +168,17 @@ public abstract class TargetMethod extends MemoryRegion {
      */
     private int registerRestoreEpilogueOffset = -1;
 
+    /**
+     * The position of the on-stack replacement entry point of this method. A value of {@code -1} means
+     * this target method was not compiled for on-stack replacement.
+     */
+    private int osrEntryPos = -1;
+
+    /**
+     * The kinds of the locals read from the OSR buffer by the on-stack replacement entry point of this method.
+     */
+    private CiKind[] osrLocalKinds;
+
     public TargetMethod(String description, CallEntryPoint callEntryPoint) {
         assert this instanceof Stub || this instanceof Adapter;
         this.classMethodActor = null;
@@ -192,6 +203,39 @@ public abstract class TargetMethod extends MemoryRegion {
         registerRestoreEpilogueOffset = x;
     }
 
+    /**
+     * Gets the position of the on-stack replacement entry point of this method.
+     *
+     * @return {@code -1} if this method was not compiled for on-stack replacement
+     * @see OnStackReplacement
+     */
+    public int osrEntryPos() {
+        return osrEntryPos;
+    }
+
+    /**
+     * Gets the kinds of the locals read by the on-stack replacement entry point of this method from the OSR buffer,
+     * indexed by local variable index. A {@link CiKind#Illegal} entry denotes a local that is not live at the entry.
+     *
+     * @return {@code null} if this method was not compiled for on-stack replacement
+     * @see OnStackReplacement
+     */
+    public CiKind[] osrLocalKinds() {
+        return osrLocalKinds;
+    }
+
+    /**
+     * Gets the position of the code in this baseline method that is returned to by an on-stack replacement
+     * variant of the method that has taken over the activation of this method. This code completes the
+     * activation by returning the value it was handed to the caller.
+     *
+     * @return {@code -1} if this method cannot be replaced on stack
+     * @see OnStackReplacement
+     */
+    public int osrExitPos() {
+        return -1;
+    }
+
     public final ClassMethodActor classMethodActor() {
         return classMethodActor;
     }
@@ -737,6 +781,8 @@ public abstract class TargetMethod extends MemoryRegion {
     protected void initFrameLayout(CiTargetMethod ciTargetMethod) {
         this.setFrameSize(ciTargetMethod.frameSize());
         this.setRegisterRestoreEpilogueOffset(ciTargetMethod.registerRestoreEpilogueOffset());
+        this.osrEntryPos = ciTargetMethod.osrEntryOffset();
+        this.osrLocalKinds = ciTargetMethod.osrLocalKinds();
     }
 
     protected CiDebugInfo[] initSafepoints(CiTargetMethod ciTargetMethod) {
@@ -857,11 +903,24 @@ public abstract class TargetMethod extends MemoryRegion {
     }
 
     public final ClassMethodActor callPosToCallee(int callPos) {
+        Object callee = callPosToDirectCallee(callPos);
+        if (callee instanceof ClassMethodActor) {
+            return (ClassMethodActor) callee;
+        }
+        return null;
+    }
+
+    /**
+     * Gets the entry in {@link #directCallees()} for the direct call at a given position.
+     *
+     * @return a {@link ClassMethodActor} or {@link TargetMethod} or {@code null} if there is no direct call at {@code callPos}
+     */
+    public final Object callPosToDirectCallee(int callPos) {
         int dcIndex = 0;
         for (int i = 0; i < safepoints.size(); i++) {
             if (safepoints.isSetAt(DIRECT_CALL, i)) {
-                if (safepoints.causePosAt(i) == callPos && directCallees[dcIndex] instanceof ClassMethodActor) {
-                    return (ClassMethodActor) directCallees[dcIndex];
+                if (safepoints.causePosAt(i) == callPos) {
+                    return directCallees[dcIndex];
                 }
                 dcIndex++;
             }
@@ -956,7 +1015,8 @@ public abstract class TargetMethod extends MemoryRegion {
      * Links all the calls from this target method to other methods for which the exact method actor is known. Linking a
      * call means patching the operand of a call instruction that specifies the address of the target code to call. In
      * the case of a callee for which there is no target code available (i.e. it has not yet been compiled or it has
-     * been evicted from the code cache), the address of a static trampoline is patched into the call instruction.
+     * been evicted from the code cache), the address of a static trampoline is patched into the call instruction. An
+     * {@linkplain InlineCache inline cache} call site is linked to the inline cache miss stub.
      *
      * @return true if target code was available for all the direct callees
      */
@@ -983,6 +1043,9 @@ public abstract class TargetMethod extends MemoryRegion {
                         int callPos = safepoints.causePosAt(safepointIndex);
                         fixupCallSite(callPos, callee.codeAt(offset));
                     }
+                } else if (InlineCache.isCallSite(currentDirectCallee)) {
+                    int callPos = safepoints.causePosAt(safepointIndex);
+                    fixupCallSite(callPos, vm().stubs.inlineCacheMissStub().codeAt(offset));
                 } else {
                     FatalError.breakpoint();
                     final TargetMethod callee = getTargetMethod(currentDirectCallee);
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+
+/**
+ * A TLAB refill policy that resizes the TLABs of its thread based on the thread's allocation history.
+ *
+ * Each thread has its own adaptive policy. The policy counts the TLABs handed out to its thread and the space wasted at TLAB refills
+ * during a GC epoch (i.e., between two consecutive retirements of the thread's TLAB by the GC).
+ * When the TLAB is retired, the bytes allocated by the thread during the epoch are folded into an exponentially decaying average
+ * and the next TLAB size is set so that the thread would need {@link #targetRefills()} refills to allocate that many bytes.
+ * Heavily allocating threads thus get larger TLABs, whereas idle threads see their TLAB shrink toward {@link #MinTLABSize}.
+ *
+ * Refills are decided using a refill waste limit: the TLAB is refilled on allocation failure only if the space left in the TLAB
+ * is below the limit. Otherwise, the request is allocated outside the TLAB and the limit is raised, so that a thread repeatedly
+ * failing to allocate in its TLAB will eventually give up on the leftover.
+ *
+ * The statistics of every epoch are added to the totals kept by {@link TLABLog}, and are traced with {@link TLABLog#TraceTLABResizing}.
+ */
+public final class AdaptiveTLABRefillPolicy extends TLABRefillPolicy {
+    /**
+     * Percentage of the space allocated to TLABs that may be wasted.
+     */
+    static int TLABWasteTargetPercent = 1;
+    /**
+     * Weight, in percent, of the last epoch in the average of allocated bytes.
+     */
+    static int TLABAllocationWeight = 35;
+    /**
+     * Fraction of the TLAB that may be wasted when refilling it.
+     */
+    static int TLABRefillWasteFraction = 64;
+    /**
+     * Number of words the refill waste limit is increased by when an allocation is done outside of the TLAB.
+     */
+    static int TLABWasteIncrement = 4;
+
+    private static final VMSizeOption minTLABSizeOption = register(new VMSizeOption("-XX:MinTLABSize=", Size.K.times(2),
+        "The minimum size of thread-local allocation buffers when resizing them."), Phase.PRISTINE);
+
+    private static final VMSizeOption maxTLABSizeOption = register(new VMSizeOption("-XX:MaxTLABSize=", Size.M,
+        "The maximum size of thread-local allocation buffers when resizing them."), Phase.PRISTINE);
+
+    static {
+        VMOptions.addFieldOption("-XX:", "TLABWasteTargetPercent", AdaptiveTLABRefillPolicy.class, "Percentage of TLAB space that may be wasted", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TLABAllocationWeight", AdaptiveTLABRefillPolicy.class, "Weight (in percent) of the last GC epoch when averaging TLAB allocation", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TLABRefillWasteFraction", AdaptiveTLABRefillPolicy.class, "Maximum fraction of a TLAB that may be wasted by a refill", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TLABWasteIncrement", AdaptiveTLABRefillPolicy.class, "Words the refill waste limit grows by on allocation outside of the TLAB", Phase.PRISTINE);
+    }
+
+    /**
+     * Number of refills the TLAB should take over an epoch to keep waste within {@link #TLABWasteTargetPercent}.
+     * On average, half a TLAB is wasted when the TLAB is retired at GC.
+     */
+    static int targetRefills() {
+        return Math.max(1, 100 / (2 * TLABWasteTargetPercent));
+    }
+
+    /**
+     * Size the TLAB should have on next refill.
+     */
+    private Size nextSize;
+
+    /**
+     * Space left in the TLAB above which a failed allocation doesn't cause a refill.
+     */
+    private Size refillWasteLimit;
+
+    /**
+     * Number of TLABs handed out to the thread during the current epoch.
+     */
+    private int refills;
+
+    /**
+     * Bytes of TLABs handed out to the thread during the current epoch.
+     */
+    private long tlabBytes;
+
+    /**
+     * Bytes left unused in TLABs at refill during the current epoch.
+     */
+    private long refillWaste;
+
+    /**
+     * Bytes allocated outside of the TLAB during the current epoch.
+     */
+    private long slowAllocated;
+
+    /**
+     * Decaying average of the bytes allocated in TLABs per epoch.
+     */
+    private long averageAllocated;
+
+    /**
+     * Decaying average of the percentage of TLAB space wasted per epoch.
+     */
+    private int averageWastePercent;
+
+    /**
+     * Creates a policy for a thread whose first TLAB was just refilled with {@code initialTLABSize} bytes.
+     */
+    public AdaptiveTLABRefillPolicy(Size initialTLABSize) {
+        nextSize = initialTLABSize;
+        refillWasteLimit = initialTLABSize.dividedBy(TLABRefillWasteFraction);
+        averageAllocated = initialTLABSize.toLong() * targetRefills();
+        refills = 1;
+        tlabBytes = initialTLABSize.toLong();
+    }
+
+    @Override
+    public boolean shouldRefill(Size size, Pointer allocationMark) {
+        // Without the TLAB's end, the space left is unknown. Refill.
+        return true;
+    }
+
+    @Override
+    public boolean shouldRefill(Size size, Pointer allocationMark, Pointer tlabEnd) {
+        if (allocationMark.isZero() || tlabEnd.lessEqual(allocationMark)) {
+            return true;
+        }
+        if (tlabEnd.minus(allocationMark).lessEqual(refillWasteLimit)) {
+            return true;
+        }
+        // Too much space left to throw it away. Allocate outside of the TLAB and make it easier to give up the TLAB next time.
+        refillWasteLimit = refillWasteLimit.plus(Word.size() * TLABWasteIncrement);
+        slowAllocated += size.toLong();
+        return false;
+    }
+
+    @Override
+    public Size nextTlabSize() {
+        return nextSize;
+    }
+
+    @Override
+    public void notifyRefill(Size leftover, Size size) {
+        refills++;
+        tlabBytes += size.toLong();
+        refillWaste += leftover.toLong();
+        refillWasteLimit = size.dividedBy(TLABRefillWasteFraction);
+    }
+
+    @Override
+    public void notifyRetire(Pointer etla, Size leftover) {
+        final long wasted = refillWaste + leftover.toLong();
+        final long allocated = Math.max(0L, tlabBytes - wasted);
+        final int wastePercent = tlabBytes == 0L ? 0 : (int) ((wasted * 100) / tlabBytes);
+
+        averageAllocated = ((100 - TLABAllocationWeight) * averageAllocated + TLABAllocationWeight * allocated) / 100;
+        averageWastePercent = ((100 - TLABAllocationWeight) * averageWastePercent + TLABAllocationWeight * wastePercent) / 100;
+
+        long desiredSize = averageAllocated / targetRefills();
+        desiredSize = Math.max(desiredSize, minTLABSizeOption.getValue().toLong());
+        desiredSize = Math.min(desiredSize, maxTLABSizeOption.getValue().toLong());
+        nextSize = Size.fromLong(desiredSize).wordAligned().asSize();
+        refillWasteLimit = nextSize.dividedBy(TLABRefillWasteFraction);
+
+        TLABLog.recordEpoch(refills, tlabBytes, wasted, slowAllocated);
+        if (TLABLog.TraceTLABResizing) {
+            TLABLog.logResize(etla, refills, allocated, wastePercent, slowAllocated, averageAllocated, averageWastePercent, nextSize);
+        }
+        refills = 0;
+        tlabBytes = 0L;
+        refillWaste = 0L;
+        slowAllocated = 0L;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap;
+
+/**
+ * A histogram of non-negative values with a bounded relative error, in the manner of HdrHistogram.
+ *
+ * Values below {@code 2^subBucketBits} are counted exactly. Above, each power-of-two range is divided into {@code 2^(subBucketBits - 1)}
+ * equal sub-buckets, so that values counted in the same bucket differ by less than {@code 1 / 2^(subBucketBits - 1)} of their magnitude.
+ * Counts are kept in a single array allocated on creation: recording a value never allocates, and can be done during a GC.
+ *
+ * Values are recorded by a single thread. Readers may run concurrently and see a slightly stale histogram.
+ */
+public final class GCHistogram {
+    private final int subBucketBits;
+    private final int subBucketCount;
+    private final int subBucketHalfCount;
+    private final int[] counts;
+
+    private long totalCount;
+    private long totalValue;
+    private long minValue = Long.MAX_VALUE;
+    private long maxValue;
+
+    /**
+     * Create a histogram.
+     *
+     * @param subBucketBits number of significant bits of the recorded values, e.g., 7 for two significant decimal digits
+     * @param maxValueBits number of bits of the largest value counted precisely; larger values are counted in the last bucket
+     */
+    public GCHistogram(int subBucketBits, int maxValueBits) {
+        assert subBucketBits > 1 && maxValueBits > subBucketBits && maxValueBits < 63;
+        this.subBucketBits = subBucketBits;
+        this.subBucketCount = 1 << subBucketBits;
+        this.subBucketHalfCount = subBucketCount >> 1;
+        counts = new int[subBucketCount + (maxValueBits - subBucketBits) * subBucketHalfCount];
+    }
+
+    private int indexOf(long value) {
+        if (value < subBucketCount) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - (subBucketBits - 1);
+        final int index = subBucketCount + (shift - 1) * subBucketHalfCount + (int) (value >>> shift) - subBucketHalfCount;
+        return index < counts.length ? index : counts.length - 1;
+    }
+
+    private long lowestValueAt(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+        final int offset = index - subBucketCount;
+        final int shift = offset / subBucketHalfCount + 1;
+        return (long) (offset % subBucketHalfCount + subBucketHalfCount) << shift;
+    }
+
+    private long highestValueAt(int index) {
+        return index + 1 < counts.length ? lowestValueAt(index + 1) - 1 : maxValue;
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[indexOf(value)]++;
+        totalCount++;
+        totalValue += value;
+        if (value < minValue) {
+            minValue = value;
+        }
+        if (value > maxValue) {
+            maxValue = value;
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        totalCount = 0;
+        totalValue = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = 0;
+    }
+
+    public long count() {
+        return totalCount;
+    }
+
+    public long min() {
+        return totalCount == 0 ? 0 : minValue;
+    }
+
+    public long max() {
+        return maxValue;
+    }
+
+    public long mean() {
+        return totalCount == 0 ? 0 : totalValue / totalCount;
+    }
+
+    /**
+     * Returns the value below which the specified percentage of the recorded values fall, up to the precision of the histogram.
+     * The value returned is the highest value equivalent to the recorded values of the bucket the percentile falls in.
+     *
+     * @param percentile a percentage between 0 and 100
+     * @return the value at the percentile, or 0 if no values were recorded
+     */
+    public long percentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        final double p = percentile < 0.0 ? 0.0 : (percentile > 100.0 ? 100.0 : percentile);
+        long target = (long) Math.ceil(p / 100.0 * totalCount);
+        if (target < 1) {
+            target = 1;
+        }
+        long cumulated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulated += counts[i];
+            if (cumulated >= target) {
+                final long value = highestValueAt(i);
+                return value < maxValue ? value : maxValue;
+            }
+        }
+        return maxValue;
+    }
+}
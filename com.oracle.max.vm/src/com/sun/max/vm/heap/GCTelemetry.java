@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import java.io.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.vm.*;
+
+/**
+ * Structured GC telemetry. Records, for every collection, the pause time and the time spent in each {@link GCPhase phase}
+ * of the collection, and keeps them in {@link GCHistogram histograms} for the lifetime of the VM.
+ * The histograms are published via the {@link com.sun.max.vm.management.GCTelemetryMXBean} of the heap scheme.
+ *
+ * A collection is delimited by {@link #beginCollection()} and {@link #endCollection(int)}, which the {@link com.sun.max.vm.runtime.GCOperation}
+ * calls around every collection. Heap schemes bracket their phases with {@link #beginPhase(GCPhase)} and {@link #endPhase(GCPhase)}.
+ * Phase boundaries met outside of a collection (e.g., lazy sweeping by mutators) are ignored.
+ *
+ * Optionally, one record per collection is written to a binary event log (see {@code -XX:GCEventLog}).
+ * Records are appended to a pre-allocated ring buffer during the collection and written out by a daemon thread, since no I/O can be done
+ * while the GC is running. Records that don't fit in the ring before the writer catches up are dropped and counted.
+ * The log starts with the magic number {@code 'MXGC'}, a version number, the number of phases and their names,
+ * followed by the records. Each record is a sequence of longs: the collection number, the wall-clock time at the start of the pause in milliseconds,
+ * the pause time in nanoseconds, and the time of each phase in nanoseconds.
+ */
+public final class GCTelemetry {
+
+    /**
+     * Phases of a collection tracked by the telemetry. Not all heap schemes go through all phases.
+     */
+    public enum GCPhase {
+        ROOT_SCAN("root scan"),
+        MARK("mark"),
+        SWEEP("sweep"),
+        EVACUATE("evacuate"),
+        REFERENCE_PROCESSING("reference processing"),
+        CARD_SCAN("card scan");
+
+        public final String description;
+
+        /**
+         * Distribution of the time spent in this phase, in microseconds, over the collections that went through the phase.
+         */
+        final GCHistogram histogram = newHistogram();
+
+        /**
+         * Time spent in the phase during the current collection, in nanoseconds.
+         */
+        long elapsed;
+        long start;
+        int depth;
+        boolean visited;
+
+        private GCPhase(String description) {
+            this.description = description;
+        }
+
+        public static final GCPhase[] VALUES = values();
+    }
+
+    private static boolean RecordGCTelemetry = true;
+    private static boolean PrintGCTelemetry;
+    static {
+        VMOptions.addFieldOption("-XX:", "RecordGCTelemetry", GCTelemetry.class, "Record per-phase GC pause time histograms", MaxineVM.Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "PrintGCTelemetry", GCTelemetry.class, "Print GC pause time histograms at VM exit", MaxineVM.Phase.PRISTINE);
+    }
+
+    private static final VMStringOption eventLogOption = register(new VMStringOption("-XX:GCEventLog=", false, null,
+                    "Write a binary record of every collection's pause and phase times to the specified file."), MaxineVM.Phase.PRISTINE);
+
+    private static final VMIntOption eventLogBufferOption = register(new VMIntOption("-XX:GCEventLogBuffer=", 1024,
+                    "Number of GC event log records buffered between two writes of the log."), MaxineVM.Phase.PRISTINE);
+
+    /**
+     * Interval in milliseconds at which the event log writer drains the ring buffer.
+     */
+    private static final long EVENT_LOG_WRITE_INTERVAL = 1000L;
+
+    private static final int EVENT_LOG_MAGIC = 0x4D584743;
+    private static final int EVENT_LOG_VERSION = 1;
+    private static final int RECORD_HEADER_WORDS = 3;
+    private static final int RECORD_WORDS = RECORD_HEADER_WORDS + GCPhase.VALUES.length;
+
+    /**
+     * Distribution of the pause time, in microseconds.
+     */
+    private static final GCHistogram pauseHistogram = newHistogram();
+
+    private static boolean inCollection;
+    private static long collectionStartNanos;
+    private static long collectionStartMillis;
+
+    private static long[] eventRing;
+    private static int eventRingCapacity;
+    /**
+     * Number of records appended to the ring. Only updated by the GC.
+     */
+    private static volatile long eventsProduced;
+    /**
+     * Number of records written out of the ring. Only updated by the writer, under {@link #eventLogLock}.
+     */
+    private static volatile long eventsConsumed;
+    private static long eventsDropped;
+    private static DataOutputStream eventLog;
+    private static final Object eventLogLock = new Object();
+
+    private GCTelemetry() {
+    }
+
+    @HOSTED_ONLY
+    private static GCHistogram newHistogram() {
+        // Two significant digits, precise up to about 19 hours.
+        return new GCHistogram(7, 36);
+    }
+
+    public static boolean isEnabled() {
+        return RecordGCTelemetry;
+    }
+
+    public static void initialize(MaxineVM.Phase phase) {
+        if (phase == MaxineVM.Phase.RUNNING) {
+            if (eventLogOption.getValue() != null) {
+                openEventLog(eventLogOption.getValue());
+            }
+        } else if (phase == MaxineVM.Phase.TERMINATING) {
+            if (eventLog != null) {
+                closeEventLog();
+            }
+            if (PrintGCTelemetry) {
+                print();
+            }
+        }
+    }
+
+    /**
+     * Start recording a collection. Called by the GC operation before the heap scheme's collection.
+     */
+    public static void beginCollection() {
+        if (!RecordGCTelemetry) {
+            return;
+        }
+        for (GCPhase phase : GCPhase.VALUES) {
+            phase.elapsed = 0L;
+            phase.depth = 0;
+            phase.visited = false;
+        }
+        inCollection = true;
+        collectionStartMillis = System.currentTimeMillis();
+        collectionStartNanos = System.nanoTime();
+    }
+
+    /**
+     * End recording of a collection, and records its pause and phase times in the histograms and the event log.
+     *
+     * @param gcId the number of the collection
+     */
+    public static void endCollection(int gcId) {
+        if (!inCollection) {
+            return;
+        }
+        final long pause = System.nanoTime() - collectionStartNanos;
+        inCollection = false;
+        pauseHistogram.record(pause / 1000L);
+        for (GCPhase phase : GCPhase.VALUES) {
+            if (phase.visited) {
+                phase.histogram.record(phase.elapsed / 1000L);
+            }
+        }
+        if (eventRing != null) {
+            appendEvent(gcId, pause);
+        }
+    }
+
+    /**
+     * Enter a phase of the current collection. Nested entries of the same phase are timed once.
+     */
+    public static void beginPhase(GCPhase phase) {
+        if (inCollection && phase.depth++ == 0) {
+            phase.visited = true;
+            phase.start = System.nanoTime();
+        }
+    }
+
+    /**
+     * Leave a phase of the current collection.
+     */
+    public static void endPhase(GCPhase phase) {
+        if (inCollection && phase.depth > 0 && --phase.depth == 0) {
+            phase.elapsed += System.nanoTime() - phase.start;
+        }
+    }
+
+    public static GCHistogram pauseHistogram() {
+        return pauseHistogram;
+    }
+
+    public static GCHistogram phaseHistogram(GCPhase phase) {
+        return phase.histogram;
+    }
+
+    /**
+     * Finds a phase from its name or its description.
+     *
+     * @return the phase, or {@code null} if none match {@code name}
+     */
+    public static GCPhase phaseNamed(String name) {
+        for (GCPhase phase : GCPhase.VALUES) {
+            if (phase.name().equalsIgnoreCase(name) || phase.description.equalsIgnoreCase(name)) {
+                return phase;
+            }
+        }
+        return null;
+    }
+
+    public static void reset() {
+        pauseHistogram.reset();
+        for (GCPhase phase : GCPhase.VALUES) {
+            phase.histogram.reset();
+        }
+    }
+
+    private static void printColumn(String s, int width) {
+        for (int i = s.length(); i < width; i++) {
+            Log.print(' ');
+        }
+        Log.print(s);
+    }
+
+    private static void printColumn(long value, int width) {
+        printColumn(Long.toString(value), width);
+    }
+
+    private static void printHistogram(String name, GCHistogram histogram) {
+        Log.print("  ");
+        Log.print(name);
+        printColumn("", 22 - name.length());
+        printColumn(histogram.count(), 9);
+        printColumn(histogram.mean(), 11);
+        printColumn(histogram.percentile(50.0), 11);
+        printColumn(histogram.percentile(99.0), 11);
+        printColumn(histogram.percentile(99.9), 11);
+        printColumn(histogram.max(), 11);
+        Log.println();
+    }
+
+    /**
+     * Prints the pause and phase histograms to the {@linkplain Log log}.
+     */
+    public static void print() {
+        final boolean lockDisabledSafepoints = Log.lock();
+        try {
+            Log.println("GC telemetry (times in microseconds):");
+            printColumn("", 24);
+            printColumn("count", 9);
+            printColumn("mean", 11);
+            printColumn("p50", 11);
+            printColumn("p99", 11);
+            printColumn("p99.9", 11);
+            printColumn("max", 11);
+            Log.println();
+            printHistogram("pause", pauseHistogram);
+            for (GCPhase phase : GCPhase.VALUES) {
+                if (phase.histogram.count() > 0) {
+                    printHistogram(phase.description, phase.histogram);
+                }
+            }
+            if (eventsDropped > 0) {
+                Log.print("  ");
+                Log.print(eventsDropped);
+                Log.println(" GC event log records dropped");
+            }
+        } finally {
+            Log.unlock(lockDisabledSafepoints);
+        }
+    }
+
+    private static void appendEvent(int gcId, long pause) {
+        if (eventsProduced - eventsConsumed >= eventRingCapacity) {
+            eventsDropped++;
+            return;
+        }
+        int index = (int) (eventsProduced % eventRingCapacity) * RECORD_WORDS;
+        eventRing[index++] = gcId;
+        eventRing[index++] = collectionStartMillis;
+        eventRing[index++] = pause;
+        for (GCPhase phase : GCPhase.VALUES) {
+            eventRing[index++] = phase.elapsed;
+        }
+        eventsProduced++;
+    }
+
+    private static void openEventLog(String fileName) {
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+            out.writeInt(EVENT_LOG_MAGIC);
+            out.writeInt(EVENT_LOG_VERSION);
+            out.writeInt(GCPhase.VALUES.length);
+            for (GCPhase phase : GCPhase.VALUES) {
+                out.writeUTF(phase.name());
+            }
+            eventRingCapacity = Math.max(1, eventLogBufferOption.getValue());
+            eventRing = new long[eventRingCapacity * RECORD_WORDS];
+            eventLog = out;
+        } catch (IOException e) {
+            Log.println("Could not open GC event log " + fileName + ": " + e);
+            return;
+        }
+        final Thread writer = new Thread("GC-Event-Log-Writer") {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        Thread.sleep(EVENT_LOG_WRITE_INTERVAL);
+                    } catch (InterruptedException e) {
+                    }
+                    if (!drainEventLog()) {
+                        return;
+                    }
+                }
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Write the records accumulated in the ring to the event log.
+     *
+     * @return {@code false} if the log is closed
+     */
+    private static boolean drainEventLog() {
+        synchronized (eventLogLock) {
+            if (eventLog == null) {
+                return false;
+            }
+            try {
+                final long produced = eventsProduced;
+                long consumed = eventsConsumed;
+                while (consumed < produced) {
+                    final int index = (int) (consumed % eventRingCapacity) * RECORD_WORDS;
+                    for (int i = 0; i < RECORD_WORDS; i++) {
+                        eventLog.writeLong(eventRing[index + i]);
+                    }
+                    consumed++;
+                    eventsConsumed = consumed;
+                }
+                eventLog.flush();
+            } catch (IOException e) {
+                Log.println("Error writing GC event log: " + e);
+                eventLog = null;
+                eventRing = null;
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private static void closeEventLog() {
+        if (drainEventLog()) {
+            synchronized (eventLogLock) {
+                try {
+                    eventLog.close();
+                } catch (IOException e) {
+                }
+                eventLog = null;
+            }
+        }
+    }
+}
@@ -57,7 +57,7 @@ public abstract class HeapSchemeAdaptor extends AbstractVMScheme implements Heap
         VMOptions.addFieldOption("-XX:", "DisableExplicitGC", HeapSchemeAdaptor.class, "Tells whether System.gc() forces a full GC", MaxineVM.Phase.PRISTINE);
     }
 
-    public class GarbageCollectorMXBeanAdaptor extends MemoryManagerMXBeanAdaptor implements GarbageCollectorMXBean  {
+    public class GarbageCollectorMXBeanAdaptor extends MemoryManagerMXBeanAdaptor implements GCTelemetryMXBean  {
         public GarbageCollectorMXBeanAdaptor(String name) {
             super(name);
         }
@@ -74,6 +74,49 @@ public abstract class HeapSchemeAdaptor extends AbstractVMScheme implements Heap
             return accumulatedGCTime;
         }
 
+        public String[] getPhaseNames() {
+            final String[] names = new String[GCTelemetry.GCPhase.VALUES.length];
+            for (GCTelemetry.GCPhase phase : GCTelemetry.GCPhase.VALUES) {
+                names[phase.ordinal()] = phase.name();
+            }
+            return names;
+        }
+
+        public long getPauseCount() {
+            return GCTelemetry.pauseHistogram().count();
+        }
+
+        public long getPauseTimePercentile(double percentile) {
+            return GCTelemetry.pauseHistogram().percentile(percentile);
+        }
+
+        public long getMaxPauseTime() {
+            return GCTelemetry.pauseHistogram().max();
+        }
+
+        public long getMeanPauseTime() {
+            return GCTelemetry.pauseHistogram().mean();
+        }
+
+        public long getPhaseCount(String phaseName) {
+            final GCTelemetry.GCPhase phase = GCTelemetry.phaseNamed(phaseName);
+            return phase == null ? -1L : GCTelemetry.phaseHistogram(phase).count();
+        }
+
+        public long getPhaseTimePercentile(String phaseName, double percentile) {
+            final GCTelemetry.GCPhase phase = GCTelemetry.phaseNamed(phaseName);
+            return phase == null ? -1L : GCTelemetry.phaseHistogram(phase).percentile(percentile);
+        }
+
+        public long getMaxPhaseTime(String phaseName) {
+            final GCTelemetry.GCPhase phase = GCTelemetry.phaseNamed(phaseName);
+            return phase == null ? -1L : GCTelemetry.phaseHistogram(phase).max();
+        }
+
+        public void resetTelemetry() {
+            GCTelemetry.reset();
+        }
+
         @Override
         public ObjectName getObjectName() {
             try {
@@ -207,6 +250,7 @@ public abstract class HeapSchemeAdaptor extends AbstractVMScheme implements Heap
         if (phase == MaxineVM.Phase.PRISTINE) {
             releaseUnusedReservedVirtualSpace();
         }
+        GCTelemetry.initialize(phase);
     }
 
     @HOSTED_ONLY
@@ -39,6 +39,7 @@ import com.sun.max.vm.layout.*;
 import com.sun.max.vm.log.VMLog.Record;
 import com.sun.max.vm.log.hosted.*;
 import com.sun.max.vm.object.*;
+import com.sun.max.vm.profilers.sampling.*;
 import com.sun.max.vm.reference.*;
 import com.sun.max.vm.run.java.JavaRunScheme;
 import com.sun.max.vm.runtime.*;
@@ -99,6 +100,14 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
         VMOptions.addFieldOption("-XX:", "UseTLAB", HeapSchemeWithTLAB.class, "Use thread-local object allocation", MaxineVM.Phase.PRISTINE);
     }
 
+    /**
+     * A VM option for resizing TLABs of each thread according to its allocation history.
+     */
+    public static boolean ResizeTLAB = false;
+    static {
+        VMOptions.addFieldOption("-XX:", "ResizeTLAB", HeapSchemeWithTLAB.class, "Dynamically resize TLABs based on each thread's allocation rate", MaxineVM.Phase.PRISTINE);
+    }
+
     /**
      * A VM option for specifying the size of a TLAB. Default is 64 K.
      */
@@ -161,16 +170,19 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
             if (logTLAB()) {
                 logger.logReset(UnsafeCast.asVmThread(VM_THREAD.loadRef(etla).toJava()), tlabTop, tlabMark);
             }
+            final TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
             if (tlabTop.equals(Address.zero())) {
                 // TLAB's top can be null in only two cases:
                 // (1) it has never been filled, in which case it's allocation mark is null too
                 if (tlabMark.equals(Address.zero()))  {
-                    // No TLABs, so nothing to reset.
+                    // No TLABs, so nothing to reset. The refill policy still needs to know the epoch is over.
+                    if (refillPolicy != null) {
+                        refillPolicy.notifyRetire(etla, Size.zero());
+                    }
                     return;
                 }
                 // (2) allocation has been disabled for the thread.
                 FatalError.check(!ALLOCATION_DISABLED.load(currentTLA()).isZero(), "inconsistent TLAB state");
-                TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
                 if (refillPolicy != null) {
                     // Go fetch the actual TLAB top in case the heap scheme needs it for its doBeforeReset handler.
                     tlabTop = refillPolicy.getSavedTlabTop().asPointer();
@@ -178,6 +190,9 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
                     refillPolicy.saveTlabTop(Address.zero());
                 }
             }
+            if (refillPolicy != null) {
+                refillPolicy.notifyRetire(etla, tlabTop.greaterThan(tlabMark) ? tlabTop.minus(tlabMark).asSize() : Size.zero());
+            }
             doBeforeReset(etla, tlabMark, tlabTop);
             TLAB_TOP.store(etla, Address.zero());
             TLAB_MARK.store(etla, Address.zero());
@@ -257,6 +272,9 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
                 Log.print(leftover);
                 Log.println(" bytes");
             }
+            if (ResizeTLAB) {
+                TLABLog.printResizingStats();
+            }
         }
     }
 
@@ -350,6 +368,17 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
         return useTLAB;
     }
 
+    /**
+     * Creates the refill policy of a thread whose first TLAB was just refilled with {@code tlabSize} bytes.
+     * The policy is allocated from that TLAB.
+     */
+    protected final TLABRefillPolicy newTLABRefillPolicy(Size tlabSize) {
+        if (ResizeTLAB) {
+            return new AdaptiveTLABRefillPolicy(tlabSize);
+        }
+        return new SimpleTLABRefillPolicy(tlabSize);
+    }
+
     public Size initialTlabSize() {
         return initialTlabSize;
     }
@@ -379,11 +408,19 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
         if (!allocationMark.isZero()) {
             final Pointer oldTop = TLAB_TOP.load(etla);
             globalTlabStats.leftover += oldTop.minus(allocationMark).toLong();
+            final TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
+            if (refillPolicy != null) {
+                refillPolicy.notifyRefill(oldTop.greaterThan(allocationMark) ? oldTop.minus(allocationMark).asSize() : Size.zero(), size);
+            }
             // It is a refill, not an initial fill. So invoke handler.
             doBeforeTLABRefill(allocationMark, oldTop);
         } else {
             ProgramError.check(CUSTOM_ALLOCATION_ENABLED.load(etla).isZero(),
                 "Must not refill TLAB when in custom allocator is set");
+            final TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
+            if (refillPolicy != null) {
+                refillPolicy.notifyRefill(Size.zero(), size);
+            }
         }
 
         TLAB_TOP.store(etla, tlabTop);
@@ -507,7 +544,11 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
         }
         globalTlabStats.tlabOverflowCount++;
         // This path will always be taken if TLAB allocation is not enabled.
-        return handleTLABOverflow(size, etla, oldAllocationMark, tlabEnd);
+        final Pointer cell = handleTLABOverflow(size, etla, oldAllocationMark, tlabEnd);
+        if (TLABAllocationSampler.isSampling) {
+            TLABAllocationSampler.sampleTLABRefill(etla, oldAllocationMark, tlabEnd, size);
+        }
+        return cell;
     }
 
     @NEVER_INLINE
@@ -30,6 +30,8 @@ import com.sun.max.vm.*;
 import com.sun.max.vm.MaxineVM.*;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.heap.gcx.GCTask;
+import com.sun.max.vm.heap.gcx.GCWorkerGang;
 import com.sun.max.vm.hosted.*;
 import com.sun.max.vm.jdk.*;
 import com.sun.max.vm.layout.*;
@@ -47,6 +49,13 @@ import com.sun.max.vm.thread.*;
  * implement weak references and finalizers.
  * The routines in this class are called by the GC as it discovers reachable special
  * references, and after live objects have been processed.
+ * <p>
+ * GC workers of a {@link GCWorkerGang} each discover references on a list of their own, see
+ * {@link #discoverSpecialReference(Pointer, int)}. When such lists are in use the references are processed in
+ * parallel too: the workers classify the references of the lists and clear the soft and weak references whose
+ * referent is unreachable, and only the referents that must be preserved, i.e., those of softly reachable
+ * objects the {@linkplain #SoftRefLRUPolicyMSPerMB soft reference policy} keeps alive and those of final and
+ * phantom references, are handled by the VM operation thread alone.
  */
 public class SpecialReferenceManager {
 
@@ -69,6 +78,9 @@ public class SpecialReferenceManager {
          * WARNING: this interface doesn't update remembered sets if the above relocate the object.
          * FIXME: may be we should change it, which also requires changing
          *
+         * When {@code ref} is {@linkplain #isReachable(Reference) reachable} this must only read the state of the GC,
+         * as it may then be called by several GC workers concurrently.
+         *
          * @param ref the root of the object graph to be preserved
          * @return a reference to the root of the preserved object graph. Whether or not this is equal to {@code ref}
          *         depends on the specific GC algorithm (e.g. mark-sweep vs copying)
@@ -106,6 +118,86 @@ public class SpecialReferenceManager {
      */
     private static java.lang.ref.Reference discoveredList;
 
+    /**
+     * Process the special references discovered by GC workers in parallel.
+     */
+    static boolean ParallelRefProcEnabled = true;
+
+    /**
+     * Number of milliseconds an object only reachable from soft references is kept alive after the last access
+     * to one of these references, per megabyte of heap free after the last collection.
+     */
+    static int SoftRefLRUPolicyMSPerMB = 1000;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "ParallelRefProcEnabled", SpecialReferenceManager.class,
+            "Process the special references discovered by GC workers in parallel.", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "SoftRefLRUPolicyMSPerMB", SpecialReferenceManager.class,
+            "Milliseconds a softly reachable object is kept alive after its last access per megabyte of free heap.", Phase.PRISTINE);
+        Heap.registerGCCallback(new SoftReferenceClock());
+    }
+
+    /**
+     * Number of discovered lists: one per participant of the {@link GCWorkerGang}, plus one for the concurrent marking worker.
+     * The list of the VM operation thread, whose worker index is 0, is {@link #discoveredList}.
+     */
+    private static final int NUMBER_OF_LISTS = GCWorkerGang.gang().capacity() + 1;
+
+    /**
+     * Heads of the lists of references discovered by GC workers, indexed by worker index. Entry 0 is only used while
+     * references are processed in parallel.
+     */
+    private static final java.lang.ref.Reference[] workerDiscoveredLists = new java.lang.ref.Reference[NUMBER_OF_LISTS];
+
+    /**
+     * Per-worker lists of references with an unreachable referent, built by the first parallel processing pass.
+     */
+    private static final java.lang.ref.Reference[] unreachableLists = new java.lang.ref.Reference[NUMBER_OF_LISTS];
+
+    /**
+     * Per-worker lists of references whose referent must be preserved by the VM operation thread.
+     */
+    private static final java.lang.ref.Reference[] preservedLists = new java.lang.ref.Reference[NUMBER_OF_LISTS];
+
+    /**
+     * Per-worker chains of references to add to the pending list.
+     */
+    private static final java.lang.ref.Reference[] pendingHeads = new java.lang.ref.Reference[NUMBER_OF_LISTS];
+    private static final java.lang.ref.Reference[] pendingTails = new java.lang.ref.Reference[NUMBER_OF_LISTS];
+
+    /**
+     * The GC whose references are being processed in parallel.
+     */
+    private static GC parallelGC;
+
+    /**
+     * First parallel processing pass: retire the references whose referent is null or reachable, and sort the
+     * others between the {@link #preservedLists} (softly reachable referents kept alive) and the {@link #unreachableLists}.
+     */
+    private static final GCTask classifyReferencesTask = new GCTask() {
+        @Override
+        public void run(int workerIndex) {
+            final int participants = GCWorkerGang.gang().participants();
+            for (int i = workerIndex; i < NUMBER_OF_LISTS; i += participants) {
+                classifyDiscoveredList(workerIndex, i);
+            }
+        }
+    };
+
+    /**
+     * Second parallel processing pass: clear the soft and weak references of the {@link #unreachableLists} whose
+     * referent is still unreachable, and move the final and phantom references to the {@link #preservedLists}.
+     */
+    private static final GCTask clearReferencesTask = new GCTask() {
+        @Override
+        public void run(int workerIndex) {
+            final int participants = GCWorkerGang.gang().participants();
+            for (int i = workerIndex; i < NUMBER_OF_LISTS; i += participants) {
+                clearUnreachableList(workerIndex, i);
+            }
+        }
+    };
+
     /**
      * An alias type for accessing the fields in java.lang.ref.Reference without having to use reflection.
      * <p>
@@ -202,6 +294,64 @@ public class SpecialReferenceManager {
     @INTRINSIC(UNSAFE_CAST)
     public static native java.lang.ref.Reference asJLRR(Object o);
 
+    /**
+     * An alias type for accessing the fields in java.lang.ref.SoftReference.
+     */
+    static class SoftReferenceAlias {
+        @ALIAS(declaringClass = java.lang.ref.SoftReference.class)
+        long timestamp;
+    }
+
+    @INTRINSIC(UNSAFE_CAST)
+    static native SoftReferenceAlias asSoftReferenceAlias(Object o);
+
+    @FOLD
+    private static int discoveredOffset() {
+        return JDK.java_lang_ref_Reference.classActor().findLocalInstanceFieldActor("discovered").offset();
+    }
+
+    /**
+     * Free heap, in megabytes, after the last collection.
+     */
+    private static long freeHeapMBAtLastGC;
+
+    /**
+     * Number of milliseconds since its last access after which a soft reference whose referent is unreachable is
+     * cleared by the current collection.
+     */
+    private static long softRefMaxIntervalMS;
+
+    /**
+     * Advances the clock of {@link java.lang.ref.SoftReference}, which timestamps soft references when they are
+     * accessed, and records the free heap at the end of each collection for the soft reference policy.
+     */
+    static final class SoftReferenceClock implements Heap.GCCallback {
+        public void gcCallback(Heap.GCCallbackPhase gcCallbackPhase) {
+            if (gcCallbackPhase == Heap.GCCallbackPhase.AFTER) {
+                clock = System.currentTimeMillis();
+                freeHeapMBAtLastGC = Heap.reportFreeSpace() >> 20;
+            }
+        }
+    }
+
+    /**
+     * Determines whether a soft reference whose referent is unreachable must be cleared, i.e., whether it was
+     * last accessed longer ago than the free heap allows.
+     */
+    private static boolean mustClearSoftReference(java.lang.ref.Reference ref) {
+        return clock - asSoftReferenceAlias(ref).timestamp > softRefMaxIntervalMS;
+    }
+
+    /**
+     * Determines whether a reference whose referent is unreachable is cleared, as opposed to having its referent preserved.
+     */
+    private static boolean isClearedWhenUnreachable(java.lang.ref.Reference ref) {
+        if (ref instanceof java.lang.ref.SoftReference) {
+            return mustClearSoftReference(ref);
+        }
+        return ref instanceof java.lang.ref.WeakReference;
+    }
+
     /**
      * This method is called by the GC during heap exploration, when it finds a special
      * reference object. This method checks to see whether the object has been processed previously,
@@ -237,6 +387,37 @@ public class SpecialReferenceManager {
         }
     }
 
+    /**
+     * Variant of {@link #discoverSpecialReference(Pointer)} for the workers of a {@link GCWorkerGang}, which may
+     * discover references concurrently. Each worker adds the references it discovers to a list of its own.
+     * A reference found by several workers is claimed by atomically linking it to a list, so it is only added once.
+     *
+     * @param cell a pointer at the origin of the reference that has been discovered
+     * @param workerIndex the index of the discovering worker
+     */
+    public static void discoverSpecialReference(Pointer cell, int workerIndex) {
+        final Pointer origin = Layout.cellToOrigin(cell);
+        final Reference reference = Reference.fromOrigin(origin);
+        final java.lang.ref.Reference head = workerIndex == 0 ? discoveredList : workerDiscoveredLists[workerIndex];
+        // Lists are terminated by the sentinel, so a reference that is on a list never has a null discovered field.
+        if (!reference.compareAndSwapReference(discoveredOffset(), Reference.zero(), Reference.fromJava(head)).isZero()) {
+            return;
+        }
+        java.lang.ref.Reference ref = asJLRR(reference.toJava());
+        JLRRAlias refAlias = asJLRRAlias(ref);
+        // Store the field again to run the write barrier, see discoverSpecialReference(Pointer).
+        refAlias.discovered = head;
+        if (workerIndex == 0) {
+            discoveredList = ref;
+        } else {
+            workerDiscoveredLists[workerIndex] = ref;
+        }
+        if (specialReferenceLogger.enabled()) {
+            final Reference referent = Reference.fromJava(refAlias.referent);
+            specialReferenceLogger.logDiscover(cell, UnsafeCast.asHub(Layout.readHubReference(origin).toJava()).classActor, referent.toOrigin());
+        }
+    }
+
     /**
      * Processes the special reference objects that were {@linkplain #discoverSpecialReference(Pointer) discovered}
      * during heap scanning.
@@ -247,18 +428,202 @@ public class SpecialReferenceManager {
      * The reference handler lock is notified by the thread that {@linkplain VmOperationThread#submit(VmOperation) submitted}
      * the GC operation as it holds the lock. See {@link GCOperation#doItEpilogue(boolean)}.
      *
+     * The references discovered by GC workers are processed in parallel, see {@link #ParallelRefProcEnabled}.
+     * A soft reference whose referent is unreachable is only cleared if it wasn't accessed for
+     * {@link #SoftRefLRUPolicyMSPerMB} milliseconds per megabyte of heap free after the last collection;
+     * otherwise its referent is preserved.
+     *
      * @param gc interface to the GC implementation
      */
     public static void processDiscoveredSpecialReferences(GC gc) {
-        java.lang.ref.Reference head = discoveredList;
-        java.lang.ref.Reference end = sentinel;
-        final boolean updateReachableReferent = gc.mayRelocateLiveObjects();
-
         if (specialReferenceLogger.enabled()) {
             specialReferenceLogger.logProcessDiscoveredInit(
                             Reference.fromJava(JDK_java_lang_ref_ReferenceQueue.NULL).toOrigin(),
                             Reference.fromJava(JDK_java_lang_ref_ReferenceQueue.ENQUEUED).toOrigin());
         }
+        softRefMaxIntervalMS = freeHeapMBAtLastGC * SoftRefLRUPolicyMSPerMB;
+        if (hasWorkerDiscoveries()) {
+            if (ParallelRefProcEnabled && GCWorkerGang.gang().hasWorkers()) {
+                processInParallel(gc);
+            } else {
+                mergeWorkerDiscoveredLists();
+            }
+        }
+        // References discovered by the VM operation thread alone, including those discovered while
+        // preserving referents in parallel processing.
+        processDiscoveredList(gc);
+    }
+
+    private static boolean hasWorkerDiscoveries() {
+        for (int i = 1; i < NUMBER_OF_LISTS; i++) {
+            if (workerDiscoveredLists[i] != sentinel) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the references discovered by the GC workers to the {@link #discoveredList}.
+     */
+    private static void mergeWorkerDiscoveredLists() {
+        for (int i = 1; i < NUMBER_OF_LISTS; i++) {
+            java.lang.ref.Reference ref = workerDiscoveredLists[i];
+            workerDiscoveredLists[i] = sentinel;
+            while (ref != sentinel) {
+                final JLRRAlias refAlias = asJLRRAlias(ref);
+                final java.lang.ref.Reference next = refAlias.discovered;
+                refAlias.discovered = discoveredList;
+                discoveredList = ref;
+                ref = next;
+            }
+        }
+    }
+
+    /**
+     * Processes the discovered references with the {@link GCWorkerGang}. Soft references kept alive by the policy
+     * have their referent preserved before the other references are cleared, so that objects reachable from them
+     * aren't considered weakly reachable, as far as the GC's {@link GC#preserve(Reference)} makes them reachable.
+     */
+    private static void processInParallel(GC gc) {
+        final GCWorkerGang gang = GCWorkerGang.gang();
+        workerDiscoveredLists[0] = discoveredList;
+        discoveredList = sentinel;
+        parallelGC = gc;
+        gang.run(classifyReferencesTask);
+        for (int i = 0; i < NUMBER_OF_LISTS; i++) {
+            preserveReferents(gc, i, false);
+        }
+        gang.run(clearReferencesTask);
+        java.lang.ref.Reference pending = JLRRAlias.pending;
+        for (int i = 0; i < NUMBER_OF_LISTS; i++) {
+            preserveReferents(gc, i, true);
+            final java.lang.ref.Reference head = pendingHeads[i];
+            if (head != null) {
+                if (pending != null) {
+                    asJLRRAlias(pendingTails[i]).next = pending;
+                }
+                pending = head;
+                pendingHeads[i] = null;
+                pendingTails[i] = null;
+            }
+        }
+        JLRRAlias.pending = pending;
+        parallelGC = null;
+    }
+
+    /**
+     * Runs on behalf of a GC worker. See {@link #classifyReferencesTask}.
+     */
+    private static void classifyDiscoveredList(int workerIndex, int listIndex) {
+        final GC gc = parallelGC;
+        final boolean updateReachableReferent = gc.mayRelocateLiveObjects();
+        java.lang.ref.Reference ref = workerDiscoveredLists[listIndex];
+        workerDiscoveredLists[listIndex] = sentinel;
+        while (ref != sentinel) {
+            final JLRRAlias refAlias = asJLRRAlias(ref);
+            final java.lang.ref.Reference next = refAlias.discovered;
+            final Reference referent = Reference.fromJava(refAlias.referent);
+            if (referent.isZero()) {
+                refAlias.discovered = null;
+            } else if (gc.isReachable(referent)) {
+                if (updateReachableReferent) {
+                    // The following line MUST run the mutator write barrier
+                    refAlias.referent = gc.preserve(referent).toJava();
+                }
+                refAlias.discovered = null;
+            } else if (ref instanceof java.lang.ref.SoftReference && !mustClearSoftReference(ref)) {
+                refAlias.discovered = preservedLists[workerIndex];
+                preservedLists[workerIndex] = ref;
+            } else {
+                refAlias.discovered = unreachableLists[workerIndex];
+                unreachableLists[workerIndex] = ref;
+            }
+            ref = next;
+        }
+    }
+
+    /**
+     * Runs on behalf of a GC worker. See {@link #clearReferencesTask}.
+     */
+    private static void clearUnreachableList(int workerIndex, int listIndex) {
+        final GC gc = parallelGC;
+        final boolean updateReachableReferent = gc.mayRelocateLiveObjects();
+        java.lang.ref.Reference ref = unreachableLists[listIndex];
+        unreachableLists[listIndex] = sentinel;
+        while (ref != sentinel) {
+            final JLRRAlias refAlias = asJLRRAlias(ref);
+            final java.lang.ref.Reference next = refAlias.discovered;
+            final Reference referent = Reference.fromJava(refAlias.referent);
+            if (gc.isReachable(referent)) {
+                // Reachable from the referent of a soft reference kept alive.
+                if (updateReachableReferent) {
+                    // The following line MUST run the mutator write barrier
+                    refAlias.referent = gc.preserve(referent).toJava();
+                }
+                refAlias.discovered = null;
+            } else if (refAlias.queue == null) {
+                // See processDiscoveredList(GC).
+                Log.println("WARNING: cannot add weak reference with null 'queue' field to pending list");
+                refAlias.discovered = null;
+            } else if (isClearedWhenUnreachable(ref)) {
+                refAlias.referent = null;
+                refAlias.discovered = null;
+                if (refAlias.isActive()) {
+                    addToPending(workerIndex, ref);
+                }
+            } else {
+                refAlias.discovered = preservedLists[workerIndex];
+                preservedLists[workerIndex] = ref;
+            }
+            ref = next;
+        }
+    }
+
+    /**
+     * Adds a reference to the chain of references a worker adds to the pending list.
+     */
+    private static void addToPending(int workerIndex, java.lang.ref.Reference ref) {
+        final JLRRAlias refAlias = asJLRRAlias(ref);
+        final java.lang.ref.Reference head = pendingHeads[workerIndex];
+        if (head == null) {
+            // 'ref' will be at the end of the chain
+            refAlias.next = ref;
+            pendingTails[workerIndex] = ref;
+        } else {
+            refAlias.next = head;
+        }
+        pendingHeads[workerIndex] = ref;
+    }
+
+    /**
+     * Preserves the referents of the references of one of the {@link #preservedLists}. Must be run by the VM operation thread alone.
+     *
+     * @param enqueue specifies whether the references are added to the pending list
+     */
+    private static void preserveReferents(GC gc, int listIndex, boolean enqueue) {
+        java.lang.ref.Reference ref = preservedLists[listIndex];
+        preservedLists[listIndex] = sentinel;
+        while (ref != sentinel) {
+            final JLRRAlias refAlias = asJLRRAlias(ref);
+            final java.lang.ref.Reference next = refAlias.discovered;
+            refAlias.discovered = null;
+            // The following line MUST run the mutator write barrier
+            refAlias.referent = gc.preserve(Reference.fromJava(refAlias.referent)).toJava();
+            if (enqueue && refAlias.isActive()) {
+                addToPending(listIndex, ref);
+            }
+            ref = next;
+        }
+    }
+
+    /**
+     * Processes the {@link #discoveredList} until it is empty.
+     */
+    private static void processDiscoveredList(GC gc) {
+        java.lang.ref.Reference head = discoveredList;
+        java.lang.ref.Reference end = sentinel;
+        final boolean updateReachableReferent = gc.mayRelocateLiveObjects();
 
         // Process the discovered list until it is empty (new elements may be
         // prepended while processing).
@@ -275,7 +640,12 @@ public class SpecialReferenceManager {
                     // Do not add 'ref' to the pending list as weak references
                     // with already null referents are not added to ReferenceQueues
                 } else if (!gc.isReachable(referent)) {
-                    if (refAlias.queue == null) {
+                    if (ref instanceof java.lang.ref.SoftReference && !mustClearSoftReference(ref)) {
+                        // The policy keeps the referent of this soft reference alive.
+                        // The following line MUST run the mutator write barrier
+                        refAlias.referent = gc.preserve(referent).toJava();
+                        preserved = true;
+                    } else if (refAlias.queue == null) {
                         // This can only occur if there is a GC in the constructor for java.lang.ref.Reference
                         // between the initialization of 'referent' and 'queue'.
                         Log.println("WARNING: cannot add weak reference with null 'queue' field to pending list");
@@ -378,6 +748,11 @@ public class SpecialReferenceManager {
         if (phase == Phase.PRISTINE) {
             clock = System.currentTimeMillis();
             discoveredList = sentinel;
+            for (int i = 0; i < NUMBER_OF_LISTS; i++) {
+                workerDiscoveredLists[i] = sentinel;
+                unreachableLists[i] = sentinel;
+                preservedLists[i] = sentinel;
+            }
             JLRRAlias sentinelAlias = asJLRRAlias(sentinel);
             sentinelAlias.discovered = sentinel;
             sentinelAlias.next = sentinel;
@@ -47,8 +47,14 @@ public final class TLABLog {
 
     public static boolean TraceTLABAllocation = false;
 
+    /**
+     * Trace the statistics an {@link AdaptiveTLABRefillPolicy} resizes TLABs from, at the end of every GC epoch of a thread.
+     */
+    public static boolean TraceTLABResizing = false;
+
     static {
         VMOptions.addFieldOption("-XX:", "TraceTLABAllocation", TLABLog.class, "Trace every allocation from TLABs when in DEBUG mode", Phase.STARTING);
+        VMOptions.addFieldOption("-XX:", "TraceTLABResizing", TLABLog.class, "Trace per-thread TLAB statistics used for resizing TLABs", Phase.STARTING);
     }
 
     /**
@@ -141,6 +147,114 @@ public final class TLABLog {
         return  logStart(logTail);
     }
 
+    /*
+     * Totals of the per-thread statistics of all the GC epochs ended so far by threads with an AdaptiveTLABRefillPolicy.
+     * Only updated when TLABs are retired, i.e., by the GC, which retires TLABs one thread at a time.
+     */
+    private static long resizingEpochs;
+    private static long resizingRefills;
+    private static long resizingTLABBytes;
+    private static long resizingWastedBytes;
+    private static long resizingSlowAllocatedBytes;
+
+    /**
+     * Add the TLAB statistics of a thread for the GC epoch that just ended to the totals.
+     *
+     * @param refills number of TLABs handed out to the thread during the epoch
+     * @param tlabBytes bytes of TLABs handed out to the thread during the epoch
+     * @param wasted bytes of TLABs left unused during the epoch
+     * @param slowAllocated bytes allocated outside of TLABs during the epoch
+     */
+    static void recordEpoch(int refills, long tlabBytes, long wasted, long slowAllocated) {
+        resizingEpochs++;
+        resizingRefills += refills;
+        resizingTLABBytes += tlabBytes;
+        resizingWastedBytes += wasted;
+        resizingSlowAllocatedBytes += slowAllocated;
+    }
+
+    /**
+     * Number of per-thread GC epochs recorded by adaptive TLAB refill policies.
+     */
+    public static long resizingEpochs() {
+        return resizingEpochs;
+    }
+
+    /**
+     * Number of TLABs handed out to threads during the recorded epochs.
+     */
+    public static long resizingRefills() {
+        return resizingRefills;
+    }
+
+    /**
+     * Bytes of TLABs handed out to threads during the recorded epochs.
+     */
+    public static long resizingTLABBytes() {
+        return resizingTLABBytes;
+    }
+
+    /**
+     * Bytes of TLABs left unused, at refill or when the TLABs were retired, during the recorded epochs.
+     */
+    public static long resizingWastedBytes() {
+        return resizingWastedBytes;
+    }
+
+    /**
+     * Bytes allocated outside of TLABs because the refill policies declined to refill, during the recorded epochs.
+     */
+    public static long resizingSlowAllocatedBytes() {
+        return resizingSlowAllocatedBytes;
+    }
+
+    static void printResizingStats() {
+        Log.print("   TLAB resizing epochs              :");
+        Log.println(resizingEpochs);
+        Log.print("   TLAB refills in resizing epochs   :");
+        Log.println(resizingRefills);
+        Log.print("   TLAB bytes in resizing epochs     :");
+        Log.println(resizingTLABBytes);
+        Log.print("   TLAB bytes wasted                 :");
+        Log.println(resizingWastedBytes);
+        Log.print("   bytes allocated outside of TLABs  :");
+        Log.println(resizingSlowAllocatedBytes);
+    }
+
+    /**
+     * Log the TLAB statistics of a thread for the GC epoch that just ended, and the TLAB size computed from them.
+     *
+     * @param etla the thread's enabled VM thread locals
+     * @param refills number of TLABs handed out to the thread during the epoch
+     * @param allocated bytes allocated in TLABs during the epoch
+     * @param wastePercent percentage of the TLAB space handed out that was left unused during the epoch
+     * @param slowAllocated bytes allocated outside of TLABs during the epoch
+     * @param averageAllocated decaying average of the bytes allocated in TLABs per epoch
+     * @param averageWastePercent decaying average of the waste percentage
+     * @param nextTlabSize size of the thread's TLABs for the next epoch
+     */
+    public static void logResize(Pointer etla, int refills, long allocated, int wastePercent, long slowAllocated,
+                    long averageAllocated, int averageWastePercent, Size nextTlabSize) {
+        final boolean lockDisabledSafepoints = Log.lock();
+        Log.print("TLAB resizing for ");
+        Log.printThread(VmThread.fromTLA(etla), false);
+        Log.print(": refills = ");
+        Log.print(refills);
+        Log.print(", allocated = ");
+        Log.print(allocated);
+        Log.print(", waste = ");
+        Log.print(wastePercent);
+        Log.print("%, slow allocated = ");
+        Log.print(slowAllocated);
+        Log.print(", avg allocated = ");
+        Log.print(averageAllocated);
+        Log.print(", avg waste = ");
+        Log.print(averageWastePercent);
+        Log.print("%, next TLAB size = ");
+        Log.println(nextTlabSize.toLong());
+        Log.unlock(lockDisabledSafepoints);
+    }
+
     @NO_SAFEPOINT_POLLS("GC debugging")
     private static void flush(Pointer logTail) {
         final boolean lockDisabledSafepoints = Log.lock();
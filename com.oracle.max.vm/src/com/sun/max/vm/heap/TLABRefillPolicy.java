@@ -60,11 +60,39 @@ public abstract class TLABRefillPolicy {
      */
     public abstract boolean shouldRefill(Size size, Pointer allocationMark);
 
+    /**
+     * Same as {@link #shouldRefill(Size, Pointer)}, for policies that take the space left in the TLAB into account.
+     * @param size size of the allocation request that causes the request to refill the TLAB
+     * @param allocationMark allocation mark of the TLAB
+     * @param tlabEnd end of the TLAB
+     */
+    public boolean shouldRefill(Size size, Pointer allocationMark, Pointer tlabEnd) {
+        return shouldRefill(size, allocationMark);
+    }
+
     /**
      * Returns the size the TLAB should have on next refill.
      */
     public abstract Size nextTlabSize();
 
+    /**
+     * Notification that the thread's TLAB was refilled. The size of the new TLAB may differ from {@link #nextTlabSize()},
+     * e.g., when the heap scheme hands out the TLAB in several chunks.
+     * @param leftover space left unused in the TLAB that was replaced
+     * @param size size of the new TLAB
+     */
+    public void notifyRefill(Size leftover, Size size) {
+    }
+
+    /**
+     * Notification that the TLAB of the thread is retired, which ends the current GC epoch for the thread.
+     * Called by the GC, possibly on behalf of the thread.
+     * @param etla the thread's enabled VM thread locals
+     * @param leftover space left unused in the retired TLAB
+     */
+    public void notifyRetire(Pointer etla, Size leftover) {
+    }
+
     @INTRINSIC(UNSAFE_CAST)
     private static native TLABRefillPolicy asTLABRefillPolicy(Object object);
 
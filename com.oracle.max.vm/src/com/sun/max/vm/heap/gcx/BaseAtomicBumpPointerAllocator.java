@@ -389,6 +389,28 @@ public abstract class BaseAtomicBumpPointerAllocator<T extends Refiller> {
         return cell;
     }
 
+    /**
+     * Non-blocking allocation of raw space from the current chunk that fails instead of refilling the allocator.
+     *
+     * @param size number of bytes requested
+     * @return a pointer to the allocated space, or zero if the current chunk doesn't have enough space left
+     */
+    @INLINE
+    @NO_SAFEPOINT_POLLS("object allocation and initialization must be atomic")
+    public final Pointer tryAllocateRaw(Size size) {
+        Pointer thisAddress = Reference.fromJava(this).toOrigin();
+        Pointer cell;
+        Pointer newTop;
+        do {
+            cell = top.asPointer();
+            newTop = cell.plus(size);
+            if (newTop.greaterThan(end)) {
+                return Pointer.zero();
+            }
+        } while (!thisAddress.compareAndSwapWord(topOffset(), cell, newTop).equals(cell));
+        return cell;
+    }
+
     @INLINE
     protected final boolean isLarge(Size size) {
         return size.greaterThan(sizeLimit);
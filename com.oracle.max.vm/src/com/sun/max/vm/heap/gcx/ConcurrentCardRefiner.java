@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+import static com.sun.max.vm.heap.gcx.HeapRegionManager.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.monitor.modal.sync.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * Background refinement of the dirty cards of an old generation's {@link CardTableRSet}.
+ *
+ * The refiner's thread periodically walks the dirty cards of the old generation's regions while mutators run, and cleans those
+ * whose cells don't hold references into the young generation, e.g., cards dirtied by stores of references to old objects. Cards holding
+ * references to young objects are left dirty, and so are cards holding references to the candidates of a {@link HumongousObjectReclaimer}. A minor collection then only scans the cards holding old-to-young references, and those
+ * dirtied since the refiner's last pass.
+ *
+ * Mutators may change the old generation's regions while the refiner runs: they allocate humongous objects directly in it, and sweep it lazily.
+ * Like the {@link ConcurrentSweeper}'s thread, the refiner's thread is an ordinary system thread that VM operations freeze. It refines the
+ * cards of one region at a time, holding the old generation's refill lock so that the region is neither swept nor handed out to a large object
+ * meanwhile, and with safepoints disabled so that a GC never finds a region partially refined. A large object is formatted by the allocating
+ * mutator after the refill lock is released, so the regions large objects were allocated in since the last GC are skipped
+ * (see {@link FirstFitMarkSweepSpace#refineCardsConcurrently}).
+ */
+public final class ConcurrentCardRefiner {
+
+    static final class ConcurrentCardRefinerThread extends Thread {
+        private final ConcurrentCardRefiner refiner;
+
+        @HOSTED_ONLY
+        ConcurrentCardRefinerThread(ConcurrentCardRefiner refiner) {
+            super(VmThread.systemThreadGroup, "Card-Refiner");
+            this.refiner = refiner;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            refiner.refinerLoop();
+        }
+    }
+
+    /**
+     * Decides whether a card holds references into the young generation, or to candidates for eager reclamation of humongous objects.
+     * References of a tuple are recorded on the card holding the tuple's header by the write barrier, so a tuple is scanned in full
+     * if its header is on the card, and not at all otherwise. Only the elements of a reference array that are on the card are scanned.
+     */
+    final class YoungReferencesClosure extends CardTableRSet.CardRefinementClosure {
+        @INLINE
+        private boolean isYoung(Pointer origin, int wordIndex) {
+            final Pointer referencedOrigin = origin.getReference(wordIndex).toOrigin();
+            return youngSpace.contains(referencedOrigin) || (humongousObjectReclaimer != null && humongousObjectReclaimer.isCandidate(referencedOrigin));
+        }
+
+        public Pointer visitCell(Pointer cell, Address start, Address end) {
+            final Pointer origin = Layout.cellToOrigin(cell);
+            final Hub hub = UnsafeCast.asHub(Layout.readHubReference(origin).toJava());
+            if (hub == HeapFreeChunk.heapFreeChunkHub()) {
+                return cell.plus(HeapFreeChunk.getFreechunkSize(cell));
+            }
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout.isReferenceArrayLayout()) {
+                final int length = Layout.readArrayLength(origin);
+                final Address firstElementAddress = origin.plusWords(Layout.firstElementIndex());
+                int index = start.greaterThan(firstElementAddress) ? start.minus(firstElementAddress).unsignedShiftedRight(Word.widthValue().log2numberOfBytes).toInt() : 0;
+                final Address endOfArray = firstElementAddress.plusWords(length);
+                final int endIndex = endOfArray.greaterThan(end) ? end.minus(firstElementAddress).unsignedShiftedRight(Word.widthValue().log2numberOfBytes).toInt() : length;
+                while (index < endIndex && !keepCard) {
+                    keepCard = isYoung(origin, Layout.firstElementIndex() + index);
+                    index++;
+                }
+            } else if (cell.greaterEqual(start) && (specificLayout.isTupleLayout() || specificLayout.isHybridLayout())) {
+                if (isYoung(origin, Layout.hubIndex()) || (hub.isJLRReference && isYoung(origin, SpecialReferenceManager.referentIndex()))) {
+                    // The referent of a special reference isn't in the reference map, but must be updated when the referent is evacuated.
+                    keepCard = true;
+                } else {
+                    final int numReferences = hub.referenceMapLength;
+                    for (int i = 0; i < numReferences && !keepCard; i++) {
+                        keepCard = isYoung(origin, hub.getInt(hub.referenceMapStartIndex + i));
+                    }
+                }
+            }
+            if (keepCard) {
+                // No need to look at the rest of the card.
+                return end.asPointer();
+            }
+            return cell.plus(Layout.size(origin));
+        }
+    }
+
+    private final CardTableRSet rset;
+
+    /**
+     * Space whose references must be remembered.
+     */
+    private final EvacuatingSpace youngSpace;
+
+    /**
+     * Space whose cards are refined.
+     */
+    private final FirstFitMarkSweepSpace<?> oldSpace;
+
+    /**
+     * Reclaimer whose candidates must remain visible to minor collections, if any.
+     */
+    private HumongousObjectReclaimer humongousObjectReclaimer;
+
+    private final YoungReferencesClosure youngReferencesClosure = new YoungReferencesClosure();
+
+    private final VmThread thread;
+
+    /**
+     * Lock the refiner's thread waits on between two passes.
+     */
+    private final Object lock = JavaMonitorManager.newVmLock("CONCURRENT_CARD_REFINER_LOCK");
+
+    /**
+     * Time, in milliseconds, between two passes over the old generation's cards.
+     */
+    private long period;
+
+    private boolean started;
+
+    /**
+     * Number of dirty cards cleaned by the refiner.
+     */
+    private long numCleanedCards;
+
+    @HOSTED_ONLY
+    public ConcurrentCardRefiner(CardTableRSet rset, EvacuatingSpace youngSpace, FirstFitMarkSweepSpace<?> oldSpace) {
+        this.rset = rset;
+        this.youngSpace = youngSpace;
+        this.oldSpace = oldSpace;
+        thread = VmThread.createVmSystemThread(new ConcurrentCardRefinerThread(this));
+    }
+
+    /**
+     * Start the refiner's thread. Only the first call has an effect.
+     * @param period time, in milliseconds, between two passes over the old generation's cards
+     */
+    public void start(long period) {
+        if (started) {
+            return;
+        }
+        started = true;
+        this.period = period;
+        oldSpace.enableConcurrentRefinement();
+        thread.startVmSystemThread();
+    }
+
+    /**
+     * Leave dirty the cards holding references to the candidates of a humongous object reclaimer.
+     * @param reclaimer the reclaimer
+     */
+    public void setHumongousObjectReclaimer(HumongousObjectReclaimer reclaimer) {
+        humongousObjectReclaimer = reclaimer;
+    }
+
+    /**
+     * Number of dirty cards cleaned by the refiner since the VM started.
+     */
+    public long numCleanedCards() {
+        return numCleanedCards;
+    }
+
+    /**
+     * Refine the cards of a region if it belongs to the old generation.
+     */
+    private void refineRegion(int regionID) {
+        numCleanedCards += oldSpace.refineCardsConcurrently(regionID, rset, youngReferencesClosure);
+    }
+
+    private void refinerLoop() {
+        final int numRegions = numberOfRegions(theHeapRegionManager().bounds().size());
+        while (true) {
+            synchronized (lock) {
+                try {
+                    lock.wait(period);
+                } catch (InterruptedException e) {
+                }
+            }
+            try {
+                for (int regionID = 0; regionID < numRegions; regionID++) {
+                    refineRegion(regionID);
+                }
+            } catch (Throwable t) {
+                FatalError.unexpected("Concurrent card refinement failed", t);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.annotate.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.monitor.modal.sync.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * Background tracing of the heap for mostly-concurrent marking with a {@link TricolorHeapMarker}.
+ *
+ * A concurrent marking cycle is started by a heap scheme during a pause, once the roots are marked by {@link TricolorHeapMarker#initialMark()}.
+ * The concurrent marker's thread then traces the heap while mutator threads run, until either the heap is traced, or the
+ * heap scheme asks the marker to stop. In both cases, the cycle is completed with {@link TricolorHeapMarker#remark(HeapRegionRangeIterable, com.sun.max.vm.heap.gcx.rset.ctbl.CardTableRSet)}
+ * during a pause, once the marker's thread is stopped.
+ *
+ * Like the {@link GCWorkerGang}'s threads, the concurrent marker's thread is allocated in the boot image, is never frozen by VM operations,
+ * and its stack is not scanned for roots. It never allocates.
+ */
+public final class ConcurrentMarker {
+
+    public enum CycleState {
+        /**
+         * No concurrent marking cycle in progress.
+         */
+        IDLE,
+        /**
+         * A cycle was started and the heap isn't traced yet.
+         */
+        MARKING,
+        /**
+         * The heap was traced concurrently. The cycle is waiting for the remark.
+         */
+        MARKED
+    }
+
+    static final class ConcurrentMarkerThread extends Thread {
+        private final ConcurrentMarker marker;
+
+        @HOSTED_ONLY
+        ConcurrentMarkerThread(ConcurrentMarker marker) {
+            super(VmThread.systemThreadGroup, "Concurrent-Marker");
+            this.marker = marker;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            marker.markerLoop();
+        }
+    }
+
+    private final TricolorHeapMarker heapMarker;
+
+    private final VmThread thread;
+
+    /**
+     * Lock protecting the start of a cycle.
+     */
+    private final Mutex mutex = MutexFactory.create();
+
+    /**
+     * Condition the marker's thread waits on for the start of a cycle.
+     */
+    private final ConditionVariable cycleStarted = ConditionVariableFactory.create();
+
+    private volatile CycleState state = CycleState.IDLE;
+
+    /**
+     * Indicates that the marker's thread is tracing, or is about to. Set by the pause starting a cycle, and cleared by the marker's thread once it
+     * is done with the color map.
+     */
+    private volatile boolean busy;
+
+    /**
+     * Set by a pause that needs the marker's thread to stop tracing.
+     */
+    private volatile boolean stopRequested;
+
+    private boolean started;
+
+    @HOSTED_ONLY
+    public ConcurrentMarker(TricolorHeapMarker heapMarker) {
+        this.heapMarker = heapMarker;
+        thread = VmThread.createVmSystemThread(new ConcurrentMarkerThread(this));
+    }
+
+    /**
+     * Start the concurrent marker's thread. Only the first call has an effect.
+     */
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        mutex.init();
+        cycleStarted.init();
+        heapMarker.initializeConcurrentMarking();
+        thread.startVmSystemThread();
+    }
+
+    public CycleState state() {
+        return state;
+    }
+
+    public boolean isIdle() {
+        return state == CycleState.IDLE;
+    }
+
+    public boolean isMarked() {
+        return state == CycleState.MARKED;
+    }
+
+    boolean stopRequested() {
+        return stopRequested;
+    }
+
+    /**
+     * Start a concurrent marking cycle. Must be called during a pause, after the roots were marked by {@link TricolorHeapMarker#initialMark()}.
+     */
+    public void startCycle() {
+        FatalError.check(state == CycleState.IDLE && !busy, "Concurrent marking cycle already in progress");
+        mutex.lock();
+        state = CycleState.MARKING;
+        busy = true;
+        cycleStarted.threadNotify(false);
+        mutex.unlock();
+    }
+
+    /**
+     * Stop the marker's thread. Must be called during a pause, before the remark.
+     * Returns once the marker's thread doesn't access the color map anymore.
+     */
+    public void stop() {
+        stopRequested = true;
+        while (busy) {
+            Intrinsics.pause();
+        }
+    }
+
+    /**
+     * Terminate the current concurrent marking cycle. Must be called during the pause completing the cycle, after the remark.
+     */
+    public void endCycle() {
+        state = CycleState.IDLE;
+        stopRequested = false;
+    }
+
+    private void markerLoop() {
+        final VmThread current = VmThread.current();
+        synchronized (VmThreadMap.THREAD_LOCK) {
+            // No VM operation can be in progress while holding the thread lock. From this point onward, the thread
+            // is never stopped nor scanned by a GC.
+            current.setAsGCWorkerThread();
+        }
+        Heap.disableAllocationForCurrentThread();
+        mutex.lock();
+        while (true) {
+            while (!busy) {
+                cycleStarted.threadWait(mutex, 0L);
+            }
+            mutex.unlock();
+            boolean completed = false;
+            try {
+                completed = heapMarker.concurrentMark(this);
+            } catch (Throwable t) {
+                FatalError.unexpected("Concurrent marker failed", t);
+            }
+            mutex.lock();
+            if (completed) {
+                state = CycleState.MARKED;
+            }
+            busy = false;
+        }
+    }
+}
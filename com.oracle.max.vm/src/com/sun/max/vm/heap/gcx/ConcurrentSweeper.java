@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.annotate.*;
+import com.sun.max.vm.monitor.modal.sync.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * Background sweeping of a {@link FirstFitMarkSweepSpace} left unswept by a lazy sweep.
+ *
+ * The sweeper's thread sweeps one region at a time while holding the space's refill lock, so that it serializes with the allocators
+ * sweeping on demand. Unlike the {@link ConcurrentMarker}'s thread, it is an ordinary system thread that VM operations freeze: safepoints are
+ * disabled only while a single region is swept, so a GC always finds the space between two regions and can complete the sweep itself.
+ *
+ * A GC operation cannot notify the sweeper's thread as it must not acquire Java monitors. Instead, the thread that requested the collection
+ * wakes up the sweeper once the GC operation completed.
+ */
+public final class ConcurrentSweeper {
+
+    static final class ConcurrentSweeperThread extends Thread {
+        private final ConcurrentSweeper sweeper;
+
+        @HOSTED_ONLY
+        ConcurrentSweeperThread(ConcurrentSweeper sweeper) {
+            super(VmThread.systemThreadGroup, "Concurrent-Sweeper");
+            this.sweeper = sweeper;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            sweeper.sweeperLoop();
+        }
+    }
+
+    private final FirstFitMarkSweepSpace<?> space;
+
+    private final VmThread thread;
+
+    /**
+     * Lock the sweeper's thread waits on for a lazy sweep to start.
+     */
+    private final Object lock = JavaMonitorManager.newVmLock("CONCURRENT_SWEEPER_LOCK");
+
+    private boolean sweepRequested;
+
+    private boolean started;
+
+    @HOSTED_ONLY
+    public ConcurrentSweeper(FirstFitMarkSweepSpace<?> space) {
+        this.space = space;
+        thread = VmThread.createVmSystemThread(new ConcurrentSweeperThread(this));
+    }
+
+    /**
+     * Start the concurrent sweeper's thread. Only the first call has an effect.
+     */
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        thread.startVmSystemThread();
+    }
+
+    /**
+     * Wake up the sweeper's thread if the space has regions left unswept. Must be called by a mutator thread, outside of a GC operation.
+     */
+    public void requestSweep() {
+        if (!space.isSweeping()) {
+            return;
+        }
+        synchronized (lock) {
+            sweepRequested = true;
+            lock.notify();
+        }
+    }
+
+    private void sweeperLoop() {
+        while (true) {
+            synchronized (lock) {
+                while (!sweepRequested) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                    }
+                }
+                sweepRequested = false;
+            }
+            try {
+                while (space.sweepNextRegionConcurrently()) {
+                }
+            } catch (Throwable t) {
+                FatalError.unexpected("Concurrent sweeper failed", t);
+            }
+        }
+    }
+}
@@ -28,4 +28,35 @@ import com.sun.max.unsafe.*;
 public interface EvacuationBufferProvider {
     Address refillEvacuationBuffer();
     void retireEvacuationBuffer(Address startOfSpaceLeft, Address endOfSpaceLeft);
+
+    /**
+     * Number of regions the provider can hand out as private evacuation buffers to the workers of a parallel evacuation.
+     * Providers that don't support parallel evacuation return 0.
+     */
+    int availableEvacuationRegions();
+
+    /**
+     * Hand out an entire empty region as the private evacuation buffer of a parallel evacuation worker.
+     * The region stays non-iterable until {@link #retireEvacuationRegions()} is called, so that GC workers walking the
+     * provider's space never run into a region another worker is copying objects into.
+     * Calls must be serialized by the caller.
+     *
+     * @return the identifier of a region, or {@link HeapRegionConstants#INVALID_REGION_ID} if none is available
+     */
+    int refillEvacuationRegion();
+
+    /**
+     * Give back the space left in a region obtained with {@link #refillEvacuationRegion()}, once the worker is done with it.
+     * Calls must be serialized by the caller.
+     *
+     * @param regionID the region
+     * @param startOfSpaceLeft start of the space left unused in the region
+     * @param endOfSpaceLeft end of the region
+     */
+    void retireEvacuationRegion(int regionID, Address startOfSpaceLeft, Address endOfSpaceLeft);
+
+    /**
+     * Make all the regions handed out during a parallel evacuation iterable again. Called once the parallel evacuation is complete.
+     */
+    void retireEvacuationRegions();
 }
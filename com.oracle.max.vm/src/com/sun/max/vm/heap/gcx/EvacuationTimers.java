@@ -25,21 +25,30 @@ package com.sun.max.vm.heap.gcx;
 import com.sun.max.annotate.*;
 import com.sun.max.util.timer.*;
 import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.GCTelemetry.GCPhase;
 
 
 public final class EvacuationTimers {
     public enum TIMED_OPERATION {
-        TOTAL,
-        PROLOGUE,
-        ROOT_SCAN,
-        BOOT_HEAP_SCAN,
-        CODE_SCAN,
-        IMMORTAL_SCAN,
-        RSET_SCAN,
-        COPY,
-        WEAK_REF,
-        EPILOGUE;
+        TOTAL(null),
+        PROLOGUE(null),
+        ROOT_SCAN(GCPhase.ROOT_SCAN),
+        BOOT_HEAP_SCAN(GCPhase.ROOT_SCAN),
+        CODE_SCAN(GCPhase.ROOT_SCAN),
+        IMMORTAL_SCAN(GCPhase.ROOT_SCAN),
+        RSET_SCAN(GCPhase.CARD_SCAN),
+        COPY(GCPhase.EVACUATE),
+        WEAK_REF(GCPhase.REFERENCE_PROCESSING),
+        EPILOGUE(null);
         public final TimerMetric timer = new TimerMetric(new SingleUseTimer(HeapScheme.GC_TIMING_CLOCK));
+        /**
+         * Phase of the {@link GCTelemetry} the operation is accounted to, if any.
+         */
+        final GCPhase phase;
+
+        private TIMED_OPERATION(GCPhase phase) {
+            this.phase = phase;
+        }
     }
 
     private boolean trackTime = false;
@@ -57,6 +66,9 @@ public final class EvacuationTimers {
     }
 
     public void start(TIMED_OPERATION timedOp) {
+        if (timedOp.phase != null) {
+            GCTelemetry.beginPhase(timedOp.phase);
+        }
         if (trackTime) {
             timedOp.timer.start();
         }
@@ -66,5 +78,8 @@ public final class EvacuationTimers {
         if (trackTime) {
             timedOp.timer.stop();
         }
+        if (timedOp.phase != null) {
+            GCTelemetry.endPhase(timedOp.phase);
+        }
     }
 }
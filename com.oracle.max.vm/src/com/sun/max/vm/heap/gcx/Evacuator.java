@@ -77,7 +77,7 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
 
     private GCOperation currentGCOperation;
 
-    private EvacuationTimers timers;
+    private EvacuationTimers timers = new EvacuationTimers();
 
     private TIMED_OPERATION currentEvacuationOperation;
 
@@ -85,6 +85,24 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
 
     protected DetailLogger detailLogger;
 
+    /**
+     * Reclaimer to report references to humongous objects to, or null if there are no candidates for eager reclamation.
+     */
+    HumongousObjectReclaimer humongousObjectReclaimer;
+
+    /**
+     * Set the humongous object reclaimer the references found during the next evacuation are reported to.
+     * @param reclaimer a humongous object reclaimer, or null
+     */
+    public void setHumongousObjectReclaimer(HumongousObjectReclaimer reclaimer) {
+        humongousObjectReclaimer = reclaimer;
+    }
+
+    /**
+     * Pinned regions of the evacuated area whose cells are retained in place by the current evacuation, or null if there are none.
+     */
+    PinnedRegions retainedRegions;
+
     public void setGCOperation(GCOperation gcOperation) {
         currentGCOperation = gcOperation;
         if (MaxineVM.isDebug() && gcOperation != null) {
@@ -98,6 +116,9 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
 
     private void updateSpecialReference(Pointer origin) {
         if (refDiscoveryEnabled) {
+            if (humongousObjectReclaimer != null) {
+                humongousObjectReclaimer.noteHeapReference(origin.getReference(SpecialReferenceManager.referentIndex()).toOrigin());
+            }
             SpecialReferenceManager.discoverSpecialReference(origin);
         } else {
             // Treat referent as strong reference.
@@ -120,6 +141,10 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
         refDiscoveryEnabled = false;
     }
 
+    final boolean isSpecialRefDiscoveryEnabled() {
+        return refDiscoveryEnabled;
+    }
+
     @INLINE
     private void updateReferenceArray(Pointer refArrayOrigin, final int firstIndex, final int length) {
         for (int index = firstIndex; index < length; index++) {
@@ -272,6 +297,23 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
             final Reference forwardRef = MaxineVM.isDebug() ? getForwardRef(origin, refHolderOrigin.plusWords(wordIndex)) : getForwardRef(origin);
             refHolderOrigin.setReference(wordIndex, forwardRef);
             updateRSet(refHolderOrigin, wordIndex, forwardRef);
+        } else if (retainedRegions != null && retainedRegions.isRetained(origin)) {
+            // The referenced cell stays in the evacuated area: the reference must be remembered for the next evacuation.
+            updateRSet(refHolderOrigin, wordIndex, ref);
+        } else if (humongousObjectReclaimer != null) {
+            noteHumongousObjectReference(origin);
+        }
+    }
+
+    /**
+     * Report a reference to an object outside of the evacuated area to the humongous object reclaimer.
+     * References from thread stacks, code and immortal memory are found again by every evacuation, unlike those from the heap.
+     */
+    private void noteHumongousObjectReference(Pointer origin) {
+        if (currentEvacuationOperation == ROOT_SCAN || currentEvacuationOperation == CODE_SCAN || currentEvacuationOperation == IMMORTAL_SCAN) {
+            humongousObjectReclaimer.noteRootReference(origin);
+        } else {
+            humongousObjectReclaimer.noteHeapReference(origin);
         }
     }
 
@@ -545,7 +587,7 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
             phaseLogger.logScanningCode(VMLogger.Interval.END);
         }
 
-        if (Heap.logGCPhases()) {
+        if (logPhases) {
             phaseLogger.logScanningImmortalHeap(VMLogger.Interval.BEGIN);
         }
         currentEvacuationOperation = IMMORTAL_SCAN;
@@ -553,7 +595,7 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
         evacuateFromImmortalHeap();
         timers.stop(IMMORTAL_SCAN);
         doAfterOperation(IMMORTAL_SCAN);
-        if (Heap.logGCPhases()) {
+        if (logPhases) {
             phaseLogger.logScanningImmortalHeap(VMLogger.Interval.END);
         }
 
@@ -23,6 +23,7 @@
 package com.sun.max.vm.heap.gcx;
 
 import static com.sun.max.vm.heap.HeapSchemeAdaptor.*;
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
 
 import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
@@ -32,6 +33,7 @@ import com.sun.max.vm.heap.gcx.EvacuatingSpace.SpaceBounds;
 import com.sun.max.vm.heap.gcx.EvacuationTimers.TIMED_OPERATION;
 import com.sun.max.vm.heap.gcx.rset.ctbl.*;
 import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
 import com.sun.max.vm.log.VMLog.Record;
 import com.sun.max.vm.log.hosted.*;
 import com.sun.max.vm.runtime.*;
@@ -149,6 +151,26 @@ public class EvacuatorToCardSpace extends Evacuator {
 
     private final EvacuationLogger logger;
 
+    /**
+     * Support for evacuating in parallel with the {@link GCWorkerGang}.
+     */
+    private final ParallelEvacuation parallelEvacuation;
+
+    /**
+     * Indicates whether the current evacuation is performed in parallel. See {@link #requestParallelEvacuation(Size)}.
+     */
+    private boolean evacuatingInParallel;
+
+    /**
+     * Survivor regions where survivors that haven't reached the tenuring threshold are copied to. Null if all survivors are promoted to the to-space.
+     */
+    private SurvivorRegions survivorRegions;
+
+    /**
+     * Pin counts of the regions of the from-space. Null if the from-space doesn't support pinning.
+     */
+    private PinnedRegions pinnedRegions;
+
     private long [] opEvacuationMarks = new long[TIMED_OPERATION.values().length];
 
     @Override
@@ -164,6 +186,7 @@ public class EvacuatorToCardSpace extends Evacuator {
         this.evacuationBufferProvider = evacuationBufferProvider;
         this.evacuatedAreaBounds = fromSpace.bounds();
         this.logger = new EvacuationLogger(name);
+        this.parallelEvacuation = new ParallelEvacuation(this, evacuationBufferProvider);
     }
 
     public void setEvacuationSpace(EvacuatingSpace fromSpace,  HeapSpace toSpace) {
@@ -187,6 +210,65 @@ public class EvacuatorToCardSpace extends Evacuator {
         this.retireAfterEvacuation = retireAfterEvacuation;
     }
 
+    /**
+     * Set the survivor regions of an aging from-space. Survivors are copied to the survivor regions until they reach the tenuring threshold,
+     * and promoted to the to-space thereafter. References to survivors from outside the survivor regions are recorded in the card table.
+     * Evacuation in parallel isn't supported with survivor regions.
+     *
+     * @param survivorRegions the survivor regions of the from-space
+     */
+    public void setSurvivorRegions(SurvivorRegions survivorRegions) {
+        this.survivorRegions = survivorRegions;
+    }
+
+    /**
+     * Set the pin counts of the regions of the from-space. The from-space computes the ranges retained because of pinned regions
+     * before each evacuation (see {@link EvacuatingSpace#doBeforeGC()}). The cells of these ranges are left in place, and references to them
+     * from outside the from-space are recorded in the card table.
+     *
+     * @param pinnedRegions the pinned regions of the from-space
+     */
+    public void setPinnedRegions(PinnedRegions pinnedRegions) {
+        this.pinnedRegions = pinnedRegions;
+    }
+
+    /**
+     * Enable evacuation in parallel with the {@link GCWorkerGang}, if the gang may have workers.
+     * The to-space must be initialized, and the evacuation buffer provider must hand out evacuation regions.
+     *
+     * @param maxSurvivorRanges maximum number of discontinuous range of survivors each GC worker may have to keep track of when its evacuation stack overflows
+     */
+    public void initializeParallelEvacuation(int maxSurvivorRanges) {
+        parallelEvacuation.initialize(maxSurvivorRanges, numberOfRegions(toSpace.capacity()));
+    }
+
+    /**
+     * Request the next evacuation to be performed in parallel. The request is ignored if parallel evacuation isn't enabled,
+     * or if the evacuation buffer provider doesn't have enough regions for the worst case evacuation.
+     * The request is only valid for the next evacuation.
+     *
+     * @param maxEvacuatedBytes upper bound on the number of bytes the next evacuation may evacuate
+     * @return true if the next evacuation will be performed in parallel
+     */
+    public boolean requestParallelEvacuation(Size maxEvacuatedBytes) {
+        evacuatingInParallel = survivorRegions == null && parallelEvacuation.canEvacuate(maxEvacuatedBytes);
+        return evacuatingInParallel;
+    }
+
+    /**
+     * Indicates whether the current evacuation is performed in parallel.
+     */
+    protected final boolean isEvacuatingInParallel() {
+        return evacuatingInParallel;
+    }
+
+    /**
+     * Scan the dirty cards of the to-space in parallel. Only valid when {@link #isEvacuatingInParallel()} is true.
+     */
+    protected final void evacuateFromDirtyCardsInParallel() {
+        parallelEvacuation.evacuateFromDirtyCards();
+    }
+
     /**
      * Number of bytes evacuated in the last evacuation.
      * @return a number of bytes
@@ -210,11 +292,18 @@ public class EvacuatorToCardSpace extends Evacuator {
     @Override
     protected void doBeforeEvacuation() {
         fromSpace.doBeforeGC();
+        retainedRegions = pinnedRegions != null && pinnedRegions.hasRetainedRanges() ? pinnedRegions : null;
         evacuatedBytes = Size.zero();
         lastOverflowAllocatedRangeStart = Pointer.zero();
         lastOverflowAllocatedRangeEnd = Pointer.zero();
         debugRetired_ptop = Pointer.zero();
-        if (ptop.isZero()) {
+        if (survivorRegions != null) {
+            survivorRegions.doBeforeEvacuation();
+        }
+        if (evacuatingInParallel) {
+            // Survivors are evacuated to the GC workers' LABs. The evacuator's own promotion LAB, if any, is left untouched.
+            parallelEvacuation.doBeforeEvacuation();
+        } else if (ptop.isZero()) {
             Address chunk = evacuationBufferProvider.refillEvacuationBuffer();
             Size chunkSize = HeapFreeChunk.getFreechunkSize(chunk);
             pnextChunk = HeapFreeChunk.getFreeChunkNext(chunk);
@@ -233,7 +322,19 @@ public class EvacuatorToCardSpace extends Evacuator {
     @Override
     protected void doAfterEvacuation() {
         survivorRanges.clear();
+        if (survivorRegions != null) {
+            survivorRegions.doAfterEvacuation();
+        }
         fromSpace.doAfterGC();
+        retainedRegions = null;
+        if (evacuatingInParallel) {
+            evacuatedBytes = parallelEvacuation.doAfterEvacuation();
+            evacuatingInParallel = false;
+            if (logger.enabled()) {
+                logger.logEndEvacuation(Address.zero());
+            }
+            return;
+        }
         Pointer limit = pend.plus(evacuationBufferHeadroom());
         if (logger.enabled()) {
             logger.logEndEvacuation(limit);
@@ -287,6 +388,44 @@ public class EvacuatorToCardSpace extends Evacuator {
             recordRange(lastOverflowAllocatedRangeStart, lastOverflowAllocatedRangeEnd);
             lastOverflowAllocatedRangeStart = lastOverflowAllocatedRangeEnd;
         }
+        if (survivorRegions != null) {
+            for (int age = 1; age <= survivorRegions.tenuringThreshold(); age++) {
+                recordSurvivorRegionRange(age);
+            }
+        }
+    }
+
+    private void recordSurvivorRegionRange(int age) {
+        final Address top = survivorRegions.top(age);
+        if (top.greaterThan(survivorRegions.rangeStart(age))) {
+            recordRange(survivorRegions.rangeStart(age), top);
+            survivorRegions.rangeRecorded(age);
+        }
+    }
+
+    /**
+     * Allocate space for a survivor in the survivor regions.
+     *
+     * @param fromCell cell of the survivor in the evacuated area
+     * @param size size of the survivor
+     * @return a pointer to the allocated cell, or zero if the survivor must be promoted
+     */
+    private Pointer allocateInSurvivorRegions(Pointer fromCell, Size size) {
+        final int age = survivorRegions.ageOf(fromCell);
+        if (survivorRegions.mustPromote(age)) {
+            return Pointer.zero();
+        }
+        final int survivorAge = age + 1;
+        Pointer cell = survivorRegions.allocate(survivorAge, size);
+        if (cell.isZero()) {
+            recordSurvivorRegionRange(survivorAge);
+            if (!survivorRegions.refill(survivorAge, size)) {
+                // Survivor regions overflow. Promote the survivor.
+                return Pointer.zero();
+            }
+            cell = survivorRegions.allocate(survivorAge, size);
+        }
+        return cell;
     }
 
     /**
@@ -370,7 +509,7 @@ public class EvacuatorToCardSpace extends Evacuator {
     @INLINE
     @Override
     final boolean inEvacuatedArea(Pointer origin) {
-        return evacuatedAreaBounds.isIn(origin);
+        return evacuatedAreaBounds.isIn(origin) && (retainedRegions == null || !retainedRegions.isRetained(origin));
     }
 
     /**
@@ -400,13 +539,35 @@ public class EvacuatorToCardSpace extends Evacuator {
         if (MaxineVM.isDebug() && checkDarkMatterRefs) {
             DarkMatter.scanCellForDarkMatter(fromOrigin);
         }
+        if (evacuatingInParallel) {
+            return parallelEvacuation.evacuate(fromOrigin);
+        }
         final Pointer fromCell = Layout.originToCell(fromOrigin);
         final Size size = Layout.size(fromOrigin);
-        final Pointer toCell = allocate(size);
+        Pointer toCell = Pointer.zero();
+        if (survivorRegions != null) {
+            toCell = allocateInSurvivorRegions(fromCell, size);
+        }
+        if (toCell.isZero()) {
+            toCell = allocate(size);
+        }
         Memory.copyBytes(fromCell, toCell, size);
         return toCell;
     }
 
+    /**
+     * Record references to survivors in the card table, unless the reference holder is itself in the survivor regions.
+     * Survivor regions are evacuated at every minor collection, so their cards do not need to be tracked.
+     */
+    @Override
+    final void updateRSet(Pointer refHolderOrigin, int wordIndex, Reference ref) {
+        if (survivorRegions != null && survivorRegions.contains(ref.toOrigin()) && !survivorRegions.contains(refHolderOrigin) && rset.cardTable.isCovered(refHolderOrigin)) {
+            rset.record(Reference.fromOrigin(refHolderOrigin), 0, wordIndex);
+        } else if (retainedRegions != null && retainedRegions.isRetained(ref.toOrigin()) && !evacuatedAreaBounds.isIn(refHolderOrigin) && rset.cardTable.isCovered(refHolderOrigin)) {
+            rset.record(Reference.fromOrigin(refHolderOrigin), 0, wordIndex);
+        }
+    }
+
     private boolean checkDarkMatterRefs = false;
     public void enableDarkMatterRefCheck(boolean b) {
         checkDarkMatterRefs = MaxineVM.isDebug() && b;
@@ -414,6 +575,10 @@ public class EvacuatorToCardSpace extends Evacuator {
 
     @Override
     final protected void evacuateReachables() {
+        if (evacuatingInParallel) {
+            parallelEvacuation.evacuateReachables();
+            return;
+        }
         updateSurvivorRanges();
         while (!survivorRanges.isEmpty()) {
             final Pointer start = survivorRanges.start();
@@ -26,6 +26,8 @@ import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionInfo.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionState.*;
 
+import java.util.*;
+
 import com.sun.max.memory.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
@@ -34,6 +36,7 @@ import com.sun.max.vm.heap.*;
 import com.sun.max.vm.heap.HeapScheme.GCRequest;
 import com.sun.max.vm.heap.gcx.HeapRegionInfo.Flag;
 import com.sun.max.vm.heap.gcx.rset.*;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
 import com.sun.max.vm.layout.*;
 import com.sun.max.vm.runtime.*;
 /**
@@ -84,6 +87,26 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     private HeapRegionList sweepList;
 
+    /**
+     * List of the empty regions handed out as private evacuation buffers to the workers of a parallel evacuation.
+     * These regions are in the allocating state, hence not iterable, until the evacuation completes.
+     * See {@link #takeEvacuationRegion()}.
+     */
+    private HeapRegionList evacuationRegions;
+
+    /**
+     * List of the regions whose live objects are being evacuated by a {@link RegionEvacuator}.
+     * These regions are in the allocating state, hence not iterable, until the compaction completes.
+     * See {@link #takeCompactionRegion(int)}.
+     */
+    private HeapRegionList compactionRegions;
+
+    /**
+     * List of the regions whose memory was given back to the operating system when shrinking the space.
+     * These regions are still allocated to the heap account, but aren't counted in the space. They are reused first when the space grows again.
+     */
+    private HeapRegionList uncommittedRegions;
+
     /**
      * Total number of regions currently allocated to this heap space.
      */
@@ -94,6 +117,11 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     private int maxRegionsInSpace;
 
+    /**
+     * Number of regions the space cannot shrink below (i.e., its initial size).
+     */
+    private int minRegionsInSpace;
+
     /**
      * Total free space in allocation regions (i.e., regions in both {@link #allocationRegions} and {@link #tlabAllocationRegions} lists).
      * This doesn't count space in regions assigned to allocators (i.e., {@link #tlabAllocator} and {@link #overflowAllocator}).
@@ -101,6 +129,18 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     private Size allocationRegionsFreeSpace;
 
+    /**
+     * Regions a large object was allocated in since the last GC, indexed by region ID, or null if the cards of the space aren't
+     * refined concurrently. A large object allocated by a mutator is formatted after the refill lock is released, so the cards of
+     * these regions aren't refined until the next GC (see {@link #refineCardsConcurrently}).
+     */
+    private boolean[] recentLargeObjectRegions;
+
+    /**
+     * Indicates whether any entry of {@link #recentLargeObjectRegions} is set.
+     */
+    private boolean hasRecentLargeObjectRegions;
+
     final private SpaceBounds bounds;
     /**
      * TLAB refill allocator. Can supplies TLAB refill either as a single contiguous chunk,
@@ -123,6 +163,23 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     final HeapRegionInfoIterable regionInfoIterable;
 
+    /**
+     * Heap marker whose color map drives a lazy sweep in progress, or null if all the regions of the space were swept since the last marking.
+     * Regions still in the {@link #sweepList} are swept on demand by the allocators' refill paths, or by a {@link ConcurrentSweeper}.
+     * Allocation regions are always swept.
+     */
+    private TricolorHeapMarker lazySweepHeapMarker;
+
+    /**
+     * Indicates whether the lazy sweep in progress is imprecise.
+     */
+    private boolean lazySweepImprecise;
+
+    /**
+     * Free space in the space when the last sweep completed.
+     */
+    private Size freeSpaceAfterLastSweep = Size.zero();
+
     /**
      * Minimum size to be treated as a large object.
      */
@@ -144,6 +201,7 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     private Pointer allocateSingleRegionLargeObject(HeapRegionInfo rinfo, Pointer allocated, Size requestedSize, Size totalChunkSize) {
         final int regionID = rinfo.toRegionID();
         allocationRegions.remove(regionID);
+        recordRecentLargeObjectRegions(regionID, regionID);
         Pointer leftover = allocated.plus(requestedSize);
         Size spaceLeft = totalChunkSize.minus(requestedSize);
         if (TraceLargeObjectAllocations) {
@@ -244,6 +302,7 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
                                         Log.print(lastRegion);
                                         Log.println("]");
                                     }
+                                    recordRecentLargeObjectRegions(firstRegion, lastRegion);
                                     allocationRegions.remove(firstRegion);
                                     HeapRegionInfo firstRegionInfo = HeapRegionInfo.fromRegionID(firstRegion);
                                     LARGE_HEAD.setState(firstRegionInfo);
@@ -294,18 +353,131 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
                 if (MaxineVM.isDebug()) {
                     checkForSuspisciousGC(gcCount++);
                 }
-            } while(Heap.collectGarbage()); // Always collect for at least one region.
+                // Contiguous empty regions may be found among the regions not swept yet. Otherwise, always collect for at least one region.
+            } while(finishSweeping() || Heap.collectGarbage());
             // Not enough freed memory.
             throw outOfMemoryError;
         }
     }
 
+    private void recordRecentLargeObjectRegions(int firstRegion, int lastRegion) {
+        if (recentLargeObjectRegions != null) {
+            for (int i = firstRegion; i <= lastRegion; i++) {
+                recentLargeObjectRegions[i] = true;
+            }
+            hasRecentLargeObjectRegions = true;
+        }
+    }
+
+    /**
+     * Forget the regions large objects were allocated in since the last GC. Must be called during a GC pause, when all the
+     * objects allocated by mutators are formatted.
+     */
+    public void forgetRecentLargeObjectRegions() {
+        if (hasRecentLargeObjectRegions) {
+            Arrays.fill(recentLargeObjectRegions, false);
+            hasRecentLargeObjectRegions = false;
+        }
+    }
+
+    /**
+     * Enable {@linkplain #refineCardsConcurrently concurrent refinement} of the cards of this space.
+     */
+    public void enableConcurrentRefinement() {
+        recentLargeObjectRegions = new boolean[numberOfRegions(HeapRegionManager.theHeapRegionManager().bounds().size())];
+    }
+
+    /**
+     * Refine the cards of a region of this space on behalf of a background refiner (see {@link ConcurrentCardRefiner}).
+     * The refill lock is held so that the region is neither swept nor handed out to a large object while its cards are refined,
+     * and safepoints are disabled so that a GC never finds the region partially refined. Regions that aren't iterable, and regions
+     * a large object was allocated in since the last GC, are skipped.
+     *
+     * @param regionID a region of this space
+     * @param rset the remembered set of the space
+     * @param closure the closure deciding which cards to clean
+     * @return the number of cleaned cards
+     */
+    public int refineCardsConcurrently(int regionID, CardTableRSet rset, CardTableRSet.CardRefinementClosure closure) {
+        synchronized (refillLock()) {
+            final HeapRegionInfo rinfo = fromRegionID(regionID);
+            if (!contains(rinfo.regionStart()) || !rinfo.isIterable() || recentLargeObjectRegions[regionID]) {
+                return 0;
+            }
+            final boolean wasDisabled = SafepointPoll.disable();
+            final Address regionStart = rinfo.regionStart();
+            final int numCleanedCards = rset.refineCards(regionStart, regionStart.plus(regionSizeInBytes), closure);
+            if (!wasDisabled) {
+                SafepointPoll.enable();
+            }
+            return numCleanedCards;
+        }
+    }
+
     Pointer allocateLargeCleared(Size size) {
         Pointer cell = allocateLarge(size);
         Memory.clearWords(cell, size.unsignedShiftedRight(Word.widthValue().log2numberOfBytes).toInt());
         return cell;
     }
 
+    private void releaseLargeObjectRegion(HeapRegionInfo rinfo) {
+        final int regionID = rinfo.toRegionID();
+        unavailableRegions.remove(regionID);
+        EMPTY_REGION.setState(rinfo);
+        rinfo.resetOccupancy();
+        HeapFreeChunk.format(rinfo.regionStart(), regionSizeInBytes);
+        // Clean the cards of the region so that neither minor collections nor the card refiner walk them.
+        deadSpaceListener.notifyCoalescing(rinfo.regionStart(), Size.fromInt(regionSizeInBytes));
+        allocationRegions.append(regionID);
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.plus(regionSizeInBytes);
+    }
+
+    /**
+     * Reclaim the regions of a dead multi-regions object outside of a sweep (see {@link HumongousObjectReclaimer}).
+     * The head and body regions are made empty and given back to the allocation regions. Unless the object ends with the tail region,
+     * the part of the object in the tail region is formatted as dark matter, since the space after it may be used for allocation.
+     * This part is reclaimed by the next sweep. The caller must call {@link #endLargeObjectsReclaim()} once done reclaiming large objects.
+     *
+     * @param headRegionID identifier of the head region of the object
+     * @return the space made available for allocation
+     */
+    Size reclaimLargeObject(int headRegionID) {
+        HeapRegionInfo rinfo = fromRegionID(headRegionID);
+        FatalError.check(LARGE_HEAD.isInState(rinfo), "Reclaimed region must be the head of a large object");
+        final Size largeObjectSize = Layout.size(Layout.cellToOrigin(rinfo.regionStart().asPointer()));
+        int numFreedRegions = 0;
+        do {
+            releaseLargeObjectRegion(rinfo);
+            numFreedRegions++;
+            rinfo = rinfo.next();
+        } while (!rinfo.isTailOfLargeObject());
+
+        final Size tailSize = largeObjectSize.and(regionAlignmentMask);
+        if (tailSize.isZero()) {
+            // The object covers the entire tail region.
+            releaseLargeObjectRegion(rinfo);
+            numFreedRegions++;
+        } else {
+            DarkMatter.format(rinfo.regionStart(), tailSize);
+            deadSpaceListener.notifyRetireDeadSpace(rinfo.regionStart(), tailSize);
+        }
+        if (TraceLargeObjectAllocations) {
+            Log.print("reclaimed #");
+            Log.print(numFreedRegions);
+            Log.print(" regions of large object at region #");
+            Log.println(headRegionID);
+        }
+        return Size.fromInt(numFreedRegions).shiftedLeft(log2RegionSizeInBytes);
+    }
+
+    /**
+     * Complete a series of {@link #reclaimLargeObject(int)}. Restore the address order of the allocation regions, which the search
+     * for contiguous empty regions relies on.
+     */
+    void endLargeObjectsReclaim() {
+        allocationRegions.sort();
+    }
+
     /**
      * The lock on which refill and region allocation to object spaces synchronize on.
      */
@@ -380,6 +552,9 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         allocationRegions = HeapRegionList.RegionListUse.OWNERSHIP.createList();
         unavailableRegions = HeapRegionList.RegionListUse.OWNERSHIP.createList();
         sweepList = HeapRegionList.RegionListUse.OWNERSHIP.createList();
+        evacuationRegions = HeapRegionList.RegionListUse.OWNERSHIP.createList();
+        compactionRegions = HeapRegionList.RegionListUse.OWNERSHIP.createList();
+        uncommittedRegions = HeapRegionList.RegionListUse.OWNERSHIP.createList();
 
         maxRegionsInSpace = numberOfRegions(maxSize);
         FatalError.check(maxRegionsInSpace <= heapAccount.reserve(), "under provisioned heap account");
@@ -391,6 +566,7 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         }
 
         numRegionsInSpace = initialNumberOfRegions;
+        minRegionsInSpace = initialNumberOfRegions;
         minReclaimableSpace = Size.fromInt(freeChunkMinSizeOption.getValue());
         overflowAllocator.refillManager().setMinRefillSize(minOverflowRefillSize);
         // Set the iterable to the list of committed regions. This is the default. Any exception to this should
@@ -465,6 +641,8 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public void doBeforeGC() {
+        // The color map is about to be overwritten by the marking: complete the sweep of the previous collection first.
+        finishSweeping();
         overflowAllocator.doBeforeGC();
         tlabAllocator.doBeforeGC();
         FatalError.check(tlabAllocator.refillManager.allocatingRegion() == INVALID_REGION_ID, "TLAB allocating region must have been retired");
@@ -484,6 +662,16 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         heapMarker.markAll(regionsRangeIterable);
     }
 
+    /**
+     * Complete the marking of a concurrent marking cycle.
+     * @param heapMarker the heap marker that started the cycle
+     * @param cardTableRSet the card table recording the cards mutators stored references into since the cycle started
+     */
+    public void remark(TricolorHeapMarker heapMarker, CardTableRSet cardTableRSet) {
+        regionsRangeIterable.reset();
+        heapMarker.remark(regionsRangeIterable, cardTableRSet);
+    }
+
 
     public void sweep(TricolorHeapMarker heapMarker, boolean doImprecise) {
         if (MaxineVM.isDebug()) {
@@ -495,8 +683,107 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         FatalError.check(sweepList.isEmpty(), "Sweeping list must be empty");
     }
 
+    /**
+     * Start a lazy sweep of the space. Regions are left unswept on the sweeping list and are swept one at a time, in address order,
+     * when the allocators run out of allocation regions, or by a background sweeper. Sweeping completes at the latest before the next marking
+     * of the heap.
+     * This must be called during a GC pause, after the heap was marked.
+     *
+     * @param heapMarker the heap marker whose color map describes the live objects of the space
+     * @param doImprecise true if regions should be swept imprecisely
+     */
+    public void startLazySweep(TricolorHeapMarker heapMarker, boolean doImprecise) {
+        if (MaxineVM.isDebug()) {
+            sweepList.checkIsAddressOrdered();
+        }
+        allocationRegionsFreeSpace = Size.zero();
+        csrIsLiveMultiRegionObjectTail = false;
+        regionInfoIterable.initialize(sweepList);
+        regionInfoIterable.reset();
+        while (regionInfoIterable.hasNext()) {
+            toUnsweptState(regionInfoIterable.next());
+        }
+        lazySweepImprecise = doImprecise;
+        lazySweepHeapMarker = heapMarker;
+    }
+
+    /**
+     * Indicates whether some regions of the space are still waiting to be swept.
+     */
+    public boolean isSweeping() {
+        return lazySweepHeapMarker != null;
+    }
+
+    /**
+     * Sweep the next unswept region, if any.
+     * Must be called either with the refill lock held, or during a GC pause. Safepoints are disabled while the region is swept so that
+     * a GC never finds the space in the middle of sweeping a region.
+     *
+     * @return true if a region was swept, false if there was no region left to sweep
+     */
+    private boolean sweepNextRegion() {
+        final TricolorHeapMarker heapMarker = lazySweepHeapMarker;
+        if (heapMarker == null) {
+            return false;
+        }
+        final boolean wasDisabled = SafepointPoll.disable();
+        if (!heapMarker.sweepNextRegion(this, lazySweepImprecise)) {
+            FatalError.check(sweepList.isEmpty(), "Sweeping list must be empty");
+            lazySweepHeapMarker = null;
+        }
+        if (!wasDisabled) {
+            SafepointPoll.enable();
+        }
+        return true;
+    }
+
+    /**
+     * Sweep the next unswept region on behalf of a background sweeper.
+     *
+     * @return true if there may be more regions to sweep
+     */
+    public boolean sweepNextRegionConcurrently() {
+        synchronized (refillLock()) {
+            sweepNextRegion();
+            return lazySweepHeapMarker != null;
+        }
+    }
+
+    /**
+     * Sweep unswept regions until the space has at least the specified amount of free space, or all regions are swept.
+     * Must be called by a mutator thread.
+     *
+     * @param minFreeSpace the free space the space should have
+     */
+    public void sweepUntil(Size minFreeSpace) {
+        if (lazySweepHeapMarker == null) {
+            return;
+        }
+        synchronized (refillLock()) {
+            while (freeSpace().lessThan(minFreeSpace) && sweepNextRegion()) {
+            }
+        }
+    }
+
+    /**
+     * Sweep all the regions left unswept by a lazy sweep.
+     * Must be called either with the refill lock held, or during a GC pause.
+     *
+     * @return true if there were regions left to sweep
+     */
+    public boolean finishSweeping() {
+        if (lazySweepHeapMarker == null) {
+            return false;
+        }
+        while (sweepNextRegion()) {
+        }
+        return true;
+    }
+
     private HeapRegionInfo nextRegionToSweep() {
-        return RegionTable.theRegionTable().regionInfo(sweepList.removeHead());
+        final HeapRegionInfo rinfo = RegionTable.theRegionTable().regionInfo(sweepList.removeHead());
+        toSweptState(rinfo);
+        return rinfo;
     }
 
     @Override
@@ -649,11 +936,15 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         // FIXME(ld) should we have some system wide GC epilogue for these type of cleanup ?
         csrHead = null;
         csrTail = null;
+        freeSpaceAfterLastSweep = freeSpace();
     }
 
+    /**
+     * Free space in the space when the last sweep completed. With lazy sweeping, this may lag behind the last collection.
+     */
     @Override
     public Size freeSpaceAfterSweep() {
-        return freeSpace();
+        return freeSpaceAfterLastSweep;
     }
 
 
@@ -663,17 +954,56 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         if (numRegions == 0) {
             numRegions = 1;
         }
-        int allocated = heapAccount.allocate(numRegions, allocationRegions, false, true, true, regionTag);
-        return Size.fromInt(allocated).shiftedLeft(log2RegionSizeInBytes);
+        // Reuse first the regions given back to the operating system on an earlier shrink.
+        int recommitted = 0;
+        while (recommitted < numRegions && !uncommittedRegions.isEmpty()) {
+            final int regionID = uncommittedRegions.removeHead();
+            heapAccount.commit(regionID);
+            // The region's memory is fresh: format it again as a single free chunk.
+            HeapFreeChunk.format(fromRegionID(regionID).regionStart(), regionSizeInBytes);
+            allocationRegions.append(regionID);
+            recommitted++;
+        }
+        if (recommitted > 0) {
+            allocationRegions.sort();
+        }
+        int allocated = recommitted;
+        if (recommitted < numRegions) {
+            allocated += heapAccount.allocate(numRegions - recommitted, allocationRegions, false, true, true, regionTag);
+        }
+        Size growth = Size.fromInt(allocated).shiftedLeft(log2RegionSizeInBytes);
+        numRegionsInSpace += allocated;
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.plus(growth);
+        return growth;
     }
 
+    /**
+     * Shrink the space by uncommitting empty allocation regions, highest addresses first. The space never shrinks below its initial size.
+     * This must be called during a GC pause, after the space was fully swept.
+     */
     @Override
     public Size decreaseSize(Size delta) {
-        // TODO
-        return Size.zero();
+        final int numRegions = Math.min(delta.unsignedShiftedRight(log2RegionSizeInBytes).toInt(), numRegionsInSpace - minRegionsInSpace);
+        int uncommitted = 0;
+        int regionID = allocationRegions.tail();
+        while (uncommitted < numRegions && regionID != INVALID_REGION_ID) {
+            final int prevRegionID = allocationRegions.prev(regionID);
+            if (fromRegionID(regionID).isEmpty()) {
+                allocationRegions.remove(regionID);
+                heapAccount.uncommit(regionID);
+                uncommittedRegions.append(regionID);
+                uncommitted++;
+            }
+            regionID = prevRegionID;
+        }
+        final Size shrinkage = Size.fromInt(uncommitted).shiftedLeft(log2RegionSizeInBytes);
+        numRegionsInSpace -= uncommitted;
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(shrinkage);
+        freeSpaceAfterLastSweep = freeSpace();
+        return shrinkage;
     }
 
-    private void iterateRegions(CellRangeVisitor visitor) {
+    void iterateRegions(CellRangeVisitor visitor) {
         final RegionTable regionTable = RegionTable.theRegionTable();
         regionsRangeIterable.initialize(heapAccount.committedRegions());
         if (regionTag == 0) {
@@ -692,6 +1022,8 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
 
     @Override
     public void visit(CellRangeVisitor visitor) {
+        // Unswept regions may hold dead objects referencing reclaimed space.
+        finishSweeping();
         // Make allocating regions iterable first.
         tlabAllocator.unsafeMakeParsable();
         overflowAllocator.unsafeMakeParsable();
@@ -710,6 +1042,9 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         balance += tlabAllocationRegions.size();
         balance += allocationRegions.size();
         balance += unavailableRegions.size();
+        balance += sweepList.size();
+        balance += evacuationRegions.size();
+        balance += compactionRegions.size();
         FatalError.check(balance == numRegionsInSpace, "incorrect balance of regions in space");
     }
 
@@ -734,7 +1069,10 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public int getAllocatingRegion() {
-        final int regionID = tlabAllocationRegionList().removeHead();
+        int regionID = tlabAllocationRegionList().removeHead();
+        while (regionID == INVALID_REGION_ID && sweepNextRegion()) {
+            regionID = tlabAllocationRegionList().removeHead();
+        }
         if (regionID != INVALID_REGION_ID) {
             final HeapRegionInfo regionInfo = fromRegionID(regionID);
             final int numFreeBytes = regionInfo.isEmpty() ?  regionSizeInBytes : regionInfo.freeBytesInChunks();
@@ -745,23 +1083,164 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
 
     public int getAllocatingRegion(Size minFreeBytes, int maxFreeChunks) {
         final int minFreeSpace = minFreeBytes.toInt();
+        do {
+            regionInfoIterable.initialize(allocationRegions);
+            regionInfoIterable.reset();
+            for (HeapRegionInfo regionInfo : regionInfoIterable) {
+                if (regionInfo.isEmpty()) {
+                    allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionSizeInBytes);
+                } else if (regionInfo.freeBytesInChunks() >= minFreeSpace && regionInfo.numFreeChunks() == maxFreeChunks) {
+                    allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionInfo.freeBytesInChunks());
+                } else {
+                    continue;
+                }
+                // Found a refill.
+                regionInfoIterable.remove();
+                return  regionInfo.toRegionID();
+            }
+            // Sweep more regions, if any are left, and try again.
+        } while (sweepNextRegion());
+        return INVALID_REGION_ID;
+    }
+
+
+    /**
+     * Number of empty regions available for {@link #takeEvacuationRegion()}.
+     */
+    public int numEmptyRegions() {
+        int numEmptyRegions = 0;
         regionInfoIterable.initialize(allocationRegions);
         regionInfoIterable.reset();
         for (HeapRegionInfo regionInfo : regionInfoIterable) {
             if (regionInfo.isEmpty()) {
+                numEmptyRegions++;
+            }
+        }
+        return numEmptyRegions;
+    }
+
+    /**
+     * Take an empty region off the allocation regions for use as the private evacuation buffer of a GC worker.
+     * The region is set in the allocating state, so that it isn't seen by iterations over the space until
+     * {@link #retireEvacuationRegions()} is called. Calls must be serialized by the caller.
+     *
+     * @return the identifier of an empty region, or {@link HeapRegionConstants#INVALID_REGION_ID} if none is left
+     */
+    public int takeEvacuationRegion() {
+        regionInfoIterable.initialize(allocationRegions);
+        regionInfoIterable.reset();
+        for (HeapRegionInfo regionInfo : regionInfoIterable) {
+            if (regionInfo.isEmpty()) {
+                regionInfoIterable.remove();
                 allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionSizeInBytes);
-            } else if (regionInfo.freeBytesInChunks() >= minFreeSpace && regionInfo.numFreeChunks() == maxFreeChunks) {
-                allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionInfo.freeBytesInChunks());
-            } else {
-                continue;
+                toAllocatingState(regionInfo);
+                final int regionID = regionInfo.toRegionID();
+                evacuationRegions.append(regionID);
+                return regionID;
             }
-            // Found a refill.
-            regionInfoIterable.remove();
-            return  regionInfo.toRegionID();
         }
         return INVALID_REGION_ID;
     }
 
+    /**
+     * Format the space left in a region obtained with {@link #takeEvacuationRegion()}.
+     * The region remains in the allocating state until {@link #retireEvacuationRegions()} is called.
+     *
+     * @param regionID the evacuation region
+     * @param startOfSpaceLeft start of the space left in the region
+     * @param spaceLeft amount of space left in the region
+     */
+    public void releaseEvacuationRegion(int regionID, Pointer startOfSpaceLeft, Size spaceLeft) {
+        final HeapRegionInfo regionInfo = fromRegionID(regionID);
+        if (spaceLeft.greaterEqual(minReclaimableSpace)) {
+            HeapFreeChunk.format(startOfSpaceLeft, spaceLeft);
+            regionInfo.setFreeChunks(startOfSpaceLeft, spaceLeft, 1);
+            deadSpaceListener.notifyRetireFreeSpace(startOfSpaceLeft, spaceLeft);
+        } else {
+            if (spaceLeft.isNotZero()) {
+                DarkMatter.format(startOfSpaceLeft, spaceLeft);
+                deadSpaceListener.notifyRetireDeadSpace(startOfSpaceLeft, spaceLeft);
+            }
+            regionInfo.clearFreeChunks();
+        }
+    }
+
+    /**
+     * Return the regions handed out with {@link #takeEvacuationRegion()} to the space.
+     * Each region is set in the full or free chunk state depending on the space left in it by {@link #releaseEvacuationRegion(int, Pointer, Size)}.
+     */
+    public void retireEvacuationRegions() {
+        int regionID = evacuationRegions.removeHead();
+        while (regionID != INVALID_REGION_ID) {
+            final HeapRegionInfo regionInfo = fromRegionID(regionID);
+            if (regionInfo.numFreeChunks() > 0) {
+                toFreeChunkState(regionInfo);
+            } else {
+                toFullState(regionInfo);
+            }
+            retireAllocatingRegion(regionID);
+            regionID = evacuationRegions.removeHead();
+        }
+    }
+
+    /**
+     * Select the sparsest regions available for allocation as candidates for compaction. Must be called after a complete sweep.
+     * See {@link HeapRegionStatistics#selectSparsestRegions(HeapRegionList, int, PinnedRegions, int[], int)}.
+     *
+     * @param stats statistics used to rank the regions
+     * @param maxLiveBytes regions with more live bytes than this aren't selected
+     * @param pinnedRegions regions that must not be selected, or null if none
+     * @param selected array where to store the identifiers of the selected regions, sorted by increasing amount of live bytes
+     * @return the number of regions selected
+     */
+    public int selectSparsestRegions(HeapRegionStatistics stats, int maxLiveBytes, PinnedRegions pinnedRegions, int [] selected) {
+        final int numSelected = stats.selectSparsestRegions(allocationRegions, maxLiveBytes, pinnedRegions, selected, 0);
+        return stats.selectSparsestRegions(tlabAllocationRegions, maxLiveBytes, pinnedRegions, selected, numSelected);
+    }
+
+    /**
+     * Take a region off the allocation regions to have its live objects evacuated.
+     * The region is set in the allocating state, so that it isn't seen by iterations over the space until
+     * {@link #endCompaction()} is called.
+     *
+     * @param regionID a region with free chunks from the space's allocation regions
+     */
+    public void takeCompactionRegion(int regionID) {
+        final HeapRegionInfo regionInfo = fromRegionID(regionID);
+        if (allocationRegions.contains(regionID)) {
+            allocationRegions.remove(regionID);
+        } else {
+            FatalError.check(tlabAllocationRegions.contains(regionID), "compaction region must be an allocation region");
+            tlabAllocationRegions.remove(regionID);
+        }
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionInfo.freeBytesInChunks());
+        toAllocatingState(regionInfo);
+        compactionRegions.append(regionID);
+    }
+
+    /**
+     * Complete a compaction. The regions handed out as evacuation buffers are returned to the space, and the regions
+     * taken with {@link #takeCompactionRegion(int)}, all of whose live objects have been evacuated, are returned to the space as empty regions.
+     */
+    public void endCompaction() {
+        retireEvacuationRegions();
+        int regionID = compactionRegions.removeHead();
+        while (regionID != INVALID_REGION_ID) {
+            final HeapRegionInfo regionInfo = fromRegionID(regionID);
+            toFreeChunkState(regionInfo);
+            EMPTY_REGION.setState(regionInfo);
+            HeapFreeChunk.format(regionInfo.regionStart(), regionSizeInBytes);
+            regionInfo.resetOccupancy();
+            allocationRegionsFreeSpace =  allocationRegionsFreeSpace.plus(regionSizeInBytes);
+            allocationRegions.append(regionID);
+            regionID = compactionRegions.removeHead();
+        }
+        // Regions were appended out of address order.
+        allocationRegions.sort();
+        tlabAllocationRegions.sort();
+        unavailableRegions.sort();
+        freeSpaceAfterLastSweep = freeSpace();
+    }
 
     public Size minRetiredFreeChunkSize() {
         return minReclaimableSpace;
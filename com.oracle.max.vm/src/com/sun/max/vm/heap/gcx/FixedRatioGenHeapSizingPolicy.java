@@ -48,6 +48,14 @@ public class FixedRatioGenHeapSizingPolicy implements GenHeapSizingPolicy {
      * Size to which generations are aligned to. In other words, <pre>unitSize = Size.fromInt(1).shiftedLeft({@link #log2Alignment})</pre>
      */
     final Size unitSize;
+    /**
+     * Percentage of the young generation reserved for survivor regions (value from 0 to 99). Zero if there's no survivor regions.
+     */
+    final int survivorYoungGenPercentage;
+    /**
+     * Maximum number of minor collections an object may survive before being promoted. Zero if there's no survivor regions.
+     */
+    final int maxTenuringThreshold;
 
     private int numberOfUnits(Size size) {
         return size.alignUp(unitSize.toInt()).unsignedShiftedRight(log2Alignment).toInt();
@@ -67,17 +75,33 @@ public class FixedRatioGenHeapSizingPolicy implements GenHeapSizingPolicy {
         return size.and(alignment.not());
     }
 
-    protected FixedRatioGenHeapSizingPolicy(int youngGenFixedHeapPercentage, int log2Alignment) {
+    protected FixedRatioGenHeapSizingPolicy(int youngGenFixedHeapPercentage, int log2Alignment, int survivorYoungGenPercentage, int maxTenuringThreshold) {
         // Run validation of heap sizing parameters.
         FatalError.check(youngGenFixedHeapPercentage > 0 && youngGenFixedHeapPercentage <= 100, "Not a valid percentage of heap size");
         FatalError.check(log2Alignment > 0 && log2Alignment < Word.widthValue().numberOfBits, "Not a valid log2 alignment");
+        FatalError.check(survivorYoungGenPercentage >= 0 && survivorYoungGenPercentage < 100, "Not a valid percentage of young generation size");
+        FatalError.check(maxTenuringThreshold >= 0 && maxTenuringThreshold <= SurvivorRegions.MAX_TENURING_THRESHOLD, "Not a valid tenuring threshold");
         this.youngGenFixedHeapPercentage = youngGenFixedHeapPercentage;
         this.log2Alignment = log2Alignment;
         this.unitSize = Size.fromInt(1).shiftedLeft(log2Alignment);
+        this.survivorYoungGenPercentage = survivorYoungGenPercentage;
+        this.maxTenuringThreshold = maxTenuringThreshold;
+    }
+
+    protected FixedRatioGenHeapSizingPolicy(int youngGenFixedHeapPercentage, int log2Alignment) {
+        this(youngGenFixedHeapPercentage, log2Alignment, 0, 0);
     }
 
     public FixedRatioGenHeapSizingPolicy(Size initHeapSize, Size maxHeapSize, int youngGenFixedHeapPercentage, int log2Alignment) {
-        this(youngGenFixedHeapPercentage, log2Alignment);
+        this(initHeapSize, maxHeapSize, youngGenFixedHeapPercentage, log2Alignment, 0, 0);
+    }
+
+    /**
+     * Create a sizing policy for a generational heap whose young generation may reserve survivor regions for aging objects.
+     * No space is reserved for survivor regions if either the survivor percentage or the tenuring threshold is zero.
+     */
+    public FixedRatioGenHeapSizingPolicy(Size initHeapSize, Size maxHeapSize, int youngGenFixedHeapPercentage, int log2Alignment, int survivorYoungGenPercentage, int maxTenuringThreshold) {
+        this(youngGenFixedHeapPercentage, log2Alignment, survivorYoungGenPercentage, maxTenuringThreshold);
         this.maxHeapSize = alignUp(maxHeapSize);
         this.initHeapSize = alignUp(initHeapSize);
     }
@@ -113,4 +137,20 @@ public class FixedRatioGenHeapSizingPolicy implements GenHeapSizingPolicy {
     public Size maxOldGenSize() {
         return maxHeapSize.minus(initialYoungGenSize());
     }
+
+    @Override
+    public Size survivorSize() {
+        if (survivorYoungGenPercentage == 0 || maxTenuringThreshold == 0) {
+            return Size.zero();
+        }
+        // At least two units, one for the survivors being evacuated, one for the survivors being copied.
+        final Size survivorSize = alignUp(initialYoungGenSize().times(survivorYoungGenPercentage).dividedBy(100));
+        final Size minSurvivorSize = unitSize.times(2);
+        return survivorSize.lessThan(minSurvivorSize) ? minSurvivorSize : survivorSize;
+    }
+
+    @Override
+    public int maxTenuringThreshold() {
+        return maxTenuringThreshold;
+    }
 }
@@ -240,6 +240,15 @@ class FixedSizeRegionAllocator {
      */
     private int highestAllocated;
 
+    /**
+     * NUMA node each region's memory is bound to, or {@link #UNKNOWN_NODE} if the region isn't bound to any node.
+     * Null if the allocator doesn't track NUMA placement.
+     */
+    @CONSTANT_WHEN_NOT_ZERO
+    private byte [] regionNodes;
+
+    static final byte UNKNOWN_NODE = -1;
+
     FixedSizeRegionAllocator(String name) {
         backingStorage = new MemoryRegion(name);
         allocated = new RegionBitSet();
@@ -280,6 +289,54 @@ class FixedSizeRegionAllocator {
         }
     }
 
+    /**
+     * Enables tracking of the NUMA node of regions. Must be called after {@link #initialize(Address, int, int)}.
+     */
+    void initializeNUMA() {
+        regionNodes = new byte[capacity()];
+        resetNodes(0, capacity());
+    }
+
+    /**
+     * Returns the NUMA node the specified region is bound to, or {@link #UNKNOWN_NODE} if unknown.
+     */
+    int nodeOf(int regionId) {
+        return regionNodes == null ? UNKNOWN_NODE : regionNodes[regionId];
+    }
+
+    /**
+     * Binds the memory of a range of committed regions to a NUMA node.
+     * Not synchronized, as GC workers may concurrently bind the distinct regions they own. The caller must own the range.
+     *
+     * @param firstRegionId first region of the range
+     * @param numRegions number of regions in the range
+     * @param node the NUMA node
+     * @param discard if true, the content of the regions is thrown away and their pages are allocated on the node when next touched;
+     * otherwise, pages already in use are migrated to the node.
+     * @return true if the range was bound to the node
+     */
+    boolean bindToNode(int firstRegionId, int numRegions, int node, boolean discard) {
+        if (regionNodes == null || !isValidCommittedRange(firstRegionId, numRegions)) {
+            return false;
+        }
+        final Size size = Size.fromInt(numRegions).shiftedLeft(log2RegionSizeInBytes);
+        if (!VirtualMemory.numaBind(regionStart(firstRegionId), size, node, discard)) {
+            return false;
+        }
+        for (int i = firstRegionId; i < firstRegionId + numRegions; i++) {
+            regionNodes[i] = (byte) node;
+        }
+        return true;
+    }
+
+    private void resetNodes(int firstRegionId, int numRegions) {
+        if (regionNodes != null) {
+            for (int i = firstRegionId; i < firstRegionId + numRegions; i++) {
+                regionNodes[i] = UNKNOWN_NODE;
+            }
+        }
+    }
+
     boolean contains(Address address) {
         return backingStorage.contains(address);
     }
@@ -418,6 +475,8 @@ class FixedSizeRegionAllocator {
         if (VirtualMemory.commitMemory(regionStart(firstRegionId), size, VirtualMemory.Type.HEAP)) {
             committed.set(firstRegionId, firstRegionId + numRegions);
             committedSize += numRegions;
+            // Freshly mapped memory doesn't retain any NUMA binding.
+            resetNodes(firstRegionId, numRegions);
             return true;
         }
         return false;
@@ -428,6 +487,8 @@ class FixedSizeRegionAllocator {
             final Size size = Size.fromInt(numRegions).shiftedLeft(log2RegionSizeInBytes);
             if (VirtualMemory.uncommitMemory(regionStart(firstRegionId), size, VirtualMemory.Type.HEAP)) {
                 committed.clear(firstRegionId, firstRegionId + numRegions);
+                committedSize -= numRegions;
+                resetNodes(firstRegionId, numRegions);
                 return true;
             }
         }
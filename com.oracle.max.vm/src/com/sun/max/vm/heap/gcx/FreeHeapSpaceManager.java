@@ -22,6 +22,7 @@
  */
 package com.sun.max.vm.heap.gcx;
 
+import static com.sun.max.platform.Platform.*;
 import static com.sun.max.vm.VMOptions.*;
 
 import com.sun.max.annotate.*;
@@ -253,6 +254,21 @@ public final class FreeHeapSpaceManager extends Sweeper implements HeapSpace {
             }
         }
 
+        /**
+         * Remove the last chunk of the list. The list being singly-linked, this walks the list from its head.
+         * @return the removed chunk
+         */
+        HeapFreeChunk removeLast() {
+            HeapFreeChunk prev = null;
+            HeapFreeChunk chunk = HeapFreeChunk.toHeapFreeChunk(head);
+            while (chunk.next != null) {
+                prev = chunk;
+                chunk = chunk.next;
+            }
+            remove(prev, chunk);
+            return chunk;
+        }
+
         /**
          * Allocate first chunk of the free list fitting the size.
          * Space left-over is re-entered in the appropriate bin, or dismissed as dark matter.
@@ -618,6 +634,11 @@ public final class FreeHeapSpaceManager extends Sweeper implements HeapSpace {
      */
     private Size minReclaimableSpace;
 
+    /**
+     * Size of the committed space at initialization. The heap is never shrunk below that size.
+     */
+    private Size minCommittedSpace;
+
     @Override
     public Size minReclaimableSpace() {
         return minReclaimableSpace;
@@ -734,6 +755,7 @@ public final class FreeHeapSpaceManager extends Sweeper implements HeapSpace {
         if (!committedHeapSpace.growCommittedSpace(initSize)) {
             MaxineVM.reportPristineMemoryFailure("object heap", "commit", initSize);
         }
+        minCommittedSpace = initSize;
         // Round down to power of two.
         minLargeObjectSize = Size.fromInt(Integer.highestOneBit(largeObjectsMinSizeOption.getValue()));
         log2FirstBinSize = Integer.numberOfTrailingZeros(minLargeObjectSize.toInt());
@@ -864,9 +886,45 @@ public final class FreeHeapSpaceManager extends Sweeper implements HeapSpace {
         return adjustedGrowth;
     }
 
+    /**
+     * Try to shrink free space backing storage by delta bytes.
+     * Without evacuation, only the free chunk at the end of the committed heap space can be given back to the
+     * underlying virtual memory. The shrinkage is rounded down to the page size and never takes the committed space
+     * below its initial size. Must be called after sweeping, when the small object allocator has no space to itself.
+     * @param delta the number of bytes to shrink the heap by
+     * @return the effective shrinkage
+     */
     public Size decreaseSize(Size delta) {
-        // TODO (ld) Can't do much without evacuation or regions apart from freeing the chunk that is at the end of
-        // committed heap space. Don't bother with this for now.
+        final Address committedEnd = committedHeapSpace.committedEnd();
+        for (FreeSpaceList freeSpaceList : freeChunkBins) {
+            final Address lastChunk = freeSpaceList.last;
+            if (lastChunk.isZero()) {
+                continue;
+            }
+            final Size chunkSize = HeapFreeChunk.getFreechunkSize(lastChunk);
+            if (!lastChunk.plus(chunkSize).equals(committedEnd)) {
+                continue;
+            }
+            Size shrinkage = delta.greaterThan(chunkSize) ? chunkSize : delta;
+            final Size shrinkable = committedHeapSpace.committedSize().minus(minCommittedSpace);
+            if (shrinkage.greaterThan(shrinkable)) {
+                shrinkage = shrinkable;
+            }
+            shrinkage = shrinkage.alignDown(platform().pageSize);
+            if (shrinkage.isZero() || !committedHeapSpace.shrinkCommittedSpace(shrinkage)) {
+                return Size.zero();
+            }
+            freeSpaceList.removeLast();
+            totalFreeChunkSpace -= chunkSize.toLong();
+            final Size spaceLeft = chunkSize.minus(shrinkage);
+            if (spaceLeft.greaterEqual(minReclaimableSpace)) {
+                recordFreeSpace(lastChunk, spaceLeft);
+            } else if (!spaceLeft.isZero()) {
+                DarkMatter.format(lastChunk, spaceLeft);
+            }
+            useTLABBin = tlabFreeSpaceList.totalSize > 0;
+            return shrinkage;
+        }
         return Size.zero();
     }
 
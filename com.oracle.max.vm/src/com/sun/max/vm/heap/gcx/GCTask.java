@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+/**
+ * A unit of work executed in parallel by the participants of a {@link GCWorkerGang}.
+ * The VM operation thread driving the collection always participates with worker index 0; GC worker threads
+ * participate with worker indexes 1 to {@link GCWorkerGang#participants()} - 1.
+ * Tasks must not allocate and must not hold references to movable objects across safepoints.
+ */
+public abstract class GCTask {
+    /**
+     * Run the task on behalf of the worker identified by the specified index.
+     * The method returns when the worker has no more work to do for this task.
+     *
+     * @param workerIndex index of the participant running the task.
+     */
+    public abstract void run(int workerIndex);
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.annotate.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.monitor.modal.sync.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * A gang of GC worker threads assisting the VM operation thread with parallelizable phases of a garbage collection.
+ *
+ * The worker threads are allocated in the boot image (see {@link VmThread#createVmSystemThread(Thread)}) and are started
+ * by the heap scheme that uses them. Idle workers block on a native condition variable, hence appear
+ * to be in native code to the VM operation that stops the mutator threads. GC worker threads are never frozen by VM operations
+ * and their stacks are not scanned for roots.
+ *
+ * The VM operation thread hands a {@link GCTask} to the gang with {@link #run(GCTask)}: all started workers and the VM operation
+ * thread itself run the task, and the call returns once every participant has completed it.
+ * If no worker is available, the task is run by the VM operation thread alone.
+ */
+public final class GCWorkerGang {
+    /**
+     * Maximum number of GC worker threads that can be built into the boot image.
+     */
+    @HOSTED_ONLY
+    private static final int MAX_GC_WORKERS = Integer.getInteger("max.gc.workers", 8);
+
+    private static int ParallelGCThreads = 0;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "ParallelGCThreads", GCWorkerGang.class,
+            "Number of GC worker threads assisting the VM operation thread during collection (0 disables parallel collection)", Phase.PRISTINE);
+    }
+
+    static final class GCWorkerThread extends Thread {
+        private final GCWorkerGang gang;
+
+        @HOSTED_ONLY
+        GCWorkerThread(GCWorkerGang gang, int id) {
+            super(VmThread.systemThreadGroup, "GC-Worker-" + id);
+            this.gang = gang;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            gang.workerLoop();
+        }
+    }
+
+    private static final GCWorkerGang theGang = new GCWorkerGang();
+
+    public static GCWorkerGang gang() {
+        return theGang;
+    }
+
+    private final VmThread [] workers;
+
+    /**
+     * Lock protecting the hand-off of tasks to the workers.
+     */
+    private final Mutex mutex = MutexFactory.create();
+
+    /**
+     * Condition idle workers wait on for a new task.
+     */
+    private final ConditionVariable newTask = ConditionVariableFactory.create();
+
+    /**
+     * Task currently run by the gang. Guarded by the {@link #mutex}.
+     */
+    private GCTask task;
+
+    /**
+     * Count of tasks handed to the gang. Guarded by the {@link #mutex}.
+     */
+    private long epoch;
+
+    /**
+     * Number of workers that have started and registered with the gang. Guarded by the {@link #mutex}.
+     */
+    private int readyWorkers;
+
+    /**
+     * Number of participants to the current task, including the VM operation thread.
+     */
+    private int participants = 1;
+
+    /**
+     * Number of workers that haven't completed the current task yet.
+     */
+    private volatile int activeWorkers;
+
+    private boolean started;
+
+    @FOLD
+    private static int activeWorkersOffset() {
+        return ClassActor.fromJava(GCWorkerGang.class).findLocalInstanceFieldActor("activeWorkers").offset();
+    }
+
+    @HOSTED_ONLY
+    private GCWorkerGang() {
+        workers = new VmThread[MAX_GC_WORKERS];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = VmThread.createVmSystemThread(new GCWorkerThread(this, i + 1));
+        }
+    }
+
+    /**
+     * Maximum number of participants to a task supported by the boot image, including the VM operation thread.
+     */
+    public int capacity() {
+        return 1 + workers.length;
+    }
+
+    /**
+     * Maximum number of participants to a task, including the VM operation thread.
+     * This is known once the VM options are parsed and may be used to size per-worker data structures.
+     */
+    public int maxParticipants() {
+        return 1 + Math.min(ParallelGCThreads, workers.length);
+    }
+
+    /**
+     * Indicates whether some GC worker threads are ready to participate to GC tasks.
+     */
+    public boolean hasWorkers() {
+        return readyWorkers > 0;
+    }
+
+    /**
+     * Number of participants to the current (or last) task, including the VM operation thread.
+     */
+    public int participants() {
+        return participants;
+    }
+
+    /**
+     * Start the GC worker threads requested by the {@code -XX:ParallelGCThreads} option.
+     * Only the first call has an effect.
+     */
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        final int numWorkers = maxParticipants() - 1;
+        if (numWorkers == 0) {
+            return;
+        }
+        mutex.init();
+        newTask.init();
+        for (int i = 0; i < numWorkers; i++) {
+            workers[i].startVmSystemThread();
+        }
+    }
+
+    private void workerLoop() {
+        final VmThread current = VmThread.current();
+        synchronized (VmThreadMap.THREAD_LOCK) {
+            // No VM operation can be in progress while holding the thread lock. From this point onward, the thread
+            // is never stopped nor scanned by a GC.
+            current.setAsGCWorkerThread();
+        }
+        Heap.disableAllocationForCurrentThread();
+        mutex.lock();
+        final int workerIndex = ++readyWorkers;
+        long seenEpoch = epoch;
+        while (true) {
+            while (seenEpoch == epoch) {
+                newTask.threadWait(mutex, 0L);
+            }
+            seenEpoch = epoch;
+            final GCTask currentTask = task;
+            mutex.unlock();
+            try {
+                currentTask.run(workerIndex);
+            } catch (Throwable t) {
+                FatalError.unexpected("GC worker failed", t);
+            }
+            int oldValue;
+            do {
+                oldValue = activeWorkers;
+            } while (Reference.fromJava(this).compareAndSwapInt(activeWorkersOffset(), oldValue, oldValue - 1) != oldValue);
+            mutex.lock();
+        }
+    }
+
+    /**
+     * Run a task with all available workers. Must be called by the VM operation thread during a garbage collection.
+     * Returns when all participants have completed the task.
+     *
+     * @param gcTask the task to run
+     */
+    public void run(GCTask gcTask) {
+        FatalError.check(VmThread.current().isVmOperationThread(), "GC tasks must be run by the VM operation thread");
+        if (maxParticipants() == 1) {
+            participants = 1;
+            gcTask.run(0);
+            return;
+        }
+        mutex.lock();
+        final int numWorkers = readyWorkers;
+        participants = numWorkers + 1;
+        if (numWorkers > 0) {
+            task = gcTask;
+            activeWorkers = numWorkers;
+            epoch++;
+            newTask.threadNotify(true);
+        }
+        mutex.unlock();
+        gcTask.run(0);
+        while (activeWorkers > 0) {
+            Intrinsics.pause();
+        }
+        // Workers read the task with the mutex held.
+        mutex.lock();
+        task = null;
+        mutex.unlock();
+    }
+}
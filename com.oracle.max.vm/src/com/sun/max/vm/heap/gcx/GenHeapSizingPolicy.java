@@ -52,4 +52,17 @@ public interface GenHeapSizingPolicy {
      */
     Size maxOldGenSize();
 
+    /**
+     * Size of the young generation reserved for survivor regions, based on the arguments specified in command line.
+     * Zero if survivors of minor collections are promoted straight to the old generation.
+     * @return aligned size.
+     */
+    Size survivorSize();
+
+    /**
+     * Maximum number of minor collections an object may survive before being promoted to the old generation.
+     * Only meaningful if {@link #survivorSize()} isn't zero.
+     */
+    int maxTenuringThreshold();
+
 }
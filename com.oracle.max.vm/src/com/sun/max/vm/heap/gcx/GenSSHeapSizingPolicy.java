@@ -260,6 +260,17 @@ public final class GenSSHeapSizingPolicy implements GenHeapSizingPolicy {
         return maxHeapOldGenSize;
     }
 
+    @Override
+    public Size survivorSize() {
+        // The nursery doesn't age objects.
+        return Size.zero();
+    }
+
+    @Override
+    public int maxTenuringThreshold() {
+        return 0;
+    }
+
     public Size heapSize() {
         return heapSize;
     }
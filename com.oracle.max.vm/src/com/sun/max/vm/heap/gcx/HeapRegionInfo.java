@@ -68,7 +68,12 @@ public class HeapRegionInfo {
         /**
          * Region is the last region of a multi-regions object. Space after the end of the large object may be used for allocation.
          */
-        IS_TAIL;
+        IS_TAIL,
+        /**
+         * Region hasn't been swept yet since the last marking of the heap. Set on top of the state the region had before the collection
+         * when sweeping is lazy, and cleared when the sweeper gets to the region. The free space and free chunks recorded for an unswept region are stale.
+         */
+        IS_UNSWEPT;
 
         private final int mask = 1 << ordinal();
 
@@ -204,6 +209,10 @@ public class HeapRegionInfo {
         return IS_TAIL.isSet(flags);
     }
 
+    public final boolean isUnswept() {
+        return IS_UNSWEPT.isSet(flags);
+    }
+
     HeapRegionInfo() {
         // Not a class one can allocate. Allocation is the responsibility of the region table.
     }
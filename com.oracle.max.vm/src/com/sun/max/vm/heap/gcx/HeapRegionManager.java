@@ -45,6 +45,14 @@ import com.sun.max.vm.type.*;
  * regions.
  */
 public final class HeapRegionManager implements HeapAccountOwner {
+    /**
+     * A VM option for enabling NUMA-aware placement of regions.
+     */
+    static boolean UseNUMA = false;
+    static {
+        VMOptions.addFieldOption("-XX:", "UseNUMA", HeapRegionManager.class, "Bind heap regions to NUMA nodes and allocate from the allocating thread's node", MaxineVM.Phase.PRISTINE);
+    }
+
     /**
      * The single instance of the heap region manager.
      */
@@ -97,6 +105,11 @@ public final class HeapRegionManager implements HeapAccountOwner {
         return Reference.fromJava(managerAllocator).toOrigin();
     }
 
+    /**
+     * Number of NUMA nodes regions are placed on. 1 if NUMA placement is disabled.
+     */
+    private int numaNodes = 1;
+
     /**
      * Total number of unreserved regions.
      */
@@ -217,7 +230,8 @@ public final class HeapRegionManager implements HeapAccountOwner {
 
        // We must add to this number of regions the regions to cover the space needed for the boot heap which allocate the region manager's data.
         // Per region book-keeping space: region descriptor plus links in region lists (2 links per region per list, two lists -- ownership and accounting).
-        int perRegionSpaceRequirement = tupleSize(regionInfoClass).toInt() + 4 * Kind.INT.width.numberOfBytes;
+        // With NUMA placement, add the byte recording the region's node.
+        int perRegionSpaceRequirement = tupleSize(regionInfoClass).toInt() + 4 * Kind.INT.width.numberOfBytes + (UseNUMA ? 1 : 0);
         int numRegionsPerBootRegion = regionSizeInBytes / perRegionSpaceRequirement;
         int numTotalRegions = numHeapRegions + numExtraBootRegions;
         int numBootKeepingRegions =  (numTotalRegions * perRegionSpaceRequirement) /  regionSizeInBytes;
@@ -259,6 +273,12 @@ public final class HeapRegionManager implements HeapAccountOwner {
             heapScheme.enableCustomAllocation(Reference.fromJava(managerAllocator).toOrigin());
             // Record initial space usage.
             regionAllocator.initialize(startOfManagedSpace, numTotalRegions, initialNumRegions);
+            if (UseNUMA) {
+                numaNodes = VirtualMemory.numaNodeCount();
+                if (numaNodes > 1) {
+                    regionAllocator.initializeNUMA();
+                }
+            }
             RegionTable.initialize(regionInfoClass, regionAllocator.bounds(), numTotalRegions);
             // Allocate the backing storage for the region lists.
             HeapRegionList.initializeListStorage(numTotalRegions);
@@ -337,6 +357,34 @@ public final class HeapRegionManager implements HeapAccountOwner {
         regionAllocator.uncommit(firstRegionId, numRegions);
     }
 
+    /**
+     * Number of NUMA nodes the heap region manager places regions on, 1 if NUMA placement is disabled or the platform has a single node.
+     */
+    public int numaNodes() {
+        return numaNodes;
+    }
+
+    /**
+     * Binds a range of committed regions to a NUMA node. The regions may be in use.
+     * @return true if the regions were bound to the node
+     */
+    boolean bindToNode(int firstRegionId, int numRegions, int node) {
+        return numaNodes > 1 && regionAllocator.bindToNode(firstRegionId, numRegions, node, false);
+    }
+
+    /**
+     * Makes the memory of an empty region local to the node of the current thread. The content of the region is lost.
+     * Nothing is done if the region is already on the current thread's node.
+     */
+    void moveEmptyRegionToCurrentNode(int regionId) {
+        if (numaNodes > 1) {
+            final int node = VirtualMemory.numaCurrentNode();
+            if (regionAllocator.nodeOf(regionId) != node) {
+                regionAllocator.bindToNode(regionId, 1, node, true);
+            }
+        }
+    }
+
     /**
      * Verifies, in debug mode only (@see {@link MaxineVM#isDebug()}), that no references from this heap region manager's heap account escape.
      */
@@ -84,7 +84,7 @@ public enum HeapRegionState {
      * @return a HeapRegionState, or null
      */
     static HeapRegionState toHeapRegionState(int flags) {
-        return allValidStates.get(flags);
+        return allValidStates.get(IS_UNSWEPT.clear(flags));
     }
 
     final int flags;
@@ -93,7 +93,7 @@ public enum HeapRegionState {
     }
 
     public final boolean isInState(HeapRegionInfo rinfo) {
-        return rinfo.flags == flags;
+        return IS_UNSWEPT.clear(rinfo.flags) == flags;
     }
 
     private static void checkStateTransition(HeapRegionInfo rinfo, HeapRegionState to) {
@@ -138,4 +138,19 @@ public enum HeapRegionState {
         }
         rinfo.flags = flags;
     }
+
+    /**
+     * Mark a region as not swept since the last marking of the heap. The region keeps the state it had before the collection until it is swept.
+     * Only regions waiting on a sweeper's list may be in the unswept state, so that allocators never see them.
+     */
+    public static void toUnsweptState(HeapRegionInfo rinfo) {
+        rinfo.flags = IS_UNSWEPT.or(rinfo.flags);
+    }
+
+    /**
+     * Mark a region as swept. Called when the sweeper removes the region from its list. The sweeper then sets the actual state of the region.
+     */
+    public static void toSweptState(HeapRegionInfo rinfo) {
+        rinfo.flags = IS_UNSWEPT.clear(rinfo.flags);
+    }
 }
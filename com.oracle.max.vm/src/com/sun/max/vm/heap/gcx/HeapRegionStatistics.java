@@ -143,6 +143,64 @@ public final class HeapRegionStatistics {
         doFullStats(heapAccount.committedRegions());
     }
 
+    /**
+     * Estimate of the live bytes of a region after a precise sweep, i.e., the space not reclaimed in its free chunks.
+     * @param rinfo a heap region info
+     * @return the number of bytes occupied by live objects (and by dark matter too small to be reclaimed) in the region
+     */
+    public static int liveBytes(HeapRegionInfo rinfo) {
+        if (rinfo.isEmpty()) {
+            return 0;
+        }
+        return rinfo.hasFreeChunks() ? HeapRegionConstants.regionSizeInBytes - rinfo.freeBytesInChunks() : HeapRegionConstants.regionSizeInBytes;
+    }
+
+    /**
+     * Select the sparsest regions of a region list, i.e., the partially occupied regions with the fewest live bytes.
+     * Only non-empty regions with free chunks that aren't part of a large object or pinned are considered.
+     *
+     * @param regionList list of regions to select from
+     * @param maxLiveBytes regions with more live bytes than this aren't selected
+     * @param pinnedRegions regions that must not be selected, or null if none
+     * @param selected array of region identifiers, sorted by increasing amount of live bytes, where to add the selected regions
+     * @param numSelected number of regions already in the array
+     * @return the number of regions in the array after selection
+     */
+    public int selectSparsestRegions(HeapRegionList regionList, int maxLiveBytes, PinnedRegions pinnedRegions, int [] selected, int numSelected) {
+        regionInfoIterable.initialize(regionList);
+        regionInfoIterable.reset();
+        while (regionInfoIterable.hasNext()) {
+            final HeapRegionInfo rinfo = regionInfoIterable.next();
+            if (rinfo.isEmpty() || !rinfo.hasFreeChunks() || rinfo.isLarge()) {
+                continue;
+            }
+            if (pinnedRegions != null && pinnedRegions.isPinned(rinfo.toRegionID())) {
+                continue;
+            }
+            final int liveBytes = liveBytes(rinfo);
+            if (liveBytes > maxLiveBytes) {
+                continue;
+            }
+            int i = numSelected;
+            if (numSelected == selected.length) {
+                // Replace the densest selected region if this one is sparser.
+                if (liveBytes >= liveBytes(HeapRegionInfo.fromRegionID(selected[numSelected - 1]))) {
+                    continue;
+                }
+                i--;
+            } else {
+                numSelected++;
+            }
+            // Insertion sort by increasing amount of live bytes.
+            while (i > 0 && liveBytes(HeapRegionInfo.fromRegionID(selected[i - 1])) > liveBytes) {
+                selected[i] = selected[i - 1];
+                i--;
+            }
+            selected[i] = rinfo.toRegionID();
+        }
+        return numSelected;
+    }
+
     public void dump() {
         Log.println("[ min, max ]      :  # fragments         # regions");
         for (int i = log2MinFragmentSize; i < log2LargestChunkSize; i++) {
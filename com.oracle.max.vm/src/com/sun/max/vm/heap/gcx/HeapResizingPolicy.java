@@ -24,9 +24,33 @@ package com.sun.max.vm.heap.gcx;
 
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.heap.*;
 
-
+/**
+ * Policy for growing and shrinking a {@link ResizableSpace} after a collection.
+ * Growth is driven by the occupancy after the collection. Shrinking is driven by a time-decayed occupancy,
+ * i.e., the maximum of the current occupancy and of a decaying average of the past occupancies, so that
+ * memory is given back to the underlying virtual memory after a load spike has passed, but not between two
+ * collections of a sustained load.
+ */
 public class HeapResizingPolicy {
+    /**
+     * Allows the heap to shrink (i.e., give memory back to the operating system).
+     */
+    static boolean ShrinkHeap = true;
+
+    /**
+     * Half-life, in milliseconds, of the occupancy used to decide how much to shrink the heap by.
+     */
+    static int HeapOccupancyHalfLife = 30000;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "ShrinkHeap", HeapResizingPolicy.class, "Uncommit free heap space when occupancy is low", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "HeapOccupancyHalfLife", HeapResizingPolicy.class,
+                        "Half-life (in ms) of the decaying heap occupancy used for heap shrinking", Phase.PRISTINE);
+    }
+
     /**
      * Percentage of free space below which heap should be expanded.
      */
@@ -36,6 +60,35 @@ public class HeapResizingPolicy {
      */
     final int maxFreeSpaceRatioForShrinking = 70;
 
+    /**
+     * Time-decayed heap occupancy, in bytes.
+     */
+    private long decayedSpaceUsed;
+
+    /**
+     * Time of the last update of {@link #decayedSpaceUsed}.
+     */
+    private long lastUpdateTime;
+
+    /**
+     * Update the time-decayed occupancy with the occupancy after the current collection.
+     * @return the updated time-decayed occupancy
+     */
+    private Size updateDecayedSpaceUsed(Size spaceUsedAfterGC) {
+        final long now = System.currentTimeMillis();
+        if (lastUpdateTime != 0L && HeapOccupancyHalfLife > 0) {
+            final double elapsedHalfLives = (double) (now - lastUpdateTime) / HeapOccupancyHalfLife;
+            decayedSpaceUsed = (long) (decayedSpaceUsed * Math.pow(0.5, elapsedHalfLives));
+        } else {
+            decayedSpaceUsed = 0L;
+        }
+        lastUpdateTime = now;
+        if (spaceUsedAfterGC.toLong() > decayedSpaceUsed) {
+            decayedSpaceUsed = spaceUsedAfterGC.toLong();
+        }
+        return Size.fromLong(decayedSpaceUsed);
+    }
+
     /**
      * Resize the heap according to policy.
      *
@@ -63,11 +116,46 @@ public class HeapResizingPolicy {
             }
             return !actualGrowth.isZero();
         }
+        return shrinkAfterCollection(spaceLeftAfterGC, heapSpace, Size.zero());
+    }
+
+    /**
+     * Shrink the heap according to policy. The shrinkage is computed from the time-decayed occupancy and is capped so that
+     * the heap space is left with at least the specified amount of free space.
+     *
+     * @param spaceLeftAfterGC
+     * @param heapSpace
+     * @param reservedFreeSpace amount of free space that must remain in the heap space after shrinking
+     * @return true if the heap was shrunk
+     */
+    public boolean shrinkAfterCollection(Size spaceLeftAfterGC, ResizableSpace heapSpace, Size reservedFreeSpace) {
+        Size totalSpace = heapSpace.totalSpace();
+        Size decayedSpaceUsed = updateDecayedSpaceUsed(totalSpace.minus(spaceLeftAfterGC));
+        if (!ShrinkHeap) {
+            return false;
+        }
         Size max = Size.fromLong((totalSpace.toLong() * maxFreeSpaceRatioForShrinking) / 100);
         if (spaceLeftAfterGC.greaterThan(max)) {
-            Size maxDesiredCapacity =  Size.fromLong((spaceUsedAfterGC.toLong() * 100) / (100 - maxFreeSpaceRatioForShrinking));
+            Size maxDesiredCapacity =  Size.fromLong((decayedSpaceUsed.toLong() * 100) / (100 - maxFreeSpaceRatioForShrinking));
+            if (maxDesiredCapacity.greaterEqual(totalSpace)) {
+                return false;
+            }
             Size shrinkage = totalSpace.minus(maxDesiredCapacity);
-            return !heapSpace.decreaseSize(shrinkage).isZero();
+            if (spaceLeftAfterGC.minus(shrinkage).lessThan(reservedFreeSpace)) {
+                if (spaceLeftAfterGC.lessEqual(reservedFreeSpace)) {
+                    return false;
+                }
+                shrinkage = spaceLeftAfterGC.minus(reservedFreeSpace);
+            }
+            Size actualShrinkage = heapSpace.decreaseSize(shrinkage);
+            if (MaxineVM.isDebug() || Heap.verbose()) {
+                Log.print("Request to shrink the heap: requested ");
+                Log.print(shrinkage.toLong());
+                Log.print(" bytes, obtained ");
+                Log.print(actualShrinkage.toLong());
+                Log.println(" bytes");
+            }
+            return !actualShrinkage.isZero();
         }
         return false;
     }
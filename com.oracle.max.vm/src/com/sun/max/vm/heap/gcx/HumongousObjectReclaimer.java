@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Eager reclamation of dead humongous objects at minor collections.
+ *
+ * A humongous object spans several regions of a {@link FirstFitMarkSweepSpace} old generation. Humongous objects are allocated directly in the
+ * old generation so that a minor collection never copies them. Without help, a dead humongous object stays around until the next full collection,
+ * even though most large objects (e.g., I/O buffers) die young. The reclaimer keeps track of the humongous objects allocated since the last full
+ * collection (the candidates), and frees the regions of those nothing refers to at the end of a minor collection.
+ *
+ * A minor collection sees every reference to a candidate from the roots, from the dirty cards of the old generation (the remembered set), and from
+ * the survivors it evacuates: the {@link Evacuator} reports these to the reclaimer. A reference seen from the roots only keeps the candidate alive
+ * for the current collection. A reference seen from the heap may be held by an old object whose card is cleaned afterwards, and which
+ * subsequent minor collections may not visit again: the candidate is then left to the full collections. For the same reason, the
+ * {@link ConcurrentCardRefiner} leaves dirty the cards holding references to candidates.
+ *
+ * The state of the candidates is recorded in a byte per region, indexed by the identifier of the head region of the humongous object.
+ */
+public final class HumongousObjectReclaimer {
+    static boolean TraceHumongousReclaim = false;
+    static {
+        VMOptions.addFieldOption("-XX:", "TraceHumongousReclaim", HumongousObjectReclaimer.class, "Trace eager reclamation of humongous objects at minor collections", Phase.PRISTINE);
+    }
+
+    /**
+     * The head region doesn't hold a candidate.
+     */
+    private static final byte NOT_CANDIDATE = 0;
+    /**
+     * The head region holds a candidate no reference was found to yet.
+     */
+    private static final byte CANDIDATE = 1;
+    /**
+     * The candidate is referenced from the roots of the current minor collection.
+     */
+    private static final byte ROOT_REFERENCED = 2;
+    /**
+     * A reference to the candidate was found in the heap. The candidate is dropped at the end of the current minor collection.
+     */
+    private static final byte HEAP_REFERENCED = 3;
+
+    /**
+     * The old generation the humongous objects are allocated in.
+     */
+    private final FirstFitMarkSweepSpace<?> space;
+
+    /**
+     * State of each region with respect to eager reclamation. Null if eager reclamation is disabled.
+     */
+    private byte [] regionStates;
+
+    /**
+     * Indicates whether there may be candidates. Set by allocation, and reset by the minor collections that find none are left.
+     */
+    private boolean hasCandidates;
+
+    /**
+     * Number of humongous objects reclaimed at minor collections, and their total size in bytes. Statistics only.
+     */
+    private long numReclaimed;
+    private long reclaimedBytes;
+
+    @HOSTED_ONLY
+    public HumongousObjectReclaimer(FirstFitMarkSweepSpace<?> space) {
+        this.space = space;
+    }
+
+    /**
+     * Enable eager reclamation.
+     * @param numRegions number of regions in the heap region manager
+     */
+    public void initialize(int numRegions) {
+        regionStates = new byte[numRegions];
+    }
+
+    public boolean isEnabled() {
+        return regionStates != null;
+    }
+
+    public boolean hasCandidates() {
+        return hasCandidates;
+    }
+
+    public long numReclaimed() {
+        return numReclaimed;
+    }
+
+    public long reclaimedBytes() {
+        return reclaimedBytes;
+    }
+
+    /**
+     * Register a humongous object freshly allocated in the old generation as a candidate for eager reclamation.
+     * Only objects heading a multi-region range are candidates: the head and body regions of these hold nothing else.
+     *
+     * @param cell the cell of the humongous object
+     */
+    public void register(Pointer cell) {
+        final int regionID = RegionTable.theRegionTable().regionID(cell);
+        if (HeapRegionInfo.fromRegionID(regionID).isHeadOfLargeObject()) {
+            regionStates[regionID] = CANDIDATE;
+            hasCandidates = true;
+        }
+    }
+
+    @INLINE
+    private int candidateRegionID(Pointer origin) {
+        final int regionID = RegionTable.theRegionTable().regionID(origin);
+        if (regionID == INVALID_REGION_ID || regionStates[regionID] == NOT_CANDIDATE) {
+            return INVALID_REGION_ID;
+        }
+        return regionID;
+    }
+
+    /**
+     * Indicates whether a reference points to a candidate for eager reclamation.
+     * @param origin the origin of the referenced object
+     */
+    public boolean isCandidate(Pointer origin) {
+        return hasCandidates && candidateRegionID(origin) != INVALID_REGION_ID;
+    }
+
+    /**
+     * Record a reference found in the roots of a minor collection.
+     * @param origin the origin of the referenced object
+     */
+    public void noteRootReference(Pointer origin) {
+        final int regionID = candidateRegionID(origin);
+        if (regionID != INVALID_REGION_ID && regionStates[regionID] == CANDIDATE) {
+            regionStates[regionID] = ROOT_REFERENCED;
+        }
+    }
+
+    /**
+     * Record a reference found in the heap during a minor collection. Several GC workers may call this concurrently.
+     * @param origin the origin of the referenced object
+     */
+    public void noteHeapReference(Pointer origin) {
+        final int regionID = candidateRegionID(origin);
+        if (regionID != INVALID_REGION_ID) {
+            regionStates[regionID] = HEAP_REFERENCED;
+        }
+    }
+
+    /**
+     * Free the candidates no reference was found to during the minor collection that just evacuated the young generation, and
+     * get the others ready for the next minor collection.
+     * Must be called at the end of a minor collection, once all the references to the old generation were visited.
+     */
+    public void reclaimUnreferenced() {
+        if (!hasCandidates) {
+            return;
+        }
+        if (space.isSweeping()) {
+            // The regions of the candidates may still be on the sweeping list. Try again at the next minor collection.
+            return;
+        }
+        boolean candidatesLeft = false;
+        int numFreed = 0;
+        Size freedBytes = Size.zero();
+        for (int regionID = 0; regionID < regionStates.length; regionID++) {
+            switch (regionStates[regionID]) {
+                case NOT_CANDIDATE:
+                    break;
+                case CANDIDATE: {
+                    freedBytes = freedBytes.plus(space.reclaimLargeObject(regionID));
+                    numFreed++;
+                    regionStates[regionID] = NOT_CANDIDATE;
+                    if (TraceHumongousReclaim) {
+                        Log.print("Reclaimed humongous object at region #");
+                        Log.println(regionID);
+                    }
+                    break;
+                }
+                case ROOT_REFERENCED:
+                    regionStates[regionID] = CANDIDATE;
+                    candidatesLeft = true;
+                    break;
+                case HEAP_REFERENCED:
+                    regionStates[regionID] = NOT_CANDIDATE;
+                    break;
+                default:
+                    FatalError.unexpected("Invalid humongous object candidate state");
+            }
+        }
+        if (numFreed > 0) {
+            space.endLargeObjectsReclaim();
+            numReclaimed += numFreed;
+            reclaimedBytes += freedBytes.toLong();
+            if (TraceHumongousReclaim) {
+                Log.print("Eagerly reclaimed ");
+                Log.print(numFreed);
+                Log.print(" humongous objects, ");
+                Log.print(freedBytes.toLong());
+                Log.println(" bytes");
+            }
+        }
+        hasCandidates = candidatesLeft;
+    }
+
+    /**
+     * Drop the candidates whose regions were reclaimed by a full collection of the old generation.
+     * The candidates that survived it remain candidates: a full collection doesn't move objects nor change references.
+     */
+    public void doAfterFullCollection() {
+        if (!hasCandidates) {
+            return;
+        }
+        boolean candidatesLeft = false;
+        for (int regionID = 0; regionID < regionStates.length; regionID++) {
+            if (regionStates[regionID] != NOT_CANDIDATE) {
+                if (HeapRegionInfo.fromRegionID(regionID).isHeadOfLargeObject()) {
+                    candidatesLeft = true;
+                } else {
+                    regionStates[regionID] = NOT_CANDIDATE;
+                }
+            }
+        }
+        hasCandidates = candidatesLeft;
+    }
+}
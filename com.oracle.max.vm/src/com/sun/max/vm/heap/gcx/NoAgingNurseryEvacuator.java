@@ -110,13 +110,27 @@ public class NoAgingNurseryEvacuator extends EvacuatorToCardSpace {
         }
     }
 
+    /**
+     * Closure for scanning the cells retained in place because of pinned regions. These cells are all treated as live.
+     */
+    final class RetainedRangeEvacuationClosure implements CellRangeVisitor {
+        public void visitCells(Address start, Address end) {
+            Pointer cell = start.asPointer();
+            while (cell.lessThan(end)) {
+                cell = scanCellForEvacuatees(cell);
+            }
+        }
+    }
+
     private final DirtyCardEvacuationClosure heapSpaceDirtyCardClosure;
     private final BootRegionDirtyCardEvacuationClosure bootRegionDirtyCardClosure;
+    private final RetainedRangeEvacuationClosure retainedRangeClosure;
 
     public NoAgingNurseryEvacuator(EvacuatingSpace fromSpace, HeapSpace toSpace, EvacuationBufferProvider evacuationBufferProvider, CardTableRSet rset, String name) {
         super(fromSpace, toSpace, evacuationBufferProvider, rset, name);
         this.heapSpaceDirtyCardClosure = new DirtyCardEvacuationClosure();
         this.bootRegionDirtyCardClosure = new BootRegionDirtyCardEvacuationClosure();
+        this.retainedRangeClosure = new RetainedRangeEvacuationClosure();
     }
 
     @Override
@@ -143,7 +157,16 @@ public class NoAgingNurseryEvacuator extends EvacuatorToCardSpace {
         if (traceDirtyCardWalk()) {
             CardTableRSet.setTraceCardTableRSet(true);
         }
-        toSpace.visit(heapSpaceDirtyCardClosure);
+        if (retainedRegions != null) {
+            // Cells retained in place may refer to cells of the evacuated area like remembered cells do.
+            retainedRegions.visitRetainedRanges(retainedRangeClosure);
+        }
+        if (isEvacuatingInParallel()) {
+            // GC workers claim the regions of the old gen and scan their dirty cards.
+            evacuateFromDirtyCardsInParallel();
+        } else {
+            toSpace.visit(heapSpaceDirtyCardClosure);
+        }
         if (traceDirtyCardWalk()) {
             CardTableRSet.setTraceCardTableRSet(traceRSet);
         }
@@ -23,6 +23,7 @@
 package com.sun.max.vm.heap.gcx;
 
 import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.heap.*;
@@ -32,6 +33,17 @@ import com.sun.max.vm.runtime.*;
 /**
  * A simple nursery implementation that allocates objects in a single contiguous space and evacuate all survivors to the next generation on minor collections.
  * The next generation is responsible for keeping a reserve large enough to accommodate the worst-case evacuation.
+ *
+ * If the {@link GenHeapSizingPolicy} reserves space for survivors, the end of the nursery's committed space is set aside for {@link SurvivorRegions}
+ * and the nursery ages objects: survivors of a minor collection are only promoted once they reach the tenuring threshold.
+ * The evacuated area then comprises both the allocation space (a.k.a., the eden) and the occupied survivor regions.
+ *
+ * In NUMA mode (see {@link HeapRegionManager#numaNodes()}), the eden is split into one contiguous slice per node, each bound to its node
+ * and allocated from with its own bump pointer allocator. Allocation requests are served from the slice of the allocating thread's node first,
+ * and only fall back to other nodes' slices when that slice is exhausted. The eden-wide allocator is then only used to keep track of the eden's bounds.
+ *
+ * If {@link #enablePinning() pinning} is enabled, a minor collection leaves in place the cells of the eden regions that are {@link PinnedRegions pinned}.
+ * Allocation then resumes after the last retained range of each allocator, until the next minor collection.
  */
 public final class NoAgingRegionalizedNursery implements HeapSpace {
 
@@ -81,6 +93,26 @@ public final class NoAgingRegionalizedNursery implements HeapSpace {
 
     private final SpaceBounds bounds;
 
+    /**
+     * Per-node allocators over the slices of the eden in NUMA mode, indexed by node. Null otherwise.
+     */
+    private BaseAtomicBumpPointerAllocator[] nodeAllocators;
+
+    /**
+     * Survivor regions of the nursery. Only used if {@link #aging} is true.
+     */
+    private final SurvivorRegions survivorRegions = new SurvivorRegions();
+
+    /**
+     * Indicates whether the nursery ages objects in survivor regions.
+     */
+    private boolean aging;
+
+    /**
+     * Pin counts of the eden regions. Null if pinning isn't enabled.
+     */
+    private PinnedRegions pinnedRegions;
+
     public NoAgingRegionalizedNursery(HeapAccount<? extends HeapAccountOwner> heapAccount, int regionTag) {
         this.heapAccount = heapAccount;
         this.regionTag = regionTag;
@@ -91,6 +123,10 @@ public final class NoAgingRegionalizedNursery implements HeapSpace {
             }
             @Override
             boolean isIn(Address address) {
+                if (aging) {
+                    // The survivor regions immediately follow the eden.
+                    return address.greaterEqual(lowestAddress()) && (address.lessThan(allocator.hardLimit()) || survivorRegions.inEvacuatedRegion(address));
+                }
                 return address.greaterEqual(lowestAddress()) && address.lessEqual(highestAddress());
             }
 
@@ -100,7 +136,7 @@ public final class NoAgingRegionalizedNursery implements HeapSpace {
             }
             @Override
             Address highestAddress() {
-                return allocator.hardLimit();
+                return aging ? survivorRegions.end() : allocator.hardLimit();
             }
         };
     }
@@ -123,10 +159,139 @@ public final class NoAgingRegionalizedNursery implements HeapSpace {
         while (nurseryRegionsList.tail() != lastCommittedRegion) {
             uncommitedNurseryRegionsList.prepend(nurseryRegionsList.removeTail());
         }
-        allocator.initialize(RegionTable.theRegionTable().regionAddress(nurseryRegionsList.head()), genSizingPolicy.initialYoungGenSize(), Size.fromInt(HeapRegionConstants.regionSizeInBytes));
+        final Address nurseryStart = RegionTable.theRegionTable().regionAddress(nurseryRegionsList.head());
+        final int numSurvivorRegions = HeapRegionConstants.numberOfRegions(genSizingPolicy.survivorSize());
+        Size edenSize = genSizingPolicy.initialYoungGenSize();
+        if (numSurvivorRegions > 0) {
+            FatalError.check(numSurvivorRegions < numCommittedRegions, "Survivor regions must leave space for allocation in the nursery");
+            edenSize = Size.fromInt(HeapRegionConstants.regionSizeInBytes).times(numCommittedRegions - numSurvivorRegions);
+            survivorRegions.initialize(nurseryStart.plus(edenSize), numSurvivorRegions, genSizingPolicy.maxTenuringThreshold());
+            aging = true;
+        }
+        allocator.initialize(nurseryStart, edenSize, Size.fromInt(HeapRegionConstants.regionSizeInBytes));
+        initializeNodeAllocators(regionID, edenSize);
+    }
+
+    /**
+     * Split the eden into one slice per NUMA node and bind each slice to its node.
+     * Nothing is done if NUMA is disabled or if the eden doesn't have at least one region per node.
+     */
+    private void initializeNodeAllocators(int firstEdenRegion, Size edenSize) {
+        final HeapRegionManager regionManager = HeapRegionManager.theHeapRegionManager();
+        final int numNodes = regionManager.numaNodes();
+        final int numEdenRegions = HeapRegionConstants.numberOfRegions(edenSize);
+        if (numNodes <= 1 || numEdenRegions < numNodes) {
+            return;
+        }
+        final int regionsPerNode = numEdenRegions / numNodes;
+        final Size regionSize = Size.fromInt(HeapRegionConstants.regionSizeInBytes);
+        nodeAllocators = new BaseAtomicBumpPointerAllocator[numNodes];
+        int sliceRegion = firstEdenRegion;
+        for (int node = 0; node < numNodes; node++) {
+            final int numSliceRegions = node == numNodes - 1 ? firstEdenRegion + numEdenRegions - sliceRegion : regionsPerNode;
+            if (!regionManager.bindToNode(sliceRegion, numSliceRegions, node)) {
+                Log.print("Warning: could not bind nursery regions to NUMA node ");
+                Log.println(node);
+            }
+            final BaseAtomicBumpPointerAllocator<NurseryRefiller> nodeAllocator = new AtomicBumpPointerAllocator<NurseryRefiller>(new NurseryRefiller());
+            nodeAllocator.initialize(RegionTable.theRegionTable().regionAddress(sliceRegion), regionSize.times(numSliceRegions), regionSize);
+            nodeAllocators[node] = nodeAllocator;
+            sliceRegion += numSliceRegions;
+        }
+        // All allocations now go through the node allocators.
+        allocator.unsafeSetTopToLimit();
+    }
+
+    /**
+     * Allocate raw space from the slice of the current thread's NUMA node, or from another slice if that one is exhausted.
+     * Triggers a minor collection if all slices are exhausted. The collection is requested without holding the lock on the
+     * node allocators, so that threads blocked on that lock don't hold up the safepoint, and the allocation is retried afterwards.
+     */
+    private Pointer numaAllocateRaw(Size size) {
+        if (size.greaterThan(HeapRegionConstants.regionSizeInBytes)) {
+            FatalError.unimplemented();
+        }
+        while (true) {
+            Pointer cell = tryNumaAllocateRaw(size);
+            if (!cell.isZero()) {
+                return cell;
+            }
+            synchronized (nodeAllocators) {
+                // Another thread may have collected the nursery while we were waiting for the lock.
+                cell = tryNumaAllocateRaw(size);
+            }
+            if (!cell.isZero()) {
+                return cell;
+            }
+            GCRequest.setGCRequest(size);
+            if (!Heap.collectGarbage()) {
+                throw new OutOfMemoryError();
+            }
+        }
+    }
+
+    /**
+     * Try to allocate raw space from each slice in turn, starting with the slice of the current thread's NUMA node.
+     * @return the allocated space, or zero if all slices are exhausted
+     */
+    private Pointer tryNumaAllocateRaw(Size size) {
+        final int numNodes = nodeAllocators.length;
+        final int homeNode = VirtualMemory.numaCurrentNode() % numNodes;
+        for (int i = 0; i < numNodes; i++) {
+            final Pointer cell = nodeAllocators[(homeNode + i) % numNodes].tryAllocateRaw(size);
+            if (!cell.isZero()) {
+                return cell;
+            }
+        }
+        return Pointer.zero();
+    }
+
+    private BaseAtomicBumpPointerAllocator nodeAllocatorContaining(Address address) {
+        for (BaseAtomicBumpPointerAllocator nodeAllocator : nodeAllocators) {
+            if (nodeAllocator.inCurrentContiguousChunk(address)) {
+                return nodeAllocator;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Enable region-granular pinning of the eden. Pinning isn't supported if the nursery ages objects.
+     * Must be called after the nursery is initialized.
+     */
+    public void enablePinning(PinnedRegions pinnedRegions) {
+        FatalError.check(!aging, "Region pinning isn't supported with survivor regions");
+        pinnedRegions.initialize(nurseryRegionsList.head(), nurseryRegionsList.size() + uncommitedNurseryRegionsList.size());
+        this.pinnedRegions = pinnedRegions;
+    }
+
+    /**
+     * Pin counts of the eden regions, or null if pinning isn't enabled.
+     */
+    public PinnedRegions pinnedRegions() {
+        return pinnedRegions;
+    }
+
+    /**
+     * Indicates whether the nursery ages objects in survivor regions.
+     */
+    public boolean isAging() {
+        return aging;
+    }
+
+    /**
+     * Survivor regions of the nursery, or null if the nursery doesn't age objects.
+     */
+    public SurvivorRegions survivorRegions() {
+        return aging ? survivorRegions : null;
     }
 
     public Pointer allocate(Size size) {
+        if (nodeAllocators != null) {
+            final Pointer cell = numaAllocateRaw(size);
+            Memory.clearWords(cell, size.unsignedShiftedRight(Word.widthValue().log2numberOfBytes).toInt());
+            return cell;
+        }
         return allocator.allocateCleared(size);
     }
 
@@ -146,59 +311,123 @@ public final class NoAgingRegionalizedNursery implements HeapSpace {
 
     @Override
     public Size totalSpace() {
+        if (aging) {
+            return allocator.size().plus(survivorRegions.totalSpace());
+        }
         return allocator.size();
     }
 
     @Override
     public Size capacity() {
-        return Size.fromInt(HeapRegionConstants.regionSizeInBytes).times(uncommitedNurseryRegionsList.size()).plus(allocator.size());
+        return Size.fromInt(HeapRegionConstants.regionSizeInBytes).times(uncommitedNurseryRegionsList.size()).plus(totalSpace());
     }
 
     @Override
     public Pointer allocateTLAB(Size size) {
-        final Pointer tlab = allocator.allocateRaw(size);
+        final Pointer tlab = nodeAllocators != null ? numaAllocateRaw(size) : allocator.allocateRaw(size);
         HeapFreeChunk.format(tlab, size);
         return tlab;
     }
 
     public void retireTLAB(Pointer start, Size size) {
         FatalError.check(allocator.inCurrentContiguousChunk(start), "Retired TLAB Space must be in allocating space");
-        if (!allocator.retireTop(start, size)) {
+        final BaseAtomicBumpPointerAllocator retiringAllocator = nodeAllocators != null ? nodeAllocatorContaining(start) : allocator;
+        if (!retiringAllocator.retireTop(start, size)) {
             DarkMatter.format(start, size);
         }
     }
 
     @Override
     public boolean contains(Address address) {
-        return allocator.inCurrentContiguousChunk(address);
+        return allocator.inCurrentContiguousChunk(address) || (aging && survivorRegions.contains(address));
     }
 
     @Override
     public void doBeforeGC() {
+        if (nodeAllocators != null) {
+            // Make the leftover of each slice parsable. The eden-wide allocator's top is already at its limit.
+            for (BaseAtomicBumpPointerAllocator nodeAllocator : nodeAllocators) {
+                nodeAllocator.doBeforeGC();
+            }
+        }
         allocator.doBeforeGC();
+        if (pinnedRegions != null) {
+            pinnedRegions.computeRetainedRanges(allocator.start(), allocator.hardLimit());
+        }
+    }
+
+    /**
+     * Resume allocation after the ranges retained by the last evacuation, keeping the space before parsable.
+     */
+    private void skipRetainedRanges(BaseAtomicBumpPointerAllocator retainingAllocator) {
+        final Address hardLimit = retainingAllocator.hardLimit();
+        final Address retainedEnd = pinnedRegions.formatAroundRetainedRanges(retainingAllocator.start(), hardLimit);
+        if (retainedEnd.lessThan(retainingAllocator.end())) {
+            if (retainedEnd.greaterThan(retainingAllocator.start())) {
+                retainingAllocator.unsafeSetTop(retainedEnd);
+            }
+        } else {
+            retainingAllocator.unsafeSetTopToLimit();
+            if (retainedEnd.lessThan(hardLimit)) {
+                DarkMatter.format(retainedEnd, hardLimit);
+            }
+        }
     }
 
     @Override
     public void doAfterGC() {
-        if (MaxineVM.isDebug()) {
+        final boolean retaining = pinnedRegions != null && pinnedRegions.hasRetainedRanges();
+        if (MaxineVM.isDebug() && !retaining) {
             allocator.zap();
         }
+        if (nodeAllocators != null) {
+            for (BaseAtomicBumpPointerAllocator nodeAllocator : nodeAllocators) {
+                nodeAllocator.reset();
+                if (retaining) {
+                    skipRetainedRanges(nodeAllocator);
+                }
+            }
+            return;
+        }
         allocator.reset();
+        if (retaining) {
+            skipRetainedRanges(allocator);
+        }
     }
 
     @Override
     public Size freeSpace() {
+        if (nodeAllocators != null) {
+            Size freeSpace = Size.zero();
+            for (BaseAtomicBumpPointerAllocator nodeAllocator : nodeAllocators) {
+                freeSpace = freeSpace.plus(nodeAllocator.freeSpace());
+            }
+            return freeSpace;
+        }
         return allocator.freeSpace();
     }
 
     @Override
     public Size usedSpace() {
-        return allocator.usedSpace();
+        final Size edenUsedSpace = nodeAllocators != null ? allocator.size().minus(freeSpace()) : allocator.usedSpace();
+        if (aging) {
+            return edenUsedSpace.plus(survivorRegions.usedSpace());
+        }
+        return edenUsedSpace;
     }
 
     @Override
     public void visit(CellRangeVisitor visitor) {
-        visitor.visitCells(allocator.start(), allocator.top);
+        if (nodeAllocators != null) {
+            for (BaseAtomicBumpPointerAllocator nodeAllocator : nodeAllocators) {
+                visitor.visitCells(nodeAllocator.start(), nodeAllocator.unsafeTop());
+            }
+        } else {
+            visitor.visitCells(allocator.start(), allocator.top);
+        }
+        if (aging) {
+            survivorRegions.visit(visitor);
+        }
     }
 
     @Override
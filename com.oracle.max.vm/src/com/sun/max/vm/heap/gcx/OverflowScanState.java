@@ -27,6 +27,7 @@ import static com.sun.max.vm.heap.gcx.TricolorHeapMarker.*;
 import com.sun.max.annotate.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
+import com.sun.max.vm.heap.GCTelemetry.GCPhase;
 import com.sun.max.vm.heap.gcx.TricolorHeapMarker.ColorMapScanState;
 import com.sun.max.vm.heap.gcx.TricolorHeapMarker.MarkingStackFlusher;
 
@@ -189,7 +190,7 @@ abstract class OverflowScanState extends ColorMapScanState {
 
     protected void beginRecovery() {
         final ForwardScanState forwardScanState = heapMarker.forwardScanState;
-        heapMarker.startTimer(heapMarker.recoveryScanTimer);
+        heapMarker.startTimer(heapMarker.recoveryScanTimer, GCPhase.MARK);
         heapMarker.currentScanState = this;
         // set the upper bound for rescanning to the finger of the forward scan
         endOfScan = forwardScanState.finger;
@@ -209,7 +210,7 @@ abstract class OverflowScanState extends ColorMapScanState {
         forwardScanState.rightmost = rightmost;
         markingStackFlusher.setScanState(forwardScanState);
         heapMarker.currentScanState = forwardScanState;
-        heapMarker.stopTimer(heapMarker.recoveryScanTimer);
+        heapMarker.stopTimer(heapMarker.recoveryScanTimer, GCPhase.MARK);
         if (MaxineVM.isDebug() && TraceMarking) {
             Log.print("End Overflow Scan (# mark stack overflow = ");
             Log.print(numMarkinkgStackOverflow); Log.println(")");
@@ -0,0 +1,578 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.VMOptions.*;
+import static com.sun.max.vm.heap.HeapSchemeAdaptor.*;
+import static com.sun.max.vm.heap.gcx.HeapFreeChunk.*;
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * Parallel evacuation of the cells of an evacuated area to a card-table covered space, performed by the participants of the {@link GCWorkerGang}
+ * on behalf of an {@link EvacuatorToCardSpace}.
+ *
+ * Each worker copies cells to a private promotion LAB made of an entire empty region obtained from the evacuator's {@link EvacuationBufferProvider}.
+ * These regions stay non-iterable until the evacuation completes, so workers scanning the dirty cards of the to-space never run into a region
+ * another worker is copying cells into. A cell is forwarded by atomically installing the forwarding reference in its hub word: workers racing to
+ * evacuate the same cell each copy it, and the losers take back their copy.
+ *
+ * Copied cells are pushed on the worker's {@link ParallelMarkingStack}. Workers out of work steal cells from the other workers' stacks.
+ * A cell that cannot be pushed because a stack is full is recorded in a queue of survivor ranges private to the worker, which the worker drains before stealing.
+ *
+ * Roots, the boot heap, code and the immortal heap are scanned by the VM operation thread alone, which evacuates cells to the LAB of worker 0.
+ * The dirty cards of the to-space are then scanned in parallel, workers claiming the regions of the to-space that were iterable when the evacuation started.
+ */
+final class ParallelEvacuation {
+    private static final VMIntOption parallelEvacuationStackSizeOption =
+        register(new VMIntOption("-XX:ParallelEvacuationStackSize=", 16 * 1024, "Size of each GC worker's evacuation stack in number of references."),
+                        MaxineVM.Phase.PRISTINE);
+
+    /**
+     * Per-worker state of the parallel evacuation.
+     */
+    final class WorkerState extends PointerIndexVisitor implements OverlappingCellVisitor {
+        final int workerIndex;
+        final ParallelMarkingStack evacuationStack = new ParallelMarkingStack();
+        /**
+         * Ranges of cells copied by this worker that couldn't be pushed on its evacuation stack.
+         */
+        SurvivorRangesQueue overflowRanges;
+        /**
+         * Region used as private promotion LAB, and its allocation hand and end.
+         */
+        int labRegion;
+        Pointer ptop;
+        Pointer pend;
+        /**
+         * Number of bytes evacuated by this worker.
+         */
+        Size evacuatedBytes;
+        /**
+         * Number of cells this worker stole from the other workers. Statistics only.
+         */
+        int steals;
+
+        WorkerState(int workerIndex) {
+            this.workerIndex = workerIndex;
+        }
+
+        void reset() {
+            labRegion = INVALID_REGION_ID;
+            ptop = Pointer.zero();
+            pend = Pointer.zero();
+            evacuatedBytes = Size.zero();
+            steals = 0;
+            evacuationStack.reset();
+            overflowRanges.clear();
+        }
+
+        /**
+         * Give back the space left in the LAB to the evacuation buffer provider.
+         */
+        private void retireLAB() {
+            if (labRegion != INVALID_REGION_ID) {
+                evacuationBufferProvider.retireEvacuationRegion(labRegion, ptop, pend);
+                labRegion = INVALID_REGION_ID;
+            }
+        }
+
+        private void refillLAB() {
+            lockProvider();
+            retireLAB();
+            labRegion = evacuationBufferProvider.refillEvacuationRegion();
+            unlockProvider();
+            if (labRegion == INVALID_REGION_ID) {
+                FatalError.unexpected("Parallel evacuation ran out of evacuation regions");
+            }
+            // The region is empty: in NUMA mode, have its pages allocated on this worker's node as the worker copies cells into it.
+            HeapRegionManager.theHeapRegionManager().moveEmptyRegionToCurrentNode(labRegion);
+            ptop = RegionTable.theRegionTable().regionAddress(labRegion).asPointer();
+            pend = ptop.plus(regionSizeInBytes);
+        }
+
+        /**
+         * Indicates whether a cell ending at the specified address fits in the LAB. The space left after the cell must be either empty,
+         * or large enough to be formatted as a dead object when the LAB is retired.
+         */
+        @INLINE
+        private boolean fitsInLAB(Pointer cellEnd) {
+            return cellEnd.equals(pend) || cellEnd.plus(minObjectSize()).lessEqual(pend);
+        }
+
+        private Pointer allocate(Size size) {
+            Pointer cell = ptop;
+            Pointer newTop = cell.plus(size);
+            if (!fitsInLAB(newTop)) {
+                refillLAB();
+                cell = ptop;
+                newTop = cell.plus(size);
+                FatalError.check(fitsInLAB(newTop), "Evacuated cell must fit in a region");
+            }
+            ptop = newTop;
+            cfoTable.set(cell, newTop);
+            return cell;
+        }
+
+        @INLINE
+        private void push(Pointer cell, Size size) {
+            if (!evacuationStack.push(cell)) {
+                overflowRanges.add(cell, cell.plus(size));
+            }
+        }
+
+        /**
+         * Evacuate a cell on behalf of the VM operation thread while it is the only thread running, i.e., when scanning roots.
+         * The caller installs the forwarding reference.
+         *
+         * @param fromOrigin origin of the cell to evacuate
+         * @return the cell's copy
+         */
+        Pointer evacuate(Pointer fromOrigin) {
+            final Size size = Layout.size(fromOrigin);
+            final Pointer toCell = allocate(size);
+            Memory.copyBytes(Layout.originToCell(fromOrigin), toCell, size);
+            evacuatedBytes = evacuatedBytes.plus(size);
+            push(toCell, size);
+            return toCell;
+        }
+
+        private Size cellSize(Hub hub, Pointer origin) {
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout == Layout.tupleLayout()) {
+                return hub.tupleSize;
+            }
+            final int length = Layout.readArrayLength(origin);
+            if (specificLayout == Layout.hybridLayout()) {
+                return Layout.hybridLayout().getArraySize(length);
+            }
+            return Layout.getArraySize(hub.classActor.componentClassActor().kind, length);
+        }
+
+        /**
+         * Return the forwarding reference of a cell of the evacuated area, evacuating the cell if no worker did it yet.
+         *
+         * @param origin origin of a cell in the evacuated area
+         * @return the forwarding reference of the cell
+         */
+        private Reference forward(Pointer origin) {
+            Reference forwardRef = Layout.readForwardRef(origin);
+            if (!forwardRef.isZero()) {
+                return forwardRef;
+            }
+            final Reference hubRef = Layout.readForwardRefValue(origin);
+            // A forwarding word only ever changes from a hub to a forwarding reference. If the cell still isn't forwarded, hubRef is its hub.
+            forwardRef = Layout.readForwardRef(origin);
+            if (!forwardRef.isZero()) {
+                return forwardRef;
+            }
+            final Size size = cellSize(UnsafeCast.asHub(hubRef.toJava()), origin);
+            final Pointer toCell = allocate(size);
+            Memory.copyBytes(Layout.originToCell(origin), toCell, size);
+            forwardRef = Reference.fromOrigin(Layout.cellToOrigin(toCell));
+            final Reference witness = Layout.compareAndSwapForwardRef(origin, hubRef, forwardRef);
+            if (!witness.toOrigin().equals(hubRef.toOrigin())) {
+                // Another worker forwarded the cell first. The copy is the last allocation in the LAB: take it back.
+                ptop = toCell;
+                return Layout.readForwardRef(origin);
+            }
+            evacuatedBytes = evacuatedBytes.plus(size);
+            push(toCell, size);
+            return forwardRef;
+        }
+
+        @Override
+        public void visit(Pointer refHolderOrigin, int wordIndex) {
+            final Pointer origin = refHolderOrigin.getReference(wordIndex).toOrigin();
+            if (evacuator.inEvacuatedArea(origin)) {
+                refHolderOrigin.setReference(wordIndex, forward(origin));
+            } else if (evacuator.retainedRegions != null && evacuator.retainedRegions.isRetained(origin)) {
+                evacuator.updateRSet(refHolderOrigin, wordIndex, Reference.fromOrigin(origin));
+            } else if (evacuator.humongousObjectReclaimer != null) {
+                evacuator.humongousObjectReclaimer.noteHeapReference(origin);
+            }
+        }
+
+        private void updateSpecialReference(Pointer cell) {
+            if (evacuator.isSpecialRefDiscoveryEnabled()) {
+                if (evacuator.humongousObjectReclaimer != null) {
+                    evacuator.humongousObjectReclaimer.noteHeapReference(Layout.cellToOrigin(cell).getReference(SpecialReferenceManager.referentIndex()).toOrigin());
+                }
+                SpecialReferenceManager.discoverSpecialReference(cell, workerIndex);
+            } else {
+                // Treat referent as strong reference.
+                visit(Layout.cellToOrigin(cell), SpecialReferenceManager.referentIndex());
+            }
+        }
+
+        /**
+         * Scan a cell for references to the evacuated area. See {@link Evacuator#scanCellForEvacuatees(Pointer)}.
+         */
+        private Pointer scanCell(Pointer cell) {
+            final Pointer origin = Layout.cellToOrigin(cell);
+            final Hub hub = Layout.getHub(origin);
+            if (hub == heapFreeChunkHub()) {
+                return cell.plus(toHeapFreeChunk(origin).size);
+            }
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout == Layout.tupleLayout()) {
+                hub.visitMappedReferences(origin, this);
+                if (hub.isJLRReference) {
+                    updateSpecialReference(cell);
+                }
+                return cell.plus(hub.tupleSize);
+            }
+            final int length = Layout.readArrayLength(origin);
+            if (specificLayout == Layout.hybridLayout()) {
+                hub.visitMappedReferences(origin, this);
+                return cell.plus(Layout.hybridLayout().getArraySize(length));
+            } else if (specificLayout == Layout.referenceArrayLayout()) {
+                final int endIndex = Layout.firstElementIndex() + length;
+                for (int index = Layout.firstElementIndex(); index < endIndex; index++) {
+                    visit(origin, index);
+                }
+                return cell.plus(Layout.referenceArrayLayout().getArraySize(Kind.REFERENCE, length));
+            }
+            return cell.plus(Layout.size(origin));
+        }
+
+        /**
+         * Scan the part of a cell overlapping a range of dirty cards. See {@link Evacuator#scanCellForEvacuatees(Pointer, Address, Address)}.
+         */
+        @Override
+        public Pointer visitCell(Pointer cell, Address start, Address end) {
+            final Pointer origin = Layout.cellToOrigin(cell);
+            final Hub hub = Layout.getHub(origin);
+            if (hub == heapFreeChunkHub()) {
+                return cell.plus(toHeapFreeChunk(origin).size);
+            }
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout == Layout.tupleLayout()) {
+                // Visit all the references of the tuple, as the write barrier dirties the card holding the tuple's header.
+                hub.visitMappedReferences(origin, this);
+                if (hub.isJLRReference) {
+                    updateSpecialReference(cell);
+                }
+                return cell.plus(hub.tupleSize);
+            }
+            if (specificLayout == Layout.referenceArrayLayout()) {
+                final int endOfArrayIndex = Layout.readArrayLength(origin) + Layout.firstElementIndex();
+                final Address firstElementAddr = origin.plusWords(Layout.firstElementIndex());
+                final Address endOfArrayAddr = origin.plusWords(endOfArrayIndex);
+                final int log2RefSize = Kind.REFERENCE.width.log2numberOfBytes;
+                final int firstIndex = start.greaterThan(firstElementAddr) ? start.minus(origin).unsignedShiftedRight(log2RefSize).toInt() : Layout.firstElementIndex();
+                final int endIndex = endOfArrayAddr.greaterThan(end) ? end.minus(origin).unsignedShiftedRight(log2RefSize).toInt() : endOfArrayIndex;
+                for (int index = firstIndex; index < endIndex; index++) {
+                    visit(origin, index);
+                }
+            } else if (specificLayout == Layout.hybridLayout()) {
+                hub.visitMappedReferences(origin, this);
+            }
+            return cell.plus(Layout.size(origin));
+        }
+
+        /**
+         * Scan the cells of the evacuation stack and of the overflow ranges until both are empty.
+         */
+        void processLocalWork() {
+            while (true) {
+                final Pointer cell = evacuationStack.pop();
+                if (!cell.isZero()) {
+                    scanCell(cell);
+                    continue;
+                }
+                if (overflowRanges.isEmpty()) {
+                    return;
+                }
+                final Pointer start = overflowRanges.start();
+                final Pointer end = overflowRanges.end();
+                overflowRanges.remove();
+                Pointer p = start;
+                while (p.lessThan(end)) {
+                    p = scanCell(p);
+                }
+            }
+        }
+
+        /**
+         * Scan the dirty cards of the to-space regions claimed by this worker.
+         */
+        void evacuateFromDirtyCards() {
+            int i = claimScanRegion();
+            while (i < numScanRegions) {
+                final Address start = RegionTable.theRegionTable().regionAddress(scanRegions[i]);
+                rset.cleanAndVisitCards(start, start.plus(regionSizeInBytes), this);
+                // Keep the evacuation stack short.
+                processLocalWork();
+                i = claimScanRegion();
+            }
+        }
+
+        /**
+         * Drain this worker's evacuation stack, then steal work from other workers until all workers run out of work.
+         */
+        void evacuateReachables() {
+            do {
+                processLocalWork();
+            } while (stealWork() || !offerTermination());
+        }
+
+        private boolean stealWork() {
+            final int numWorkers = gang.participants();
+            for (int i = 1; i < numWorkers; i++) {
+                final WorkerState victim = workerStates[(workerIndex + i) % numWorkers];
+                final Pointer cell = victim.evacuationStack.steal();
+                if (!cell.isZero()) {
+                    steals++;
+                    scanCell(cell);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Records the identifiers of the regions of the to-space iterable when evacuation starts. These are the only regions whose dirty cards are scanned.
+     */
+    private final class ScanRegionsRecorder implements CellRangeVisitor {
+        public void visitCells(Address start, Address end) {
+            final RegionTable regionTable = RegionTable.theRegionTable();
+            for (Address regionStart = start; regionStart.lessThan(end); regionStart = regionStart.plus(regionSizeInBytes)) {
+                FatalError.check(numScanRegions < scanRegions.length, "Too many regions to scan");
+                scanRegions[numScanRegions++] = regionTable.regionID(regionStart);
+            }
+        }
+    }
+
+    private final EvacuatorToCardSpace evacuator;
+    private final EvacuationBufferProvider evacuationBufferProvider;
+    private final CardTableRSet rset;
+    private final CardFirstObjectTable cfoTable;
+    private final GCWorkerGang gang;
+
+    /**
+     * Workers' state, indexed by worker index. Only the first {@link #numWorkerStates} are initialized.
+     */
+    private final WorkerState [] workerStates;
+    private int numWorkerStates;
+
+    private final ScanRegionsRecorder scanRegionsRecorder = new ScanRegionsRecorder();
+    private int [] scanRegions;
+    private int numScanRegions;
+    private volatile int nextScanRegion;
+
+    /**
+     * Number of workers idle while waiting for termination of the evacuation task.
+     */
+    private volatile int idleWorkers;
+
+    /**
+     * Spin lock serializing the requests of the workers to the evacuation buffer provider.
+     */
+    private volatile int providerLock;
+
+    private final GCTask evacuateFromDirtyCardsTask = new GCTask() {
+        @Override
+        public void run(int workerIndex) {
+            workerStates[workerIndex].evacuateFromDirtyCards();
+        }
+    };
+
+    private final GCTask evacuateReachablesTask = new GCTask() {
+        @Override
+        public void run(int workerIndex) {
+            workerStates[workerIndex].evacuateReachables();
+        }
+    };
+
+    @FOLD
+    private static int nextScanRegionOffset() {
+        return ClassActor.fromJava(ParallelEvacuation.class).findLocalInstanceFieldActor("nextScanRegion").offset();
+    }
+
+    @FOLD
+    private static int idleWorkersOffset() {
+        return ClassActor.fromJava(ParallelEvacuation.class).findLocalInstanceFieldActor("idleWorkers").offset();
+    }
+
+    @FOLD
+    private static int providerLockOffset() {
+        return ClassActor.fromJava(ParallelEvacuation.class).findLocalInstanceFieldActor("providerLock").offset();
+    }
+
+    ParallelEvacuation(EvacuatorToCardSpace evacuator, EvacuationBufferProvider evacuationBufferProvider) {
+        this.evacuator = evacuator;
+        this.evacuationBufferProvider = evacuationBufferProvider;
+        this.rset = evacuator.rset;
+        this.cfoTable = evacuator.cfoTable;
+        this.gang = GCWorkerGang.gang();
+        workerStates = new WorkerState[gang.capacity()];
+        for (int i = 0; i < workerStates.length; i++) {
+            workerStates[i] = new WorkerState(i);
+        }
+    }
+
+    /**
+     * Allocate the evacuation stacks and overflow queues of the workers. Only workers that may participate to a GC task given the VM options are provisioned.
+     *
+     * @param maxSurvivorRanges capacity of each worker's queue of overflow ranges
+     * @param maxScanRegions maximum number of regions of the to-space
+     */
+    void initialize(int maxSurvivorRanges, int maxScanRegions) {
+        final int numWorkers = gang.maxParticipants();
+        if (numWorkers <= 1 || numWorkerStates > 0) {
+            return;
+        }
+        final int length = parallelEvacuationStackSizeOption.getValue();
+        for (int i = 0; i < numWorkers; i++) {
+            workerStates[i].evacuationStack.initialize(length);
+            workerStates[i].overflowRanges = new SurvivorRangesQueue(maxSurvivorRanges);
+        }
+        scanRegions = new int[maxScanRegions];
+        numWorkerStates = numWorkers;
+    }
+
+    /**
+     * Indicates whether an evacuation of the specified amount of bytes can take place in parallel, i.e., whether the GC worker gang has workers,
+     * and the evacuation buffer provider has enough empty regions for the worst case evacuation. A cell that doesn't fit in the space
+     * left in a worker's LAB wastes at most its size, so the survivors fit in twice as many regions as they occupy, plus one LAB per worker.
+     *
+     * @param maxEvacuatedBytes upper bound on the amount of bytes to evacuate
+     */
+    boolean canEvacuate(Size maxEvacuatedBytes) {
+        if (numWorkerStates <= 1 || !gang.hasWorkers()) {
+            return false;
+        }
+        final int numRegionsNeeded = 2 * numberOfRegions(maxEvacuatedBytes) + numWorkerStates;
+        return evacuationBufferProvider.availableEvacuationRegions() >= numRegionsNeeded;
+    }
+
+    private int fetchAndAdd(int offset, int increment) {
+        final Reference thisRef = Reference.fromJava(this);
+        int oldValue;
+        do {
+            oldValue = thisRef.readInt(offset);
+        } while (thisRef.compareAndSwapInt(offset, oldValue, oldValue + increment) != oldValue);
+        return oldValue;
+    }
+
+    private int claimScanRegion() {
+        return fetchAndAdd(nextScanRegionOffset(), 1);
+    }
+
+    /**
+     * Termination protocol of the evacuation task. See {@link ParallelMarking}.
+     * @return true if all workers are idle, false if the worker should try to steal work again
+     */
+    private boolean offerTermination() {
+        final int numWorkers = gang.participants();
+        fetchAndAdd(idleWorkersOffset(), 1);
+        while (true) {
+            if (idleWorkers == numWorkers) {
+                return true;
+            }
+            for (int i = 0; i < numWorkers; i++) {
+                if (!workerStates[i].evacuationStack.isEmpty()) {
+                    fetchAndAdd(idleWorkersOffset(), -1);
+                    return false;
+                }
+            }
+            Intrinsics.pause();
+        }
+    }
+
+    private void lockProvider() {
+        final Reference thisRef = Reference.fromJava(this);
+        while (thisRef.compareAndSwapInt(providerLockOffset(), 0, 1) != 0) {
+            Intrinsics.pause();
+        }
+    }
+
+    private void unlockProvider() {
+        providerLock = 0;
+    }
+
+    /**
+     * Prepare the workers for an evacuation, and record the regions of the to-space whose dirty cards will be scanned.
+     * Must be called before any cell is evacuated.
+     */
+    void doBeforeEvacuation() {
+        for (int i = 0; i < numWorkerStates; i++) {
+            workerStates[i].reset();
+        }
+        numScanRegions = 0;
+        evacuator.toSpace.visit(scanRegionsRecorder);
+    }
+
+    /**
+     * Evacuate a cell to the LAB of worker 0. Only used while the VM operation thread is the only GC thread running.
+     */
+    Pointer evacuate(Pointer fromOrigin) {
+        return workerStates[0].evacuate(fromOrigin);
+    }
+
+    void evacuateFromDirtyCards() {
+        nextScanRegion = 0;
+        gang.run(evacuateFromDirtyCardsTask);
+    }
+
+    void evacuateReachables() {
+        idleWorkers = 0;
+        gang.run(evacuateReachablesTask);
+    }
+
+    /**
+     * Retire the workers' LABs and return the evacuation regions to the evacuation buffer provider.
+     * @return the number of bytes evacuated
+     */
+    Size doAfterEvacuation() {
+        Size evacuatedBytes = Size.zero();
+        for (int i = 0; i < numWorkerStates; i++) {
+            final WorkerState workerState = workerStates[i];
+            workerState.retireLAB();
+            evacuatedBytes = evacuatedBytes.plus(workerState.evacuatedBytes);
+            if (MaxineVM.isDebug() && Heap.logAllGC()) {
+                Log.print("Parallel evacuation worker ");
+                Log.print(i);
+                Log.print(" evacuated bytes: ");
+                Log.print(workerState.evacuatedBytes.toLong());
+                Log.print(" steals: ");
+                Log.println(workerState.steals);
+            }
+        }
+        evacuationBufferProvider.retireEvacuationRegions();
+        return evacuatedBytes;
+    }
+}
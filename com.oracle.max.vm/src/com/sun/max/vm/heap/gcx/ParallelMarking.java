@@ -0,0 +1,547 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Parallel tracing of the objects marked grey by the root scan of a {@link TricolorHeapMarker}.
+ *
+ * Tracing proceeds in rounds. Each round first runs a harvest task where the participants of the {@link GCWorkerGang} split the range of the
+ * mark bitmap holding grey marks into chunks, and push the grey cells of the chunks they claim on their own {@link ParallelMarkingStack}.
+ * Then, a trace task drains these stacks: a worker pops a grey cell, paints it black, and visits its references. White cells referenced are atomically
+ * painted grey and pushed on the worker's stack. Workers that run out of work steal cells from the other workers' stacks.
+ *
+ * A cell that cannot be pushed because a stack is full is left grey in the mark bitmap, and the range of such cells is recorded.
+ * Another round is run over the overflowed range until no more overflow happens.
+ *
+ * Unlike the sequential forward scan, parallel tracing doesn't use a finger: a cell is painted grey only once, by the worker that wins the race
+ * to set its mark, and is painted black by the worker that pops it from a stack.
+ *
+ * The same machinery is used by the {@link ConcurrentMarker} to trace the heap concurrently with mutator threads. A dedicated worker state,
+ * not part of the gang, harvests and traces alone, and gives up as soon as the concurrent marker is asked to stop.
+ * Grey marks left in the mark bitmap at that point are traced by the remark pause.
+ */
+final class ParallelMarking {
+    private static final VMIntOption parallelMarkingStackSizeOption =
+        register(new VMIntOption("-XX:ParallelMarkingStackSize=", 16 * 1024, "Size of each GC worker's marking stack in number of references."),
+                        MaxineVM.Phase.PRISTINE);
+
+    /**
+     * Minimum number of mark bitmap words in a chunk claimed during the harvest of grey marks.
+     */
+    private static final int MIN_HARVEST_CHUNK_WORDS = 64;
+
+    /**
+     * Per-worker state of the parallel tracing.
+     */
+    final class WorkerState extends PointerIndexVisitor {
+        final int workerIndex;
+        /**
+         * Indicates whether this worker traces concurrently with mutator threads.
+         */
+        final boolean concurrent;
+        final ParallelMarkingStack markingStack = new ParallelMarkingStack();
+        /**
+         * Leftmost and rightmost cells marked by this worker.
+         */
+        Address leftmost;
+        Address rightmost;
+        /**
+         * Lowest and highest cells left grey in the mark bitmap after a marking stack overflow.
+         */
+        Address overflowLeftmost;
+        Address overflowRightmost;
+        /**
+         * Number of cells this worker stole from the other workers. Statistics only.
+         */
+        int steals;
+
+        WorkerState(int workerIndex, boolean concurrent) {
+            this.workerIndex = workerIndex;
+            this.concurrent = concurrent;
+        }
+
+        void reset() {
+            leftmost = Address.max();
+            rightmost = Address.zero();
+            overflowLeftmost = Address.max();
+            overflowRightmost = Address.zero();
+            steals = 0;
+        }
+
+        void resetOverflow() {
+            overflowLeftmost = Address.max();
+            overflowRightmost = Address.zero();
+        }
+
+        boolean hasOverflowed() {
+            return overflowRightmost.isNotZero();
+        }
+
+        @INLINE
+        private void push(Pointer cell) {
+            if (!markingStack.push(cell)) {
+                if (cell.lessThan(overflowLeftmost)) {
+                    overflowLeftmost = cell;
+                }
+                if (cell.greaterThan(overflowRightmost)) {
+                    overflowRightmost = cell;
+                }
+            }
+        }
+
+        @INLINE
+        private void markObjectGrey(Pointer cell) {
+            if (heapMarker.isCovered(cell) && heapMarker.atomicMarkGreyIfWhite(heapMarker.bitIndexOf(cell))) {
+                if (MaxineVM.isDebug()) {
+                    heapMarker.traceGreyMark(cell, heapMarker.bitIndexOf(cell));
+                }
+                if (cell.lessThan(leftmost)) {
+                    leftmost = cell;
+                }
+                if (cell.greaterThan(rightmost)) {
+                    rightmost = cell;
+                }
+                push(cell);
+            }
+        }
+
+        @INLINE
+        private void markRefGrey(Reference ref) {
+            markObjectGrey(Layout.originToCell(ref.toOrigin()));
+        }
+
+        @Override
+        public void visit(Pointer pointer, int wordIndex) {
+            markRefGrey(pointer.getReference(wordIndex));
+        }
+
+        private void visitGreyCell(Pointer cell) {
+            final int bitIndex = heapMarker.bitIndexOf(cell);
+            if (concurrent && UnsafeCast.asHub(Layout.readHubReference(Layout.cellToOrigin(cell)).toJava()).isJLRReference) {
+                // Special references are discovered during the remark pause. Leave the cell grey so that the remark visits it.
+                return;
+            }
+            if (!heapMarker.atomicMarkBlackFromGrey(bitIndex)) {
+                // Already visited. This may happen when a grey cell was harvested from the mark bitmap after being pushed by a tracing worker.
+                return;
+            }
+            if (MaxineVM.isDebug()) {
+                heapMarker.traceBlackMark(cell, bitIndex);
+            }
+            final Pointer origin = Layout.cellToOrigin(cell);
+            final Reference hubRef = Layout.readHubReference(origin);
+            markRefGrey(hubRef);
+            final Hub hub = UnsafeCast.asHub(hubRef.toJava());
+            if (MaxineVM.isDebug()) {
+                heapMarker.checkGreyCellHub(origin, hub);
+            }
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout.isTupleLayout()) {
+                TupleReferenceMap.visitReferences(hub, origin, this);
+                if (hub.isJLRReference) {
+                    // The cell was painted black by this worker, so this is the only discovery of this reference.
+                    SpecialReferenceManager.discoverSpecialReference(cell, workerIndex);
+                }
+            } else if (specificLayout.isReferenceArrayLayout()) {
+                final int length = Layout.readArrayLength(origin);
+                for (int index = 0; index < length; index++) {
+                    markRefGrey(Layout.getReference(origin, index));
+                }
+            } else if (specificLayout.isHybridLayout()) {
+                TupleReferenceMap.visitReferences(hub, origin, this);
+            }
+        }
+
+        /**
+         * Push the grey cells whose mark starts in the specified range of the mark bitmap.
+         * Marks cannot be decoded without knowing where objects start. However, since objects are at least two words long,
+         * the first set bit of a run of set bits is always the first bit of a mark, and the color of each mark in the run can be
+         * decoded from there. A run is decoded by the worker owning the chunk where the run starts, even if the run extends past the chunk.
+         * The first bit of the first chunk of a range is always the first bit of a mark.
+         *
+         * @param firstBitIndex index of the first bit of the range
+         * @param endBitIndex index of the bit after the range
+         * @param skipLeadingRun if true, a run of set bits starting before the range is left to the owner of the previous chunk
+         */
+        void harvest(int firstBitIndex, int endBitIndex, boolean skipLeadingRun) {
+            int bitIndex = heapMarker.nextSetBit(firstBitIndex, endBitIndex);
+            if (skipLeadingRun && bitIndex == firstBitIndex && heapMarker.isSet(bitIndex - 1)) {
+                // Run started in the previous chunk. Its owner takes care of it.
+                bitIndex = heapMarker.nextSetBit(heapMarker.nextClearBit(bitIndex), endBitIndex);
+            }
+            while (bitIndex >= 0) {
+                // bitIndex is the first bit of a run, hence the first bit of a mark. Decode the whole run.
+                do {
+                    if (heapMarker.isSet(bitIndex + 1)) {
+                        // Grey mark.
+                        push(heapMarker.addressOf(bitIndex).asPointer());
+                        bitIndex += 2;
+                    } else {
+                        // Black mark.
+                        bitIndex++;
+                    }
+                } while (heapMarker.isSet(bitIndex));
+                if (bitIndex >= endBitIndex) {
+                    break;
+                }
+                bitIndex = heapMarker.nextSetBit(bitIndex, endBitIndex);
+            }
+        }
+
+        /**
+         * Drain this worker's marking stack, then steal work from other workers until all workers run out of work.
+         */
+        void trace() {
+            do {
+                Pointer cell = markingStack.pop();
+                while (!cell.isZero()) {
+                    visitGreyCell(cell);
+                    cell = markingStack.pop();
+                }
+            } while (stealWork() || !offerTermination());
+        }
+
+        /**
+         * Drain this worker's marking stack concurrently with mutator threads.
+         *
+         * @param marker the concurrent marker on behalf of which the stack is drained
+         * @return false if the concurrent marker was asked to stop before the stack was empty
+         */
+        boolean concurrentTrace(ConcurrentMarker marker) {
+            Pointer cell = markingStack.pop();
+            while (!cell.isZero()) {
+                if (marker.stopRequested()) {
+                    return false;
+                }
+                visitGreyCell(cell);
+                cell = markingStack.pop();
+            }
+            return true;
+        }
+
+        private boolean stealWork() {
+            final int numWorkers = gang.participants();
+            for (int i = 1; i < numWorkers; i++) {
+                final WorkerState victim = workerStates[(workerIndex + i) % numWorkers];
+                final Pointer cell = victim.markingStack.steal();
+                if (!cell.isZero()) {
+                    steals++;
+                    visitGreyCell(cell);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final TricolorHeapMarker heapMarker;
+    private final GCWorkerGang gang;
+
+    /**
+     * Workers' state, indexed by worker index. Allocated in the boot image for the maximum number of participants to a GC task
+     * the image supports. Only the first {@link #numWorkerStates} are initialized.
+     */
+    private final WorkerState [] workerStates;
+    private int numWorkerStates;
+
+    /**
+     * State of the worker tracing on behalf of the {@link ConcurrentMarker}.
+     */
+    final WorkerState concurrentWorkerState;
+
+    /**
+     * Range of bit indexes of the mark bitmap to harvest grey marks from.
+     */
+    private int harvestFirstBitIndex;
+    private int harvestEndBitIndex;
+    private int harvestChunkBits;
+    private volatile int nextHarvestChunk;
+
+    /**
+     * Number of workers idle while waiting for termination of the trace task.
+     */
+    private volatile int idleWorkers;
+
+    private final GCTask harvestTask = new GCTask() {
+        @Override
+        public void run(int workerIndex) {
+            final WorkerState workerState = workerStates[workerIndex];
+            int chunk = claimHarvestChunk();
+            while (chunk >= 0) {
+                final int firstBitIndex = harvestFirstBitIndex + chunk * harvestChunkBits;
+                int endBitIndex = firstBitIndex + harvestChunkBits;
+                if (endBitIndex > harvestEndBitIndex) {
+                    endBitIndex = harvestEndBitIndex;
+                }
+                workerState.harvest(firstBitIndex, endBitIndex, chunk > 0);
+                chunk = claimHarvestChunk();
+            }
+        }
+    };
+
+    private final GCTask traceTask = new GCTask() {
+        @Override
+        public void run(int workerIndex) {
+            workerStates[workerIndex].trace();
+        }
+    };
+
+    @FOLD
+    private static int nextHarvestChunkOffset() {
+        return ClassActor.fromJava(ParallelMarking.class).findLocalInstanceFieldActor("nextHarvestChunk").offset();
+    }
+
+    @FOLD
+    private static int idleWorkersOffset() {
+        return ClassActor.fromJava(ParallelMarking.class).findLocalInstanceFieldActor("idleWorkers").offset();
+    }
+
+    @HOSTED_ONLY
+    ParallelMarking(TricolorHeapMarker heapMarker) {
+        this.heapMarker = heapMarker;
+        this.gang = GCWorkerGang.gang();
+        workerStates = new WorkerState[gang.capacity()];
+        for (int i = 0; i < workerStates.length; i++) {
+            workerStates[i] = new WorkerState(i, false);
+        }
+        concurrentWorkerState = new WorkerState(workerStates.length, true);
+    }
+
+    /**
+     * Allocate the marking stacks of the workers. Only workers that may participate to a GC task given the VM options are provisioned.
+     */
+    void initialize() {
+        if (numWorkerStates > 0) {
+            return;
+        }
+        final int length = parallelMarkingStackSizeOption.getValue();
+        final int numWorkers = gang.maxParticipants();
+        for (int i = 0; i < numWorkers; i++) {
+            workerStates[i].markingStack.initialize(length);
+        }
+        numWorkerStates = numWorkers;
+    }
+
+    /**
+     * Allocate the marking stack of the concurrent worker.
+     */
+    void initializeConcurrentMarking() {
+        concurrentWorkerState.markingStack.initialize(parallelMarkingStackSizeOption.getValue());
+    }
+
+    /**
+     * Indicates whether parallel marking can take place, i.e., whether the worker's states are initialized and the GC worker gang has workers.
+     */
+    boolean isEnabled() {
+        return numWorkerStates > 1 && gang.hasWorkers();
+    }
+
+    private int fetchAndAdd(int offset, int increment) {
+        final Reference thisRef = Reference.fromJava(this);
+        int oldValue;
+        do {
+            oldValue = thisRef.readInt(offset);
+        } while (thisRef.compareAndSwapInt(offset, oldValue, oldValue + increment) != oldValue);
+        return oldValue;
+    }
+
+    private int claimHarvestChunk() {
+        final int chunk = fetchAndAdd(nextHarvestChunkOffset(), 1);
+        return harvestFirstBitIndex + chunk * harvestChunkBits < harvestEndBitIndex ? chunk : -1;
+    }
+
+    /**
+     * Termination protocol of the trace task. A worker out of work declares itself idle, then waits until either all workers are idle,
+     * in which case the task is completed, or until some work becomes available for stealing.
+     * @return true if all workers are idle, false if the worker should try to steal work again
+     */
+    private boolean offerTermination() {
+        final int numWorkers = gang.participants();
+        fetchAndAdd(idleWorkersOffset(), 1);
+        while (true) {
+            if (idleWorkers == numWorkers) {
+                return true;
+            }
+            for (int i = 0; i < numWorkers; i++) {
+                if (!workerStates[i].markingStack.isEmpty()) {
+                    fetchAndAdd(idleWorkersOffset(), -1);
+                    return false;
+                }
+            }
+            Intrinsics.pause();
+        }
+    }
+
+    /**
+     * Harvest grey marks from the specified range of the mark bitmap with all the workers of the gang.
+     *
+     * @param firstBitIndex index of the first bit of the range
+     * @param endBitIndex index of the bit after the range
+     */
+    private void harvest(int firstBitIndex, int endBitIndex) {
+        harvestFirstBitIndex = firstBitIndex;
+        harvestEndBitIndex = endBitIndex;
+        final int numChunks = gang.maxParticipants() * 4;
+        final int minChunkBits = MIN_HARVEST_CHUNK_WORDS << Word.widthValue().log2numberOfBits;
+        harvestChunkBits = (harvestEndBitIndex - harvestFirstBitIndex + numChunks - 1) / numChunks;
+        if (harvestChunkBits < minChunkBits) {
+            harvestChunkBits = minChunkBits;
+        }
+        nextHarvestChunk = 0;
+        gang.run(harvestTask);
+    }
+
+    /**
+     * Harvest grey marks from the part of the specified range of the covered area that intersects the specified heap region ranges.
+     * Regions are numbered from 0, where the address of the first byte of region 0 coincides with the covered area's start address.
+     *
+     * @param leftmost leftmost grey cell
+     * @param rightmost rightmost grey cell
+     * @param regionsRanges an enumeration of the heap region ranges holding objects to trace, in increasing address order
+     */
+    private void harvest(Address leftmost, Address rightmost, HeapRegionRangeIterable regionsRanges) {
+        final int log2RegionSize = HeapRegionConstants.log2RegionSizeInBytes;
+        regionsRanges.reset();
+        while (regionsRanges.hasNext()) {
+            final RegionRange regionsRange = regionsRanges.next();
+            final Address startOfRange = heapMarker.coveredAreaStart.plus(regionsRange.firstRegion() << log2RegionSize);
+            if (startOfRange.greaterThan(rightmost)) {
+                return;
+            }
+            final Address endOfRange = startOfRange.plus(regionsRange.numRegions() << log2RegionSize);
+            if (endOfRange.greaterThan(leftmost)) {
+                // Both bounds of the intersection are the start of a mark: leftmost is a cell, and no object crosses the start of a range.
+                final int firstBitIndex = heapMarker.bitIndexOf(startOfRange.lessThan(leftmost) ? leftmost : startOfRange);
+                final int endBitIndex = endOfRange.greaterThan(rightmost) ? heapMarker.bitIndexOf(rightmost) + 1 : heapMarker.bitIndexOf(endOfRange);
+                harvest(firstBitIndex, endBitIndex);
+            }
+        }
+    }
+
+    /**
+     * Trace all objects reachable from the grey cells in the specified range of the covered area.
+     * Must be called by the VM operation thread once roots are marked.
+     *
+     * @param leftmost leftmost grey cell
+     * @param rightmost rightmost grey cell
+     * @param regionsRanges an enumeration of the heap region ranges holding objects to trace, or null if objects may be anywhere in the covered area
+     * @return the rightmost marked cell
+     */
+    Address visitGreyObjects(Address leftmost, Address rightmost, HeapRegionRangeIterable regionsRanges) {
+        Address rightmostMarked = rightmost;
+        for (int i = 0; i < numWorkerStates; i++) {
+            workerStates[i].reset();
+            workerStates[i].markingStack.reset();
+        }
+        Address overflowLeftmost = leftmost;
+        Address overflowRightmost = rightmost;
+        while (overflowLeftmost.lessEqual(overflowRightmost)) {
+            if (regionsRanges == null) {
+                harvest(heapMarker.bitIndexOf(overflowLeftmost), heapMarker.bitIndexOf(overflowRightmost) + 1);
+            } else {
+                harvest(overflowLeftmost, overflowRightmost, regionsRanges);
+            }
+
+            idleWorkers = 0;
+            gang.run(traceTask);
+
+            overflowLeftmost = Address.max();
+            overflowRightmost = Address.zero();
+            for (int i = 0; i < numWorkerStates; i++) {
+                final WorkerState workerState = workerStates[i];
+                if (workerState.rightmost.greaterThan(rightmostMarked)) {
+                    rightmostMarked = workerState.rightmost;
+                }
+                if (workerState.hasOverflowed()) {
+                    if (workerState.overflowLeftmost.lessThan(overflowLeftmost)) {
+                        overflowLeftmost = workerState.overflowLeftmost;
+                    }
+                    if (workerState.overflowRightmost.greaterThan(overflowRightmost)) {
+                        overflowRightmost = workerState.overflowRightmost;
+                    }
+                    workerState.resetOverflow();
+                }
+            }
+            if (overflowRightmost.isNotZero()) {
+                heapMarker.forwardScanState.numMarkinkgStackOverflow++;
+            }
+        }
+        if (MaxineVM.isDebug() && Heap.logAllGC()) {
+            for (int i = 0; i < numWorkerStates; i++) {
+                Log.print("Parallel marking worker ");
+                Log.print(i);
+                Log.print(" steals: ");
+                Log.println(workerStates[i].steals);
+            }
+        }
+        return rightmostMarked;
+    }
+
+    /**
+     * Trace all objects reachable from the grey cells in the specified range of the covered area, concurrently with the mutator threads.
+     * Tracing is given up as soon as the concurrent marker is asked to stop; the grey cells left in the mark bitmap are
+     * within the range bounded by the leftmost and rightmost cells marked by the concurrent worker, and the specified range.
+     *
+     * @param leftmost leftmost grey cell
+     * @param rightmost rightmost grey cell
+     * @param marker the concurrent marker on behalf of which tracing is performed
+     * @return true if tracing completed, false if it was given up
+     */
+    boolean concurrentVisitGreyObjects(Address leftmost, Address rightmost, ConcurrentMarker marker) {
+        final WorkerState workerState = concurrentWorkerState;
+        final int chunkBits = MIN_HARVEST_CHUNK_WORDS << Word.widthValue().log2numberOfBits;
+        workerState.reset();
+        workerState.markingStack.reset();
+        Address overflowLeftmost = leftmost;
+        Address overflowRightmost = rightmost;
+        while (overflowLeftmost.lessEqual(overflowRightmost)) {
+            final int firstBitIndex = heapMarker.bitIndexOf(overflowLeftmost);
+            final int endBitIndex = heapMarker.bitIndexOf(overflowRightmost) + 1;
+            // The mark bitmap is only modified by the concurrent worker, so it doesn't change while harvesting.
+            for (int bitIndex = firstBitIndex; bitIndex < endBitIndex; bitIndex += chunkBits) {
+                if (marker.stopRequested()) {
+                    return false;
+                }
+                workerState.harvest(bitIndex, Math.min(bitIndex + chunkBits, endBitIndex), bitIndex > firstBitIndex);
+            }
+            if (!workerState.concurrentTrace(marker)) {
+                return false;
+            }
+            overflowLeftmost = workerState.overflowLeftmost;
+            overflowRightmost = workerState.overflowRightmost;
+            workerState.resetOverflow();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.reference.*;
+
+/**
+ * Fixed size work-stealing marking stack used by parallel heap tracers.
+ * The owner of the stack pushes and pops cells at the bottom of the stack; other workers
+ * steal cells from the top of the stack. The implementation follows the non-blocking deque of Arora, Blumofe and Plaxton:
+ * the owner only synchronizes with thieves when the stack holds at most one element, and a tag combined
+ * with the top index prevents ABA problems when the owner resets an empty stack.
+ *
+ * The stack doesn't handle overflow itself: {@link #push(Pointer)} returns false when the stack is full and the caller
+ * is responsible for recovering from the overflow.
+ *
+ * The backing storage is allocated outside of the heap, like that of the {@link MarkingStack}.
+ */
+public final class ParallelMarkingStack {
+    private Address base;
+    private int capacity;
+
+    /**
+     * Index of the next free slot. Only modified by the owner of the stack.
+     */
+    private volatile int bottom;
+
+    /**
+     * Tag (high 32 bits) and top index (low 32 bits). The top index is only incremented by thieves,
+     * and reset to 0 by the owner when the stack becomes empty, in which case the tag is incremented.
+     */
+    private volatile long age;
+
+    @FOLD
+    private static int ageOffset() {
+        return ClassActor.fromJava(ParallelMarkingStack.class).findLocalInstanceFieldActor("age").offset();
+    }
+
+    public ParallelMarkingStack() {
+    }
+
+    public void initialize(int length) {
+        final Size size = Size.fromInt(length).shiftedLeft(Word.widthValue().log2numberOfBytes);
+        base = Memory.allocate(size);
+        if (base.isZero()) {
+            MaxineVM.reportPristineMemoryFailure("parallel marking stack", "allocate", size);
+        }
+        capacity = length;
+    }
+
+    @INLINE
+    private static int top(long age) {
+        return (int) age;
+    }
+
+    @INLINE
+    private static long nextTag(long age) {
+        return ((age >>> 32) + 1) << 32;
+    }
+
+    private boolean casAge(long oldAge, long newAge) {
+        return Reference.fromJava(this).compareAndSwapLong(ageOffset(), oldAge, newAge) == oldAge;
+    }
+
+    /**
+     * Number of cells currently on the stack. Only approximate if called by a thread other than the owner.
+     */
+    public int size() {
+        final int size = bottom - top(age);
+        return size < 0 ? 0 : size;
+    }
+
+    public boolean isEmpty() {
+        return bottom <= top(age);
+    }
+
+    /**
+     * Reset the stack. Must only be called when no other threads access the stack.
+     */
+    public void reset() {
+        bottom = 0;
+        age = nextTag(age);
+    }
+
+    /**
+     * Push a cell at the bottom of the stack. Must only be called by the owner of the stack.
+     * @param cell a pointer to a heap cell
+     * @return true if the cell was pushed, false if the stack is full
+     */
+    public boolean push(Pointer cell) {
+        final int localBottom = bottom;
+        if (localBottom >= capacity) {
+            return false;
+        }
+        base.asPointer().setWord(localBottom, cell);
+        bottom = localBottom + 1;
+        return true;
+    }
+
+    /**
+     * Pop a cell from the bottom of the stack. Must only be called by the owner of the stack.
+     * @return a pointer to a heap cell, or zero if the stack is empty
+     */
+    public Pointer pop() {
+        int localBottom = bottom;
+        if (localBottom == 0) {
+            return Pointer.zero();
+        }
+        localBottom--;
+        bottom = localBottom;
+        MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+        final Pointer cell = base.asPointer().getWord(localBottom).asPointer();
+        final long oldAge = age;
+        final int oldTop = top(oldAge);
+        if (localBottom > oldTop) {
+            return cell;
+        }
+        // The stack is now empty. Reset it and compete with thieves for the last cell, if any.
+        bottom = 0;
+        final long newAge = nextTag(oldAge);
+        if (localBottom == oldTop && casAge(oldAge, newAge)) {
+            return cell;
+        }
+        age = newAge;
+        return Pointer.zero();
+    }
+
+    /**
+     * Steal a cell from the top of the stack. May be called by any thread.
+     * @return a pointer to a heap cell, or zero if the stack is empty or the steal attempt lost a race.
+     */
+    public Pointer steal() {
+        final long oldAge = age;
+        final int localBottom = bottom;
+        final int oldTop = top(oldAge);
+        if (localBottom <= oldTop) {
+            return Pointer.zero();
+        }
+        final Pointer cell = base.asPointer().getWord(oldTop).asPointer();
+        if (casAge(oldAge, oldAge + 1)) {
+            return cell;
+        }
+        return Pointer.zero();
+    }
+}
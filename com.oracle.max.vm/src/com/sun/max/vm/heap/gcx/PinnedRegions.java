@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.gcx.HeapFreeChunk.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+
+/**
+ * Region-granular pinning of the objects of an evacuated space.
+ *
+ * Pinning an object (e.g., an array handed out to native code by {@code GetPrimitiveArrayCritical}) increments a counter for each region the object spans.
+ * Instead of blocking the collection until all pinned objects are released, an evacuation leaves the cells of the pinned regions in place,
+ * and only evacuates the cells of the unpinned regions.
+ *
+ * Before an evacuation, the evacuated space computes the retained ranges: each run of consecutive pinned regions is extended to the
+ * boundaries of the cells overlapping it. Cells in retained ranges aren't evacuated. Instead, they are all scanned as if they were
+ * remembered (see {@link NoAgingNurseryEvacuator}), and references to them from outside the space are recorded in the remembered set for the next
+ * evacuation. All cells of a retained range are conservatively assumed live until the next evacuation that finds the range unpinned.
+ * After the evacuation, the evacuated space resumes allocation after the retained ranges.
+ *
+ * The retained ranges are stored as pairs of start and end addresses, sorted in address order.
+ */
+public final class PinnedRegions {
+    static boolean TraceRegionPinning = false;
+    static {
+        VMOptions.addFieldOption("-XX:", "TraceRegionPinning", PinnedRegions.class, "Trace regions retained by evacuations because of pinned objects", Phase.PRISTINE);
+    }
+
+    /**
+     * Identifier of the first region covered.
+     */
+    private int firstRegionID;
+
+    /**
+     * Number of pin requests on each region covered, indexed by region identifier relative to {@link #firstRegionID}.
+     */
+    private int [] pinCounts;
+
+    /**
+     * Pairs of start and end addresses of the ranges retained by the last evacuation.
+     */
+    private long [] retainedRanges;
+
+    private int numRetainedRanges;
+
+    /**
+     * Total number of bytes retained by evacuations because of pinned regions. Statistics only.
+     */
+    private long retainedBytes;
+
+    @HOSTED_ONLY
+    public PinnedRegions() {
+    }
+
+    /**
+     * Enable pinning of the regions of a contiguous range of regions.
+     * @param firstRegionID identifier of the first region of the range
+     * @param numRegions number of regions in the range
+     */
+    public void initialize(int firstRegionID, int numRegions) {
+        this.firstRegionID = firstRegionID;
+        pinCounts = new int[numRegions];
+        // There can't be more retained ranges than one every other region.
+        retainedRanges = new long[2 * ((numRegions + 1) >> 1)];
+    }
+
+    public boolean isEnabled() {
+        return pinCounts != null;
+    }
+
+    @INLINE
+    private static int pinCountOffset(int index) {
+        return Layout.intArrayLayout().getElementOffsetFromOrigin(index).toInt();
+    }
+
+    @INLINE
+    private void addToPinCounts(Pointer cell, Size size, int increment) {
+        final Reference pinCountsRef = Reference.fromJava(pinCounts);
+        final RegionTable regionTable = RegionTable.theRegionTable();
+        final int lastIndex = regionTable.regionID(cell.plus(size).minus(1)) - firstRegionID;
+        for (int index = regionTable.regionID(cell) - firstRegionID; index <= lastIndex; index++) {
+            final int offset = pinCountOffset(index);
+            int oldValue;
+            do {
+                oldValue = pinCountsRef.readInt(offset);
+                assert oldValue + increment >= 0 : "Unbalanced pin request";
+            } while (pinCountsRef.compareAndSwapInt(offset, oldValue, oldValue + increment) != oldValue);
+        }
+    }
+
+    /**
+     * Pin the regions spanned by a cell.
+     * The caller must guarantee that the cell cannot be moved until the regions are pinned.
+     */
+    @INLINE
+    @NO_SAFEPOINT_POLLS("the cell must not move before its regions are pinned")
+    public void pin(Pointer cell, Size size) {
+        addToPinCounts(cell, size, 1);
+    }
+
+    /**
+     * Release a pin request on the regions spanned by a cell.
+     */
+    @INLINE
+    public void unpin(Pointer cell, Size size) {
+        addToPinCounts(cell, size, -1);
+    }
+
+    /**
+     * Indicates whether a region has outstanding pin requests.
+     * @param regionID identifier of a region covered by this object
+     */
+    public boolean isPinned(int regionID) {
+        return pinCounts[regionID - firstRegionID] != 0;
+    }
+
+    private static Pointer nextCell(Pointer cell) {
+        final Pointer origin = Layout.cellToOrigin(cell);
+        if (Layout.getHub(origin) == heapFreeChunkHub()) {
+            return cell.plus(toHeapFreeChunk(origin).size);
+        }
+        return cell.plus(Layout.size(origin));
+    }
+
+    private void addRetainedRange(Address start, Address end) {
+        if (numRetainedRanges > 0 && retainedRanges[2 * numRetainedRanges - 1] == start.toLong()) {
+            retainedRanges[2 * numRetainedRanges - 1] = end.toLong();
+            return;
+        }
+        retainedRanges[2 * numRetainedRanges] = start.toLong();
+        retainedRanges[2 * numRetainedRanges + 1] = end.toLong();
+        numRetainedRanges++;
+    }
+
+    /**
+     * Compute the ranges of cells that the next evacuation must retain in place.
+     * Must be called during GC, with the specified space parsable.
+     *
+     * @param start start of the evacuated space covered by the pinned regions
+     * @param end end of the evacuated space covered by the pinned regions
+     * @return true if some ranges must be retained
+     */
+    boolean computeRetainedRanges(Address start, Address end) {
+        numRetainedRanges = 0;
+        if (pinCounts == null) {
+            return false;
+        }
+        final RegionTable regionTable = RegionTable.theRegionTable();
+        final int firstIndex = regionTable.regionID(start) - firstRegionID;
+        final int lastIndex = regionTable.regionID(end.minus(1)) - firstRegionID;
+        Pointer cell = start.asPointer();
+        int index = firstIndex;
+        while (index <= lastIndex) {
+            if (pinCounts[index] == 0) {
+                index++;
+                continue;
+            }
+            int runEndIndex = index + 1;
+            while (runEndIndex <= lastIndex && pinCounts[runEndIndex] != 0) {
+                runEndIndex++;
+            }
+            final Address runStart = regionTable.regionAddress(firstRegionID + index);
+            Address runEnd = regionTable.regionAddress(firstRegionID + runEndIndex);
+            if (runEnd.greaterThan(end)) {
+                runEnd = end;
+            }
+            // Find the cell overlapping the start of the run, then the end of the last cell overlapping the run.
+            Pointer next = nextCell(cell);
+            while (next.lessEqual(runStart)) {
+                cell = next;
+                next = nextCell(cell);
+            }
+            final Pointer rangeStart = cell;
+            while (cell.lessThan(runEnd)) {
+                cell = nextCell(cell);
+            }
+            addRetainedRange(rangeStart, cell);
+            retainedBytes += cell.minus(rangeStart).toLong();
+            if (TraceRegionPinning) {
+                final boolean lockDisabledSafepoints = Log.lock();
+                Log.print("Retaining pinned regions #");
+                Log.print(firstRegionID + index);
+                Log.print(" to #");
+                Log.print(firstRegionID + runEndIndex - 1);
+                Log.print(", cells [");
+                Log.print(rangeStart);
+                Log.print(", ");
+                Log.print(cell);
+                Log.println("]");
+                Log.unlock(lockDisabledSafepoints);
+            }
+            // The last cell of the run may overlap the next regions.
+            index = regionTable.regionID(cell.minus(1)) - firstRegionID + 1;
+        }
+        return numRetainedRanges > 0;
+    }
+
+    public boolean hasRetainedRanges() {
+        return numRetainedRanges > 0;
+    }
+
+    /**
+     * Indicates whether the cell at the specified origin is retained in place by the current evacuation.
+     */
+    @INLINE
+    boolean isRetained(Address origin) {
+        final long address = origin.toLong();
+        for (int i = 0; i < 2 * numRetainedRanges; i += 2) {
+            if (address < retainedRanges[i]) {
+                return false;
+            }
+            if (address < retainedRanges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Apply a visitor to the retained ranges.
+     */
+    void visitRetainedRanges(CellRangeVisitor visitor) {
+        for (int i = 0; i < 2 * numRetainedRanges; i += 2) {
+            visitor.visitCells(Address.fromLong(retainedRanges[i]), Address.fromLong(retainedRanges[i + 1]));
+        }
+    }
+
+    /**
+     * Format as dark matter the space between the retained ranges of a range of the evacuated space, so that the range can be parsed
+     * after evacuation.
+     *
+     * @param start start of the range
+     * @param end end of the range
+     * @return the end of the last retained range in the range, or {@code start} if none
+     */
+    Address formatAroundRetainedRanges(Address start, Address end) {
+        Address limit = start;
+        for (int i = 0; i < 2 * numRetainedRanges; i += 2) {
+            final Address rangeStart = Address.fromLong(retainedRanges[i]);
+            final Address rangeEnd = Address.fromLong(retainedRanges[i + 1]);
+            if (rangeEnd.lessEqual(start) || rangeStart.greaterEqual(end)) {
+                continue;
+            }
+            if (rangeStart.greaterThan(limit)) {
+                DarkMatter.format(limit, rangeStart);
+            }
+            limit = rangeEnd;
+        }
+        return limit;
+    }
+
+    public long retainedBytes() {
+        return retainedBytes;
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.HeapSchemeAdaptor.*;
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+import static com.sun.max.vm.heap.gcx.HeapRegionInfo.*;
+import static com.sun.max.vm.heap.gcx.HeapRegionManager.*;
+
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Evacuator compacting the sparsest regions of a {@link FirstFitMarkSweepSpace} after a complete, precise sweep.
+ * The live objects of the selected regions are copied into empty regions of the same space, which are then returned to the space
+ * as empty regions.
+ *
+ * The space doesn't maintain per-region remembered sets. Instead, references to evacuated objects are found by scanning the roots and
+ * all the live objects of the iterable regions of the space, using the color map left by the marking to skip dead objects (which a
+ * precise sweep leaves in place when they are too small to be reclaimed). Hence, compaction must take place during the pause of a full collection,
+ * after the sweep and before the color map is cleared. The number of regions selected is bounded so that the evacuation can never fail for lack
+ * of empty regions to copy to.
+ *
+ * Regions holding pinned objects (see {@link #setPinnedRegions(PinnedRegions)}) are never selected, so that pinned objects don't move.
+ */
+public final class RegionEvacuator extends Evacuator implements CellRangeVisitor {
+    /**
+     * Space whose regions are compacted.
+     */
+    private final FirstFitMarkSweepSpace<?> space;
+
+    /**
+     * Marker whose color map identifies the live objects of the space.
+     */
+    private final TricolorHeapMarker heapMarker;
+
+    /**
+     * Regions selected for evacuation, sorted by increasing amount of live bytes. Only the first {@link #numEvacuatedRegions} are evacuated.
+     */
+    private int [] candidates;
+
+    private int numEvacuatedRegions;
+
+    /**
+     * Fast test of whether a region is under evacuation, indexed by region identifier.
+     */
+    private boolean [] inEvacuatedRegion;
+
+    /**
+     * Ranges of evacuated objects that remain to be scanned.
+     */
+    private SurvivorRangesQueue survivorRanges;
+
+    /**
+     * Region currently used as evacuation buffer, or {@link HeapRegionConstants#INVALID_REGION_ID} if none.
+     */
+    private int labRegion = INVALID_REGION_ID;
+    private Pointer labTop;
+    private Pointer labEnd;
+    /**
+     * Start of the objects copied in the evacuation buffer that haven't been recorded in {@link #survivorRanges} yet.
+     */
+    private Pointer rangeStart;
+
+    private long evacuatedBytes;
+
+    /**
+     * Regions holding pinned objects, or null if objects of the space cannot be pinned.
+     */
+    private PinnedRegions pinnedRegions;
+
+    /**
+     * Closure computing the live bytes and the largest live cell of a region.
+     */
+    private final class LiveCellSizer implements CellVisitor {
+        long liveBytes;
+        int maxCellSize;
+
+        void reset() {
+            liveBytes = 0L;
+            maxCellSize = 0;
+        }
+
+        public Pointer visitCell(Pointer cell) {
+            final Size size = Layout.size(Layout.cellToOrigin(cell));
+            liveBytes += size.toLong();
+            if (size.toInt() > maxCellSize) {
+                maxCellSize = size.toInt();
+            }
+            return cell.plus(size);
+        }
+    }
+
+    private final LiveCellSizer liveCellSizer = new LiveCellSizer();
+
+    public RegionEvacuator(FirstFitMarkSweepSpace<?> space, TricolorHeapMarker heapMarker) {
+        this.space = space;
+        this.heapMarker = heapMarker;
+    }
+
+    /**
+     * Initialize the evacuator. Must be called once the heap region manager is initialized.
+     * @param maxEvacuatedRegions maximum number of regions evacuated by a single compaction
+     */
+    public void initialize(int maxEvacuatedRegions) {
+        candidates = new int[maxEvacuatedRegions];
+        inEvacuatedRegion = new boolean[numberOfRegions(theHeapRegionManager().bounds().size())];
+        // The evacuation buffers hold at most one pending range each, plus the one being filled.
+        survivorRanges = new SurvivorRangesQueue(maxEvacuatedRegions + 2);
+    }
+
+    /**
+     * Exclude the regions pinned in the specified {@link PinnedRegions} from compaction.
+     */
+    public void setPinnedRegions(PinnedRegions pinnedRegions) {
+        this.pinnedRegions = pinnedRegions;
+    }
+
+    /**
+     * Amount of live bytes copied by the last compaction.
+     */
+    public long evacuatedBytes() {
+        return evacuatedBytes;
+    }
+
+    /**
+     * Compact the sparsest regions of the space, if this frees at least one region.
+     *
+     * @param stats statistics used to rank the space's regions
+     * @param maxLivePercent only regions whose live bytes are at most this percentage of the region size are compacted
+     * @return the number of regions freed
+     */
+    public int compact(HeapRegionStatistics stats, int maxLivePercent) {
+        final int maxLiveBytes = (int) ((long) regionSizeInBytes * maxLivePercent / 100);
+        final int numCandidates = space.selectSparsestRegions(stats, maxLiveBytes, pinnedRegions, candidates);
+        final int numEmptyRegions = space.numEmptyRegions();
+        final int minObjectSize = minObjectSize().toInt();
+        long liveBytes = 0L;
+        int maxCellSize = 0;
+        int numBuffers = 0;
+        int numSelected = 0;
+        while (numSelected < numCandidates) {
+            final Address regionStart = fromRegionID(candidates[numSelected]).regionStart();
+            liveCellSizer.reset();
+            heapMarker.visitBlackCells(regionStart, regionStart.plus(regionSizeInBytes), liveCellSizer);
+            final int newMaxCellSize = Math.max(maxCellSize, liveCellSizer.maxCellSize);
+            // An evacuation buffer is retired only when the next object doesn't fit, so it's filled with at least that many bytes.
+            final long minBytesPerBuffer = regionSizeInBytes - newMaxCellSize - minObjectSize;
+            if (minBytesPerBuffer < (regionSizeInBytes >> 1)) {
+                break;
+            }
+            final long newLiveBytes = liveBytes + liveCellSizer.liveBytes;
+            final int newNumBuffers = (int) ((newLiveBytes + minBytesPerBuffer - 1) / minBytesPerBuffer);
+            if (newNumBuffers > numEmptyRegions) {
+                break;
+            }
+            liveBytes = newLiveBytes;
+            maxCellSize = newMaxCellSize;
+            numBuffers = newNumBuffers;
+            numSelected++;
+        }
+        if (numBuffers >= numSelected) {
+            // Nothing to gain.
+            return 0;
+        }
+        for (int i = 0; i < numSelected; i++) {
+            space.takeCompactionRegion(candidates[i]);
+        }
+        numEvacuatedRegions = numSelected;
+        evacuate(false);
+        return numSelected - numBuffers;
+    }
+
+    @Override
+    boolean inEvacuatedArea(Pointer origin) {
+        final int regionID = RegionTable.theRegionTable().regionID(origin);
+        return regionID != INVALID_REGION_ID && inEvacuatedRegion[regionID];
+    }
+
+    private boolean fitsInLAB(Pointer cellEnd) {
+        // Leave either no space or enough space for a dead object at the end of the evacuation buffer.
+        return cellEnd.equals(labEnd) || cellEnd.plus(minObjectSize()).lessEqual(labEnd);
+    }
+
+    private void recordRange() {
+        if (labTop.greaterThan(rangeStart)) {
+            survivorRanges.add(rangeStart, labTop);
+            rangeStart = labTop;
+        }
+    }
+
+    private void retireLAB() {
+        if (labRegion != INVALID_REGION_ID) {
+            recordRange();
+            space.releaseEvacuationRegion(labRegion, labTop, labEnd.minus(labTop).asSize());
+            labRegion = INVALID_REGION_ID;
+        }
+    }
+
+    private void refillLAB() {
+        retireLAB();
+        labRegion = space.takeEvacuationRegion();
+        FatalError.check(labRegion != INVALID_REGION_ID, "Compaction ran out of evacuation regions");
+        labTop = fromRegionID(labRegion).regionStart().asPointer();
+        labEnd = labTop.plus(regionSizeInBytes);
+        rangeStart = labTop;
+    }
+
+    @Override
+    Pointer evacuate(Pointer fromOrigin) {
+        final Pointer fromCell = Layout.originToCell(fromOrigin);
+        final Size size = Layout.size(fromOrigin);
+        Pointer toCell = labTop;
+        if (!fitsInLAB(toCell.plus(size))) {
+            refillLAB();
+            toCell = labTop;
+        }
+        labTop = toCell.plus(size);
+        evacuatedBytes += size.toLong();
+        Memory.copyBytes(fromCell, toCell, size);
+        return Layout.cellToOrigin(toCell);
+    }
+
+    @Override
+    protected void doBeforeEvacuation() {
+        for (int i = 0; i < numEvacuatedRegions; i++) {
+            inEvacuatedRegion[candidates[i]] = true;
+        }
+        labRegion = INVALID_REGION_ID;
+        labTop = Pointer.zero();
+        labEnd = Pointer.zero();
+        rangeStart = Pointer.zero();
+        evacuatedBytes = 0L;
+        // Special references were processed by the marking: their referents are either cleared or live.
+        disableSpecialRefDiscovery();
+    }
+
+    /**
+     * Scan the live objects of the space's iterable regions. The regions under evacuation and the evacuation buffers are in the allocating state, hence not iterated over.
+     */
+    @Override
+    protected void evacuateFromRSets() {
+        space.iterateRegions(this);
+    }
+
+    public void visitCells(Address start, Address end) {
+        heapMarker.visitBlackCells(start, end, this);
+    }
+
+    @Override
+    protected void evacuateReachables() {
+        recordRange();
+        while (!survivorRanges.isEmpty()) {
+            final Pointer start = survivorRanges.start();
+            final Pointer end = survivorRanges.end();
+            survivorRanges.remove();
+            evacuateRange(start, end);
+            recordRange();
+        }
+    }
+
+    @Override
+    protected void doAfterEvacuation() {
+        retireLAB();
+        for (int i = 0; i < numEvacuatedRegions; i++) {
+            inEvacuatedRegion[candidates[i]] = false;
+        }
+        numEvacuatedRegions = 0;
+        survivorRanges.clear();
+        space.endCompaction();
+    }
+}
@@ -43,6 +43,7 @@ import com.sun.max.vm.reference.*;
  * or to test it against the finger to decide whether to mark it grey or push it on the marking stack.
  * We can just blindingly mark grey any references to the covered area,
  * and update the leftmost and rightmost marked positions.
+ * The exception is the remark pause of a concurrent marking cycle, where only white cells are marked grey.
  */
 abstract class RootCellVisitor extends PointerIndexVisitor implements CellVisitor {
 
@@ -58,6 +59,18 @@ abstract class RootCellVisitor extends PointerIndexVisitor implements CellVisito
 
     protected Address bottom;
 
+    /**
+     * Indicates that roots are marked for the initial mark of a concurrent marking cycle.
+     * Special references aren't discovered then, but during the remark.
+     */
+    boolean initialMarking;
+
+    /**
+     * Indicates that roots are marked for the remark of a concurrent marking cycle.
+     * Black marks may exist, so only white cells are marked grey.
+     */
+    boolean remarking;
+
     RootCellVisitor() {
     }
 
@@ -75,10 +88,17 @@ abstract class RootCellVisitor extends PointerIndexVisitor implements CellVisito
     final void markExternalRoot(Pointer cell) {
         // Note: the first test also acts as a null pointer filter.
         if (cell.greaterEqual(bottom) && isNonNullCovered(cell)) {
-            heapMarker.markGrey(cell);
+            if (remarking) {
+                if (!heapMarker.markGreyIfWhite(cell)) {
+                    return;
+                }
+            } else {
+                heapMarker.markGrey(cell);
+            }
             if (cell.lessThan(leftmost)) {
                 leftmost = cell;
-            } else if (cell.greaterThan(rightmost)) {
+            }
+            if (cell.greaterThan(rightmost)) {
                 rightmost = cell;
             }
         }
@@ -110,7 +130,7 @@ abstract class RootCellVisitor extends PointerIndexVisitor implements CellVisito
         final SpecificLayout specificLayout = hub.specificLayout;
         if (specificLayout == Layout.tupleLayout()) {
             TupleReferenceMap.visitReferences(hub, origin, this);
-            if (hub.isJLRReference) {
+            if (hub.isJLRReference && !initialMarking) {
                 SpecialReferenceManager.discoverSpecialReference(cell);
             }
             return cell.plus(hub.tupleSize);
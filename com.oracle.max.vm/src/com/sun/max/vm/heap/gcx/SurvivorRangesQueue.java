@@ -64,7 +64,7 @@ public class SurvivorRangesQueue {
      * @param end end of the range.
      * @return true if the range was added, false if the queue is full and cannot accept the range.
      */
-    boolean add(Address start, Address end) {
+    public boolean add(Address start, Address end) {
         if (size > 0) {
             int i = head > 0 ? head - 1 : queue.length - 1;
             if (start.toLong() == queue[i]) {
@@ -90,11 +90,11 @@ public class SurvivorRangesQueue {
      * Return a boolean value indicating if the queue is empty.
      * @return true if the queue is empty, false otherwise
      */
-    boolean isEmpty() {
+    public boolean isEmpty() {
         return size == 0;
     }
 
-    boolean isFull() {
+    public boolean isFull() {
         return size == queue.length;
     }
 
@@ -102,21 +102,21 @@ public class SurvivorRangesQueue {
      * Total number of ranges the queue can hold.
      * @return the capacity of the queue
      */
-    int capacity() {
+    public int capacity() {
         return queue.length >> 1;
     }
 
     /**
      * Number of ranges in the queue.
      */
-    int size() {
+    public int size() {
         return size;
     }
 
     /**
      * Remove the range at the head of the queue.
      */
-    void remove() {
+    public void remove() {
         if (isEmpty()) {
             return;
         }
@@ -144,7 +144,7 @@ public class SurvivorRangesQueue {
      * Retrieve the start of the range at the head of the queue, but do not remove the range.
      * @return a pointer to a cell beginning a survivor range
      */
-    Pointer start() {
+    public Pointer start() {
         return Pointer.fromLong(queue[tail()]);
     }
 
@@ -152,11 +152,11 @@ public class SurvivorRangesQueue {
      * Retrieve the end of the range at the head of the queue, but do not remove the range.
      * @return a pointer to the end of a cell ending a survivor range
      */
-    Pointer end() {
+    public Pointer end() {
         return Pointer.fromLong(queue[tail() + 1]);
     }
 
-    void clear() {
+    public void clear() {
         size = 0;
         head = 0;
     }
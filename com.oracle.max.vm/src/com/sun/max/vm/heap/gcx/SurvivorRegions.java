@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Survivor regions of an aging nursery.
+ *
+ * Survivors of a minor collection that haven't reached the tenuring threshold are copied to survivor regions instead of being promoted to the old generation.
+ * Object headers have no room for an age, so objects are aged by cohort: all the objects of a survivor region have the same age, namely the number of
+ * minor collections they have survived. Objects allocated in the eden have age zero.
+ * Every minor collection evacuates all the survivor regions along with the eden: a survivor of age n is either copied to a survivor region of age n + 1, or promoted
+ * if n has reached the tenuring threshold.
+ *
+ * The survivor regions form a contiguous range of the nursery, so that testing whether an address is in a survivor region
+ * and retrieving the age of its region only takes a shift and an array lookup.
+ * The range must be large enough to hold the survivors being evacuated and the ones being copied. Survivors that do not fit are promoted.
+ *
+ * The tenuring threshold is adapted after each minor collection based on survivor occupancy: it is set to the lowest age at which the cumulated survivor bytes
+ * of that age and younger exceeds {@link #TargetSurvivorPercent} of half the survivor regions, capped by the maximum tenuring threshold.
+ */
+public final class SurvivorRegions {
+    /**
+     * Upper bound on the maximum tenuring threshold.
+     */
+    public static final int MAX_TENURING_THRESHOLD = 15;
+
+    static int TargetSurvivorPercent = 50;
+    static {
+        VMOptions.addFieldOption("-XX:", "TargetSurvivorPercent", SurvivorRegions.class,
+                        "Desired percentage of survivor space used after a minor collection, used to adapt the tenuring threshold", Phase.PRISTINE);
+    }
+
+    /**
+     * Start of the range of survivor regions.
+     */
+    private Address start;
+
+    /**
+     * End of the range of survivor regions.
+     */
+    private Address end;
+
+    /**
+     * Age of the survivors of each region of the range. Zero if the region is free.
+     * During evacuation, regions filled with survivors of the current evacuation hold the negated age of their survivors.
+     */
+    private int[] regionAges;
+
+    /**
+     * Top of the allocated space of each region of the range.
+     */
+    private long[] regionTops;
+
+    /**
+     * Allocation hand in the current region of each age.
+     */
+    private long[] tops;
+
+    /**
+     * End of the current region of each age.
+     */
+    private long[] ends;
+
+    /**
+     * Start of the allocated space of the current region of each age not yet recorded for scanning.
+     */
+    private long[] rangeStarts;
+
+    /**
+     * Number of bytes copied to survivor regions of each age during the last evacuation.
+     */
+    private long[] survivorBytes;
+
+    private int numFreeRegions;
+
+    /**
+     * Hint to the next free region.
+     */
+    private int nextFreeRegion;
+
+    private int maxTenuringThreshold;
+
+    private int tenuringThreshold;
+
+    /**
+     * Initialize the survivor regions.
+     *
+     * @param start address of the first survivor region
+     * @param numRegions number of survivor regions, at least two
+     * @param maxTenuringThreshold maximum number of minor collections an object may survive before being promoted
+     */
+    public void initialize(Address start, int numRegions, int maxTenuringThreshold) {
+        FatalError.check(numRegions >= 2, "Survivor space must have at least two regions");
+        FatalError.check(maxTenuringThreshold > 0 && maxTenuringThreshold <= MAX_TENURING_THRESHOLD, "Invalid tenuring threshold");
+        FatalError.check(TargetSurvivorPercent > 0 && TargetSurvivorPercent <= 100, "Not a valid percentage of survivor space");
+        this.start = start;
+        this.end = start.plus(Address.fromInt(numRegions).shiftedLeft(log2RegionSizeInBytes));
+        this.maxTenuringThreshold = maxTenuringThreshold;
+        this.tenuringThreshold = maxTenuringThreshold;
+        regionAges = new int[numRegions];
+        regionTops = new long[numRegions];
+        tops = new long[maxTenuringThreshold + 1];
+        ends = new long[maxTenuringThreshold + 1];
+        rangeStarts = new long[maxTenuringThreshold + 1];
+        survivorBytes = new long[maxTenuringThreshold + 1];
+        numFreeRegions = numRegions;
+        nextFreeRegion = 0;
+    }
+
+    @INLINE
+    private int regionIndex(Address address) {
+        return address.minus(start).unsignedShiftedRight(log2RegionSizeInBytes).toInt();
+    }
+
+    @INLINE
+    private Address regionStart(int regionIndex) {
+        return start.plus(Address.fromInt(regionIndex).shiftedLeft(log2RegionSizeInBytes));
+    }
+
+    @INLINE
+    public boolean contains(Address address) {
+        return address.greaterEqual(start) && address.lessThan(end);
+    }
+
+    /**
+     * Indicates whether an address is in a survivor region evacuated by the current evacuation.
+     * Outside of evacuation, this is true for any address of an occupied survivor region.
+     */
+    @INLINE
+    public boolean inEvacuatedRegion(Address address) {
+        return contains(address) && regionAges[regionIndex(address)] > 0;
+    }
+
+    /**
+     * Age of an object being evacuated.
+     * @param cell cell of an object in the evacuated area
+     * @return the number of minor collections the object survived so far
+     */
+    @INLINE
+    public int ageOf(Address cell) {
+        return contains(cell) ? regionAges[regionIndex(cell)] : 0;
+    }
+
+    /**
+     * Indicates whether objects of the specified age must be promoted.
+     */
+    @INLINE
+    public boolean mustPromote(int age) {
+        return age >= tenuringThreshold;
+    }
+
+    public int tenuringThreshold() {
+        return tenuringThreshold;
+    }
+
+    /**
+     * Allocate space in the current survivor region of the specified age.
+     *
+     * @param age age of the survivor
+     * @param size size of the survivor
+     * @return a pointer to the allocated cell, or zero if the current region of that age cannot hold the survivor.
+     */
+    @INLINE
+    public Pointer allocate(int age, Size size) {
+        final Pointer cell = Pointer.fromLong(tops[age]);
+        final Pointer newTop = cell.plus(size);
+        if (newTop.greaterThan(Address.fromLong(ends[age]))) {
+            return Pointer.zero();
+        }
+        tops[age] = newTop.toLong();
+        survivorBytes[age] += size.toLong();
+        return cell;
+    }
+
+    /**
+     * Start of the space allocated in the current survivor region of the specified age that hasn't been recorded for scanning yet.
+     */
+    public Address rangeStart(int age) {
+        return Address.fromLong(rangeStarts[age]);
+    }
+
+    /**
+     * Allocation hand of the current survivor region of the specified age.
+     */
+    public Address top(int age) {
+        return Address.fromLong(tops[age]);
+    }
+
+    /**
+     * Notify that the space allocated so far in the current survivor region of the specified age is recorded for scanning.
+     */
+    public void rangeRecorded(int age) {
+        rangeStarts[age] = tops[age];
+    }
+
+    private void retire(int age) {
+        if (ends[age] != 0L) {
+            regionTops[regionIndex(Address.fromLong(ends[age] - 1))] = tops[age];
+        }
+    }
+
+    /**
+     * Replace the current survivor region of the specified age with a free one.
+     * The space allocated in the current region must have been recorded for scanning (see {@link #rangeRecorded(int)}).
+     *
+     * @param age age of the survivor the refill is for
+     * @param size size of the survivor the refill is for
+     * @return true if the region was replaced, false if there are no free regions or if the survivor is larger than a region
+     */
+    public boolean refill(int age, Size size) {
+        if (numFreeRegions == 0 || size.greaterThan(regionSizeInBytes)) {
+            return false;
+        }
+        retire(age);
+        int i = nextFreeRegion;
+        while (regionAges[i] != 0) {
+            if (++i == regionAges.length) {
+                i = 0;
+            }
+        }
+        regionAges[i] = -age;
+        numFreeRegions--;
+        nextFreeRegion = i + 1 == regionAges.length ? 0 : i + 1;
+        final Address regionStart = regionStart(i);
+        tops[age] = regionStart.toLong();
+        rangeStarts[age] = regionStart.toLong();
+        ends[age] = regionStart.plus(regionSizeInBytes).toLong();
+        return true;
+    }
+
+    /**
+     * Must be called before evacuation starts.
+     */
+    public void doBeforeEvacuation() {
+        for (int age = 0; age <= maxTenuringThreshold; age++) {
+            tops[age] = 0L;
+            ends[age] = 0L;
+            rangeStarts[age] = 0L;
+            survivorBytes[age] = 0L;
+        }
+    }
+
+    /**
+     * Must be called once evacuation is complete. Free the evacuated survivor regions, make the survivor regions filled during
+     * evacuation the evacuated regions of the next evacuation, and adapt the tenuring threshold.
+     */
+    public void doAfterEvacuation() {
+        for (int age = 1; age <= maxTenuringThreshold; age++) {
+            retire(age);
+        }
+        for (int i = 0; i < regionAges.length; i++) {
+            if (regionAges[i] > 0) {
+                regionAges[i] = 0;
+                regionTops[i] = 0L;
+                numFreeRegions++;
+            } else {
+                regionAges[i] = -regionAges[i];
+            }
+        }
+        adjustTenuringThreshold();
+    }
+
+    private void adjustTenuringThreshold() {
+        final long desiredSurvivorBytes = (totalSpace().toLong() >> 1) * TargetSurvivorPercent / 100;
+        long cumulatedSurvivorBytes = 0L;
+        int age = 1;
+        while (age < maxTenuringThreshold) {
+            cumulatedSurvivorBytes += survivorBytes[age];
+            if (cumulatedSurvivorBytes > desiredSurvivorBytes) {
+                break;
+            }
+            age++;
+        }
+        tenuringThreshold = age;
+        if (Heap.verbose()) {
+            Log.print("Tenuring threshold ");
+            Log.print(tenuringThreshold);
+            Log.print(" (max ");
+            Log.print(maxTenuringThreshold);
+            Log.println(")");
+        }
+    }
+
+    public Size totalSpace() {
+        return end.minus(start).asSize();
+    }
+
+    public Size usedSpace() {
+        long usedBytes = 0L;
+        for (int i = 0; i < regionAges.length; i++) {
+            if (regionAges[i] != 0) {
+                usedBytes += regionTops[i] - regionStart(i).toLong();
+            }
+        }
+        return Size.fromLong(usedBytes);
+    }
+
+    /**
+     * Visit the survivors of the occupied survivor regions.
+     */
+    public void visit(CellRangeVisitor visitor) {
+        for (int i = 0; i < regionAges.length; i++) {
+            if (regionAges[i] != 0) {
+                final Address regionStart = regionStart(i);
+                final Address regionTop = Address.fromLong(regionTops[i]);
+                if (regionTop.greaterThan(regionStart)) {
+                    visitor.visitCells(regionStart, regionTop);
+                }
+            }
+        }
+    }
+
+    public Address start() {
+        return start;
+    }
+
+    public Address end() {
+        return end;
+    }
+}
@@ -31,6 +31,8 @@ import com.sun.max.vm.MaxineVM.Phase;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.code.*;
 import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.GCTelemetry.GCPhase;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
 import com.sun.max.vm.layout.*;
 import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
@@ -176,6 +178,12 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
      */
     static boolean VerifyGreyLessAreas = false;
 
+    /**
+     * Enables parallel tracing of the heap with the {@link GCWorkerGang} when GC worker threads are available.
+     * @see ParallelMarking
+     */
+    static boolean UseParallelMarking = true;
+
     /**
      * A ready-to-use option to try new code.
      */
@@ -186,6 +194,7 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         VMOptions.addFieldOption("-XX:", "UseDeepMarkStackFlush", TricolorHeapMarker.class, "Visit flushed cells and mark their reference grey when flushing the mark stack", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "VerifyAfterMarking", TricolorHeapMarker.class, "Verify absence of grey bits after marking is completed", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "VerifyGreyLessAreas", TricolorHeapMarker.class, "Verify absence of grey bits in areas that shouldn't have any grey objects", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "UseParallelMarking", TricolorHeapMarker.class, "Trace the heap in parallel with the GC worker threads", Phase.PRISTINE);
 
         VMOptions.addFieldOption("-XX:", "UseNewCode", TricolorHeapMarker.class, "Use new refactored code)", Phase.PRISTINE);
     }
@@ -195,6 +204,7 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         SCAN_BOOT_HEAP("B", "Marking roots from boot heap"),
         SCAN_CODE("C", "Marking roots from code"),
         SCAN_IMMORTAL("I", "Marking roots from immortal heap"),
+        SCAN_DIRTY_CARDS("R", "Marking grey cells of dirty cards"),
         VISIT_GREY_FORWARD("V", "Tracing grey objects"),
         SPECIAL_REF("W", "Processing special references"),
         DONE("D", "");
@@ -315,6 +325,11 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
      */
     final MarkingStack markingStack;
 
+    /**
+     * Parallel tracing support. Null if the heap marker is a surrogate created for inspection.
+     */
+    final ParallelMarking parallelMarking;
+
     private final TimerMetric rootScanTimer = new TimerMetric(new SingleUseTimer(HeapScheme.GC_TIMING_CLOCK));
     private final TimerMetric bootHeapScanTimer = new TimerMetric(new SingleUseTimer(HeapScheme.GC_TIMING_CLOCK));
     private final TimerMetric codeScanTimer = new TimerMetric(new SingleUseTimer(HeapScheme.GC_TIMING_CLOCK));
@@ -417,15 +432,17 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         }
     }
 
-    void startTimer(Timer timer) {
+    void startTimer(Timer timer, GCPhase phase) {
+        GCTelemetry.beginPhase(phase);
         if (traceGCTimes) {
             timer.start();
         }
     }
-    void stopTimer(Timer timer) {
+    void stopTimer(Timer timer, GCPhase phase) {
         if (traceGCTimes) {
             timer.stop();
         }
+        GCTelemetry.endPhase(phase);
     }
 
     public void reportLastElapsedTimes() {
@@ -520,6 +537,7 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         bitmapWordBoundaryMask = Address.fromInt(1).shiftedLeft(log2BytesCoveredPerBit + Word.widthValue().log2numberOfBits).minus(1).not();
         colorMap = new MemoryRegion("Mark Bitmap");
         markingStack = null;
+        parallelMarking = null;
         rootCellVisitor = null;
         heapRootsScanner = null;
         overflowLinearScanState = null;
@@ -539,6 +557,7 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         colorMap = new MemoryRegion("Mark Bitmap");
         markingStack = new MarkingStack();
         markingStack.setOverflowHandler(this);
+        parallelMarking = new ParallelMarking(this);
         this.rootCellVisitor = rootCellVisitor;
         rootCellVisitor.initialize(this);
         heapRootsScanner = new SequentialHeapRootsScanner(rootCellVisitor);
@@ -583,6 +602,9 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
                 overflowScanState = overflowLinearScanState;
             }
             overflowScanState.initialize();
+            if (UseParallelMarking && GCWorkerGang.gang().maxParticipants() > 1) {
+                parallelMarking.initialize();
+            }
         }
     }
 
@@ -741,6 +763,63 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markBlackFromGrey(bitIndex);
     }
 
+    /**
+     * Atomically set bits of a word of the color map.
+     */
+    @INLINE
+    private static void atomicSetBits(Pointer bitmapWordPointer, long bits) {
+        long bitmapWord;
+        do {
+            bitmapWord = bitmapWordPointer.getLong(0);
+        } while (bitmapWordPointer.compareAndSwapLong(0, bitmapWord, bitmapWord | bits) != bitmapWord);
+    }
+
+    /**
+     * Atomically paint grey a white color location. Used when several threads may race to mark the same location.
+     * The race is decided on the first bit of the color. If the color spans two words, the second bit is set
+     * once the race is won: only the winner may then visit the cell, so other threads never observe the transient black color.
+     *
+     * @param bitIndex bit index of the color location
+     * @return true if the location was white and was painted grey by the caller, false otherwise.
+     */
+    final boolean atomicMarkGreyIfWhite(int bitIndex) {
+        final int bitIndexInWord = bitIndexInWord(bitIndex);
+        final Pointer bitmapWordPointer = bitmapWordPointerAt(bitIndex);
+        final long blackBit = bitmaskFor(bitIndexInWord);
+        final long colorBits = bitIndexInWord == LAST_BIT_INDEX_IN_WORD ? blackBit : GREY << bitIndexInWord;
+        long bitmapWord;
+        do {
+            bitmapWord = bitmapWordPointer.getLong(0);
+            if ((bitmapWord & blackBit) != 0L) {
+                return false;
+            }
+        } while (bitmapWordPointer.compareAndSwapLong(0, bitmapWord, bitmapWord | colorBits) != bitmapWord);
+        if (bitIndexInWord == LAST_BIT_INDEX_IN_WORD) {
+            atomicSetBits(bitmapWordPointer.plus(Word.size()), 1L);
+        }
+        return true;
+    }
+
+    /**
+     * Atomically paint black a grey color location.
+     *
+     * @param bitIndex bit index of the color location
+     * @return true if the location was grey and was painted black by the caller, false otherwise.
+     */
+    final boolean atomicMarkBlackFromGrey(int bitIndex) {
+        final int greyBitIndex = bitIndex + 1;
+        final Pointer bitmapWordPointer = bitmapWordPointerAt(greyBitIndex);
+        final long greyBit = bitmaskFor(greyBitIndex);
+        long bitmapWord;
+        do {
+            bitmapWord = bitmapWordPointer.getLong(0);
+            if ((bitmapWord & greyBit) == 0L) {
+                return false;
+            }
+        } while (bitmapWordPointer.compareAndSwapLong(0, bitmapWord, bitmapWord & ~greyBit) != bitmapWord);
+        return true;
+    }
+
     final boolean isGrey(int bitIndex) {
         int bitIndexInWord = bitIndexInWord(bitIndex);
         if (bitIndexInWord == LAST_BIT_INDEX_IN_WORD) {
@@ -767,6 +846,87 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         return (bitmapWordAt(bitIndex) & bitmaskFor(bitIndex)) == 0;
     }
 
+    /**
+     * Return the index of the first set bit of the color map in the specified range (regardless of color logic).
+     * @param fromBitIndex index of the first bit of the range
+     * @param limitBitIndex index of the bit after the range
+     * @return the index of the first set bit, or -1 if no bit is set in the range
+     */
+    final int nextSetBit(int fromBitIndex, int limitBitIndex) {
+        final Pointer colorMapBase = base.asPointer();
+        int wordIndex = bitmapWordIndex(fromBitIndex);
+        long bitmapWord = colorMapBase.getLong(wordIndex) & (-1L << bitIndexInWord(fromBitIndex));
+        while (bitmapWord == 0L) {
+            wordIndex++;
+            if ((wordIndex << Word.widthValue().log2numberOfBits) >= limitBitIndex) {
+                return -1;
+            }
+            bitmapWord = colorMapBase.getLong(wordIndex);
+        }
+        final int bitIndex = (wordIndex << Word.widthValue().log2numberOfBits) + Pointer.fromLong(bitmapWord).leastSignificantBitSet();
+        return bitIndex < limitBitIndex ? bitIndex : -1;
+    }
+
+    /**
+     * Return the index of the first clear bit of the color map at or after the specified index (regardless of color logic).
+     * @param fromBitIndex a bit index
+     * @return the index of the first clear bit
+     */
+    final int nextClearBit(int fromBitIndex) {
+        final Pointer colorMapBase = base.asPointer();
+        int wordIndex = bitmapWordIndex(fromBitIndex);
+        long bitmapWord = ~colorMapBase.getLong(wordIndex) & (-1L << bitIndexInWord(fromBitIndex));
+        while (bitmapWord == 0L) {
+            wordIndex++;
+            bitmapWord = ~colorMapBase.getLong(wordIndex);
+        }
+        return (wordIndex << Word.widthValue().log2numberOfBits) + Pointer.fromLong(bitmapWord).leastSignificantBitSet();
+    }
+
+    /**
+     * Return the index of the last set bit of the color map in the specified range (regardless of color logic).
+     * @param fromBitIndex index of the last bit of the range
+     * @param lowestBitIndex index of the first bit of the range
+     * @return the index of the last set bit, or -1 if no bit is set in the range
+     */
+    final int previousSetBit(int fromBitIndex, int lowestBitIndex) {
+        final Pointer colorMapBase = base.asPointer();
+        final int lowestWordIndex = bitmapWordIndex(lowestBitIndex);
+        int wordIndex = bitmapWordIndex(fromBitIndex);
+        long bitmapWord = colorMapBase.getLong(wordIndex) & (-1L >>> (LAST_BIT_INDEX_IN_WORD - bitIndexInWord(fromBitIndex)));
+        while (bitmapWord == 0L) {
+            if (wordIndex <= lowestWordIndex) {
+                return -1;
+            }
+            wordIndex--;
+            bitmapWord = colorMapBase.getLong(wordIndex);
+        }
+        final int bitIndex = (wordIndex << Word.widthValue().log2numberOfBits) + Pointer.fromLong(bitmapWord).mostSignificantBitSet();
+        return bitIndex >= lowestBitIndex ? bitIndex : -1;
+    }
+
+    /**
+     * Return the index of the last clear bit of the color map in the specified range (regardless of color logic).
+     * @param fromBitIndex index of the last bit of the range
+     * @param lowestBitIndex index of the first bit of the range
+     * @return the index of the last clear bit, or {@code lowestBitIndex - 1} if all the bits of the range are set
+     */
+    final int previousClearBit(int fromBitIndex, int lowestBitIndex) {
+        final Pointer colorMapBase = base.asPointer();
+        final int lowestWordIndex = bitmapWordIndex(lowestBitIndex);
+        int wordIndex = bitmapWordIndex(fromBitIndex);
+        long bitmapWord = ~colorMapBase.getLong(wordIndex) & (-1L >>> (LAST_BIT_INDEX_IN_WORD - bitIndexInWord(fromBitIndex)));
+        while (bitmapWord == 0L) {
+            if (wordIndex <= lowestWordIndex) {
+                return lowestBitIndex - 1;
+            }
+            wordIndex--;
+            bitmapWord = ~colorMapBase.getLong(wordIndex);
+        }
+        final int bitIndex = (wordIndex << Word.widthValue().log2numberOfBits) + Pointer.fromLong(bitmapWord).mostSignificantBitSet();
+        return bitIndex >= lowestBitIndex ? bitIndex : lowestBitIndex - 1;
+    }
+
     /**
      * Check the color map for a white object. Thanks to the color encoding, it only needs to
      * check the lowest bit of the two-bit color, i.e., the bit corresponding to the cell address. As a result, no special care is needed
@@ -1305,31 +1465,31 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         // This only needs setting grey marks blindly (there are no black mark at this stage).
         markPhase = MARK_PHASE.SCAN_THREADS;
         markPhase.traceBegin(traceGCPhases);
-        startTimer(rootScanTimer);
+        startTimer(rootScanTimer, GCPhase.ROOT_SCAN);
         heapRootsScanner.run();
-        stopTimer(rootScanTimer);
+        stopTimer(rootScanTimer, GCPhase.ROOT_SCAN);
         markPhase.traceEnd(traceGCPhases);
 
         // Next, mark all reachable from the boot area.
         markPhase = MARK_PHASE.SCAN_BOOT_HEAP;
         markPhase.traceBegin(traceGCPhases);
-        startTimer(bootHeapScanTimer);
+        startTimer(bootHeapScanTimer, GCPhase.ROOT_SCAN);
         markBootHeap();
-        stopTimer(bootHeapScanTimer);
+        stopTimer(bootHeapScanTimer, GCPhase.ROOT_SCAN);
         markPhase.traceEnd(traceGCPhases);
 
         markPhase = MARK_PHASE.SCAN_CODE;
         markPhase.traceBegin(traceGCPhases);
-        startTimer(codeScanTimer);
+        startTimer(codeScanTimer, GCPhase.ROOT_SCAN);
         markCode();
-        stopTimer(codeScanTimer);
+        stopTimer(codeScanTimer, GCPhase.ROOT_SCAN);
         markPhase.traceEnd(traceGCPhases);
 
         markPhase = MARK_PHASE.SCAN_IMMORTAL;
         markPhase.traceBegin(traceGCPhases);
-        startTimer(immortalSpaceScanTimer);
+        startTimer(immortalSpaceScanTimer, GCPhase.ROOT_SCAN);
         markImmortalHeap();
-        stopTimer(immortalSpaceScanTimer);
+        stopTimer(immortalSpaceScanTimer, GCPhase.ROOT_SCAN);
         markPhase.traceEnd(traceGCPhases);
     }
 
@@ -1506,6 +1666,25 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         visitGreyObjects();
     }
 
+    /**
+     * Visit in parallel all objects marked grey during root marking.
+     * Leave the forward scan state as if a sequential forward scan was completed, i.e., with the finger on the rightmost marked object,
+     * so that subsequent sequential tracing (e.g., of objects reachable from special references) proceeds as usual.
+     *
+     * @param regionsRanges an enumeration of the heap region ranges holding objects to trace, or null if objects may be anywhere in the covered area
+     */
+    private void parallelVisitGreyObjectsAfterRootMarking(HeapRegionRangeIterable regionsRanges) {
+        initAfterRootMarking();
+        if (rootCellVisitor.leftmost.greaterThan(rootCellVisitor.rightmost)) {
+            // Nothing marked.
+            forwardScanState.finger = forwardScanState.rightmost;
+            return;
+        }
+        final Address rightmost = parallelMarking.visitGreyObjects(rootCellVisitor.leftmost, rootCellVisitor.rightmost, regionsRanges);
+        forwardScanState.rightmost = rightmost;
+        forwardScanState.finger = rightmost;
+    }
+
 
     /**
      * Find the first black mark in the specified range of the color map.
@@ -1533,6 +1712,50 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         return -1;
     }
 
+    /**
+     * Find the first black mark at or after the specified bit index, ignoring marks of the same bitmap word that precede it.
+     * @param firstBitIndex index in the color map to the first bit of the range to scan
+     * @param lastBitIndex index in the color map to the end of the range to scan (exclusive)
+     * @return bit index in the color map to the first live mark, or -1 if there is no black mark in the range.
+     */
+    private int nextBlackMark(int firstBitIndex, int lastBitIndex) {
+        if (firstBitIndex >= lastBitIndex) {
+            return -1;
+        }
+        final Pointer colorMapBase = base.asPointer();
+        final int lastBitmapWordIndex = bitmapWordIndex(lastBitIndex - 1);
+        int bitmapWordIndex = bitmapWordIndex(firstBitIndex);
+        long bitmapWord = colorMapBase.getLong(bitmapWordIndex) & (-1L << (firstBitIndex & LAST_BIT_INDEX_IN_WORD));
+        while (bitmapWord == 0) {
+            if (++bitmapWordIndex > lastBitmapWordIndex) {
+                return -1;
+            }
+            bitmapWord = colorMapBase.getLong(bitmapWordIndex);
+        }
+        final int bitIndexOfCell = (bitmapWordIndex << Word.widthValue().log2numberOfBits) + Pointer.fromLong(bitmapWord).leastSignificantBitSet();
+        return bitIndexOfCell < lastBitIndex ? bitIndexOfCell : -1;
+    }
+
+    /**
+     * Visit the live cells of a range of the covered area, in address order. Dead cells are skipped using the color map, without
+     * being read. Must only be used after marking completed, when there are no grey marks left, and before the color map is cleared.
+     *
+     * @param start start of the range
+     * @param end end of the range
+     * @param cellVisitor visitor applied to each live cell whose first word is in the range
+     */
+    public void visitBlackCells(Address start, Address end, CellVisitor cellVisitor) {
+        final int lastBitIndex = bitIndexOf(end);
+        int bitIndex = nextBlackMark(bitIndexOf(start), lastBitIndex);
+        while (bitIndex >= 0) {
+            final Pointer endOfCell = cellVisitor.visitCell(addressOf(bitIndex).asPointer());
+            if (endOfCell.greaterEqual(end)) {
+                return;
+            }
+            bitIndex = nextBlackMark(bitIndexOf(endOfCell), lastBitIndex);
+        }
+    }
+
     private void preciseSweep(Sweeper sweeper, int leftmostBitIndex, int rightmostBitIndex) {
         final Pointer colorMapBase = base.asPointer();
         final int rightmostBitmapWordIndex = bitmapWordIndex(rightmostBitIndex);
@@ -1633,18 +1856,35 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
      * This can server region-based heap as well as contiguous heap, wherein a single region is passed in this case.
      */
     public void sweep(HeapRegionSweeper regionsSweeper, boolean doImprecise) {
-        final Address endOfRightmostLiveObject = endOfCell(forwardScanState.rightmost);
-        do {
-            assert regionsSweeper.hasNextSweepingRegion();
-            regionsSweeper.beginSweep();
-            if (doImprecise) {
-                impreciseRegionSweep(regionsSweeper);
-            } else {
-                preciseRegionSweep(regionsSweeper);
-            }
-            regionsSweeper.endSweep();
-        } while(regionsSweeper.endOfSweepingRegion().lessThan(endOfRightmostLiveObject));
+        while (sweepNextRegion(regionsSweeper, doImprecise)) {
+        }
+    }
+
+    /**
+     * Sweep the next region of the heap region sweeper, i.e., the region at the head of its sweeping list.
+     * This lets a region-based heap sweep lazily, one region at a time, between the end of a marking and the beginning of the next one,
+     * as long as the color map isn't modified in the meantime. Regions must be swept in address order.
+     *
+     * @param regionsSweeper the sweeper recording dead space
+     * @param doImprecise true if the region should be swept imprecisely
+     * @return true if there are more regions to sweep, false if the rightmost live region was reached
+     */
+    public boolean sweepNextRegion(HeapRegionSweeper regionsSweeper, boolean doImprecise) {
+        assert regionsSweeper.hasNextSweepingRegion();
+        GCTelemetry.beginPhase(GCPhase.SWEEP);
+        regionsSweeper.beginSweep();
+        if (doImprecise) {
+            impreciseRegionSweep(regionsSweeper);
+        } else {
+            preciseRegionSweep(regionsSweeper);
+        }
+        regionsSweeper.endSweep();
+        GCTelemetry.endPhase(GCPhase.SWEEP);
+        if (regionsSweeper.endOfSweepingRegion().lessThan(endOfCell(forwardScanState.rightmost))) {
+            return true;
+        }
         regionsSweeper.reachedRightmostLiveRegion();
+        return false;
     }
 
     /**
@@ -1786,9 +2026,13 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
 
         markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
         markPhase.traceBegin(traceGCPhases);
-        startTimer(heapMarkingTimer);
-        visitGreyObjectsAfterRootMarking();
-        stopTimer(heapMarkingTimer);
+        startTimer(heapMarkingTimer, GCPhase.MARK);
+        if (parallelMarking.isEnabled()) {
+            parallelVisitGreyObjectsAfterRootMarking(null);
+        } else {
+            visitGreyObjectsAfterRootMarking();
+        }
+        stopTimer(heapMarkingTimer, GCPhase.MARK);
         markPhase.traceEnd(traceGCPhases);
 
         if (traceGCTimes) {
@@ -1802,10 +2046,10 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
 
         markPhase = MARK_PHASE.SPECIAL_REF;
         markPhase.traceBegin(traceGCPhases);
-        startTimer(weakRefTimer);
+        startTimer(weakRefTimer, GCPhase.REFERENCE_PROCESSING);
         SpecialReferenceManager.processDiscoveredSpecialReferences(forwardScanState);
         visitGreyObjects();
-        stopTimer(weakRefTimer);
+        stopTimer(weakRefTimer, GCPhase.REFERENCE_PROCESSING);
         markPhase.traceEnd(traceGCPhases);
 
         if (VerifyAfterMarking) {
@@ -1832,9 +2076,13 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
 
         markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
         markPhase.traceBegin(traceGCPhases);
-        startTimer(heapMarkingTimer);
-        visitGreyObjectsAfterRootMarking(regionsRanges);
-        stopTimer(heapMarkingTimer);
+        startTimer(heapMarkingTimer, GCPhase.MARK);
+        if (parallelMarking.isEnabled()) {
+            parallelVisitGreyObjectsAfterRootMarking(regionsRanges);
+        } else {
+            visitGreyObjectsAfterRootMarking(regionsRanges);
+        }
+        stopTimer(heapMarkingTimer, GCPhase.MARK);
         markPhase.traceEnd(traceGCPhases);
 
         if (traceGCTimes) {
@@ -1894,14 +2142,227 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
 
         markPhase = MARK_PHASE.SPECIAL_REF;
         markPhase.traceBegin(traceGCPhases);
-        startTimer(weakRefTimer);
+        startTimer(weakRefTimer, GCPhase.REFERENCE_PROCESSING);
         SpecialReferenceManager.processDiscoveredSpecialReferences(forwardScanState);
         // Note: the VISIT_GREY_FORWARD has already visited the whole heap, so any additional grey reference added by the special reference
         // manager are on the marking stack. Draining that stack may nevertheless add new grey reference after the finger, so we still
         // need to iterate over the region ranges past the finger, hence the reset.
         regionsRanges.reset();
         visitGreyObjects(regionsRanges);
-        stopTimer(weakRefTimer);
+        stopTimer(weakRefTimer, GCPhase.REFERENCE_PROCESSING);
+        markPhase.traceEnd(traceGCPhases);
+        FatalError.check(markingStack.isEmpty(), "Marking Stack must be empty after special references are processed.");
+        markPhase = MARK_PHASE.DONE;
+    }
+
+    /*
+     * Support for mostly-concurrent marking.
+     *
+     * A concurrent marking cycle begins with an initial mark pause that clears the color map and marks the roots grey.
+     * The heap is then traced by the ConcurrentMarker's thread while mutators run. Mutators record the cards they store references
+     * to with a card-marking write barrier (incremental update). The cycle ends with a remark pause that greys again the marked cells
+     * of dirty cards, marks the roots again, and completes the tracing from all the grey cells with the sequential forward scan.
+     */
+
+    /**
+     * Leftmost and rightmost cells marked grey during the initial mark of the current concurrent marking cycle.
+     */
+    private Address initialMarkLeftmost;
+    private Address initialMarkRightmost;
+
+    /**
+     * Card range visitor painting grey again the marked cells overlapping a range of dirty cards.
+     * Marks are decoded from the first bit of a run of set bits, which is always the first bit of a mark. Since a mark spans at most two bits,
+     * the first set bit following the two bits of a mark is the first bit of the next mark.
+     */
+    final class MarkedCellsRegreyer extends CardTableRSet.CardRangeVisitor {
+        /**
+         * Lowest address a cell overlapping the visited card ranges may start at.
+         */
+        Address lowest;
+        /**
+         * Leftmost and rightmost cells painted grey.
+         */
+        Address leftmost;
+        Address rightmost;
+
+        void reset() {
+            leftmost = coveredAreaEnd;
+            rightmost = coveredAreaStart;
+        }
+
+        private void regrey(int bitIndex) {
+            final Address cell = addressOf(bitIndex);
+            markGrey(cell);
+            if (cell.lessThan(leftmost)) {
+                leftmost = cell;
+            }
+            if (cell.greaterThan(rightmost)) {
+                rightmost = cell;
+            }
+        }
+
+        @Override
+        public void visitCards(Address start, Address end) {
+            final int startBitIndex = bitIndexOf(start);
+            final int endBitIndex = bitIndexOf(end);
+            final int lowestBitIndex = bitIndexOf(lowest);
+            int firstBitIndex = startBitIndex;
+            if (startBitIndex > lowestBitIndex) {
+                // Find the last mark before the range. Its cell may overlap the range.
+                final int lastSetBitIndex = previousSetBit(startBitIndex - 1, lowestBitIndex);
+                if (lastSetBitIndex >= 0) {
+                    int markBitIndex = previousClearBit(lastSetBitIndex, lowestBitIndex) + 1;
+                    int nextMarkBitIndex = nextSetBit(markBitIndex + 2, startBitIndex);
+                    while (nextMarkBitIndex >= 0) {
+                        markBitIndex = nextMarkBitIndex;
+                        nextMarkBitIndex = nextSetBit(markBitIndex + 2, startBitIndex);
+                    }
+                    final Pointer origin = Layout.cellToOrigin(addressOf(markBitIndex).asPointer());
+                    if (origin.plus(Layout.size(origin)).greaterThan(start)) {
+                        regrey(markBitIndex);
+                    }
+                    if (markBitIndex + 2 > firstBitIndex) {
+                        firstBitIndex = markBitIndex + 2;
+                    }
+                }
+            }
+            int markBitIndex = nextSetBit(firstBitIndex, endBitIndex);
+            while (markBitIndex >= 0) {
+                regrey(markBitIndex);
+                markBitIndex = nextSetBit(markBitIndex + 2, endBitIndex);
+            }
+        }
+    }
+
+    private final MarkedCellsRegreyer markedCellsRegreyer = new MarkedCellsRegreyer();
+
+    /**
+     * Allocate the data structures needed to trace the heap concurrently with mutator threads.
+     */
+    public void initializeConcurrentMarking() {
+        parallelMarking.initializeConcurrentMarking();
+    }
+
+    /**
+     * Initial mark of a concurrent marking cycle: clear the color map and mark the roots grey.
+     * Special references reachable from the boot heap are discovered during the remark.
+     * Must be called during a garbage collection pause.
+     */
+    public void initialMark() {
+        traceGCTimes = Heap.logGCTime();
+        clearColorMap();
+        rootCellVisitor.initialMarking = true;
+        markRoots();
+        rootCellVisitor.initialMarking = false;
+        initialMarkLeftmost = rootCellVisitor.leftmost;
+        initialMarkRightmost = rootCellVisitor.rightmost;
+        parallelMarking.concurrentWorkerState.reset();
+        markPhase = MARK_PHASE.DONE;
+    }
+
+    /**
+     * Trace the heap from the roots marked by the last initial mark, concurrently with the mutator threads.
+     *
+     * @param marker the concurrent marker tracing the heap
+     * @return true if tracing completed, false if it was given up because the marker was asked to stop
+     */
+    boolean concurrentMark(ConcurrentMarker marker) {
+        if (initialMarkLeftmost.greaterThan(initialMarkRightmost)) {
+            // Nothing marked.
+            return true;
+        }
+        return parallelMarking.concurrentVisitGreyObjects(initialMarkLeftmost, initialMarkRightmost, marker);
+    }
+
+    /**
+     * Remark of a concurrent marking cycle. The concurrent marker must have been stopped.
+     * Cells marked before a mutator stored a reference into them are painted grey again, roots are marked again,
+     * then all grey cells left in the color map are traced.
+     * The dirty cards of the traced regions are cleaned.
+     *
+     * @param regionsRanges enumerate ranges of heap regions holding objects to trace
+     * @param cardTableRSet the card table the mutators' write barrier dirtied cards of since the initial mark
+     */
+    public void remark(HeapRegionRangeIterable regionsRanges, CardTableRSet cardTableRSet) {
+        final boolean traceGCPhases = Heap.logGCPhases();
+        traceGCTimes = Heap.logGCTime();
+        if (traceGCTimes) {
+            recoveryScanTimer.reset();
+        }
+        markingStack.reset();
+        overflowScanState.setHeapRegionsRanges(regionsRanges);
+
+        markPhase = MARK_PHASE.SCAN_DIRTY_CARDS;
+        markPhase.traceBegin(traceGCPhases);
+        final int log2RegionSize = HeapRegionConstants.log2RegionSizeInBytes;
+        markedCellsRegreyer.reset();
+        regionsRanges.reset();
+        while (regionsRanges.hasNext()) {
+            final RegionRange regionsRange = regionsRanges.next();
+            final Address startOfRange = coveredAreaStart.plus(regionsRange.firstRegion() << log2RegionSize);
+            final Address endOfRange = startOfRange.plus(regionsRange.numRegions() << log2RegionSize);
+            markedCellsRegreyer.lowest = startOfRange;
+            cardTableRSet.cleanAndVisitCards(startOfRange, endOfRange, markedCellsRegreyer);
+        }
+        markPhase.traceEnd(traceGCPhases);
+
+        rootCellVisitor.remarking = true;
+        markRoots();
+        rootCellVisitor.remarking = false;
+
+        // Grey cells may be anywhere between the leftmost and rightmost cells marked since the initial mark.
+        final ParallelMarking.WorkerState concurrentWorkerState = parallelMarking.concurrentWorkerState;
+        Address leftmost = initialMarkLeftmost;
+        Address rightmost = initialMarkRightmost;
+        if (concurrentWorkerState.leftmost.lessThan(leftmost)) {
+            leftmost = concurrentWorkerState.leftmost;
+        }
+        if (concurrentWorkerState.rightmost.greaterThan(rightmost)) {
+            rightmost = concurrentWorkerState.rightmost;
+        }
+        if (markedCellsRegreyer.leftmost.lessThan(leftmost)) {
+            leftmost = markedCellsRegreyer.leftmost;
+        }
+        if (markedCellsRegreyer.rightmost.greaterThan(rightmost)) {
+            rightmost = markedCellsRegreyer.rightmost;
+        }
+        if (rootCellVisitor.leftmost.lessThan(leftmost)) {
+            leftmost = rootCellVisitor.leftmost;
+        }
+        if (rootCellVisitor.rightmost.greaterThan(rightmost)) {
+            rightmost = rootCellVisitor.rightmost;
+        }
+        forwardScanState.numMarkinkgStackOverflow = 0;
+        overflowScanState.numMarkinkgStackOverflow = 0;
+        forwardScanState.rightmost = rightmost;
+        forwardScanState.finger = leftmost.greaterThan(rightmost) ? rightmost : leftmost;
+
+        markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
+        markPhase.traceBegin(traceGCPhases);
+        startTimer(heapMarkingTimer, GCPhase.MARK);
+        regionsRanges.reset();
+        visitGreyObjects(regionsRanges);
+        stopTimer(heapMarkingTimer, GCPhase.MARK);
+        markPhase.traceEnd(traceGCPhases);
+
+        if (traceGCTimes) {
+            totalRecoveryScanCount += recoveryScanTimer.getCount();
+            totalRecoveryElapsedTime += recoveryScanTimer.getElapsedTime();
+        }
+        FatalError.check(markingStack.isEmpty(), "Marking Stack must be empty after visiting grey objects.");
+        if (VerifyAfterMarking || VerifyGreyLessAreas) {
+            regionsRanges.reset();
+            verifyHasNoGreyMarks(regionsRanges, forwardScanState.endOfRightmostVisitedObject());
+        }
+
+        markPhase = MARK_PHASE.SPECIAL_REF;
+        markPhase.traceBegin(traceGCPhases);
+        startTimer(weakRefTimer, GCPhase.REFERENCE_PROCESSING);
+        SpecialReferenceManager.processDiscoveredSpecialReferences(forwardScanState);
+        regionsRanges.reset();
+        visitGreyObjects(regionsRanges);
+        stopTimer(weakRefTimer, GCPhase.REFERENCE_PROCESSING);
         markPhase.traceEnd(traceGCPhases);
         FatalError.check(markingStack.isEmpty(), "Marking Stack must be empty after special references are processed.");
         markPhase = MARK_PHASE.DONE;
@@ -57,9 +57,53 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
      */
     static int YoungGenHeapPercent = 30;
     static Size ELABSize = Size.K.times(64);
+    /**
+     * Evacuate the young gen in parallel with the {@link GCWorkerGang} when GC worker threads are available.
+     * Each worker promotes survivors to a private LAB made of an entire empty region of the old gen.
+     * Evacuation is sequential if the young gen ages objects (see {@link #MaxTenuringThreshold}).
+     */
+    static boolean UseParallelEvacuation = true;
+    /**
+     * Maximum number of minor collections an object may survive in the young gen before being promoted to the old gen.
+     * Zero promotes all survivors of a minor collection.
+     */
+    static int MaxTenuringThreshold = 0;
+    /**
+     * Percentage of the young gen reserved for survivor regions when aging objects.
+     */
+    static int SurvivorPercent = 20;
+    /**
+     * Clean the old gen's dirty cards that hold no old-to-young references in a background thread (see {@link ConcurrentCardRefiner}).
+     */
+    static boolean ConcurrentRefinement = false;
+    /**
+     * Time, in milliseconds, between two passes of the concurrent refinement over the old gen's cards.
+     */
+    static int RefinementPeriod = 10;
+    /**
+     * Allocate humongous objects, i.e., objects spanning several regions, directly in the old gen, and reclaim the dead ones
+     * at minor collections when no references to them are found (see {@link HumongousObjectReclaimer}).
+     */
+    static boolean EagerReclaimHumongousObjects = true;
+    /**
+     * Support object pinning (e.g., for JNI critical sections) by pinning the young gen regions the objects span. Minor collections
+     * leave the cells of pinned regions in place instead of waiting for the pinned objects to be released (see {@link PinnedRegions}).
+     * Not supported if the young gen ages objects, in which case JNI critical sections fall back to disabling GC.
+     */
+    static boolean RegionPinning = true;
     static {
         VMOptions.addFieldOption("-XX:", "YoungGenHeapPercent", GenMSEHeapScheme.class, "Fixed percentage of heap size that must be used by young gen", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "ELABSize", GenMSEHeapScheme.class, "Size of evacuation buffers for young gen evacuation to old gen", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "UseParallelEvacuation", GenMSEHeapScheme.class, "Evacuate the young gen in parallel with the GC worker threads", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "MaxTenuringThreshold", GenMSEHeapScheme.class, "Maximum number of minor collections an object may survive before promotion (0 disables aging)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "SurvivorPercent", GenMSEHeapScheme.class, "Percentage of young gen used for survivor regions when aging objects", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ConcurrentRefinement", GenMSEHeapScheme.class,
+            "Clean old gen dirty cards holding no old-to-young references in a background thread", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "RefinementPeriod", GenMSEHeapScheme.class, "Time in milliseconds between two passes of concurrent refinement", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "EagerReclaimHumongousObjects", GenMSEHeapScheme.class,
+            "Allocate humongous objects in old gen regions and reclaim them at minor collections when unreferenced", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "RegionPinning", GenMSEHeapScheme.class,
+            "Pin the young gen regions of pinned objects and evacuate around them instead of blocking GC", Phase.PRISTINE);
     }
 
     public enum GenMSEHeapRegionTag {
@@ -94,6 +138,11 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
      */
     private GenHeapSizingPolicy heapResizingPolicy;
 
+    /**
+     * Policy for giving free old generation regions back to the underlying virtual memory after a full collection.
+     */
+    private final HeapResizingPolicy oldGenShrinkingPolicy = new HeapResizingPolicy();
+
     /**
      * Card-table based remembered set for the nursery.
      */
@@ -104,6 +153,21 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
      */
     private final NoAgingNurseryEvacuator youngSpaceEvacuator;
 
+    /**
+     * Background refinement of the old gen's dirty cards.
+     */
+    private final ConcurrentCardRefiner cardRefiner;
+
+    /**
+     * Eager reclamation of the humongous objects allocated in the old gen.
+     */
+    private final HumongousObjectReclaimer humongousObjectReclaimer;
+
+    /**
+     * Pin counts of the young gen regions.
+     */
+    private final PinnedRegions pinnedRegions;
+
     /**
      * Operation to submit to the {@link VmOperationThread} to perform a generational collection.
      */
@@ -137,12 +201,23 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
         noYoungReferencesVerifier = new NoEvacuatedSpaceReferenceVerifier(cardTableRSet, youngSpace);
         fotVerifier = new FOTVerifier(cardTableRSet);
         genCollection = new GenCollection();
+        cardRefiner = new ConcurrentCardRefiner(cardTableRSet, youngSpace, oldSpace);
+        humongousObjectReclaimer = new HumongousObjectReclaimer(oldSpace);
+        cardRefiner.setHumongousObjectReclaimer(humongousObjectReclaimer);
+        pinnedRegions = new PinnedRegions();
     }
 
     @Override
     public void initialize(MaxineVM.Phase phase) {
         super.initialize(phase);
         cardTableRSet.initialize(phase);
+        if (phase == MaxineVM.Phase.STARTING) {
+            // Start the GC worker threads used for parallel evacuation and marking, if any were requested.
+            GCWorkerGang.gang().start();
+            if (ConcurrentRefinement) {
+                cardRefiner.start(RefinementPeriod);
+            }
+        }
     }
 
     /**
@@ -232,7 +307,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
                 MaxineVM.reportPristineMemoryFailure("reserved space leftover", "deallocate", leftoverSize);
             }
 
-            heapResizingPolicy = new FixedRatioGenHeapSizingPolicy(initSize, maxSize, YoungGenHeapPercent, log2RegionSizeInBytes);
+            heapResizingPolicy = new FixedRatioGenHeapSizingPolicy(initSize, maxSize, YoungGenHeapPercent, log2RegionSizeInBytes, SurvivorPercent, MaxTenuringThreshold);
             if (!heapAccount().open(numberOfRegions(applicationHeapMaxSize))) {
                 FatalError.unexpected("Failed to create application heap");
             }
@@ -243,6 +318,19 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             // worst case evacuation and the number of fragments of old space available for allocation.
             // Same with the lab size. In non parallel evacuators, this should be all the space available for allocation in a region.
             youngSpaceEvacuator.initialize(1000, false, oldSpace.minReclaimableSpace(), false);
+            if (youngSpace.isAging()) {
+                youngSpaceEvacuator.setSurvivorRegions(youngSpace.survivorRegions());
+            } else if (UseParallelEvacuation) {
+                youngSpaceEvacuator.initializeParallelEvacuation(1000);
+            }
+            if (EagerReclaimHumongousObjects) {
+                humongousObjectReclaimer.initialize(numberOfRegions(heapBounds.size()));
+            }
+            if (RegionPinning && !youngSpace.isAging()) {
+                youngSpace.enablePinning(pinnedRegions);
+                youngSpaceEvacuator.setPinnedRegions(pinnedRegions);
+                pinningSupportFlags = PIN_SUPPORT_FLAG.makePinSupportFlags(true, false, true);
+            }
 
             if (HeapRangeDumper.DumpOnError) {
                 MemoryRegion dumpingCoverage = new MemoryRegion();
@@ -291,7 +379,10 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             // 2. there are no pointer from old to young.
             // 3. cards are all cleaned (except for those holding special references, which may have been dirtied during reference discovery)
             oldSpace.visit(fotVerifier);
-            oldSpace.visit(noYoungReferencesVerifier);
+            if (!youngSpace.isAging() && !pinnedRegions.hasRetainedRanges()) {
+                // Old to young references to survivors kept in the young gen are legitimate when aging, and so are those to cells of pinned regions.
+                oldSpace.visit(noYoungReferencesVerifier);
+            }
         }
 
         /**
@@ -307,6 +398,9 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.RECLAIMING);
             oldSpace.sweep(heapMarker, false);
             oldSpace.doAfterGC();
+            if (humongousObjectReclaimer.isEnabled()) {
+                humongousObjectReclaimer.doAfterFullCollection();
+            }
             youngSpaceEvacuator.doAfterGC();
             fullCollectionCount++;
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.MUTATING);
@@ -325,15 +419,27 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             // the old and young gen and somehow reclaim enough regions for a fresh nursery, we just perform a nursery evacuation.
             // The full GC is thereafter just a old gen GC with an empty young gen.
             VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
+            // The large objects allocated by mutators are all formatted now: the card refiner may refine their regions again after this collection.
+            oldSpace.forgetRecentLargeObjectRegions();
             vmConfig().monitorScheme().beforeGarbageCollection();
             if (Heap.verbose()) {
                 Log.println("--Begin nursery evacuation");
             }
             youngSpaceEvacuator.setGCOperation(this);
+            // Have references to candidates for eager reclamation reported during evacuation.
+            youngSpaceEvacuator.setHumongousObjectReclaimer(humongousObjectReclaimer.hasCandidates() ? humongousObjectReclaimer : null);
+            if (UseParallelEvacuation && !youngSpace.isAging()) {
+                // Falls back to sequential evacuation if the old gen doesn't have enough empty regions for the workers' LABs.
+                youngSpaceEvacuator.requestParallelEvacuation(youngSpace.usedSpace());
+            }
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
             youngSpaceEvacuator.evacuate(Heap.logGCPhases());
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.RECLAIMING);
             youngSpaceEvacuator.setGCOperation(null);
+            youngSpaceEvacuator.setHumongousObjectReclaimer(null);
+            if (humongousObjectReclaimer.isEnabled()) {
+                humongousObjectReclaimer.reclaimUnreferenced();
+            }
             if (Heap.verbose()) {
                 Log.println("--End nursery evacuation");
             }
@@ -360,6 +466,8 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
                     // TODO: 3 and 4.
                     FatalError.unimplemented();
                 }
+                // Uncommit empty old gen regions, keeping enough free space for a worst case evacuation.
+                oldGenShrinkingPolicy.shrinkAfterCollection(freeSpace, oldSpace, worstCaseEvac);
             }
             final GCRequest gcRequest = callingThread().gcRequest;
             gcRequest.lastInvocationCount = invocationCount;
@@ -387,14 +495,31 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
         return oldSpace.usedSpace().plus(youngSpace.usedSpace());
     }
 
+    /**
+     * Pin an object by pinning the young gen regions it spans, if it is in the young gen. Objects elsewhere are never moved.
+     */
     @Override
+    @NO_SAFEPOINT_POLLS("object must not move before its regions are pinned")
     public boolean pin(Object object) {
-        return false;
+        if (!pinnedRegions.isEnabled()) {
+            return false;
+        }
+        final Pointer origin = Reference.fromJava(object).toOrigin();
+        if (youngSpace.contains(origin)) {
+            pinnedRegions.pin(Layout.originToCell(origin), Layout.size(origin));
+        }
+        return true;
     }
 
     @Override
     public void unpin(Object object) {
-        throw new UnsupportedOperationException();
+        if (!pinnedRegions.isEnabled()) {
+            throw new UnsupportedOperationException();
+        }
+        final Pointer origin = Reference.fromJava(object).toOrigin();
+        if (youngSpace.contains(origin)) {
+            pinnedRegions.unpin(Layout.originToCell(origin), Layout.size(origin));
+        }
     }
 
     @INLINE
@@ -415,6 +540,19 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
         cardTableRSet.record(ref, displacement, index);
     }
 
+    /**
+     * Allocate outside of a TLAB. Humongous objects go to the old gen when they may be eagerly reclaimed, so that minor collections never copy them.
+     * @param size size of the requested cell
+     */
+    private Pointer allocateDirect(Size size) {
+        if (humongousObjectReclaimer.isEnabled() && size.greaterEqual(regionSizeInBytes)) {
+            final Pointer cell = oldSpace.allocate(size);
+            humongousObjectReclaimer.register(cell);
+            return cell;
+        }
+        return youngSpace.allocate(size);
+    }
+
     /**
      * Allocate a chunk of memory of the specified size and refill a thread's TLAB with it.
      * @param etla the thread whose TLAB will be refilled
@@ -437,14 +575,14 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             if (!usesTLAB()) {
                 // We're not using TLAB. So let's assign the never refill tlab policy.
                 TLABRefillPolicy.setForCurrentThread(etla, NEVER_REFILL_TLAB);
-                return youngSpace.allocate(size);
+                return allocateDirect(size);
             }
             // Allocate an initial TLAB and a refill policy. For simplicity, this one is allocated from the TLAB (see comment below).
             final Size tlabSize = initialTlabSize();
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the TLAB allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the TLAB.
             return tlabAllocate(size);
@@ -454,11 +592,11 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             // This couldn't be allocated in a TLAB, so go directly to direct allocation routine.
             // NOTE: this is where we always go if we don't use TLABs (the "never refill" TLAB policy
             // always return zero for the next TLAB size.
-            return youngSpace.allocate(size);
+            return allocateDirect(size);
         }
-        if (!refillPolicy.shouldRefill(size, tlabMark)) {
+        if (!refillPolicy.shouldRefill(size, tlabMark, tlabEnd)) {
             // Size would fit in a new tlab, but the policy says we shouldn't refill the TLAB yet, so allocate directly in the young generation.
-            return youngSpace.allocate(size);
+            return allocateDirect(size);
         }
         // Refill TLAB and allocate (we know the request can be satisfied with a fresh TLAB and will therefore succeed).
         allocateAndRefillTLAB(etla, nextTLABSize);
@@ -514,4 +652,24 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     public void retireEvacuationBuffer(Address startOfSpaceLeft, Address endOfSpaceLeft) {
         oldSpace.retireTLAB(startOfSpaceLeft.asPointer(), endOfSpaceLeft.minus(startOfSpaceLeft).asSize());
     }
+
+    @Override
+    public int availableEvacuationRegions() {
+        return oldSpace.numEmptyRegions();
+    }
+
+    @Override
+    public int refillEvacuationRegion() {
+        return oldSpace.takeEvacuationRegion();
+    }
+
+    @Override
+    public void retireEvacuationRegion(int regionID, Address startOfSpaceLeft, Address endOfSpaceLeft) {
+        oldSpace.releaseEvacuationRegion(regionID, startOfSpaceLeft.asPointer(), endOfSpaceLeft.minus(startOfSpaceLeft).asSize());
+    }
+
+    @Override
+    public void retireEvacuationRegions() {
+        oldSpace.retireEvacuationRegions();
+    }
 }
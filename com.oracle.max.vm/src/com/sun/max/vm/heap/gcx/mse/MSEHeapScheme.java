@@ -26,18 +26,23 @@ import static com.sun.max.vm.VMConfiguration.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionManager.*;
 import static com.sun.max.vm.intrinsics.MaxineIntrinsicIDs.*;
 
+import com.sun.cri.xir.*;
+import com.sun.cri.xir.CiXirAssembler.XirOperand;
 import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
 import com.sun.max.platform.*;
 import com.sun.max.program.*;
 import com.sun.max.unsafe.*;
+import com.sun.max.util.*;
 import com.sun.max.util.timer.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.MaxineVM.Phase;
 import com.sun.max.vm.code.*;
 import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.debug.*;
 import com.sun.max.vm.heap.gcx.*;
 import com.sun.max.vm.heap.gcx.rset.*;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
 import com.sun.max.vm.layout.*;
 import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
@@ -46,16 +51,49 @@ import com.sun.max.vm.thread.*;
 /**
  * Region-based Mark Sweep + Evacuation-based defragmentation Heap Scheme.
  * Used for testing region-based support.
+ *
+ * Optionally, the heap can be marked mostly-concurrently (see {@link ConcurrentMarker}): a concurrent marking cycle is started by a short
+ * initial mark pause once heap occupancy reaches a threshold, and is completed by the next collection, which remarks instead of marking the whole heap.
+ * References stored by mutators during the cycle are tracked with a card-marking post-write barrier. Since barriers are compiled into the boot
+ * image, the barrier and its card table are only present in images built with concurrent marking enabled (i.e., with {@code --XX:+ConcurrentMarking}).
+ *
+ * Optionally, the heap can be swept lazily: the pause leaves regions unswept, and regions are swept on demand by the allocators' refill paths, or
+ * in the background by a {@link ConcurrentSweeper}. Sweeping always completes before the heap is marked again.
+ *
+ * Optionally, a collection that sweeps the heap precisely and eagerly may compact the heap when its free space is fragmented:
+ * the live objects of the sparsest regions are evacuated to empty regions by a {@link RegionEvacuator}, freeing the evacuated regions.
+ * Regions holding pinned objects are then tracked with a {@link PinnedRegions}, and are never evacuated.
  */
-public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements HeapAccountOwner {
+public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements HeapAccountOwner, XirWriteBarrierSpecification, RSetCoverage {
     private static final int WORDS_COVERED_PER_BIT = 1;
     static boolean DumpFragStatsAfterGC = false;
     static boolean DumpFragStatsAtGCFailure = false;
     static boolean DoImpreciseSweep = false;
+    static boolean ConcurrentMarking = false;
+    static int ConcurrentMarkingInitiatingOccupancy = 60;
+    static boolean LazySweep = false;
+    static boolean ConcurrentSweep = false;
+    static boolean RegionCompaction = false;
+    static int CompactionFragmentationPercent = 50;
+    static int CompactionLiveThresholdPercent = 30;
+    static int MaxCompactedRegions = 64;
     static {
         VMOptions.addFieldOption("-XX:", "DumpFragStatsAfterGC", MSEHeapScheme.class, "Dump region fragmentation stats after GC", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "DumpFragStatsAtGCFailure", MSEHeapScheme.class, "Dump region fragmentation when GC failed to reclaim enough space", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "DoImpreciseSweep", MSEHeapScheme.class, "Control whether to do precise or imprecise sweep", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ConcurrentMarking", MSEHeapScheme.class, "Mark the heap mostly concurrently with the mutator threads", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ConcurrentMarkingInitiatingOccupancy", MSEHeapScheme.class,
+            "Percentage of heap occupancy that starts a concurrent marking cycle", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "LazySweep", MSEHeapScheme.class, "Sweep heap regions on demand after the GC pause", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ConcurrentSweep", MSEHeapScheme.class,
+            "Sweep heap regions in a background thread after the GC pause (implies LazySweep)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "RegionCompaction", MSEHeapScheme.class,
+            "Evacuate the sparsest regions when free space is fragmented after a precise sweep (ignored with LazySweep)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "CompactionFragmentationPercent", MSEHeapScheme.class,
+            "Percentage of the free space in partially occupied regions that triggers a compaction", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "CompactionLiveThresholdPercent", MSEHeapScheme.class,
+            "Maximum percentage of live bytes of a region evacuated by a compaction", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "MaxCompactedRegions", MSEHeapScheme.class, "Maximum number of regions evacuated by a compaction", Phase.PRISTINE);
     }
 
     /**
@@ -70,8 +108,45 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
     private final AtomicPinCounter pinnedCounter = MaxineVM.isDebug() ? new AtomicPinCounter() : null;
 
+    /**
+     * Indicates whether code in the boot image was compiled with the card-marking post-write barrier, i.e., whether
+     * {@link #ConcurrentMarking} was enabled when the image was built. Without it, neither the barrier nor the card table are used,
+     * and concurrent marking cannot be enabled at startup.
+     */
+    @CONSTANT
+    private static boolean concurrentMarkingBarrier;
+
+    /**
+     * Card table recording the cards mutators stored references into during a concurrent marking cycle.
+     */
+    private final CardTableRSet cardTableRSet;
+
+    /**
+     * Background tracing of the heap for concurrent marking cycles.
+     */
+    private final ConcurrentMarker concurrentMarker;
+
+    /**
+     * Background sweeping of the regions left unswept by a lazy sweep.
+     */
+    private final ConcurrentSweeper concurrentSweeper;
+
+    /**
+     * Evacuation of the sparsest regions of the heap, for compacting the heap after a precise sweep.
+     */
+    private final RegionEvacuator regionEvacuator;
+
+    /**
+     * Regions holding pinned objects, which compaction must leave in place. Only enabled with {@link #RegionCompaction}.
+     */
+    private final PinnedRegions pinnedRegions;
+
+    private final DebugHeap.DetailLogger detailLogger = new DebugHeap.DetailLogger();
+
     final MarkSweepCollection collect = new MarkSweepCollection();
 
+    final InitialMark initialMark = new InitialMark();
+
     /**
      * An instance of an after mark sweep verifier to use for heap verification after a mark sweep.
      * @see Sweeper
@@ -88,6 +163,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
     public MSEHeapScheme() {
         super();
         final HeapAccount<MSEHeapScheme> heapAccount = new HeapAccount<MSEHeapScheme>(this);
+        cardTableRSet = new CardTableRSet();
 
         final ChunkListAllocator<RegionChunkListRefillManager> tlabAllocator =
             new ChunkListAllocator<RegionChunkListRefillManager>(new RegionChunkListRefillManager());
@@ -95,13 +171,70 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             new AtomicBumpPointerAllocator<RegionOverflowAllocatorRefiller>(new RegionOverflowAllocatorRefiller());
         markSweepSpace = new FirstFitMarkSweepSpace<MSEHeapScheme>(heapAccount, tlabAllocator, overflowAllocator, false, NullDeadSpaceListener.nullDeadSpaceListener(), 0);
         heapMarker = new TricolorHeapMarker(WORDS_COVERED_PER_BIT, new HeapAccounRootCellVisitor(this));
+        concurrentMarker = new ConcurrentMarker(heapMarker);
+        concurrentSweeper = new ConcurrentSweeper(markSweepSpace);
+        regionEvacuator = new RegionEvacuator(markSweepSpace, heapMarker);
+        regionEvacuator.setTimers(new EvacuationTimers());
+        pinnedRegions = new PinnedRegions();
+        if (MaxineVM.isDebug()) {
+            regionEvacuator.setDetailLogger(detailLogger);
+        }
         afterGCVerifier = new AfterMarkSweepVerifier(heapMarker, markSweepSpace, AfterMarkSweepBootHeapVerifier.makeVerifier(heapMarker, this));
+        // Pinning is always supported: objects either never move, or their regions are excluded from compaction while pinned.
+        // Pin requests are counted, so they can nest.
         pinningSupportFlags = PIN_SUPPORT_FLAG.makePinSupportFlags(true, false, true);
     }
 
     @Override
     public void initialize(MaxineVM.Phase phase) {
+        if (MaxineVM.isHosted()) {
+            concurrentMarkingBarrier = ConcurrentMarking;
+        } else if (phase == MaxineVM.Phase.PRISTINE && ConcurrentMarking && !concurrentMarkingBarrier) {
+            Log.println("WARNING: -XX:+ConcurrentMarking ignored: the boot image was built without concurrent marking support");
+            ConcurrentMarking = false;
+        }
         super.initialize(phase);
+        if (concurrentMarkingBarrier) {
+            cardTableRSet.initialize(phase);
+        }
+        if (phase == MaxineVM.Phase.STARTING) {
+            // Start the GC worker threads used for parallel marking, if any were requested.
+            GCWorkerGang.gang().start();
+            if (ConcurrentMarking) {
+                concurrentMarker.start();
+            }
+            if (ConcurrentSweep) {
+                LazySweep = true;
+                concurrentSweeper.start();
+            }
+        }
+    }
+
+    /**
+     * Interface to the heap region manager to request coverage of all heap spaces by remembered set.
+     * This must be called before the first assignment to a reference location so that code
+     * generated with write barrier doesn't fail.
+     */
+    @Override
+    public void initializeCoverage(Address coveredAreaStart, Size coveredAreaSize) {
+        if (!concurrentMarkingBarrier) {
+            return;
+        }
+        final int pageSize = Platform.platform().pageSize;
+        final Address endOfCoveredArea = coveredAreaStart.plus(coveredAreaSize);
+        final Size cardTableCoveredAreaSize = endOfCoveredArea.minus(Heap.bootHeapRegion.start()).asSize();
+
+        // Allocate Card Table Data at the end of the covered area (i.e., space reserved to the heap regions).
+        final Address cardTableDataStart =  endOfCoveredArea.roundedUpBy(pageSize);
+
+        // The card table covers the boot image and code cache as well, to avoid testing for boundaries in the write barrier.
+        final Size cardTableDataSize = cardTableRSet.memoryRequirement(cardTableCoveredAreaSize);
+        if (!Heap.AvoidsAnonOperations) {
+            if (!VirtualMemory.commitMemory(cardTableDataStart, cardTableDataSize,  VirtualMemory.Type.DATA)) {
+                MaxineVM.reportPristineMemoryFailure("card table space", "commit", cardTableDataSize);
+            }
+        }
+        cardTableRSet.initialize(Heap.bootHeapRegion.start(), cardTableCoveredAreaSize, cardTableDataStart, cardTableDataSize);
     }
 
     /**
@@ -136,8 +269,8 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             // The boot image isn't traced (it is assumed a permanent root of collection).
             final Size heapMarkerDatasize = heapMarker.memoryRequirement(heapBounds.size());
 
-            // Heap Marker Data are allocated at end of the space reserved to the heap regions.
-            final Address heapMarkerDataStart = heapBounds.end().roundedUpBy(pageSize);
+            // Heap Marker Data are allocated after the card table's, if any, or at end of the space reserved to the heap regions.
+            final Address heapMarkerDataStart = (concurrentMarkingBarrier ? cardTableRSet.memory().end() : heapBounds.end()).roundedUpBy(pageSize);
             // Address to the first reserved byte unused by the heap scheme.
             final Address unusedReservedSpaceStart = heapMarkerDataStart.plus(heapMarkerDatasize).roundedUpBy(pageSize);
 
@@ -155,9 +288,14 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             }
             heapMarker.initialize(heapBounds.start(), heapBounds.end(), heapMarkerDataStart, heapMarkerDatasize);
 
-            if (DumpFragStatsAfterGC || DumpFragStatsAtGCFailure) {
+            if (DumpFragStatsAfterGC || DumpFragStatsAtGCFailure || RegionCompaction) {
                 fragmentationStats = new HeapRegionStatistics(markSweepSpace.minReclaimableSpace());
             }
+            if (RegionCompaction) {
+                regionEvacuator.initialize(MaxCompactedRegions);
+                pinnedRegions.initialize(0, HeapRegionConstants.numberOfRegions(heapBounds.size()));
+                regionEvacuator.setPinnedRegions(pinnedRegions);
+            }
             // Free leftover of reserved space we will not be using.
             Size leftoverSize = endOfReservedSpace.minus(unusedReservedSpaceStart).asSize();
             if (VirtualMemory.deallocate(unusedReservedSpaceStart, leftoverSize, VirtualMemory.Type.DATA).isZero()) {
@@ -165,7 +303,12 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             }
             //  Make the heap (and mark bitmap) inspectable
             HeapScheme.Inspect.init(false);
-            HeapScheme.Inspect.notifyHeapRegions(heapBounds, heapMarker.memory());
+            if (concurrentMarkingBarrier) {
+                cardTableRSet.initializeXirStartupConstants();
+                HeapScheme.Inspect.notifyHeapRegions(heapBounds, heapMarker.memory(), cardTableRSet.memory());
+            } else {
+                HeapScheme.Inspect.notifyHeapRegions(heapBounds, heapMarker.memory());
+            }
 
         } finally {
             disableCustomAllocation();
@@ -187,9 +330,25 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
     private long usedSpaceAfterLastGC;
 
     private static final class MSEGCRequest extends GCRequest {
+        /**
+         * Indicates that the request is for the initial mark of a concurrent marking cycle.
+         */
+        boolean initialMark;
+        /**
+         * Indicates that the request is for completing a concurrent marking cycle whose concurrent tracing is done.
+         */
+        boolean remark;
+
         protected MSEGCRequest(VmThread thread) {
             super(thread);
         }
+
+        @Override
+        public void clear() {
+            super.clear();
+            initialMark = false;
+            remark = false;
+        }
     }
 
     public GCRequest createThreadLocalGCRequest(VmThread vmThread) {
@@ -201,6 +360,21 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
     public boolean collectGarbage() {
         final MSEGCRequest gcRequest = asMSEGCRequest(VmThread.current().gcRequest);
+        if (gcRequest.initialMark) {
+            gcRequest.initialMark = false;
+            // Another thread may have started a cycle already.
+            if (concurrentMarker.isIdle()) {
+                initialMark.submit();
+            }
+            return true;
+        }
+        if (gcRequest.remark) {
+            gcRequest.remark = false;
+            if (!concurrentMarker.isMarked()) {
+                // Another thread completed the cycle already.
+                return true;
+            }
+        }
         final Size usedSpaceBefore = markSweepSpace.usedSpace();
         if (MaxineVM.isDebug()) {
             final int logCursor = collectionCount % 16;
@@ -217,10 +391,20 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         if (gcRequest.explicit) {
             // This is a forced GC.
             collect.submit();
+            if (ConcurrentSweep) {
+                concurrentSweeper.requestSweep();
+            }
             reportFragmentationStats(true);
             return true;
         }
         collect.submit();
+        if (LazySweep) {
+            // Sweep enough regions to satisfy the request, and leave the rest to the allocators or the background sweeper.
+            markSweepSpace.sweepUntil(gcRequest.requestedBytes);
+            if (ConcurrentSweep) {
+                concurrentSweeper.requestSweep();
+            }
+        }
         if (MaxineVM.isDebug()) {
             usedSpaceAfterLastGC = markSweepSpace.usedSpace().toLong();
         }
@@ -241,12 +425,20 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         return markSweepSpace.usedSpace();
     }
 
+    /**
+     * Pin an object. Objects only move when {@link #RegionCompaction} evacuates their region, so with compaction enabled
+     * the regions the object spans are pinned, which excludes them from compaction. Pin requests nest.
+     */
     @INLINE
+    @NO_SAFEPOINT_POLLS("object must not move before its regions are pinned")
     public boolean pin(Object object) {
-        // Objects never relocate. So this is always safe.
         if (MaxineVM.isDebug()) {
             pinnedCounter.increment();
         }
+        if (pinnedRegions.isEnabled()) {
+            final Pointer origin = Reference.fromJava(object).toOrigin();
+            pinnedRegions.pin(Layout.originToCell(origin), Layout.size(origin));
+        }
         return true;
     }
 
@@ -255,12 +447,84 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         if (MaxineVM.isDebug()) {
             pinnedCounter.decrement();
         }
+        if (pinnedRegions.isEnabled()) {
+            final Pointer origin = Reference.fromJava(object).toOrigin();
+            pinnedRegions.unpin(Layout.originToCell(origin), Layout.size(origin));
+        }
     }
 
     @INLINE
     public void writeBarrier(Reference from, Reference to) {
     }
 
+    @INLINE
+    @Override
+    public boolean needsBarrier(IntBitSet<WriteBarrierSpecification.WriteBarrierSpec> writeBarrierSpec) {
+        return concurrentMarkingBarrier && writeBarrierSpec.isSet(WriteBarrierSpec.POST_WRITE);
+    }
+
+    @INLINE
+    @Override
+    public void postWriteBarrier(Reference ref, Offset offset, Reference value) {
+        if (concurrentMarkingBarrier) {
+            cardTableRSet.record(ref, offset);
+        }
+    }
+
+    @INLINE
+    @Override
+    public void postWriteBarrier(Reference ref,  int displacement, int index, Reference value) {
+        if (concurrentMarkingBarrier) {
+            cardTableRSet.record(ref, displacement, index);
+        }
+    }
+
+    @HOSTED_ONLY
+    public XirWriteBarrierGenerator barrierGenerator(IntBitSet<WriteBarrierSpecification.WriteBarrierSpec> writeBarrierSpec) {
+        if (!ConcurrentMarking) {
+            return XirWriteBarrierSpecification.NULL_WRITE_BARRIER_GEN;
+        }
+        if (writeBarrierSpec.equals(TUPLE_POST_BARRIER)) {
+            return new XirWriteBarrierGenerator() {
+                @Override
+                public void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands) {
+                    cardTableRSet.genTuplePostWriteBarrier(asm, operands[0]);
+                }
+            };
+        } else if (writeBarrierSpec.equals(ARRAY_POST_BARRIER)) {
+            return new XirWriteBarrierGenerator() {
+                @Override
+                public void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands) {
+                    cardTableRSet.genArrayPostWriteBarrier(asm, operands[0], operands[1]);
+                }
+            };
+        }
+        return XirWriteBarrierSpecification.NULL_WRITE_BARRIER_GEN;
+    }
+
+    /**
+     * Initial mark pause of a concurrent marking cycle.
+     * Cleans the card table, marks the roots, and hands over tracing to the concurrent marker.
+     */
+    final class InitialMark extends GCOperation {
+        InitialMark() {
+            super("InitialMark");
+        }
+
+        @Override
+        protected void collect(int invocationCount) {
+            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
+            final MemoryRegion heapBounds = theHeapRegionManager().bounds();
+            cardTableRSet.setCards(heapBounds.start(), heapBounds.end(), CardState.CLEAN_CARD);
+            // The initial mark clears the color map the regions left unswept depend on.
+            markSweepSpace.finishSweeping();
+            heapMarker.initialMark();
+            concurrentMarker.startCycle();
+            callingThread().gcRequest.lastInvocationCount = invocationCount;
+            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.MUTATING);
+        }
+    }
+
     /**
      * Class implementing the garbage collection routine.
      * This is the {@link VmOperationThread}'s entry point to garbage collection.
@@ -308,22 +572,51 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
         private HeapResizingPolicy heapResizingPolicy = new HeapResizingPolicy();
 
+        /**
+         * Indicates whether more than {@link MSEHeapScheme#CompactionFragmentationPercent} of the free space left by the sweep is in partially occupied regions.
+         */
+        private boolean isFragmented() {
+            final Size freeSpace = markSweepSpace.freeSpace();
+            final Size emptyRegionsSpace = Size.fromInt(markSweepSpace.numEmptyRegions()).shiftedLeft(HeapRegionConstants.log2RegionSizeInBytes);
+            return freeSpace.minus(emptyRegionsSpace).toLong() * 100 > freeSpace.toLong() * CompactionFragmentationPercent;
+        }
+
         @Override
         protected void collect(int invocationCount) {
             final boolean traceGCPhases = Heap.logGCPhases();
             traceGCTimes = Heap.logGCTime();
             startTimer(totalPauseTime);
+            // A collection during a concurrent marking cycle completes it.
+            final boolean remark = !concurrentMarker.isIdle();
+            if (remark) {
+                concurrentMarker.stop();
+            }
             VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
 
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
 
+            final boolean lazySweep = LazySweep && !VerifyAfterGC;
+            if (lazySweep && collectionCount > 0) {
+                // Complete the sweep of the previous collection, and resize the heap based on the free space it left.
+                // This is the decision an eager sweep would have made at the end of the previous collection.
+                startTimer(reclaimTimer);
+                markSweepSpace.finishSweeping();
+                stopTimer(reclaimTimer);
+                heapResizingPolicy.resizeAfterCollection(markSweepSpace.freeSpaceAfterSweep(), markSweepSpace);
+            }
+
             vmConfig().monitorScheme().beforeGarbageCollection();
             markSweepSpace.doBeforeGC();
             collectionCount++;
 
             theHeapRegionManager().checkOutgoingReferences();
 
-            markSweepSpace.mark(heapMarker);
+            if (remark) {
+                markSweepSpace.remark(heapMarker, cardTableRSet);
+                concurrentMarker.endCycle();
+            } else {
+                markSweepSpace.mark(heapMarker);
+            }
 
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.RECLAIMING);
 
@@ -331,8 +624,11 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
                 Log.println("BEGIN: Sweeping");
             }
             startTimer(reclaimTimer);
-            markSweepSpace.sweep(heapMarker, DoImpreciseSweep);
-            Size freeSpaceAfterGC = markSweepSpace.freeSpace();
+            if (lazySweep) {
+                markSweepSpace.startLazySweep(heapMarker, DoImpreciseSweep);
+            } else {
+                markSweepSpace.sweep(heapMarker, DoImpreciseSweep);
+            }
             stopTimer(reclaimTimer);
             if (traceGCPhases) {
                 Log.println("END: Sweeping");
@@ -341,9 +637,23 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             if (VerifyAfterGC) {
                 afterGCVerifier.run();
             }
+            // Compaction relies on the color map to find live objects, and on the sweep to have left precise region occupancies.
+            if (RegionCompaction && !lazySweep && !DoImpreciseSweep && isFragmented()) {
+                if (traceGCPhases) {
+                    Log.println("BEGIN: Compaction");
+                }
+                startTimer(reclaimTimer);
+                regionEvacuator.compact(fragmentationStats, CompactionLiveThresholdPercent);
+                stopTimer(reclaimTimer);
+                if (traceGCPhases) {
+                    Log.println("END: Compaction");
+                }
+            }
             vmConfig().monitorScheme().afterGarbageCollection();
 
-            heapResizingPolicy.resizeAfterCollection(freeSpaceAfterGC, markSweepSpace);
+            if (!lazySweep) {
+                heapResizingPolicy.resizeAfterCollection(markSweepSpace.freeSpaceAfterSweep(), markSweepSpace);
+            }
             markSweepSpace.doAfterGC();
 
             final GCRequest gcRequest = callingThread().gcRequest;
@@ -434,7 +744,12 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
     @Override
     @NEVER_INLINE
-    protected Pointer handleTLABOverflow(Size size, Pointer etla, Pointer tlabMark, Pointer tlabEnd) {      // Should we refill the TLAB ?
+    protected Pointer handleTLABOverflow(Size size, Pointer etla, Pointer tlabMark, Pointer tlabEnd) {
+        if (ConcurrentMarking && pollConcurrentMarkingCycle()) {
+            // The collection that completed the concurrent marking cycle retired the TLAB. Start over.
+            return tlabAllocate(size);
+        }
+        // Should we refill the TLAB ?
         final TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
         if (refillPolicy == null) {
             // No policy yet for the current thread. This must be the first time this thread uses a TLAB (it does not have one yet).
@@ -449,7 +764,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of dirty meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the tlab allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the tlab.
             return tlabAllocate(size);
@@ -483,7 +798,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
                 return changeTLABChunkOrAllocate(etla, tlabMark, hardLimit, nextChunk, size);
             }
 
-            if (!refillPolicy.shouldRefill(size, tlabMark)) {
+            if (!refillPolicy.shouldRefill(size, tlabMark, tlabEnd)) {
                 // Size would fit in a new tlab, but the policy says we shouldn't refill the tlab yet, so allocate directly in the heap.
                 return markSweepSpace.allocate(size);
             }
@@ -496,6 +811,31 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         return tlabAllocate(size);
     }
 
+    /**
+     * Start a concurrent marking cycle if heap occupancy reached the initiating threshold, or complete the current one if the
+     * concurrent marker is done tracing the heap. Called on the allocation slow path.
+     *
+     * @return true if a collection completed a concurrent marking cycle
+     */
+    private boolean pollConcurrentMarkingCycle() {
+        if (Heap.gcDisabled()) {
+            return false;
+        }
+        final ConcurrentMarker.CycleState state = concurrentMarker.state();
+        if (state == ConcurrentMarker.CycleState.MARKED) {
+            asMSEGCRequest(GCRequest.clearedGCRequest()).remark = true;
+            Heap.collectGarbage();
+            return true;
+        }
+        // Regions not swept yet are accounted as used space: wait for the sweep to complete before checking occupancy.
+        if (state == ConcurrentMarker.CycleState.IDLE && !markSweepSpace.isSweeping() &&
+                        markSweepSpace.usedSpace().toLong() * 100 > markSweepSpace.totalSpace().toLong() * ConcurrentMarkingInitiatingOccupancy) {
+            asMSEGCRequest(GCRequest.clearedGCRequest()).initialMark = true;
+            Heap.collectGarbage();
+        }
+        return false;
+    }
+
     @Override
     public HeapAccount<MSEHeapScheme> heapAccount() {
         return markSweepSpace.heapAccount();
@@ -23,6 +23,7 @@
 package com.sun.max.vm.heap.gcx.rset.ctbl;
 import static com.sun.max.vm.heap.gcx.rset.ctbl.CardTableRSet.*;
 
+import com.sun.max.annotate.*;
 import com.sun.max.unsafe.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.MaxineVM.Phase;
@@ -239,22 +240,39 @@ public final class CardFirstObjectTable extends Log2RegionToByteMapTable {
 
     /**
      * Return the address of the cell that overlaps the first word of the card specified by the card index.
+     * The common case of a card whose first word overlaps a cell starting in the same card or in the previous one only needs a single load.
+     * Cells spanning more cards are handled out of line by {@link #multiCardCellStart(int, byte)}.
+     *
      * @param cardIndex the index of a card
      * @return an address in the contiguous range of virtual memory covered by the card table associated with this FOT.
      */
+    @INLINE
     public Address cellStart(int cardIndex) {
+        final byte startInfo = get(cardIndex);
+        if (startInfo > ZERO) {
+            return multiCardCellStart(cardIndex, startInfo);
+        }
+        return rangeStart(cardIndex).plus(startInfo << Word.widthValue().log2numberOfBytes);
+    }
+
+    /**
+     * Return the address of the cell that overlaps the first word of a card, when the cell starts more than one card before it.
+     * @param cardIndex the index of a card
+     * @param cardStartInfo the FOT entry for the card, which encodes a distance to another FOT entry
+     * @return an address in the contiguous range of virtual memory covered by the card table associated with this FOT.
+     */
+    @NEVER_INLINE
+    private Address multiCardCellStart(int cardIndex, byte cardStartInfo) {
         int nextCardIndex = cardIndex;
-        byte startInfo = get(nextCardIndex);
+        byte startInfo = cardStartInfo;
+        while (startInfo > LOG2_ENCODING_THRESHOLD) {
+            int distanceToNextCard = 1 << (startInfo - LOG2_BIAS);
+            nextCardIndex -= distanceToNextCard;
+            startInfo = get(nextCardIndex);
+        }
         if (startInfo > ZERO) {
-            while (startInfo > LOG2_ENCODING_THRESHOLD) {
-                int distanceToNextCard = 1 << (startInfo - LOG2_BIAS);
-                nextCardIndex -= distanceToNextCard;
-                startInfo = get(nextCardIndex);
-            }
-            if (startInfo > ZERO) {
-                nextCardIndex -= startInfo;
-                startInfo = get(nextCardIndex);
-            }
+            nextCardIndex -= startInfo;
+            startInfo = get(nextCardIndex);
         }
         if (MaxineVM.isDebug() && startInfo > 0) {
             Log.print("Incorrect format of FOT for card #");
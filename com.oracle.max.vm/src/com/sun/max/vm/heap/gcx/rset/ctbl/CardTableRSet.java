@@ -24,6 +24,7 @@ import static com.sun.max.vm.heap.HeapSchemeAdaptor.*;
 
 import java.util.*;
 
+import com.oracle.max.cri.intrinsics.*;
 import com.sun.cri.ci.CiAddress.Scale;
 import com.sun.cri.ci.*;
 import com.sun.cri.xir.*;
@@ -392,6 +393,57 @@ public final class CardTableRSet extends DeadSpaceListener implements HeapManage
         }
     }
 
+    /**
+     * Closure scanning the cells overlapping a dirty card to decide whether the card must remain in the remembered set.
+     * See {@link CardTableRSet#refineCards(Address, Address, CardRefinementClosure)}.
+     */
+    public abstract static class CardRefinementClosure implements OverlappingCellVisitor {
+        /**
+         * Set by the closure if the card being refined holds references that must remain recorded.
+         */
+        protected boolean keepCard;
+    }
+
+    /**
+     * Refine the dirty cards of the specified range, i.e., clean the dirty cards whose cells don't hold references that need to be remembered.
+     * Each dirty card is cleaned before its cells are scanned, so that a concurrent store that dirties the card again is never lost.
+     * The card is dirtied again if the closure reports that it must be kept.
+     * This may run concurrently with mutators, but the range must not be reformatted (e.g., by allocation or sweeping) while it is refined.
+     *
+     * @param start start of the range (inclusive)
+     * @param end end of the range (exclusive)
+     * @param closure the logic deciding whether a card must be kept
+     * @return the number of dirty cards cleaned
+     */
+    public int refineCards(Address start, Address end, CardRefinementClosure closure) {
+        final int endOfRange = cardTable.tableEntryIndex(end);
+        int numCleanedCards = 0;
+        int startCardIndex = cardTable.first(cardTable.tableEntryIndex(start), endOfRange, CardState.DIRTY_CARD);
+        while (startCardIndex < endOfRange) {
+            int endCardIndex = cardTable.firstNot(startCardIndex + 1, endOfRange, CardState.DIRTY_CARD);
+            if (traceCardTableRSet()) {
+                traceVisitedCard(startCardIndex, endCardIndex, CardState.DIRTY_CARD);
+            }
+            cardTable.clean(startCardIndex, endCardIndex);
+            // Make the reference stores that dirtied the cards visible to the scan below.
+            MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+            for (int cardIndex = startCardIndex; cardIndex < endCardIndex; cardIndex++) {
+                closure.keepCard = false;
+                visitCard(cardIndex, closure);
+                if (closure.keepCard) {
+                    cardTable.dirty(cardIndex);
+                } else {
+                    numCleanedCards++;
+                }
+            }
+            if (++endCardIndex >= endOfRange) {
+                break;
+            }
+            startCardIndex = cardTable.first(endCardIndex, endOfRange, CardState.DIRTY_CARD);
+        }
+        return numCleanedCards;
+    }
+
     /**
      * Iterate over cells that overlap the specified region and comprises recorded reference locations.
      * @param start
@@ -684,6 +684,27 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
         oldSpace.allocator().retireTop(startOfSpaceLeft, endOfSpaceLeft.minus(startOfSpaceLeft).asSize());
     }
 
+    @Override
+    public int availableEvacuationRegions() {
+        // The old space is a contiguous space: evacuation is sequential.
+        return 0;
+    }
+
+    @Override
+    public int refillEvacuationRegion() {
+        FatalError.unexpected("parallel evacuation not supported");
+        return HeapRegionConstants.INVALID_REGION_ID;
+    }
+
+    @Override
+    public void retireEvacuationRegion(int regionID, Address startOfSpaceLeft, Address endOfSpaceLeft) {
+        FatalError.unexpected("parallel evacuation not supported");
+    }
+
+    @Override
+    public void retireEvacuationRegions() {
+    }
+
     private Size estimatedNextEvac() {
         final Size min = youngSpace.totalSpace().dividedBy(100).times(minSurvivingPercent);
         final Size lastSurvivorCount = youngSpaceEvacuator.evacuatedBytes();
@@ -1021,7 +1042,7 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the TLAB allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the TLAB.
             return tlabAllocate(size);
@@ -1033,7 +1054,7 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
             // always return zero for the next TLAB size.
             return youngSpace.allocate(size);
         }
-        if (!refillPolicy.shouldRefill(size, tlabMark)) {
+        if (!refillPolicy.shouldRefill(size, tlabMark, tlabEnd)) {
             // Size would fit in a new tlab, but the policy says we shouldn't refill the TLAB yet, so allocate directly in the young generation.
             return youngSpace.allocate(size);
         }
@@ -0,0 +1,482 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.sequential.semiSpace;
+
+import static com.sun.max.vm.VMOptions.*;
+import static com.sun.max.vm.heap.HeapSchemeAdaptor.*;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.debug.*;
+import com.sun.max.vm.heap.gcx.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Parallel copying of the objects reachable from the from-space of a {@link SemiSpaceHeapScheme} to its to-space, performed by
+ * the participants of the {@link GCWorkerGang}.
+ *
+ * Each worker copies objects to a private promotion LAB (PLAB) carved out of the to-space by atomically bumping the to-space allocation mark.
+ * Objects too large for a PLAB are allocated directly in the to-space. An object is forwarded by atomically installing the forwarding
+ * reference in its hub word: workers racing to copy the same object each copy it, and the losers take back their copy.
+ *
+ * Copied cells are pushed on the worker's {@link ParallelMarkingStack}. Workers out of work steal cells from the other workers' stacks.
+ * A cell that cannot be pushed because a stack is full is recorded in a queue of ranges private to the worker, which the worker drains before stealing.
+ *
+ * Roots, the boot heap, code and the immortal heap are scanned by the VM operation thread alone, which copies objects to the PLAB of worker 0.
+ * The space left in the PLABs is filled with dead objects once copying completes, so that the to-space remains parseable.
+ */
+final class ParallelCopying {
+    private static final VMIntOption parallelCopyingStackSizeOption =
+        register(new VMIntOption("-XX:ParallelCopyingStackSize=", 16 * 1024, "Size of each GC worker's copying stack in number of references."),
+                        MaxineVM.Phase.PRISTINE);
+
+    private static final VMSizeOption plabSizeOption =
+        register(new VMSizeOption("-XX:PLABSize=", Size.K.times(32), "Size of the promotion LABs GC workers copy objects to."),
+                        MaxineVM.Phase.PRISTINE);
+
+    /**
+     * Maximum number of ranges of cells each worker may have to record when its copying stack overflows.
+     */
+    private static final int MAX_OVERFLOW_RANGES = 1024;
+
+    /**
+     * Per-worker state of the parallel copying.
+     */
+    final class WorkerState extends PointerIndexVisitor {
+        final int workerIndex;
+        final ParallelMarkingStack copyingStack = new ParallelMarkingStack();
+        /**
+         * Ranges of cells copied by this worker that couldn't be pushed on its copying stack.
+         */
+        SurvivorRangesQueue overflowRanges;
+        /**
+         * Allocation hand and end of the worker's PLAB.
+         */
+        Pointer ptop;
+        Pointer pend;
+        /**
+         * Start of the last allocation, including its debug tag, and whether it was made in the PLAB.
+         */
+        private Pointer lastAllocation;
+        private boolean lastAllocationInPLAB;
+        /**
+         * Number of bytes copied by this worker.
+         */
+        Size copiedBytes;
+        /**
+         * Number of cells this worker stole from the other workers. Statistics only.
+         */
+        int steals;
+
+        WorkerState(int workerIndex) {
+            this.workerIndex = workerIndex;
+        }
+
+        void reset() {
+            ptop = Pointer.zero();
+            pend = Pointer.zero();
+            copiedBytes = Size.zero();
+            steals = 0;
+            copyingStack.reset();
+            overflowRanges.clear();
+        }
+
+        /**
+         * Fill the space left in the PLAB with a dead object.
+         */
+        void retirePLAB() {
+            if (ptop.lessThan(pend)) {
+                fillWithDeadObject(ptop, pend);
+            }
+            ptop = Pointer.zero();
+            pend = Pointer.zero();
+        }
+
+        /**
+         * Indicates whether a cell ending at the specified address fits in the PLAB. The space left after the cell must be either empty,
+         * or large enough to be formatted as a dead object when the PLAB is retired.
+         */
+        @INLINE
+        private boolean fitsInPLAB(Pointer cellEnd) {
+            return cellEnd.equals(pend) || DebugHeap.adjustForDebugTag(cellEnd).plus(minObjectSize()).lessEqual(pend);
+        }
+
+        private Pointer allocate(Size size) {
+            Pointer cell = DebugHeap.adjustForDebugTag(ptop);
+            Pointer newTop = cell.plus(size);
+            if (!fitsInPLAB(newTop)) {
+                final Size sizeWithTag = DebugHeap.adjustForDebugTag(Pointer.zero()).plus(size).asSize();
+                if (sizeWithTag.greaterThan(directAllocationThreshold)) {
+                    // Don't waste the space left in the PLAB for a large cell.
+                    lastAllocation = allocateShared(sizeWithTag);
+                    lastAllocationInPLAB = false;
+                    cell = DebugHeap.adjustForDebugTag(lastAllocation);
+                    DebugHeap.writeCellTag(cell);
+                    return cell;
+                }
+                retirePLAB();
+                ptop = allocateShared(plabSize);
+                pend = ptop.plus(plabSize);
+                cell = DebugHeap.adjustForDebugTag(ptop);
+                newTop = cell.plus(size);
+            }
+            lastAllocation = ptop;
+            lastAllocationInPLAB = true;
+            ptop = newTop;
+            DebugHeap.writeCellTag(cell);
+            return cell;
+        }
+
+        /**
+         * Take back the last allocation after losing the race to forward a cell.
+         */
+        private void undoLastAllocation(Pointer cell, Size size) {
+            if (lastAllocationInPLAB) {
+                ptop = lastAllocation;
+            } else {
+                fillWithDeadObject(lastAllocation, cell.plus(size));
+            }
+        }
+
+        @INLINE
+        private void push(Pointer cell, Size size) {
+            if (!copyingStack.push(cell)) {
+                overflowRanges.add(cell, cell.plus(size));
+            }
+        }
+
+        private Size cellSize(Hub hub, Pointer origin) {
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout == Layout.tupleLayout()) {
+                return hub.tupleSize;
+            }
+            final int length = Layout.readArrayLength(origin);
+            if (specificLayout == Layout.hybridLayout()) {
+                return Layout.hybridLayout().getArraySize(length);
+            }
+            return Layout.getArraySize(hub.classActor.componentClassActor().kind, length);
+        }
+
+        /**
+         * Return the forwarding reference of a cell of the from-space, copying the cell if no worker did it yet.
+         *
+         * @param origin origin of a cell in the from-space
+         * @return the forwarding reference of the cell
+         */
+        Reference forward(Pointer origin) {
+            Reference forwardRef = Layout.readForwardRef(origin);
+            if (!forwardRef.isZero()) {
+                return forwardRef;
+            }
+            final Reference hubRef = Layout.readForwardRefValue(origin);
+            // A forwarding word only ever changes from a hub to a forwarding reference. If the cell still isn't forwarded, hubRef is its hub.
+            forwardRef = Layout.readForwardRef(origin);
+            if (!forwardRef.isZero()) {
+                return forwardRef;
+            }
+            final Size size = cellSize(UnsafeCast.asHub(hubRef.toJava()), origin);
+            final Pointer toCell = allocate(size);
+            Memory.copyBytes(Layout.originToCell(origin), toCell, size);
+            forwardRef = Reference.fromOrigin(Layout.cellToOrigin(toCell));
+            final Reference witness = Layout.compareAndSwapForwardRef(origin, hubRef, forwardRef);
+            if (!witness.toOrigin().equals(hubRef.toOrigin())) {
+                // Another worker forwarded the cell first.
+                undoLastAllocation(toCell, size);
+                return Layout.readForwardRef(origin);
+            }
+            copiedBytes = copiedBytes.plus(size);
+            push(toCell, size);
+            return forwardRef;
+        }
+
+        @Override
+        public void visit(Pointer refHolderOrigin, int wordIndex) {
+            final Pointer origin = refHolderOrigin.getReference(wordIndex).toOrigin();
+            if (fromSpace.contains(origin)) {
+                refHolderOrigin.setReference(wordIndex, forward(origin));
+            }
+        }
+
+        /**
+         * Update the references of a cell copied to the to-space, copying the cells of the from-space they refer to.
+         * See {@link SemiSpaceHeapScheme#visitCell(Pointer)}.
+         */
+        private Pointer scanCell(Pointer cell) {
+            final Pointer origin = Layout.cellToOrigin(cell);
+            // Update the hub first so that is can be dereferenced to obtain the reference map needed to find the other references in the object
+            Reference hubRef = Layout.readHubReference(origin);
+            if (fromSpace.contains(hubRef.toOrigin())) {
+                hubRef = forward(hubRef.toOrigin());
+                Layout.writeHubReference(origin, hubRef);
+            }
+            final Hub hub = UnsafeCast.asHub(hubRef.toJava());
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout == Layout.tupleLayout()) {
+                TupleReferenceMap.visitReferences(hub, origin, this);
+                if (hub.isJLRReference) {
+                    SpecialReferenceManager.discoverSpecialReference(origin, workerIndex);
+                }
+                return cell.plus(hub.tupleSize);
+            }
+            if (specificLayout == Layout.referenceArrayLayout()) {
+                final int endIndex = Layout.firstElementIndex() + Layout.readArrayLength(origin);
+                for (int index = Layout.firstElementIndex(); index < endIndex; index++) {
+                    visit(origin, index);
+                }
+            } else if (specificLayout == Layout.hybridLayout()) {
+                TupleReferenceMap.visitReferences(hub, origin, this);
+            }
+            return cell.plus(Layout.size(origin));
+        }
+
+        /**
+         * Scan the cells of the copying stack and of the overflow ranges until both are empty.
+         */
+        void processLocalWork() {
+            while (true) {
+                final Pointer cell = copyingStack.pop();
+                if (!cell.isZero()) {
+                    scanCell(cell);
+                    continue;
+                }
+                if (overflowRanges.isEmpty()) {
+                    return;
+                }
+                final Pointer start = overflowRanges.start();
+                final Pointer end = overflowRanges.end();
+                overflowRanges.remove();
+                Pointer p = start;
+                while (p.lessThan(end)) {
+                    p = scanCell(p);
+                }
+            }
+        }
+
+        /**
+         * Drain this worker's copying stack, then steal work from other workers until all workers run out of work.
+         */
+        void copyReachables() {
+            do {
+                processLocalWork();
+            } while (stealWork() || !offerTermination());
+        }
+
+        private boolean stealWork() {
+            final int numWorkers = gang.participants();
+            for (int i = 1; i < numWorkers; i++) {
+                final WorkerState victim = workerStates[(workerIndex + i) % numWorkers];
+                final Pointer cell = victim.copyingStack.steal();
+                if (!cell.isZero()) {
+                    steals++;
+                    scanCell(cell);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final LinearAllocationMemoryRegion fromSpace;
+    private final LinearAllocationMemoryRegion toSpace;
+    private final GCWorkerGang gang;
+
+    /**
+     * Workers' state, indexed by worker index. Only the first {@link #numWorkerStates} are initialized.
+     */
+    private final WorkerState [] workerStates;
+    private int numWorkerStates;
+
+    private Size plabSize;
+
+    /**
+     * Cells larger than this are allocated directly in the to-space. This bounds the space wasted when a PLAB is retired to an eighth of its size.
+     */
+    private Size directAllocationThreshold;
+
+    /**
+     * Allocation limit in the to-space for the current collection.
+     */
+    private Address top;
+
+    /**
+     * Number of workers idle while waiting for termination of the copying task.
+     */
+    private volatile int idleWorkers;
+
+    private final GCTask copyReachablesTask = new GCTask() {
+        @Override
+        public void run(int workerIndex) {
+            workerStates[workerIndex].copyReachables();
+        }
+    };
+
+    @FOLD
+    private static int idleWorkersOffset() {
+        return ClassActor.fromJava(ParallelCopying.class).findLocalInstanceFieldActor("idleWorkers").offset();
+    }
+
+    ParallelCopying(LinearAllocationMemoryRegion fromSpace, LinearAllocationMemoryRegion toSpace) {
+        this.fromSpace = fromSpace;
+        this.toSpace = toSpace;
+        this.gang = GCWorkerGang.gang();
+        workerStates = new WorkerState[gang.capacity()];
+        for (int i = 0; i < workerStates.length; i++) {
+            workerStates[i] = new WorkerState(i);
+        }
+    }
+
+    /**
+     * Allocate the copying stacks and overflow queues of the workers. Only workers that may participate to a GC task given the VM options are provisioned.
+     */
+    void initialize() {
+        final int numWorkers = gang.maxParticipants();
+        if (numWorkers <= 1 || numWorkerStates > 0) {
+            return;
+        }
+        final int length = parallelCopyingStackSizeOption.getValue();
+        for (int i = 0; i < numWorkers; i++) {
+            workerStates[i].copyingStack.initialize(length);
+            workerStates[i].overflowRanges = new SurvivorRangesQueue(MAX_OVERFLOW_RANGES);
+        }
+        plabSize = plabSizeOption.getValue().alignUp(Word.size()).asSize();
+        directAllocationThreshold = plabSize.unsignedShiftedRight(3);
+        numWorkerStates = numWorkers;
+    }
+
+    /**
+     * Indicates whether a collection can copy the specified amount of bytes in parallel, i.e., whether the GC worker gang has workers,
+     * and the to-space has enough room for the worst case copying. A cell that doesn't fit in the space left in a worker's PLAB wastes
+     * at most an eighth of the PLAB, so the survivors fit in 8/7 of the space they occupy, plus one PLAB per worker.
+     *
+     * @param maxCopiedBytes upper bound on the amount of bytes to copy
+     * @param spaceAvailable space available for copying in the to-space
+     */
+    boolean canCopy(Size maxCopiedBytes, Size spaceAvailable) {
+        if (numWorkerStates <= 1 || !gang.hasWorkers()) {
+            return false;
+        }
+        final Size worstCase = maxCopiedBytes.plus(maxCopiedBytes.dividedBy(7)).plus(plabSize.times(numWorkerStates));
+        return worstCase.lessEqual(spaceAvailable);
+    }
+
+    /**
+     * Allocate space in the to-space on behalf of a worker.
+     */
+    private Pointer allocateShared(Size size) {
+        Pointer start;
+        Pointer end;
+        do {
+            start = toSpace.mark();
+            end = start.plus(size);
+            FatalError.check(end.lessThan(top), "GC allocation overflow");
+        } while (!toSpace.mark.compareAndSwap(start, end).equals(start));
+        return start;
+    }
+
+    /**
+     * Termination protocol of the copying task: an idle worker waits until either all workers are idle, or some worker has cells left to steal.
+     * @return true if all workers are idle, false if the worker should try to steal work again
+     */
+    private boolean offerTermination() {
+        final int numWorkers = gang.participants();
+        fetchAndAdd(idleWorkersOffset(), 1);
+        while (true) {
+            if (idleWorkers == numWorkers) {
+                return true;
+            }
+            for (int i = 0; i < numWorkers; i++) {
+                if (!workerStates[i].copyingStack.isEmpty()) {
+                    fetchAndAdd(idleWorkersOffset(), -1);
+                    return false;
+                }
+            }
+            Intrinsics.pause();
+        }
+    }
+
+    private int fetchAndAdd(int offset, int increment) {
+        final Reference thisRef = Reference.fromJava(this);
+        int oldValue;
+        do {
+            oldValue = thisRef.readInt(offset);
+        } while (thisRef.compareAndSwapInt(offset, oldValue, oldValue + increment) != oldValue);
+        return oldValue;
+    }
+
+    /**
+     * Prepare the workers for copying. Must be called after the semi spaces were swapped and before any cell is copied.
+     *
+     * @param top allocation limit in the to-space
+     */
+    void doBeforeCopying(Address top) {
+        this.top = top;
+        for (int i = 0; i < numWorkerStates; i++) {
+            workerStates[i].reset();
+        }
+    }
+
+    /**
+     * Return the forwarding reference of a cell of the from-space, copying it to the PLAB of worker 0.
+     * Only used while the VM operation thread is the only GC thread running, i.e., when scanning roots.
+     */
+    Reference forward(Pointer fromOrigin) {
+        return workerStates[0].forward(fromOrigin);
+    }
+
+    /**
+     * Copy the cells reachable from the cells copied so far, in parallel with all the available workers.
+     */
+    void copyReachables() {
+        idleWorkers = 0;
+        gang.run(copyReachablesTask);
+    }
+
+    /**
+     * Retire the workers' PLABs.
+     * @return the number of bytes copied
+     */
+    Size doAfterCopying() {
+        Size copiedBytes = Size.zero();
+        for (int i = 0; i < numWorkerStates; i++) {
+            final WorkerState workerState = workerStates[i];
+            workerState.retirePLAB();
+            copiedBytes = copiedBytes.plus(workerState.copiedBytes);
+            if (MaxineVM.isDebug() && Heap.logAllGC()) {
+                Log.print("Parallel copying worker ");
+                Log.print(i);
+                Log.print(" copied bytes: ");
+                Log.print(workerState.copiedBytes.toLong());
+                Log.print(" steals: ");
+                Log.println(workerState.steals);
+            }
+        }
+        return copiedBytes;
+    }
+}
@@ -39,8 +39,10 @@ import com.sun.max.vm.*;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.code.*;
 import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.GCTelemetry.GCPhase;
 import com.sun.max.vm.heap.Heap.GCCallbackPhase;
 import com.sun.max.vm.heap.debug.*;
+import com.sun.max.vm.heap.gcx.*;
 import com.sun.max.vm.layout.*;
 import com.sun.max.vm.log.VMLog.Record;
 import com.sun.max.vm.log.*;
@@ -102,6 +104,33 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
         VMOptions.addFieldOption("-XX:", "VerifyReferences", SemiSpaceHeapScheme.class, "Do extra verification for each reference scanned by the GC", MaxineVM.Phase.PRISTINE);
     }
 
+    /**
+     * Copy reachable objects in parallel with the {@link GCWorkerGang} when GC worker threads are available.
+     */
+    static boolean UseParallelCopying = true;
+    static {
+        VMOptions.addFieldOption("-XX:", "UseParallelCopying", SemiSpaceHeapScheme.class, "Copy reachable objects in parallel with the GC worker threads", MaxineVM.Phase.PRISTINE);
+    }
+
+    /**
+     * Copy reachable objects in an approximately depth-first order so that objects end up close to the objects referencing them.
+     * See {@link #moveReachableObjectsHierarchically(Pointer)}.
+     */
+    static boolean HierarchicalCopying = false;
+    static {
+        VMOptions.addFieldOption("-XX:", "HierarchicalCopying", SemiSpaceHeapScheme.class,
+                        "Copy reachable objects in approximately depth-first order to improve locality", MaxineVM.Phase.PRISTINE);
+    }
+
+    private static final VMSizeOption hierarchicalCopyingBlockSizeOption =
+        register(new VMSizeOption("-XX:HierarchicalCopyingBlockSize=", Size.K.times(4),
+            "Size of the blocks of to-space objects are kept close to their parents within when copying hierarchically."), MaxineVM.Phase.PRISTINE);
+
+    /**
+     * Maximum number of ranges of to-space scanned ahead of the Cheney scan when copying hierarchically.
+     */
+    private static final int MAX_HIERARCHICAL_SCANNED_RANGES = 4096;
+
 
     private final CollectHeap collectHeap;
 
@@ -121,6 +150,27 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
      */
     private final LinearAllocationMemoryRegion growToSpace = new LinearAllocationMemoryRegion(TO_GROW_REGION_NAME);
 
+    /**
+     * Support for copying reachable objects in parallel with the {@link GCWorkerGang}.
+     */
+    private final ParallelCopying parallelCopying = new ParallelCopying(fromSpace, toSpace);
+
+    /**
+     * Indicates whether the current collection copies reachable objects in parallel.
+     */
+    private boolean copyingInParallel;
+
+    /**
+     * Log 2 of the size of the blocks of to-space used when copying hierarchically.
+     */
+    private int log2HierarchicalBlockSize;
+
+    /**
+     * Ranges of to-space cells already scanned by the secondary scan of a hierarchical copy, in increasing address order.
+     * Null if {@link #HierarchicalCopying} is off.
+     */
+    private SurvivorRangesQueue hierarchicallyScannedRanges;
+
     /**
      * The amount of memory reserved for allocating and raising an OutOfMemoryError when insufficient
      * memory is available to satisfy an allocation request.
@@ -208,6 +258,13 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
             }
 
             lastGCTime = System.currentTimeMillis();
+            if (UseParallelCopying) {
+                parallelCopying.initialize();
+            }
+            if (HierarchicalCopying) {
+                log2HierarchicalBlockSize = Long.numberOfTrailingZeros(Long.highestOneBit(hierarchicalCopyingBlockSizeOption.getValue().toLong()));
+                hierarchicallyScannedRanges = new SurvivorRangesQueue(MAX_HIERARCHICAL_SCANNED_RANGES);
+            }
 
             // From now on we can allocate
 
@@ -227,6 +284,8 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
                 this.growPolicy = new DoubleGrowPolicy();
             }
             increaseGrowPolicy = new LinearGrowPolicy();
+            // Start the GC worker threads used for parallel copying, if any were requested.
+            GCWorkerGang.gang().start();
         } else if (phase == MaxineVM.Phase.TERMINATING) {
             if (Heap.logGCTime()) {
                 timeLogger.logPhaseTimes(-1,
@@ -278,6 +337,16 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
         }
     }
 
+    private static void startTimer(Timer timer, GCPhase phase) {
+        GCTelemetry.beginPhase(phase);
+        startTimer(timer);
+    }
+
+    private static void stopTimer(Timer timer, GCPhase phase) {
+        stopTimer(timer);
+        GCTelemetry.endPhase(phase);
+    }
+
     private final class GC implements SpecialReferenceManager.GC {
 
         public boolean isReachable(Reference ref) {
@@ -351,13 +420,18 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
                 swapSemiSpaces(); // Swap semispaces. From--> To and To-->From
                 stopTimer(clearTimer);
 
+                copyingInParallel = UseParallelCopying && parallelCopying.canCopy(fromSpace.used(), immediateFreeSpace());
+                if (copyingInParallel) {
+                    parallelCopying.doBeforeCopying(top);
+                }
+
                 refVerifier.setValidSpaces(fromSpace, toSpace);
                 if (Heap.logGCPhases()) {
                     phaseLogger.logScanningRoots(VMLogger.Interval.BEGIN);
                 }
-                startTimer(rootScanTimer);
+                startTimer(rootScanTimer, GCPhase.ROOT_SCAN);
                 heapRootsScanner.run(); // Start scanning the reachable objects from my roots.
-                stopTimer(rootScanTimer);
+                stopTimer(rootScanTimer, GCPhase.ROOT_SCAN);
                 if (Heap.logGCPhases()) {
                     phaseLogger.logScanningRoots(VMLogger.Interval.END);
                 }
@@ -365,9 +439,9 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
                 if (Heap.logGCPhases()) {
                     phaseLogger.logScanningBootHeap(VMLogger.Interval.BEGIN);
                 }
-                startTimer(bootHeapScanTimer);
+                startTimer(bootHeapScanTimer, GCPhase.ROOT_SCAN);
                 scanBootHeap();
-                stopTimer(bootHeapScanTimer);
+                stopTimer(bootHeapScanTimer, GCPhase.ROOT_SCAN);
                 if (Heap.logGCPhases()) {
                     phaseLogger.logScanningBootHeap(VMLogger.Interval.END);
                 }
@@ -375,9 +449,9 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
                 if (Heap.logGCPhases()) {
                     phaseLogger.logScanningCode(VMLogger.Interval.BEGIN);
                 }
-                startTimer(codeScanTimer);
+                startTimer(codeScanTimer, GCPhase.ROOT_SCAN);
                 scanCode();
-                stopTimer(codeScanTimer);
+                stopTimer(codeScanTimer, GCPhase.ROOT_SCAN);
                 if (Heap.logGCPhases()) {
                     phaseLogger.logScanningCode(VMLogger.Interval.END);
                 }
@@ -385,9 +459,9 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
                 if (Heap.logGCPhases()) {
                     phaseLogger.logScanningImmortalHeap(VMLogger.Interval.BEGIN);
                 }
-                startTimer(immortalSpaceScanTimer);
+                startTimer(immortalSpaceScanTimer, GCPhase.ROOT_SCAN);
                 scanImmortalHeap();
-                stopTimer(immortalSpaceScanTimer);
+                stopTimer(immortalSpaceScanTimer, GCPhase.ROOT_SCAN);
                 if (Heap.logGCPhases()) {
                     phaseLogger.logScanningImmortalHeap(VMLogger.Interval.END);
                 }
@@ -395,9 +469,16 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
                 if (Heap.logGCPhases()) {
                     phaseLogger.logMovingReachable(VMLogger.Interval.BEGIN);
                 }
-                startTimer(copyTimer);
-                moveReachableObjects(toSpace.start().asPointer());
-                stopTimer(copyTimer);
+                startTimer(copyTimer, GCPhase.EVACUATE);
+                if (copyingInParallel) {
+                    parallelCopying.copyReachables();
+                    parallelCopying.doAfterCopying();
+                    // Special references are preserved sequentially.
+                    copyingInParallel = false;
+                } else {
+                    moveReachableObjects(toSpace.start().asPointer());
+                }
+                stopTimer(copyTimer, GCPhase.EVACUATE);
                 if (Heap.logGCPhases()) {
                     phaseLogger.logMovingReachable(VMLogger.Interval.END);
                 }
@@ -405,9 +486,9 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
                 if (Heap.logGCPhases()) {
                     phaseLogger.logProcessingSpecialReferences(VMLogger.Interval.BEGIN);
                 }
-                startTimer(weakRefTimer);
+                startTimer(weakRefTimer, GCPhase.REFERENCE_PROCESSING);
                 SpecialReferenceManager.processDiscoveredSpecialReferences(refForwarder);
-                stopTimer(weakRefTimer);
+                stopTimer(weakRefTimer, GCPhase.REFERENCE_PROCESSING);
                 stopTimer(gcTimer);
                 if (Heap.logGCPhases()) {
                     phaseLogger.logProcessingSpecialReferences(VMLogger.Interval.END);
@@ -541,6 +622,10 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
     private Reference mapRef(Reference ref) {
         final Pointer fromOrigin = ref.toOrigin();
         if (fromSpace.contains(fromOrigin)) {
+            if (copyingInParallel) {
+                // The copy is scanned by the GC workers.
+                return parallelCopying.forward(fromOrigin);
+            }
             final Reference forwardRef = Layout.readForwardRef(fromOrigin);
             if (!forwardRef.isZero()) {
                 return forwardRef;
@@ -626,6 +711,10 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
     }
 
     void moveReachableObjects(Pointer start) {
+        if (HierarchicalCopying) {
+            moveReachableObjectsHierarchically(start);
+            return;
+        }
         Pointer cell = start;
         while (cell.lessThan(allocationMark())) {
             cell = DebugHeap.checkDebugCellTag(start, cell);
@@ -633,6 +722,72 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
         }
     }
 
+    @INLINE
+    private long hierarchicalBlockIndex(Pointer address) {
+        return address.toLong() >>> log2HierarchicalBlockSize;
+    }
+
+    /**
+     * Approximately depth-first variant of the Cheney scan (Moon's hierarchical scan).
+     * A secondary scan pointer scans the cells of the block of to-space objects are currently copied to, so that the children
+     * of an object are copied in the same block as the object whenever possible. When copying moves on to another block, the secondary
+     * scan leaves the unscanned cells of the previous block to the Cheney scan and restarts at the first cell of the new block.
+     * The ranges scanned by the secondary scan are recorded so that the Cheney scan skips them: each cell is scanned exactly once.
+     * If too many ranges are pending, the secondary scan pauses until the Cheney scan catches up with it.
+     *
+     * @param start where the Cheney scan starts
+     */
+    private void moveReachableObjectsHierarchically(Pointer start) {
+        final SurvivorRangesQueue scannedRanges = hierarchicallyScannedRanges;
+        Pointer scan = start;
+        Pointer partialStart = start;
+        Pointer partialScan = start;
+        scannedRanges.clear();
+        while (true) {
+            final Pointer mark = allocationMark().asPointer();
+            if (partialScan.lessThan(mark)) {
+                final long allocationBlock = hierarchicalBlockIndex(mark.minus(1));
+                if (hierarchicalBlockIndex(partialScan) == allocationBlock) {
+                    partialScan = visitCell(DebugHeap.checkDebugCellTag(start, partialScan));
+                    continue;
+                }
+                if (!scannedRanges.isFull()) {
+                    if (partialScan.greaterThan(partialStart)) {
+                        scannedRanges.add(partialStart, partialScan);
+                    }
+                    Pointer cell = partialScan;
+                    while (cell.lessThan(mark) && hierarchicalBlockIndex(cell) != allocationBlock) {
+                        final Pointer origin = Layout.cellToOrigin(DebugHeap.checkDebugCellTag(start, cell));
+                        cell = Layout.originToCell(origin).plus(Layout.size(origin));
+                    }
+                    partialStart = cell;
+                    partialScan = cell;
+                    continue;
+                }
+            }
+            // The secondary scan has nothing to do: advance the Cheney scan.
+            if (!scannedRanges.isEmpty() && scan.equals(scannedRanges.start())) {
+                scan = scannedRanges.end();
+                scannedRanges.remove();
+                continue;
+            }
+            if (scan.equals(partialStart) && partialScan.greaterThan(partialStart)) {
+                scan = partialScan;
+                partialStart = partialScan;
+                continue;
+            }
+            if (!scan.lessThan(mark)) {
+                break;
+            }
+            scan = visitCell(DebugHeap.checkDebugCellTag(start, scan));
+            if (partialScan.lessThan(scan)) {
+                // Keep the secondary scan ahead of the Cheney scan.
+                partialStart = scan;
+                partialScan = scan;
+            }
+        }
+    }
+
     /**
      * Visit cells corresponding to objects in the heap.
      * TLABs complicate this as they are allocated on the
@@ -878,7 +1033,7 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the TLAB allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the TLAB.
             return tlabAllocate(size);
@@ -891,7 +1046,7 @@ public class SemiSpaceHeapScheme extends HeapSchemeWithTLAB implements CellVisit
             // always return zero for the next TLAB size.
             return retryAllocate(size, true);
         }
-        if (!refillPolicy.shouldRefill(size, tlabMark)) {
+        if (!refillPolicy.shouldRefill(size, tlabMark, tlabEnd)) {
             // Size would fit in a new tlab, but the policy says we shouldn't refill the TLAB yet, so allocate directly in the heap.
             return retryAllocate(size, true);
         }
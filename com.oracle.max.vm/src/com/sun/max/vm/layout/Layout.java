@@ -482,6 +482,34 @@ public final class Layout {
         generalLayout().writeForwardRef(origin, forwardRef);
     }
 
+    /**
+     * Reads the word holding the forwarding reference of an object. If the object isn't forwarded yet, this is the object's hub reference,
+     * suitable as the expected value of {@link #compareAndSwapForwardRef(Pointer, Reference, Reference)}.
+     *
+     * @param origin location of an object
+     * @return the forwarding reference of the object if it was forwarded, its hub reference otherwise
+     */
+    @ACCESSOR(Pointer.class)
+    @INLINE
+    public static Reference readForwardRefValue(Pointer origin) {
+        return generalLayout().readForwardRefValue(origin);
+    }
+
+    /**
+     * Atomically installs a forwarding reference in an object, if the object's forwarding word still holds the suspected value.
+     * Used by parallel evacuating collectors to elect the one GC thread whose copy of the object survives.
+     *
+     * @param origin location of an object
+     * @param suspectedRef the value obtained with {@link #readForwardRefValue(Pointer)}
+     * @param forwardRef the forwarding reference to install
+     * @return the value of the forwarding word before the operation. The forwarding reference was installed if it equals {@code suspectedRef}.
+     */
+    @ACCESSOR(Pointer.class)
+    @INLINE
+    public static Reference compareAndSwapForwardRef(Pointer origin, Reference suspectedRef, Reference forwardRef) {
+        return generalLayout().compareAndSwapForwardRef(origin, suspectedRef, forwardRef);
+    }
+
     /**
      * Access to <strong>byte array object</strong> layout information in the
      * context of the current {@linkplain VMConfiguration VM configuration}.
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.management;
+
+import com.sun.management.*;
+
+/**
+ * Extension of the garbage collector management interface publishing the pause and phase time histograms
+ * recorded by the {@link com.sun.max.vm.heap.GCTelemetry}. All times are in microseconds.
+ */
+public interface GCTelemetryMXBean extends GarbageCollectorMXBean {
+
+    /**
+     * Returns the names of the phases for which times are recorded.
+     */
+    String[] getPhaseNames();
+
+    long getPauseCount();
+
+    /**
+     * Returns the pause time below which the specified percentage of the pauses fall.
+     *
+     * @param percentile a percentage between 0 and 100
+     */
+    long getPauseTimePercentile(double percentile);
+
+    long getMaxPauseTime();
+
+    long getMeanPauseTime();
+
+    /**
+     * Returns the number of collections that went through the specified phase, or -1 if there is no such phase.
+     */
+    long getPhaseCount(String phase);
+
+    /**
+     * Returns the time spent in the specified phase below which the specified percentage of the collections fall,
+     * or -1 if there is no such phase.
+     */
+    long getPhaseTimePercentile(String phase, double percentile);
+
+    long getMaxPhaseTime(String phase);
+
+    /**
+     * Discards the times recorded so far.
+     */
+    void resetTelemetry();
+}
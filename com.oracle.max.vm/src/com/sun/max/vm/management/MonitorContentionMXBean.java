@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.management;
+
+import java.lang.management.*;
+
+/**
+ * Management interface for the monitor contention counters of the modal monitor schemes.
+ * All counts are totals over all classes since VM start.
+ */
+public interface MonitorContentionMXBean extends PlatformManagedObject {
+
+    long getInflationCount();
+
+    long getBiasRevocationCount();
+
+    long getBulkRebiasCount();
+
+    long getBulkRevocationCount();
+
+    long getContendedEnterCount();
+
+    /**
+     * Returns the total time in milliseconds that threads spent spinning or blocked on contended monitors.
+     */
+    long getBlockedTime();
+
+    /**
+     * Returns a description of the counters of the classes whose monitors were most contended.
+     *
+     * @param n the maximum number of classes described
+     */
+    String[] getMostContendedClasses(int n);
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.management;
+
+import java.util.*;
+
+import javax.management.*;
+
+import com.sun.max.vm.monitor.modal.sync.*;
+
+/**
+ * This class provides the entry point to the monitor management functions in Maxine.
+ */
+public class MonitorManagement {
+
+    private static final MonitorContentionMXBean monitorContentionMXBean = new MonitorContentionMXBeanImpl();
+
+    public static MonitorContentionMXBean getMonitorContentionMXBean() {
+        return monitorContentionMXBean;
+    }
+
+    private static class MonitorContentionMXBeanImpl implements MonitorContentionMXBean {
+
+        public long getInflationCount() {
+            long result = 0;
+            for (ContentionCounters counters : ContentionCounters.all()) {
+                result += counters.inflations();
+            }
+            return result;
+        }
+
+        public long getBiasRevocationCount() {
+            long result = 0;
+            for (ContentionCounters counters : ContentionCounters.all()) {
+                result += counters.biasRevocations();
+            }
+            return result;
+        }
+
+        public long getBulkRebiasCount() {
+            long result = 0;
+            for (ContentionCounters counters : ContentionCounters.all()) {
+                result += counters.bulkRebiases();
+            }
+            return result;
+        }
+
+        public long getBulkRevocationCount() {
+            long result = 0;
+            for (ContentionCounters counters : ContentionCounters.all()) {
+                result += counters.bulkRevocations();
+            }
+            return result;
+        }
+
+        public long getContendedEnterCount() {
+            long result = 0;
+            for (ContentionCounters counters : ContentionCounters.all()) {
+                result += counters.contendedEnters();
+            }
+            return result;
+        }
+
+        public long getBlockedTime() {
+            long result = 0;
+            for (ContentionCounters counters : ContentionCounters.all()) {
+                result += counters.blockedNanos();
+            }
+            return result / 1000000L;
+        }
+
+        public String[] getMostContendedClasses(int n) {
+            final List<ContentionCounters> top = ContentionCounters.mostContended(n);
+            final String[] result = new String[top.size()];
+            for (int i = 0; i < result.length; i++) {
+                final ContentionCounters counters = top.get(i);
+                result[i] = counters.classActor.name.string +
+                    ": blocked=" + counters.blockedNanos() / 1000000L + "ms" +
+                    " contendedEnters=" + counters.contendedEnters() +
+                    " inflations=" + counters.inflations() +
+                    " biasRevocations=" + counters.biasRevocations() +
+                    " bulkRebiases=" + counters.bulkRebiases() +
+                    " bulkRevocations=" + counters.bulkRevocations();
+            }
+            return result;
+        }
+
+        public ObjectName getObjectName() {
+            try {
+                return ObjectName.getInstance("com.sun.max.vm:type=MonitorContention");
+            } catch (MalformedObjectNameException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+}
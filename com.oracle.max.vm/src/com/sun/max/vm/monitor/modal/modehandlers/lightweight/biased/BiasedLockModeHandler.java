@@ -28,6 +28,7 @@ import com.sun.max.vm.monitor.modal.modehandlers.*;
 import com.sun.max.vm.monitor.modal.modehandlers.AbstractModeHandler.ModeDelegate.DelegatedThreadHoldsMonitorResult;
 import com.sun.max.vm.monitor.modal.modehandlers.AbstractModeHandler.MonitorSchemeEntry;
 import com.sun.max.vm.monitor.modal.modehandlers.lightweight.biased.BiasedLockRevocationHeuristics.RevocationType;
+import com.sun.max.vm.monitor.modal.sync.*;
 import com.sun.max.vm.object.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.thread.*;
@@ -457,6 +458,7 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
                     // We have to revoke to set the hashcode...
                     final int vmThreadMapThreadID = decodeLockwordThreadID(biasedLockword.getBiasOwnerID());
                     lockword = revokeWithOwnerSafepointed(object, vmThreadMapThreadID, biasedLockword);
+                    ContentionCounters.recordBiasRevocation(object);
                     if (Monitor.TraceMonitors) {
                         final boolean lockDisabledSafepoints = Log.lock();
                         Log.print("Safepointed revoke for hashcode: ");
@@ -494,6 +496,7 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
                         Log.unlock(lockDisabledSafepoints);
                     }
                     postRevokeLockword = revokeWithOwnerSafepointed(object, decodeLockwordThreadID(lockword.getBiasOwnerID()), lockword);
+                    ContentionCounters.recordBiasRevocation(object);
                     break;
                 }
                 case BULK_REBIAS: {
@@ -508,6 +511,7 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
                     operation.submit();
                     postRevokeLockword = operation.postRebiasLockword;
                     revocationHeuristics.notifyBulkRebiasComplete();
+                    ContentionCounters.recordBulkRebias(object);
                     break;
                 }
                 case BULK_REVOCATION: {
@@ -521,6 +525,7 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
                     BulkRevokeOperation operation = new BulkRevokeOperation(object);
                     operation.submit();
                     postRevokeLockword = operation.postRevokeLockword;
+                    ContentionCounters.recordBulkRevocation(object);
                     break;
                 }
             }
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.monitor.modal.sync;
+
+import java.util.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.atomic.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.monitor.modal.sync.JavaMonitorManager.VmLock;
+import com.sun.max.vm.object.*;
+import com.sun.max.vm.reference.*;
+
+/**
+ * Per-class counters of monitor contention events: monitor inflations, biased lock revocations, contended
+ * monitor acquisitions and the time threads spent spinning or blocked on contended monitors.
+ * <p>
+ * The counters of a class are created the first time one of its instances is involved in such an event outside of
+ * a global safepoint and are hung off its {@link Hub}. They are always on, which is cheap as they are only updated on paths
+ * that already inflate, revoke or block. Contention on {@linkplain VmLock VM locks} is not recorded, as the
+ * counters may have to be allocated while the lock is held.
+ * <p>
+ * The counters are exposed by {@code com.sun.max.vm.management.MonitorManagement} and the
+ * {@code -XX:MonitorContentionReport} option prints the most contended classes at exit.
+ */
+public final class ContentionCounters {
+
+    /**
+     * Number of classes printed by the report at VM exit. No report is printed if 0.
+     */
+    public static int MonitorContentionReport;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "MonitorContentionReport", ContentionCounters.class,
+            "Print the N classes whose monitors were most contended at VM exit.");
+    }
+
+    /**
+     * Head of the list of all counters, linked through {@link #next}.
+     */
+    private static final AtomicReference allCounters = new AtomicReference();
+
+    public final ClassActor classActor;
+
+    private ContentionCounters next;
+
+    private final AtomicInteger inflations = new AtomicInteger();
+    private final AtomicInteger biasRevocations = new AtomicInteger();
+    private final AtomicInteger bulkRebiases = new AtomicInteger();
+    private final AtomicInteger bulkRevocations = new AtomicInteger();
+    private final AtomicInteger contendedEnters = new AtomicInteger();
+
+    private volatile long blockedNanos;
+
+    @FOLD
+    private static int blockedNanosOffset() {
+        return ClassActor.fromJava(ContentionCounters.class).findLocalInstanceFieldActor("blockedNanos").offset();
+    }
+
+    private ContentionCounters(ClassActor classActor) {
+        this.classActor = classActor;
+    }
+
+    /**
+     * Gets the counters of the class of a given object, creating them if necessary.
+     * The counters cannot be created at a global safepoint, where the monitor manager may neither allocate nor block:
+     * events on instances of a class without counters are then not recorded.
+     *
+     * @return the counters of the object's class, or null if the object's contention events are not recorded
+     */
+    private static ContentionCounters of(Object object) {
+        if (MaxineVM.isHosted() || object == null || object instanceof VmLock) {
+            return null;
+        }
+        final Hub hub = ObjectAccess.readHub(object);
+        ContentionCounters counters = hub.contentionCounters();
+        if (counters == null) {
+            if (JavaMonitorManager.isInGlobalSafepoint()) {
+                return null;
+            }
+            final ContentionCounters newCounters = new ContentionCounters(hub.classActor);
+            counters = hub.installContentionCounters(newCounters);
+            if (counters == newCounters) {
+                ContentionCounters head;
+                do {
+                    head = (ContentionCounters) allCounters.get();
+                    newCounters.next = head;
+                } while (!allCounters.compareAndSet(head, newCounters));
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * Records that a monitor was bound to a given object.
+     */
+    public static void recordInflation(Object object) {
+        final ContentionCounters counters = of(object);
+        if (counters != null) {
+            counters.inflations.getAndAdd(1);
+        }
+    }
+
+    /**
+     * Records that a monitor bound to a given object by {@link #recordInflation(Object)} was released again,
+     * because another thread inflated the object's lock first.
+     */
+    public static void recordCancelledInflation(Object object) {
+        final ContentionCounters counters = of(object);
+        if (counters != null) {
+            counters.inflations.getAndAdd(-1);
+        }
+    }
+
+    /**
+     * Records the revocation of the bias of a given object.
+     */
+    public static void recordBiasRevocation(Object object) {
+        final ContentionCounters counters = of(object);
+        if (counters != null) {
+            counters.biasRevocations.getAndAdd(1);
+        }
+    }
+
+    /**
+     * Records the bulk rebiasing of the instances of the class of a given object.
+     */
+    public static void recordBulkRebias(Object object) {
+        final ContentionCounters counters = of(object);
+        if (counters != null) {
+            counters.bulkRebiases.getAndAdd(1);
+        }
+    }
+
+    /**
+     * Records the bulk revocation of the biases of the instances of the class of a given object.
+     */
+    public static void recordBulkRevocation(Object object) {
+        final ContentionCounters counters = of(object);
+        if (counters != null) {
+            counters.bulkRevocations.getAndAdd(1);
+        }
+    }
+
+    /**
+     * Records a contended acquisition of the monitor of a given object.
+     *
+     * @param nanos the time spent spinning or blocked before the monitor was acquired
+     */
+    public static void recordContendedEnter(Object object, long nanos) {
+        final ContentionCounters counters = of(object);
+        if (counters != null) {
+            counters.contendedEnters.getAndAdd(1);
+            final Reference countersRef = Reference.fromJava(counters);
+            long oldNanos;
+            do {
+                oldNanos = counters.blockedNanos;
+            } while (countersRef.compareAndSwapLong(blockedNanosOffset(), oldNanos, oldNanos + nanos) != oldNanos);
+        }
+    }
+
+    public int inflations() {
+        return inflations.get();
+    }
+
+    public int biasRevocations() {
+        return biasRevocations.get();
+    }
+
+    public int bulkRebiases() {
+        return bulkRebiases.get();
+    }
+
+    public int bulkRevocations() {
+        return bulkRevocations.get();
+    }
+
+    public int contendedEnters() {
+        return contendedEnters.get();
+    }
+
+    public long blockedNanos() {
+        return blockedNanos;
+    }
+
+    /**
+     * Gets the counters of all classes that have had a contention event.
+     */
+    public static List<ContentionCounters> all() {
+        final List<ContentionCounters> result = new ArrayList<ContentionCounters>();
+        for (ContentionCounters counters = (ContentionCounters) allCounters.get(); counters != null; counters = counters.next) {
+            result.add(counters);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the counters of the classes whose monitors were most contended, ordered by decreasing blocked time,
+     * then by decreasing number of contended acquisitions and inflations.
+     *
+     * @param n the maximum number of counters returned
+     */
+    public static List<ContentionCounters> mostContended(int n) {
+        final List<ContentionCounters> result = all();
+        Collections.sort(result, new Comparator<ContentionCounters>() {
+            public int compare(ContentionCounters o1, ContentionCounters o2) {
+                if (o1.blockedNanos != o2.blockedNanos) {
+                    return o1.blockedNanos > o2.blockedNanos ? -1 : 1;
+                }
+                if (o1.contendedEnters() != o2.contendedEnters()) {
+                    return o2.contendedEnters() - o1.contendedEnters();
+                }
+                return o2.inflations() - o1.inflations();
+            }
+        });
+        return result.size() <= n ? result : result.subList(0, n);
+    }
+
+    /**
+     * Prints the {@link #MonitorContentionReport} most contended classes to the log.
+     */
+    static void printReport() {
+        final List<ContentionCounters> top = mostContended(MonitorContentionReport);
+        final boolean lockDisabledSafepoints = Log.lock();
+        Log.println("Monitor contention (blocked ms, contended enters, inflations, bias revocations, bulk rebiases, bulk revocations):");
+        for (ContentionCounters counters : top) {
+            Log.print("  ");
+            Log.print(counters.blockedNanos / 1000000L);
+            Log.print(' ');
+            Log.print(counters.contendedEnters());
+            Log.print(' ');
+            Log.print(counters.inflations());
+            Log.print(' ');
+            Log.print(counters.biasRevocations());
+            Log.print(' ');
+            Log.print(counters.bulkRebiases());
+            Log.print(' ');
+            Log.print(counters.bulkRevocations());
+            Log.print(' ');
+            Log.println(counters.classActor.name.string);
+        }
+        Log.unlock(lockDisabledSafepoints);
+    }
+}
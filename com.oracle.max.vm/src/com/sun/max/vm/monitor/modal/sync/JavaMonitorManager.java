@@ -33,6 +33,7 @@ import com.sun.max.vm.monitor.*;
 import com.sun.max.vm.monitor.modal.sync.JavaMonitorManager.ManagedMonitor.*;
 import com.sun.max.vm.monitor.modal.sync.nat.*;
 import com.sun.max.vm.object.*;
+import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.thread.*;
 
@@ -41,10 +42,13 @@ import com.sun.max.vm.thread.*;
  * <p>
  * Binding can be performed at bootstrapping or runtime. If binding is performed while bootstrapping then either a default
  * or specialized monitor can be used. If binding is performed at runtime then an unbound monitor is taken from
- * a free list.
+ * the binding thread's {@linkplain VmThread#monitorCache monitor cache}. An empty cache is refilled in batches of
+ * {@link #MonitorCacheSize} monitors from a lock-free global stack of unbound monitors, so that inflation does not
+ * serialize threads on a global lock.
  * <p>
- * Unbinding is performed at global safepoints. All unowned, unbindable, bound monitors are unbound. Writing of unbound
- * lockwords is delegated to an {@link UnboundMiscWordWriter} object (most likely the inflated mode handler of the ModalMonitorScheme).
+ * Unbinding is performed at global safepoints, either before a garbage collection or, when the pool of unbound
+ * monitors runs out, by a {@linkplain DeflateMonitors dedicated VM operation} that does not collect the heap.
+ * All unowned, unbindable, bound monitors are unbound. Writing of unbound lockwords is delegated to an {@link UnboundMiscWordWriter} object (most likely the inflated mode handler of the ModalMonitorScheme).
  * This allows unbinding to be a transition to any other locking mode.
  * <p>
  * GC considerations:
@@ -82,21 +86,36 @@ public class JavaMonitorManager {
     private static int unboundListGrowQty = 50;
 
     /**
-     * The current number of unbound monitors available.
+     * The number of monitors a thread takes from {@link #unboundMonitors} when its monitor cache is empty.
      */
-    private static int numberOfUnboundMonitors = 0;
+    public static int MonitorCacheSize = 8;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "MonitorCacheSize", JavaMonitorManager.class,
+            "Number of unbound monitors a thread takes from the global pool when its monitor cache is empty.");
+    }
 
     /**
-     * The unbound monitors high water mark.
-     *
-     * @see #bindMonitor(Object)
+     * The global stack of unbound monitors.
+     * <p>
+     * Mutator threads only pop monitors from this stack and only push {@linkplain #expandUnboundList() newly created}
+     * monitors onto it. Monitors that have already been handed out are only pushed back at a global safepoint
+     * (see {@link #flushMonitorCaches()}). As a mutator never pops across a safepoint, a monitor cannot leave and
+     * re-enter the stack while a pop is in progress, which rules out the ABA problem of lock-free stacks.
      */
-    private static int unboundMonitorsHwm;
+    private static final MonitorStack unboundMonitors = new MonitorStack();
 
     /**
-     * The head of the list of unbound monitors.
+     * Monitors cached by threads that have terminated, waiting to be moved back to {@link #unboundMonitors}
+     * at the next global safepoint.
      */
-    private static ManagedMonitor unboundList;
+    private static final MonitorStack retiredMonitors = new MonitorStack();
+
+    /**
+     * The number of bindable monitors at or above which an exhausted pool is replenished by
+     * {@linkplain DeflateMonitors deflating} idle monitors instead of creating new ones.
+     */
+    private static int deflationThreshold = UNBOUNDLIST_IMAGE_QTY << 1;
 
     /**
      * The pool of monitors that can be bound to objects.
@@ -113,6 +132,13 @@ public class JavaMonitorManager {
 
     private static boolean inGlobalSafepoint = false;
 
+    /**
+     * Indicates whether the monitor manager is running at a global safepoint, where it may neither allocate nor deflate monitors.
+     */
+    static boolean isInGlobalSafepoint() {
+        return inGlobalSafepoint;
+    }
+
     /**
      * Lockword rewriting for objects in the process of being unbound is delegated to an UnboundMiscWordWriter.
      * This allows unbinding to transition a lock from 'inflated' to any other mode.
@@ -148,10 +174,10 @@ public class JavaMonitorManager {
             }
             for (int i = 0; i < unboundListImageQty; i++) {
                 final ManagedMonitor monitor = newManagedMonitor();
-                addToUnboundList(monitor);
+                unboundMonitors.push(monitor, monitor, 1);
                 addToBindableMonitors(monitor);
             }
-            unboundMonitorsHwm = unboundListImageQty;
+            deflationThreshold = unboundListImageQty << 1;
         } else if (phase == MaxineVM.Phase.PRIMORDIAL) {
             NativeMutexFactory.initialize();
             NativeConditionVariableFactory.initialize();
@@ -180,6 +206,15 @@ public class JavaMonitorManager {
                 }
                 Log.unlock(lockDisabledSafepoints);
             }
+        } else if (phase == MaxineVM.Phase.RUNNING) {
+            if (ContentionCounters.MonitorContentionReport > 0) {
+                Runtime.getRuntime().addShutdownHook(new Thread("MonitorContentionReportPrinter") {
+                    @Override
+                    public void run() {
+                        ContentionCounters.printReport();
+                    }
+                });
+            }
         } else if (phase == MaxineVM.Phase.STARTING) {
             assert numberOfBindableMonitors <= bindableMonitors.length;
             if (Monitor.TraceMonitors && stickyMonitors.length > 0) {
@@ -303,24 +338,243 @@ public class JavaMonitorManager {
         bindableMonitors[numberOfBindableMonitors++] = monitor;
     }
 
-    private static ManagedMonitor takeFromUnboundList() {
-        // No safe points in here, so safe to touch the free list.
-        final ManagedMonitor monitor = unboundList;
-        unboundList = unboundList.next();
-        monitor.setNext(null);
-        numberOfUnboundMonitors--;
+    /**
+     * A lock-free stack of monitors linked through {@link ManagedMonitor#next()}.
+     */
+    static final class MonitorStack {
+        private volatile ManagedMonitor top;
+
+        /**
+         * Number of monitors on the stack. Only approximate while monitors are being pushed or popped.
+         */
+        private volatile int size;
+
+        @FOLD
+        private static int topOffset() {
+            return ClassActor.fromJava(MonitorStack.class).findLocalInstanceFieldActor("top").offset();
+        }
+
+        @FOLD
+        private static int sizeOffset() {
+            return ClassActor.fromJava(MonitorStack.class).findLocalInstanceFieldActor("size").offset();
+        }
+
+        int size() {
+            return size;
+        }
+
+        private boolean casTop(ManagedMonitor oldTop, ManagedMonitor newTop) {
+            return Reference.fromJava(this).compareAndSwapReference(topOffset(), Reference.fromJava(oldTop), Reference.fromJava(newTop)).toJava() == oldTop;
+        }
+
+        private void addToSize(int delta) {
+            final Reference thisRef = Reference.fromJava(this);
+            int oldSize;
+            do {
+                oldSize = size;
+            } while (thisRef.compareAndSwapInt(sizeOffset(), oldSize, oldSize + delta) != oldSize);
+        }
+
+        /**
+         * Pushes a chain of monitors onto this stack.
+         *
+         * @param first the first monitor of the chain
+         * @param last the last monitor of the chain
+         * @param count the number of monitors in the chain
+         */
+        void push(ManagedMonitor first, ManagedMonitor last, int count) {
+            if (MaxineVM.isHosted()) {
+                last.setNext(top);
+                top = first;
+                size += count;
+                return;
+            }
+            ManagedMonitor oldTop;
+            do {
+                oldTop = top;
+                last.setNext(oldTop);
+            } while (!casTop(oldTop, first));
+            addToSize(count);
+        }
+
+        /**
+         * Pops at most {@code max} monitors off this stack.
+         *
+         * @return the popped monitors as a null terminated chain, or {@code null} if the stack is empty
+         */
+        ManagedMonitor pop(int max) {
+            // The chain must not be pushed back by a safepoint between reading the top and swapping it.
+            final boolean wasDisabled = SafepointPoll.disable();
+            ManagedMonitor first;
+            ManagedMonitor last = null;
+            int count = 0;
+            do {
+                first = top;
+                if (first == null) {
+                    break;
+                }
+                last = first;
+                count = 1;
+                while (count < max && last.next() != null) {
+                    last = last.next();
+                    count++;
+                }
+            } while (!casTop(first, last.next()));
+            if (!wasDisabled) {
+                SafepointPoll.enable();
+            }
+            if (first != null) {
+                last.setNext(null);
+                addToSize(-count);
+            }
+            return first;
+        }
+
+        /**
+         * Pops all monitors off this stack.
+         *
+         * @return the popped monitors as a null terminated chain, or {@code null} if the stack is empty
+         */
+        ManagedMonitor popAll() {
+            ManagedMonitor first;
+            do {
+                first = top;
+                if (first == null) {
+                    return null;
+                }
+            } while (!casTop(first, null));
+            int count = 0;
+            for (ManagedMonitor m = first; m != null; m = m.next()) {
+                count++;
+            }
+            addToSize(-count);
+            return first;
+        }
+    }
+
+    /**
+     * Pushes a chain of monitors onto the given stack.
+     */
+    private static void pushChain(MonitorStack stack, ManagedMonitor first) {
+        if (first != null) {
+            ManagedMonitor last = first;
+            int count = 1;
+            while (last.next() != null) {
+                last = last.next();
+                count++;
+            }
+            stack.push(first, last, count);
+        }
+    }
+
+    /**
+     * Takes a monitor from the given thread's monitor cache.
+     *
+     * @return the monitor or {@code null} if the cache is empty
+     */
+    private static ManagedMonitor takeFromMonitorCache(VmThread thread) {
+        // Safepoints are disabled so that the cache is not flushed while it is being updated.
+        final boolean wasDisabled = SafepointPoll.disable();
+        final ManagedMonitor monitor = (ManagedMonitor) thread.monitorCache;
+        if (monitor != null) {
+            thread.monitorCache = monitor.next();
+            thread.monitorCacheSize--;
+            monitor.setNext(null);
+        }
+        if (!wasDisabled) {
+            SafepointPoll.enable();
+        }
         return monitor;
     }
 
-    private static void addToUnboundList(ManagedMonitor monitor) {
-        // No safe points in here, so safe to touch the free list.
-        monitor.setNext(unboundList);
-        unboundList = monitor;
-        numberOfUnboundMonitors++;
+    private static void addToMonitorCache(VmThread thread, ManagedMonitor monitor) {
+        final boolean wasDisabled = SafepointPoll.disable();
+        monitor.setNext((ManagedMonitor) thread.monitorCache);
+        thread.monitorCache = monitor;
+        thread.monitorCacheSize++;
+        if (!wasDisabled) {
+            SafepointPoll.enable();
+        }
+    }
+
+    /**
+     * Refills the given thread's empty monitor cache from {@link #unboundMonitors}, replenishing the latter
+     * if it is running low.
+     *
+     * @return a monitor for the current binding, which is not put in the cache
+     */
+    private static ManagedMonitor refillMonitorCache(VmThread thread) {
+        if (inGlobalSafepoint) {
+            // Can neither allocate nor deflate here, hence the reserve of UNBOUNDLIST_MIN_QTY monitors.
+            final ManagedMonitor monitor = unboundMonitors.pop(1);
+            FatalError.check(monitor != null, "unbound monitor pool exhausted during a safepoint");
+            return monitor;
+        }
+        ManagedMonitor batch;
+        do {
+            if (unboundMonitors.size() < UNBOUNDLIST_MIN_QTY + MonitorCacheSize) {
+                replenishUnboundMonitors();
+            }
+            batch = unboundMonitors.pop(MonitorCacheSize);
+        } while (batch == null);
+
+        final ManagedMonitor rest = batch.next();
+        batch.setNext(null);
+        if (rest != null) {
+            int count = 0;
+            for (ManagedMonitor m = rest; m != null; m = m.next()) {
+                count++;
+            }
+            final boolean wasDisabled = SafepointPoll.disable();
+            ManagedMonitor last = rest;
+            while (last.next() != null) {
+                last = last.next();
+            }
+            // The cache may have been refilled by an unbindMonitor in the meantime
+            last.setNext((ManagedMonitor) thread.monitorCache);
+            thread.monitorCache = rest;
+            thread.monitorCacheSize += count;
+            if (!wasDisabled) {
+                SafepointPoll.enable();
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Ensures there are enough monitors in {@link #unboundMonitors}, first by deflating idle monitors if the
+     * pool has grown past {@link #deflationThreshold} and then by creating new monitors.
+     */
+    private static void replenishUnboundMonitors() {
+        synchronized (LOCK) {
+            if (unboundMonitors.size() >= UNBOUNDLIST_MIN_QTY + MonitorCacheSize) {
+                // Another thread got here first
+                return;
+            }
+            if (numberOfBindableMonitors >= deflationThreshold) {
+                deflateMonitors.submit();
+            }
+            if (unboundMonitors.size() < UNBOUNDLIST_MIN_QTY + MonitorCacheSize) {
+                expandUnboundList();
+            }
+        }
     }
 
     /**
-     * Lock used to synchronize access to the unbound monitor list.
+     * Moves the monitors cached by a thread that is terminating to {@link #retiredMonitors}. They are made available
+     * to other threads at the next global safepoint.
+     *
+     * @param thread a thread that has been removed from the {@linkplain VmThreadMap#ACTIVE active threads}
+     */
+    public static void releaseMonitorCache(VmThread thread) {
+        final ManagedMonitor first = (ManagedMonitor) thread.monitorCache;
+        thread.monitorCache = null;
+        thread.monitorCacheSize = 0;
+        pushChain(retiredMonitors, first);
+    }
+
+    /**
+     * Lock used to serialize the replenishing of {@link #unboundMonitors}.
      */
     @CONSTANT_WHEN_NOT_ZERO
     private static Object LOCK;
@@ -337,23 +591,13 @@ public class JavaMonitorManager {
      * @return the monitor that was bound
      */
     public static ManagedMonitor bindMonitor(Object object) {
-        ManagedMonitor monitor;
-        if (inGlobalSafepoint) {
-            monitor = takeFromUnboundList();
-        } else {
-            synchronized (LOCK) {
-                if (numberOfUnboundMonitors < UNBOUNDLIST_MIN_QTY) {
-                    System.gc();
-                }
-
-                // If we didn't free up enough such that we are at least midway between min and hwm, expand
-                if (numberOfUnboundMonitors < (unboundMonitorsHwm + UNBOUNDLIST_MIN_QTY) >> 1) {
-                    expandUnboundList();
-                }
-                monitor = takeFromUnboundList();
-            }
+        final VmThread thread = VmThread.current();
+        ManagedMonitor monitor = takeFromMonitorCache(thread);
+        if (monitor == null) {
+            monitor = refillMonitorCache(thread);
         }
         monitor.setBoundObject(object);
+        ContentionCounters.recordInflation(object);
         if (Monitor.TraceMonitors) {
             final boolean lockDisabledSafepoints = Log.lock();
             Log.print("Bound monitor: ");
@@ -365,7 +609,7 @@ public class JavaMonitorManager {
     }
 
     /**
-     * Places the given monitor back into the free list.
+     * Places the given monitor back into the current thread's monitor cache.
      * <p>
      * Important: This should only be called for monitors that have
      * failed to be two-way bound to an object.
@@ -375,14 +619,9 @@ public class JavaMonitorManager {
      */
     public static void unbindMonitor(JavaMonitor monitor) {
         final ManagedMonitor bindableMonitor = (ManagedMonitor) monitor;
+        ContentionCounters.recordCancelledInflation(bindableMonitor.boundObject());
         bindableMonitor.reset();
-        if (inGlobalSafepoint) {
-            addToUnboundList(bindableMonitor);
-        } else {
-            synchronized (LOCK) {
-                addToUnboundList(bindableMonitor);
-            }
-        }
+        addToMonitorCache(VmThread.current(), bindableMonitor);
     }
 
     @NO_SAFEPOINT_POLLS("verification requires mutual exclusion with GC")
@@ -408,6 +647,7 @@ public class JavaMonitorManager {
      */
     private static void expandUnboundList() {
         ManagedMonitor newUnboundList = null;
+        ManagedMonitor newUnboundListTail = null;
         final ManagedMonitor[] newAllBindable = new ManagedMonitor[bindableMonitors.length + unboundListGrowQty];
 
         // Create the new monitors
@@ -415,6 +655,9 @@ public class JavaMonitorManager {
             final ManagedMonitor monitor = newManagedMonitor();
             monitor.setNext(newUnboundList);
             newUnboundList = monitor;
+            if (newUnboundListTail == null) {
+                newUnboundListTail = monitor;
+            }
         }
 
         // This is the only place where we need to synchronize monitor list access
@@ -424,14 +667,11 @@ public class JavaMonitorManager {
             newAllBindable[i] = bindableMonitors[i];
         }
         bindableMonitors = newAllBindable;
-        unboundMonitorsHwm = newAllBindable.length;
-        ManagedMonitor monitor = newUnboundList;
-        while (monitor != null) {
-            newUnboundList = monitor.next();
-            addToUnboundList(monitor);
+        for (ManagedMonitor monitor = newUnboundList; monitor != null; monitor = monitor.next()) {
             addToAllBindable(monitor);
-            monitor = newUnboundList;
         }
+        // The new monitors have never been on the stack, so mutators may push them.
+        unboundMonitors.push(newUnboundList, newUnboundListTail, unboundListGrowQty);
         FatalError.check(bindableMonitors.length >= numberOfBindableMonitors, "corrupted bindableMonitors array");
         SafepointPoll.enable();
         FatalError.check(verifyBindableMonitors() == 0, "corrupted bindableMonitors array");
@@ -466,7 +706,7 @@ public class JavaMonitorManager {
      */
     public static void beforeGarbageCollection() {
         inGlobalSafepoint = true;
-        unbindUnownedMonitors();
+        unbindUnownedMonitors(true);
     }
 
     /**
@@ -493,10 +733,53 @@ public class JavaMonitorManager {
 
     private static final ProtectedMonitorGatherer protectedMonitorGatherer = new ProtectedMonitorGatherer();
 
+    private static class MonitorCacheFlusher implements Pointer.Procedure {
+        public void run(Pointer tla) {
+            VmThread thread = VmThread.fromTLA(tla);
+            final ManagedMonitor first = (ManagedMonitor) thread.monitorCache;
+            thread.monitorCache = null;
+            thread.monitorCacheSize = 0;
+            pushChain(unboundMonitors, first);
+        }
+    }
+
+    private static final MonitorCacheFlusher monitorCacheFlusher = new MonitorCacheFlusher();
+
     /**
+     * Moves the monitors of all thread caches and of terminated threads back to {@link #unboundMonitors}.
      * Must only be called on a global safepoint.
      */
-    private static void unbindUnownedMonitors() {
+    private static void flushMonitorCaches() {
+        VmThreadMap.ACTIVE.forAllThreadLocals(null, monitorCacheFlusher);
+        pushChain(unboundMonitors, retiredMonitors.popAll());
+    }
+
+    /**
+     * A VM operation that unbinds all unowned monitors at a global safepoint without collecting the heap.
+     */
+    static final class DeflateMonitors extends VmOperation {
+        DeflateMonitors() {
+            super("DeflateMonitors", null, Mode.Safepoint);
+        }
+
+        @Override
+        protected void doIt() {
+            inGlobalSafepoint = true;
+            unbindUnownedMonitors(false);
+            inGlobalSafepoint = false;
+        }
+    }
+
+    private static final DeflateMonitors deflateMonitors = new DeflateMonitors();
+
+    /**
+     * Must only be called on a global safepoint.
+     *
+     * @param beforeGC specifies if this is called before a garbage collection, in which case the monitors that
+     *            remain bound are {@linkplain ManagedMonitor#preGCPrepare() prepared} for it
+     */
+    private static void unbindUnownedMonitors(boolean beforeGC) {
+        flushMonitorCaches();
         // Mark all protected monitors
         VmThreadMap.ACTIVE.forAllThreadLocals(null, protectedMonitorGatherer);
         // Deflate all non-protected and non-sticky monitors with no owner
@@ -519,14 +802,15 @@ public class JavaMonitorManager {
                     unboundMiscWordWriter.writeUnboundHashWord(monitor.boundObject(), monitor.displacedHash());
                 }
                 monitor.reset();
-                // Put the monitor back on the unbound list.
-                // This is thread-safe as mutator thread access to the free-list is
-                // atomic with respect to safepointing.
-                addToUnboundList(monitor);
-            } else if (monitor.isBound()) {
+                // Put the monitor back on the unbound stack.
+                // This is thread-safe as no mutator thread is in the middle of a pop.
+                unboundMonitors.push(monitor, monitor, 1);
+            } else if (beforeGC && monitor.isBound()) {
                 monitor.preGCPrepare();
             }
         }
+        // Deflate again once the pool has grown to twice the number of monitors still in use
+        deflationThreshold = Math.max((numberOfBindableMonitors - unboundMonitors.size()) << 1, UNBOUNDLIST_IMAGE_QTY);
     }
 
     /**
@@ -54,7 +54,12 @@ import com.sun.max.vm.thread.*;
  * thread A because thread A was removed from the wait set when its timeout expired. So the notify wakes up thread B and
  * all threads can continue. With this implementation, the notify can hit thread A since it could not re-acquire the
  * lock between the timeout and the notify (remember that thread C holds the lock). So the notify does not wake up
- * thread B, and it sleeps forever - thread B remains blocked forever.
+ * thread B, and it sleeps forever - thread B remains blocked forever. <br>
+ * <br>
+ * A thread that finds the monitor owned by another thread first spins for a while, trying to acquire the mutex without
+ * blocking, before it blocks on the mutex. As in HotSpot's adaptive spinning, the number of spin iterations is kept per
+ * monitor and adapted to the success of previous spins, so that monitors guarding short critical sections are handed
+ * off without context switches while spinning on monitors held for long is quickly abandoned.
  */
 public class StandardJavaMonitor extends AbstractJavaMonitor {
 
@@ -72,6 +77,49 @@ public class StandardJavaMonitor extends AbstractJavaMonitor {
 
     private int notifiedThreads;
 
+    /**
+     * Determines if contended acquisitions spin before blocking.
+     */
+    static boolean UseAdaptiveSpinning = true;
+
+    /**
+     * The maximum number of iterations a thread spins trying to acquire a monitor.
+     */
+    static int MonitorSpinLimit = 5000;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "UseAdaptiveSpinning", StandardJavaMonitor.class, "Spin before blocking on a contended monitor.");
+        VMOptions.addFieldOption("-XX:", "MonitorSpinLimit", StandardJavaMonitor.class, "Maximum number of iterations spent spinning on a contended monitor.");
+    }
+
+    /**
+     * Number of iterations a spin is always given, however poorly previous spins fared.
+     */
+    private static final int SPIN_BASE = 10;
+
+    /**
+     * Increment of {@link #spinDuration} after a successful spin.
+     */
+    private static final int SPIN_BONUS = 100;
+
+    /**
+     * Decrement of {@link #spinDuration} after a failed spin.
+     */
+    private static final int SPIN_PENALTY = 200;
+
+    /**
+     * Lower bound of {@link #spinDuration} after a successful spin.
+     */
+    private static final int SPIN_POVERTY = 1000;
+
+    private static int numberOfProcessors;
+
+    /**
+     * The number of iterations of the next spin on this monitor. It is updated without synchronization
+     * as it is only a hint.
+     */
+    private int spinDuration = MonitorSpinLimit;
+
     public StandardJavaMonitor() {
         mutex = MutexFactory.create();
     }
@@ -95,15 +143,51 @@ public class StandardJavaMonitor extends AbstractJavaMonitor {
             traceEndMonitorEnter(currentThread);
             return;
         }
-        currentThread.setState(Thread.State.BLOCKED);
-        mutex.lock();
-        currentThread.setState(Thread.State.RUNNABLE);
+        if (!mutex.tryLock()) {
+            final long start = System.nanoTime();
+            if (!UseAdaptiveSpinning || !trySpin()) {
+                currentThread.setState(Thread.State.BLOCKED);
+                mutex.lock();
+                currentThread.setState(Thread.State.RUNNABLE);
+            }
+            ContentionCounters.recordContendedEnter(boundObject(), System.nanoTime() - start);
+        }
         ownerThread = currentThread;
         setBindingProtection(BindingProtection.PROTECTED);
         recursionCount = 1;
         traceEndMonitorEnter(currentThread);
     }
 
+    /**
+     * Spins trying to acquire this monitor's mutex for at most {@link #spinDuration} iterations.
+     * The spin is abandoned early if the owner is itself blocked.
+     *
+     * @return true if the mutex was acquired
+     */
+    private boolean trySpin() {
+        if (numberOfProcessors == 0) {
+            numberOfProcessors = Runtime.getRuntime().availableProcessors();
+        }
+        if (numberOfProcessors < 2) {
+            return false;
+        }
+        final int duration = Math.max(spinDuration, SPIN_BASE);
+        for (int i = 0; i < duration; i++) {
+            final VmThread owner = ownerThread;
+            if (owner == null) {
+                if (mutex.tryLock()) {
+                    spinDuration = Math.min(Math.max(spinDuration, SPIN_POVERTY) + SPIN_BONUS, MonitorSpinLimit);
+                    return true;
+                }
+            } else if (owner.state() != Thread.State.RUNNABLE) {
+                break;
+            }
+            Intrinsics.pause();
+        }
+        spinDuration = Math.max(spinDuration - SPIN_PENALTY, 0);
+        return false;
+    }
+
     @Override
     public void monitorExit() {
         final VmThread currentThread = VmThread.current();
@@ -25,9 +25,11 @@ package com.sun.max.vm.profile;
 
 import java.util.*;
 
+import com.sun.cri.ri.*;
 import com.sun.max.annotate.*;
 import com.sun.max.program.*;
-import com.sun.max.vm.actor.holder.ClassIDManager;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.compiler.*;
 import com.sun.max.vm.compiler.target.*;
 
 /**
@@ -90,6 +92,18 @@ public class MethodProfile {
      */
     public int entryBackedgeCount;
 
+    /**
+     * The invocation and backward branch counter of the optimized code that replaced {@link #method} when
+     * {@linkplain CompilationBroker tiered compilation} is enabled. The optimized code calls
+     * {@link CompilationBroker#optCounterOverflow} once it has decremented this counter to zero.
+     */
+    public int optEntryBackedgeCount;
+
+    /**
+     * The profiled optimized code that decrements {@link #optEntryBackedgeCount}, or {@code null} if it has not been installed yet.
+     */
+    public TargetMethod optMethod;
+
     /**
      * Records actual counts of a count entry.
      */
@@ -112,9 +126,110 @@ public class MethodProfile {
      */
     public boolean compilationDisabled;
 
+    /**
+     * The loop header bytecode indexes at which an {@linkplain OnStackReplacement on-stack replacement} of
+     * {@link #method} has been attempted. Parallel to {@link #osrMethods}.
+     */
+    private int[] osrBCIs;
+
+    /**
+     * The on-stack replacement variants of {@link #method}, one per entry in {@link #osrBCIs}. A {@code null}
+     * entry denotes a failed compilation.
+     */
+    private TargetMethod[] osrMethods;
+
+    /**
+     * The bytecode indexes of this method at which optimized code speculating on this profile
+     * hit an {@linkplain #recordUncommonTrap uncommon trap}.
+     */
+    private int[] uncommonTrapBCIs;
+
     protected MethodProfile() {
     }
 
+    /**
+     * Determines if an on-stack replacement variant of {@link #method} entered at {@code bci} has been
+     * {@linkplain #recordOSRMethod recorded}.
+     */
+    public synchronized boolean isOSRAttempted(int bci) {
+        return osrIndex(bci) >= 0;
+    }
+
+    /**
+     * Gets the on-stack replacement variant of {@link #method} entered at {@code bci}.
+     *
+     * @return {@code null} if no variant has been compiled for {@code bci}
+     */
+    public synchronized TargetMethod osrMethod(int bci) {
+        int index = osrIndex(bci);
+        return index < 0 ? null : osrMethods[index];
+    }
+
+    /**
+     * Records the on-stack replacement variant of {@link #method} entered at {@code bci}. If another thread has
+     * already recorded a variant for {@code bci}, that variant is kept.
+     *
+     * @param osrMethod the variant or {@code null} if it could not be compiled
+     */
+    public synchronized void recordOSRMethod(int bci, TargetMethod osrMethod) {
+        if (osrIndex(bci) >= 0) {
+            return;
+        }
+        int length = osrBCIs == null ? 0 : osrBCIs.length;
+        int[] bcis = new int[length + 1];
+        TargetMethod[] methods = new TargetMethod[length + 1];
+        if (length != 0) {
+            System.arraycopy(osrBCIs, 0, bcis, 0, length);
+            System.arraycopy(osrMethods, 0, methods, 0, length);
+        }
+        bcis[length] = bci;
+        methods[length] = osrMethod;
+        osrBCIs = bcis;
+        osrMethods = methods;
+    }
+
+    private int osrIndex(int bci) {
+        if (osrBCIs != null) {
+            for (int i = 0; i < osrBCIs.length; i++) {
+                if (osrBCIs[i] == bci) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Records that optimized code deoptimized at an uncommon trap whose frame state is at {@code bci} in this method.
+     * Subsequent compilations should not speculate on the profile of that bytecode again.
+     */
+    public synchronized void recordUncommonTrap(int bci) {
+        if (hasUncommonTrap(bci)) {
+            return;
+        }
+        int length = uncommonTrapBCIs == null ? 0 : uncommonTrapBCIs.length;
+        int[] bcis = new int[length + 1];
+        if (length != 0) {
+            System.arraycopy(uncommonTrapBCIs, 0, bcis, 0, length);
+        }
+        bcis[length] = bci;
+        uncommonTrapBCIs = bcis;
+    }
+
+    /**
+     * Determines if an {@linkplain #recordUncommonTrap uncommon trap} has been recorded at {@code bci}.
+     */
+    public synchronized boolean hasUncommonTrap(int bci) {
+        if (uncommonTrapBCIs != null) {
+            for (int i = 0; i < uncommonTrapBCIs.length; i++) {
+                if (uncommonTrapBCIs[i] == bci) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Increments deoptimization profiling counter for a gived deoptimization reason.
      * @param deoptReasonId deoptimization reason identificator
@@ -309,6 +424,46 @@ public class MethodProfile {
         return typeProfile;
     }
 
+    /**
+     * Gets the {@linkplain #getTypeProfile(int) type profile} of the specified bytecode index in the form
+     * consumed by the optimizing compiler. The anonymous entry and the types that can no longer be
+     * found only contribute to the {@linkplain RiTypeProfile#count count} and
+     * {@linkplain RiTypeProfile#morphism morphism} of the result.
+     *
+     * @param bci the bytecode index for which to get the information
+     * @return {@code null} if this profile info does not have such an entry or no type was seen at {@code bci}
+     */
+    public RiTypeProfile getReceiverTypeProfile(int bci) {
+        Integer[] typeProfile = getTypeProfile(bci);
+        if (typeProfile == null) {
+            return null;
+        }
+        int pairs = typeProfile.length / 2;
+        long total = 0;
+        for (int i = 0; i < pairs; i++) {
+            total += typeProfile[i * 2 + 1];
+        }
+        if (total <= 0) {
+            return null;
+        }
+        ArrayList<RiResolvedType> types = new ArrayList<RiResolvedType>(pairs);
+        float[] probabilities = new float[pairs];
+        for (int i = 0; i < pairs; i++) {
+            int typeId = typeProfile[i * 2];
+            ClassActor classActor = typeId == UNDEFINED_TYPE_ID ? null : ClassIDManager.toClassActor(typeId);
+            if (classActor != null) {
+                probabilities[types.size()] = (float) (typeProfile[i * 2 + 1] / (double) total);
+                types.add(classActor);
+            }
+        }
+        RiTypeProfile result = new RiTypeProfile();
+        result.count = (int) Math.min(total, Integer.MAX_VALUE);
+        result.morphism = pairs;
+        result.types = types.toArray(new RiResolvedType[types.size()]);
+        result.probabilities = Arrays.copyOf(probabilities, types.size());
+        return result;
+    }
+
     /**
      * Gets the receiver method profile of the specified bytecode index, if it is available.
      * The data is formatted as an array of integers, in pairs. The first integer in
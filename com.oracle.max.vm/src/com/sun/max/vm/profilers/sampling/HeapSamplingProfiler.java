@@ -23,6 +23,7 @@
  */
 package com.sun.max.vm.profilers.sampling;
 
+import java.io.*;
 import java.util.*;
 
 import com.sun.max.annotate.*;
@@ -46,8 +47,14 @@ import static com.sun.max.vm.thread.VmThread.currentTLA;
 import static com.sun.max.vm.thread.VmThreadLocal.ETLA;
 
 /**
- * Heap sampling profiler. A thread allocating memory periodically stops all the threads, and records it own stack.
- * Period of sampling is measured in bytes.
+ * Heap sampling profiler. Period of sampling is measured in bytes.
+ *
+ * By default samples are taken from the TLAB refill slow path by the {@link TLABAllocationSampler}, which costs
+ * nothing on the inline allocation path and works in all build levels. The profiler thread periodically drains
+ * the sampler's ring buffer, and the result can be written as a pprof profile with the {@code pprof=file} option.
+ *
+ * With {@code tlab=false} a thread allocating memory periodically stops all the threads, and records it own stack.
+ * This requires a {@link BuildLevel#DEBUG debug} build as the allocations are observed by {@link Heap}'s debug hooks.
  */
 public final class HeapSamplingProfiler extends SamplingProfiler {
     /*
@@ -70,6 +77,37 @@ public final class HeapSamplingProfiler extends SamplingProfiler {
      */
     private static final int DEFAULT_PERIOD = 4096;
 
+    /**
+     * Default sampling period when sampling TLAB refills.
+     */
+    private static final int DEFAULT_TLAB_PERIOD = 512 * 1024;
+
+    /**
+     * Default number of samples the {@link TLABAllocationSampler} ring buffer holds between two drains.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    /**
+     * Period in milliseconds between two drains of the {@link TLABAllocationSampler} ring buffer
+     * when no dump period is specified.
+     */
+    private static final long DRAIN_INTERVAL = 1000L;
+
+    /**
+     * Whether allocations are sampled on TLAB refills by the {@link TLABAllocationSampler}.
+     */
+    private boolean tlabSampling = true;
+
+    /**
+     * Number of samples the {@link TLABAllocationSampler} ring buffer holds.
+     */
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /**
+     * File the pprof profile is written to on termination, or {@code null}.
+     */
+    private String pprofFile;
+
     /**
      * The default flat argument.
      */
@@ -125,7 +163,8 @@ public final class HeapSamplingProfiler extends SamplingProfiler {
     public HeapSamplingProfiler(String optionPrefix, String optionValue) {
         super(HEAP_SAMPLING_PROFILER_NAME);
         this.samplingProfilerName = HEAP_SAMPLING_PROFILER_NAME;
-        this.defaultPeriod = DEFAULT_PERIOD;
+        this.defaultPeriod = DEFAULT_TLAB_PERIOD;
+        this.useDedicatedThread = true;
         this.defaultFlat = DEFAULT_FLAT;
         this.defaultDepth = DEFAULT_DEPTH;
         this.minimumDepth = MINIMUM_DEPTH;
@@ -133,17 +172,53 @@ public final class HeapSamplingProfiler extends SamplingProfiler {
         this.optionPrefix = optionPrefix;
         create(optionValue);
         this.currentPeriod = this.samplePeriod;
-        if (trackSystemThreads) {
+        if (tlabSampling) {
+            TLABAllocationSampler.sampler().start(samplePeriod, maxStackDepth, bufferSize);
+        } else if (trackSystemThreads) {
             stackTraceGatherer.initVMOperationThreadSample();
         }
     }
 
+    @Override
+    protected boolean parseOption(String option) {
+        if (option.startsWith("tlab")) {
+            tlabSampling = getBoolOption(option);
+            if (!tlabSampling) {
+                defaultPeriod = DEFAULT_PERIOD;
+                useDedicatedThread = false;
+            }
+        } else if (option.startsWith("buffer")) {
+            bufferSize = getOption(option);
+            if (bufferSize <= 0) {
+                usage();
+            }
+        } else if (option.startsWith("pprof")) {
+            final int index = option.indexOf('=');
+            if (index < 0) {
+                usage();
+            }
+            pprofFile = option.substring(index + 1);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected String optionsUsage() {
+        return ",tlab[=t],buffer=n,pprof=file";
+    }
+
     @Override
     public void run() {
         theProfiler = VmThread.fromJava(this);
         if (!useDedicatedThread && dumpInterval == 0) {
             throw ProgramError.unexpected("Dedicated sampling profiling thread is not expected to run");
         }
+        if (tlabSampling) {
+            drainTLABSamples();
+            return;
+        }
         while (true) {
             try {
                 Thread.sleep(dumpInterval);
@@ -162,11 +237,72 @@ public final class HeapSamplingProfiler extends SamplingProfiler {
         }
     }
 
+    /**
+     * Periodically drains the {@link TLABAllocationSampler} ring buffer, dumping the traces if a dump period is set.
+     */
+    private void drainTLABSamples() {
+        final long interval = dumpInterval != 0 ? dumpInterval : DRAIN_INTERVAL;
+        while (true) {
+            try {
+                Thread.sleep(interval);
+                if (isProfiling) {
+                    TLABAllocationSampler.sampler().drain();
+                    if (dumpInterval != 0) {
+                        dumpTraces();
+                    }
+                }
+            } catch (InterruptedException ex) {
+            }
+        }
+    }
+
+    @Override
+    public void restart() {
+        if (tlabSampling) {
+            TLABAllocationSampler.sampler().reset();
+        } else {
+            super.restart();
+        }
+    }
+
+    @Override
+    public void terminate() {
+        if (!tlabSampling) {
+            super.terminate();
+            return;
+        }
+        isProfiling = false;
+        final TLABAllocationSampler sampler = TLABAllocationSampler.sampler();
+        sampler.stop();
+        dumpTraces();
+        if (pprofFile != null) {
+            try {
+                sampler.writePprof(pprofFile);
+            } catch (IOException e) {
+                Log.println(HEAP_SAMPLING_PROFILER_NAME + ": could not write " + pprofFile + ": " + e);
+            }
+        }
+    }
+
+    @Override
+    protected synchronized void dumpTraces() {
+        if (tlabSampling) {
+            final TLABAllocationSampler sampler = TLABAllocationSampler.sampler();
+            sampler.drain();
+            sampler.print(HEAP_SAMPLING_PROFILER_NAME);
+        } else {
+            super.dumpTraces();
+        }
+    }
+
     /**
      * Samples allocation of an object.
      */
     @NEVER_INLINE
     public void sampleAllocation(Object allocatedObject) {
+        if (tlabSampling) {
+            return;
+        }
         incrementSamplingAllocationCounterForCurrentThread(Layout.size(Reference.fromJava(allocatedObject)));
         long samples = isProfiling ? getSamplingAllocationCounterForCurrentThread() / currentPeriod : 0;
         if (samples > 0) {
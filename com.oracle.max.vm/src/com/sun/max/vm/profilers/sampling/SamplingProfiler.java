@@ -150,7 +150,7 @@ public abstract class SamplingProfiler extends Thread {
      * by the {@link VmOperation} thread stopping mechanism.
      */
     @CONSTANT_WHEN_NOT_ZERO
-    private int maxStackDepth;
+    protected int maxStackDepth;
 
     /**
      * Used as a scratch object for the working stack being analyzed, to avoid excessive heap allocation.
@@ -267,7 +267,7 @@ public abstract class SamplingProfiler extends Thread {
                         sortedOutput = getBoolOption(option);
                     } else if (option.startsWith("flat")) {
                         flat = getBoolOption(option);
-                    } else {
+                    } else if (!parseOption(option)) {
                         usage();
                     }
                 }
@@ -285,12 +285,28 @@ public abstract class SamplingProfiler extends Thread {
         create(period, stackDepth, dumpPeriod);
     }
 
-    private void usage() {
-        System.err.println("usage: " + optionPrefix + ":frequency=f,depth=d,systhreads,dump=t,sort[=t],flat[=t]");
+    /**
+     * Parses an option specific to a derived profiler.
+     *
+     * @return {@code false} if {@code option} is not recognized
+     */
+    protected boolean parseOption(String option) {
+        return false;
+    }
+
+    /**
+     * Gets the usage of the options specific to a derived profiler, starting with a comma.
+     */
+    protected String optionsUsage() {
+        return "";
+    }
+
+    protected void usage() {
+        System.err.println("usage: " + optionPrefix + ":frequency=f,depth=d,systhreads,dump=t,sort[=t],flat[=t]" + optionsUsage());
         MaxineVM.native_exit(1);
     }
 
-    private boolean getBoolOption(String s) {
+    protected boolean getBoolOption(String s) {
         final int index = s.indexOf('=');
         if (index < 0) {
             return true;
@@ -298,7 +314,7 @@ public abstract class SamplingProfiler extends Thread {
         return Boolean.parseBoolean(s.substring(index + 1));
     }
 
-    private int getOption(String s) {
+    protected int getOption(String s) {
         final int index = s.indexOf('=');
         if (index < 0) {
             usage();
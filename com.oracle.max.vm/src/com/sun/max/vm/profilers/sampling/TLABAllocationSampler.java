@@ -0,0 +1,681 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.profilers.sampling;
+
+import static com.sun.max.vm.heap.HeapSchemeWithTLAB.*;
+import static com.sun.max.vm.intrinsics.Infopoints.*;
+import static com.sun.max.vm.runtime.VMRegister.*;
+import static com.sun.max.vm.thread.VmThread.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.stack.*;
+import com.sun.max.vm.thread.*;
+import com.sun.max.vm.thread.VmThreadLocal.Nature;
+
+/**
+ * Allocation sampler driven by the TLAB refill slow path of {@link com.sun.max.vm.heap.HeapSchemeWithTLAB}.
+ * The inline allocation fast path is not touched: each thread accounts the bytes it allocated between two
+ * slow path entries, and once a randomized number of bytes (averaging {@link #samplingInterval}) has been
+ * allocated the stack of the allocating thread is recorded together with the size of the allocation that
+ * took the slow path and the number of bytes the sample stands for. Weighting each sample by the bytes
+ * allocated since the previous one keeps the estimated totals unbiased regardless of the TLAB size.
+ *
+ * Samples are recorded, without allocating and without reaching a safepoint, into a preallocated ring
+ * buffer of raw frames ({@link TargetMethod} and code position). A thread that finds the recorder busy never
+ * waits: it keeps its byte count and retries at its next slow path entry. The ring is drained by the
+ * {@link HeapSamplingProfiler} thread, which symbolizes the frames and aggregates them per stack trace.
+ * The aggregated data can be written as a gzipped
+ * <a href="https://github.com/google/pprof/blob/master/proto/profile.proto">pprof profile</a>.
+ */
+public final class TLABAllocationSampler {
+
+    /**
+     * Guards the call from the TLAB refill slow path. Only set while the sampler is started.
+     */
+    public static boolean isSampling;
+
+    /**
+     * Allocation mark of the current thread's TLAB after its last pass through the slow path.
+     */
+    private static final VmThreadLocal TLAB_SAMPLE_MARK =
+        new VmThreadLocal("TLAB_SAMPLE_MARK", false, "TLAB allocation mark at the last allocation sampler check", Nature.Single);
+
+    /**
+     * TLAB top of the current thread's TLAB after its last pass through the slow path.
+     */
+    private static final VmThreadLocal TLAB_SAMPLE_TOP =
+        new VmThreadLocal("TLAB_SAMPLE_TOP", false, "TLAB top at the last allocation sampler check", Nature.Single);
+
+    /**
+     * Bytes the current thread allocated since it last recorded a sample.
+     */
+    private static final VmThreadLocal BYTES_SINCE_SAMPLE =
+        new VmThreadLocal("BYTES_SINCE_SAMPLE", false, "Bytes allocated since the last allocation sample", Nature.Single);
+
+    /**
+     * Bytes the current thread must allocate before its next sample.
+     */
+    private static final VmThreadLocal BYTES_UNTIL_SAMPLE =
+        new VmThreadLocal("BYTES_UNTIL_SAMPLE", false, "Bytes to allocate before the next allocation sample", Nature.Single);
+
+    /**
+     * Leading frames whose holder starts with one of these prefixes belong to the allocation machinery
+     * rather than to the allocation site and are dropped when samples are symbolized.
+     */
+    private static final String[] ALLOCATION_FRAME_PREFIXES = {
+        "com.sun.max.vm.heap.",
+        "com.sun.max.vm.profilers.",
+        "com.sun.max.vm.object.",
+        "com.sun.max.vm.runtime.Snippets",
+        "com.oracle.max.vm.ext.t1x.T1XRuntime"
+    };
+
+    /**
+     * Extra raw frames recorded per sample to make up for the allocation machinery frames dropped at symbolization.
+     */
+    private static final int ALLOCATION_FRAMES_SLACK = 8;
+
+    /**
+     * Average number of bytes between two samples of a thread.
+     */
+    @CONSTANT_WHEN_NOT_ZERO
+    private long samplingInterval;
+
+    /**
+     * Maximum number of user frames in a symbolized sample.
+     */
+    @CONSTANT_WHEN_NOT_ZERO
+    private int maxDepth;
+
+    /**
+     * Maximum number of raw frames recorded per sample.
+     */
+    @CONSTANT_WHEN_NOT_ZERO
+    private int rawDepth;
+
+    /**
+     * Number of samples the ring buffer holds.
+     */
+    @CONSTANT_WHEN_NOT_ZERO
+    private int capacity;
+
+    /**
+     * Ring buffer: {@code rawDepth} entries of {@link #frameMethods} and {@link #framePositions} per sample.
+     */
+    private TargetMethod[] frameMethods;
+    private int[] framePositions;
+    private int[] sampleDepths;
+    private long[] sampleSizes;
+    private long[] sampleWeights;
+
+    /**
+     * Number of samples ever written to the ring. Only updated by the holder of {@link #busy}.
+     */
+    private long writeCount;
+
+    /**
+     * Number of samples ever drained from the ring.
+     */
+    private long readCount;
+
+    /**
+     * Number of samples overwritten before they could be drained.
+     */
+    private long lostSamples;
+
+    /**
+     * Non-zero while a thread records a sample or the ring is being drained.
+     */
+    private volatile int busy;
+
+    /**
+     * State of the pseudo random generator used to jiggle the sampling interval.
+     * Races on it only perturb the sequence, which is harmless.
+     */
+    private long seed = 0x2545F4914F6CDD1DL;
+
+    private final VmStackFrameWalker walker = new VmStackFrameWalker(Pointer.zero());
+
+    private final SampleRecorder recorder = new SampleRecorder();
+
+    /**
+     * Aggregated, symbolized samples.
+     */
+    private final Map<AllocationStack, AllocationStack> stacks = new HashMap<AllocationStack, AllocationStack>();
+
+    private long totalSamples;
+
+    private long totalBytes;
+
+    private static final TLABAllocationSampler sampler = new TLABAllocationSampler();
+
+    private TLABAllocationSampler() {
+    }
+
+    public static TLABAllocationSampler sampler() {
+        return sampler;
+    }
+
+    @FOLD
+    private static int busyOffset() {
+        return ClassActor.fromJava(TLABAllocationSampler.class).findLocalInstanceFieldActor("busy").offset();
+    }
+
+    /**
+     * Starts sampling.
+     *
+     * @param interval average number of bytes between two samples of a thread
+     * @param depth maximum number of frames in a sample
+     * @param bufferSize number of samples the ring buffer holds between two drains
+     */
+    public void start(int interval, int depth, int bufferSize) {
+        samplingInterval = interval;
+        maxDepth = depth;
+        rawDepth = depth + ALLOCATION_FRAMES_SLACK;
+        capacity = bufferSize;
+        frameMethods = new TargetMethod[capacity * rawDepth];
+        framePositions = new int[capacity * rawDepth];
+        sampleDepths = new int[capacity];
+        sampleSizes = new long[capacity];
+        sampleWeights = new long[capacity];
+        isSampling = true;
+    }
+
+    public void stop() {
+        isSampling = false;
+    }
+
+    private boolean tryLock() {
+        return busy == 0 && Reference.fromJava(this).compareAndSwapInt(busyOffset(), 0, 1) == 0;
+    }
+
+    private void unlock() {
+        busy = 0;
+    }
+
+    @INLINE
+    private long nextInterval() {
+        long x = seed;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        seed = x;
+        return samplingInterval / 2 + (x >>> 1) % samplingInterval;
+    }
+
+    /**
+     * Accounts the bytes the current thread allocated since it last took the TLAB refill slow path and records a
+     * sample if enough bytes were allocated. Must be called after the slow path allocated {@code size} bytes.
+     *
+     * @param etla the current thread's enabled thread locals
+     * @param oldAllocationMark the TLAB allocation mark when the slow path was entered
+     * @param tlabEnd the TLAB top when the slow path was entered
+     * @param size the size of the allocation that took the slow path
+     */
+    @NO_SAFEPOINT_POLLS("the allocated cell is not yet formatted")
+    @NEVER_INLINE
+    public static void sampleTLABRefill(Pointer etla, Pointer oldAllocationMark, Pointer tlabEnd, Size size) {
+        long allocated = size.toLong();
+        final Pointer sampleMark = TLAB_SAMPLE_MARK.load(etla);
+        // The delta is only meaningful if the TLAB is still the one seen at the last check.
+        if (!sampleMark.isZero() && tlabEnd.equals(TLAB_SAMPLE_TOP.load(etla)) && oldAllocationMark.greaterEqual(sampleMark)) {
+            allocated += oldAllocationMark.minus(sampleMark).toLong();
+        }
+        TLAB_SAMPLE_MARK.store(etla, TLAB_MARK.load(etla));
+        TLAB_SAMPLE_TOP.store(etla, TLAB_TOP.load(etla));
+
+        final TLABAllocationSampler s = sampler;
+        final long until = BYTES_UNTIL_SAMPLE.load(etla).asAddress().toLong();
+        if (until == 0L) {
+            // First pass of this thread: pick its first interval rather than sampling its first allocation.
+            BYTES_SINCE_SAMPLE.store(etla, Address.fromLong(allocated));
+            BYTES_UNTIL_SAMPLE.store(etla, Address.fromLong(s.nextInterval() - allocated));
+            return;
+        }
+        final long since = BYTES_SINCE_SAMPLE.load(etla).asAddress().toLong() + allocated;
+        final long remaining = until - allocated;
+        if (remaining > 0 || !s.record(size.toLong(), since)) {
+            // Not due yet, or the recorder is busy: carry the bytes forward and check again at the next slow path entry.
+            // Zero is reserved for threads that have not been through here yet.
+            BYTES_SINCE_SAMPLE.store(etla, Address.fromLong(since));
+            BYTES_UNTIL_SAMPLE.store(etla, Address.fromLong(remaining == 0L ? -1L : remaining));
+            return;
+        }
+        BYTES_SINCE_SAMPLE.store(etla, Address.zero());
+        BYTES_UNTIL_SAMPLE.store(etla, Address.fromLong(s.nextInterval()));
+    }
+
+    /**
+     * Records the current stack into the ring buffer unless the buffer is busy.
+     *
+     * @return {@code false} if the sample could not be recorded
+     */
+    @NO_SAFEPOINT_POLLS("the allocated cell is not yet formatted")
+    @NEVER_INLINE
+    private boolean record(long size, long weight) {
+        if (!tryLock()) {
+            return false;
+        }
+        final boolean wasDisabled = SafepointPoll.disable();
+        try {
+            final int slot = (int) (writeCount % capacity);
+            recorder.base = slot * rawDepth;
+            recorder.depth = 0;
+            walker.setTLA(currentTLA());
+            walker.inspect(Pointer.fromLong(here()), getCpuStackPointer(), getCpuFramePointer(), recorder);
+            sampleDepths[slot] = recorder.depth;
+            sampleSizes[slot] = size;
+            sampleWeights[slot] = weight;
+            writeCount++;
+        } finally {
+            if (!wasDisabled) {
+                SafepointPoll.enable();
+            }
+            unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Allocation free visitor copying raw frames into the slot being written.
+     */
+    private final class SampleRecorder extends RawStackFrameVisitor {
+        int base;
+        int depth;
+
+        @Override
+        public boolean visitFrame(StackFrameCursor current, StackFrameCursor callee) {
+            final TargetMethod tm = current.targetMethod();
+            if (tm == null || tm.classMethodActor == null) {
+                // native code, stubs and adapters
+                return true;
+            }
+            frameMethods[base + depth] = tm;
+            framePositions[base + depth] = tm.posFor(current.vmIP());
+            depth++;
+            return depth < rawDepth;
+        }
+    }
+
+    /**
+     * A symbolized stack trace, innermost frame first, with the sampled allocation totals attributed to it.
+     */
+    static final class AllocationStack {
+        final ClassMethodActor[] methods;
+        final int[] lines;
+        long samples;
+        long bytes;
+        long objects;
+
+        AllocationStack(ClassMethodActor[] methods, int[] lines) {
+            this.methods = methods;
+            this.lines = lines;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 0;
+            for (int i = 0; i < methods.length; i++) {
+                result = result * 31 + (methods[i].hashCode() ^ lines[i]);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof AllocationStack) {
+                final AllocationStack other = (AllocationStack) o;
+                return Arrays.equals(methods, other.methods) && Arrays.equals(lines, other.lines);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Gathers the symbolized frames of one sample.
+     */
+    private final class Symbolizer implements TargetMethod.CodePosClosure {
+        final ClassMethodActor[] methods = new ClassMethodActor[rawDepth * 4];
+        final int[] lines = new int[methods.length];
+        int depth;
+
+        public boolean doCodePos(ClassMethodActor method, int bci) {
+            if (depth == methods.length) {
+                return false;
+            }
+            methods[depth] = method;
+            lines[depth] = method.sourceLineNumber(bci);
+            depth++;
+            return true;
+        }
+    }
+
+    private static boolean isAllocationFrame(ClassMethodActor method) {
+        final String holder = method.holder().name.string;
+        for (String prefix : ALLOCATION_FRAME_PREFIXES) {
+            if (holder.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the samples recorded in the ring buffer into the aggregated stacks. Only called by the profiler thread.
+     */
+    public synchronized void drain() {
+        if (capacity == 0) {
+            return;
+        }
+        while (!tryLock()) {
+            Thread.yield();
+        }
+        try {
+            if (writeCount - readCount > capacity) {
+                lostSamples += writeCount - readCount - capacity;
+                readCount = writeCount - capacity;
+            }
+            final Symbolizer symbolizer = new Symbolizer();
+            for (; readCount < writeCount; readCount++) {
+                final int slot = (int) (readCount % capacity);
+                final int base = slot * rawDepth;
+                symbolizer.depth = 0;
+                for (int i = 0; i < sampleDepths[slot]; i++) {
+                    final TargetMethod tm = frameMethods[base + i];
+                    frameMethods[base + i] = null;
+                    if (tm.forEachCodePos(symbolizer, tm.codeAt(framePositions[base + i])) == 0) {
+                        symbolizer.doCodePos(tm.classMethodActor, -1);
+                    }
+                }
+                int start = 0;
+                while (start < symbolizer.depth - 1 && isAllocationFrame(symbolizer.methods[start])) {
+                    start++;
+                }
+                final int depth = Math.min(symbolizer.depth - start, maxDepth);
+                final AllocationStack key = new AllocationStack(Arrays.copyOfRange(symbolizer.methods, start, start + depth),
+                                                                Arrays.copyOfRange(symbolizer.lines, start, start + depth));
+                AllocationStack stack = stacks.get(key);
+                if (stack == null) {
+                    stack = key;
+                    stacks.put(key, key);
+                }
+                final long size = sampleSizes[slot];
+                final long weight = sampleWeights[slot];
+                stack.samples++;
+                stack.bytes += weight;
+                stack.objects += size == 0 ? 1 : Math.max(1, weight / size);
+                totalSamples++;
+                totalBytes += weight;
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Discards the aggregated samples.
+     */
+    public synchronized void reset() {
+        drain();
+        stacks.clear();
+        totalSamples = 0;
+        totalBytes = 0;
+        lostSamples = 0;
+    }
+
+    /**
+     * Number of samples drained from the ring buffer since the last {@link #reset()}.
+     */
+    public synchronized long totalSamples() {
+        return totalSamples;
+    }
+
+    /**
+     * Estimated number of bytes allocated by the sampled threads, i.e., the sum of the weights of the drained samples.
+     */
+    public synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Number of samples overwritten in the ring buffer before they could be drained, since the last {@link #reset()}.
+     */
+    public synchronized long lostSamples() {
+        return lostSamples;
+    }
+
+    private synchronized AllocationStack[] sortedStacks() {
+        final AllocationStack[] result = stacks.values().toArray(new AllocationStack[stacks.size()]);
+        Arrays.sort(result, new Comparator<AllocationStack>() {
+            public int compare(AllocationStack a, AllocationStack b) {
+                return a.bytes < b.bytes ? 1 : (a.bytes == b.bytes ? 0 : -1);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Prints the aggregated samples to the {@link Log}, heaviest stacks first.
+     */
+    public void print(String name) {
+        final AllocationStack[] sorted = sortedStacks();
+        boolean state = Log.lock();
+        Log.print(name);
+        Log.print(", #samples: ");
+        Log.print(totalSamples);
+        Log.print(" (");
+        Log.print(totalBytes / 1024);
+        Log.print("KB), lost samples: ");
+        Log.println(lostSamples);
+        Log.println();
+        for (AllocationStack stack : sorted) {
+            Log.print(stack.bytes / 1024);
+            Log.print("KB in ");
+            Log.print(stack.objects);
+            Log.print(" objects, #samples: ");
+            Log.println(stack.samples);
+            for (int i = 0; i < stack.methods.length; i++) {
+                final ClassMethodActor method = stack.methods[i];
+                Log.print("  ");
+                Log.print(method.holder().name.toString());
+                Log.print('.');
+                Log.print(method.name().toString());
+                Log.print('(');
+                Log.print(method.holder().sourceFileName);
+                if (stack.lines[i] > 0) {
+                    Log.print(':');
+                    Log.print(stack.lines[i]);
+                }
+                Log.println(')');
+            }
+            Log.println();
+        }
+        Log.unlock(state);
+    }
+
+    /**
+     * Writes the aggregated samples as a gzipped pprof profile with {@code alloc_objects} and {@code alloc_space}
+     * sample types.
+     */
+    public void writePprof(String fileName) throws IOException {
+        final AllocationStack[] sorted = sortedStacks();
+        final PprofEncoder profile = new PprofEncoder();
+        final int objectsType = profile.string("alloc_objects");
+        final int countUnit = profile.string("count");
+        final int spaceType = profile.string("alloc_space");
+        final int bytesUnit = profile.string("bytes");
+        profile.valueType(1, objectsType, countUnit);
+        profile.valueType(1, spaceType, bytesUnit);
+
+        final Map<ClassMethodActor, Integer> functions = new HashMap<ClassMethodActor, Integer>();
+        final Map<Long, Integer> locations = new HashMap<Long, Integer>();
+        final PprofEncoder.Buffer ids = new PprofEncoder.Buffer();
+        for (AllocationStack stack : sorted) {
+            ids.reset();
+            for (int i = 0; i < stack.methods.length; i++) {
+                final ClassMethodActor method = stack.methods[i];
+                Integer functionId = functions.get(method);
+                if (functionId == null) {
+                    functionId = functions.size() + 1;
+                    functions.put(method, functionId);
+                    final String name = method.holder().name.toString() + "." + method.name().toString();
+                    profile.function(functionId, profile.string(name), profile.string(name + method.descriptor().toString()),
+                                     profile.string(String.valueOf(method.holder().sourceFileName)));
+                }
+                final Long key = ((long) functionId << 32) | (stack.lines[i] & 0xFFFFFFFFL);
+                Integer locationId = locations.get(key);
+                if (locationId == null) {
+                    locationId = locations.size() + 1;
+                    locations.put(key, locationId);
+                    profile.location(locationId, functionId, Math.max(stack.lines[i], 0));
+                }
+                ids.varint(locationId);
+            }
+            profile.sample(ids, stack.objects, stack.bytes);
+        }
+        profile.valueType(11, spaceType, bytesUnit);
+        profile.int64(12, samplingInterval);
+
+        final OutputStream out = new GZIPOutputStream(new FileOutputStream(fileName));
+        try {
+            profile.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Minimal protocol buffer encoder for the subset of {@code profile.proto} written by {@link #writePprof}.
+     */
+    static final class PprofEncoder {
+
+        static final class Buffer extends ByteArrayOutputStream {
+            void varint(long value) {
+                while ((value & ~0x7FL) != 0) {
+                    write((int) ((value & 0x7F) | 0x80));
+                    value >>>= 7;
+                }
+                write((int) value);
+            }
+
+            void tag(int field, int wireType) {
+                varint((field << 3) | wireType);
+            }
+
+            void int64(int field, long value) {
+                tag(field, 0);
+                varint(value);
+            }
+
+            void bytes(int field, Buffer nested) {
+                tag(field, 2);
+                varint(nested.size());
+                write(nested.toByteArray(), 0, nested.size());
+            }
+        }
+
+        private final Buffer profile = new Buffer();
+        private final Buffer scratch = new Buffer();
+        private final Buffer line = new Buffer();
+        private final List<String> strings = new ArrayList<String>();
+        private final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+
+        PprofEncoder() {
+            string("");
+        }
+
+        int string(String s) {
+            Integer index = stringIndex.get(s);
+            if (index == null) {
+                index = strings.size();
+                strings.add(s);
+                stringIndex.put(s, index);
+            }
+            return index;
+        }
+
+        void int64(int field, long value) {
+            profile.int64(field, value);
+        }
+
+        void valueType(int field, int type, int unit) {
+            scratch.reset();
+            scratch.int64(1, type);
+            scratch.int64(2, unit);
+            profile.bytes(field, scratch);
+        }
+
+        void sample(Buffer locationIds, long objects, long bytes) {
+            scratch.reset();
+            scratch.bytes(1, locationIds);
+            line.reset();
+            line.varint(objects);
+            line.varint(bytes);
+            scratch.bytes(2, line);
+            profile.bytes(2, scratch);
+        }
+
+        void location(int id, int functionId, int lineNumber) {
+            line.reset();
+            line.int64(1, functionId);
+            line.int64(2, lineNumber);
+            scratch.reset();
+            scratch.int64(1, id);
+            scratch.bytes(4, line);
+            profile.bytes(4, scratch);
+        }
+
+        void function(int id, int name, int systemName, int fileName) {
+            scratch.reset();
+            scratch.int64(1, id);
+            scratch.int64(2, name);
+            scratch.int64(3, systemName);
+            scratch.int64(4, fileName);
+            profile.bytes(5, scratch);
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            profile.writeTo(out);
+            final Buffer s = new Buffer();
+            for (String string : strings) {
+                final byte[] utf8 = string.getBytes("UTF-8");
+                s.reset();
+                s.tag(6, 2);
+                s.varint(utf8.length);
+                s.write(utf8, 0, utf8.length);
+                s.writeTo(out);
+            }
+        }
+    }
+}
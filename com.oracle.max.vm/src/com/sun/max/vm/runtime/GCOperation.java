@@ -192,7 +192,9 @@ public abstract class GCOperation extends VmOperation {
             Log.unlock(lockDisabledSafepoints);
         }
 
+        GCTelemetry.beginCollection();
         collect(invocationCount);
+        GCTelemetry.endCollection(invocationCount);
 
         if (Heap.verbose()) {
             final long afterUsed = Heap.reportUsedSpace();
@@ -385,14 +385,14 @@ public class VmOperation {
 
     /**
      * Predicate used with {@linkplain VmThreadMap#forAllThreadLocals(Predicate, com.sun.max.unsafe.Pointer.Procedure)}
-     * to filter out the VM operation thread and all threads for which {@link #operateOnThread(VmThread)} returns
+     * to filter out the VM operation thread, the GC worker threads and all threads for which {@link #operateOnThread(VmThread)} returns
      * {@code false}.
      */
     private final Pointer.Predicate threadPredicate = new Pointer.Predicate() {
         @Override
         public boolean evaluate(Pointer tla) {
             VmThread vmThread = VmThread.fromTLA(tla);
-            return !vmThread.isVmOperationThread() && operateOnThread(vmThread);
+            return !vmThread.isVmOperationThread() && !vmThread.isGCWorkerThread() && operateOnThread(vmThread);
         }
     };
 
@@ -126,6 +126,17 @@ public abstract class JVMSFrameLayout extends VMFrameLayout {
         return CATEGORY1_OFFSET_WITHIN_WORD;
     }
 
+    /**
+     * Gets the frame pointer offset of the value of a given kind stored in a local variable. A category 2 value
+     * is stored in the slot of its first local variable index.
+     *
+     * @param localVariableIndex a local variable index
+     * @param kind the kind of the value in the local variable
+     */
+    public int localSlotOffset(int localVariableIndex, Kind kind) {
+        return localVariableOffset(localVariableIndex) + offsetInStackSlot(kind);
+    }
+
     /**
      * Gets the number of stack slots occupied by the incoming parameters to this frame.
      */
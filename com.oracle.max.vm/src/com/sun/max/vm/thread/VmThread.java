@@ -218,6 +218,17 @@ public class VmThread {
         return vmThread;
     }
 
+    /**
+     * Creates a VM system thread at image build time. Such threads are allocated in the boot image and
+     * are started with {@link #startVmSystemThread()} by the subsystem that owns them.
+     *
+     * @param javaThread an unstarted thread created in the {@link #systemThreadGroup}
+     */
+    @HOSTED_ONLY
+    public static VmThread createVmSystemThread(Thread javaThread) {
+        return initVmThread(javaThread);
+    }
+
     @HOSTED_ONLY
     static Thread copyProps(Thread src, Thread dst) {
         dst.setDaemon(src.isDaemon());
@@ -281,6 +292,19 @@ public class VmThread {
 
     public JavaMonitor protectedMonitor;
 
+    /**
+     * Head of this thread's cache of unbound monitors, linked through their {@code next} field.
+     * Only accessed by this thread with safepoints disabled, or by the VM operation thread at a global safepoint.
+     *
+     * @see JavaMonitorManager#bindMonitor(Object)
+     */
+    public JavaMonitor monitorCache;
+
+    /**
+     * Number of monitors in {@link #monitorCache}.
+     */
+    public int monitorCacheSize;
+
     private ConditionVariable waitingCondition = ConditionVariableFactory.create();
 
     public final HeapScheme.GCRequest gcRequest = VMConfiguration.vmConfig().heapScheme().createThreadLocalGCRequest(this);
@@ -295,6 +319,12 @@ public class VmThread {
      */
     private boolean jvmtiAgent;
 
+    /**
+     * Marks this as a GC worker thread. GC worker threads are never frozen by a {@link VmOperation} and
+     * their stacks are not scanned for roots, as they never hold references to movable objects while idle.
+     */
+    private boolean gcWorker;
+
     /**
      * Holds the exception object for the exception currently being raised. This value will only be
      * non-null during the unwinding process between calls to {@link #storeExceptionForHandler(Throwable, TargetMethod, int)}
@@ -817,6 +847,8 @@ public class VmThread {
             // reset to RUNNABLE if it blocks here.
             VmThreadMap.ACTIVE.removeThreadLocals(thread);
         }
+        // Hand back any unbound monitors cached by the thread; this does not acquire a monitor.
+        JavaMonitorManager.releaseMonitorCache(thread);
         if (MaxineVM.isDebug()) {
             detached();
         }
@@ -1134,6 +1166,17 @@ public class VmThread {
         jvmtiAgent = true;
     }
 
+    /**
+     * Determines if this is a GC worker thread.
+     */
+    public final boolean isGCWorkerThread() {
+        return gcWorker;
+    }
+
+    public final void setAsGCWorkerThread() {
+        gcWorker = true;
+    }
+
     /**
      * Bind the given {@code Thread} to this VmThread.
      * @param javaThread thread to be bound
@@ -534,7 +534,7 @@ public class VmThreadLocal implements FormatWithToString {
 
         VMLog.scanLogs(tla, wordPointerIndexVisitor);
 
-        Pointer anchor = JavaFrameAnchor.from(tla);
+        Pointer anchor = thread.isGCWorkerThread() ? Pointer.zero() : JavaFrameAnchor.from(tla);
         if (!anchor.isZero()) {
             final Pointer lastJavaCallerStackPointer = JavaFrameAnchor.SP.get(anchor);
             final Pointer lowestActiveSlot = LOWEST_ACTIVE_STACK_SLOT_ADDRESS.load(tla);